@@ -0,0 +1,123 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Checks that a document written by SVGBinaryWriter and read back by SVGBinaryReader is the
+ * same as the parsed original, and that damaged binary data is rejected with an SVGParseException.
+ */
+public class SVGBinaryRoundTripTest extends AndroidTestCase
+{
+    private static final String  SVG_START = "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"100\" height=\"100\" viewBox=\"0 0 100 100\">";
+
+    private static final String  SHAPES = SVG_START +
+                                          "<title>Shapes</title><desc>Some shapes</desc>" +
+                                          "<defs><linearGradient id=\"lg\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"1\" gradientTransform=\"rotate(30)\"><stop offset=\"0\" stop-color=\"red\"/><stop offset=\"1\" stop-color=\"blue\" stop-opacity=\"0.5\"/></linearGradient>" +
+                                          "<radialGradient id=\"rg\" xlink:href=\"#lg\" r=\"50%\" spreadMethod=\"reflect\"/>" +
+                                          "<clipPath id=\"cp\"><circle cx=\"50\" cy=\"50\" r=\"40\"/></clipPath>" +
+                                          "<mask id=\"mk\" maskUnits=\"userSpaceOnUse\"><rect width=\"50\" height=\"50\" fill=\"white\"/></mask>" +
+                                          "<marker id=\"m\" markerWidth=\"4\" markerHeight=\"4\" orient=\"auto\"><path d=\"M0,0 L4,2 L0,4 z\"/></marker>" +
+                                          "<pattern id=\"p\" width=\"10\" height=\"10\" patternUnits=\"userSpaceOnUse\"><rect width=\"5\" height=\"5\"/></pattern>" +
+                                          "<symbol id=\"s\" viewBox=\"0 0 10 10\" preserveAspectRatio=\"xMinYMax slice\"><ellipse cx=\"5\" cy=\"5\" rx=\"4\" ry=\"2\"/></symbol></defs>" +
+                                          "<g id=\"g1\" class=\"a b\" transform=\"translate(10,20) rotate(45) scale(0.5)\" style=\"fill:url(#lg) #0f0;stroke:#00f\" clip-path=\"url(#cp)\" mask=\"url(#mk)\">" +
+                                          "<rect x=\"1\" y=\"2\" width=\"30\" height=\"40\" rx=\"3\" fill=\"url(#p) none\"/>" +
+                                          "<line x1=\"0\" y1=\"0\" x2=\"1e2\" y2=\"-.5E1\" marker-end=\"url(#m)\" stroke-dasharray=\"1 2 3\" stroke-linecap=\"round\"/>" +
+                                          "<polyline points=\"0,0 10,10 20,0\"/><polygon points=\"0 0 10 10 20 0\" fill-rule=\"evenodd\"/>" +
+                                          "<path d=\"M10 10h20v20H10zm5 5c1,2 3,4 5,6s1-1 2-2q1 1 2 2t3 3a5 5 0 0 1 10 10\" fill=\"currentColor\" color=\"#123456\"/>" +
+                                          "</g>" +
+                                          "<use xlink:href=\"#s\" x=\"5\" y=\"5\" width=\"20\" height=\"20\"/>" +
+                                          "<switch><rect requiredFeatures=\"http://www.w3.org/TR/SVG11/feature#Shape\" width=\"1\" height=\"1\"/><circle r=\"1\" systemLanguage=\"en\"/></switch>" +
+                                          "<view id=\"v\" viewBox=\"0 0 50 50\"/>" +
+                                          "</svg>";
+
+
+    public void  testShapesAndStructure() throws Exception
+    {
+        assertRoundTrip(SHAPES);
+    }
+
+
+    public void  testStyleElement() throws Exception
+    {
+        assertRoundTrip(SVG_START +
+                        "<style type=\"text/css\"><![CDATA[\n" +
+                        "  .a { fill: blue; stroke-width: 2px }\n" +
+                        "  rect > circle, #b { stroke: red }\n" +
+                        "]]></style>" +
+                        "<style type=\"text/css\">g .c { opacity: 0.5; font-family: Serif, 'Droid Sans'; font-weight: bold }</style>" +
+                        "<rect class=\"a\" width=\"10\" height=\"10\"/><circle id=\"b\" r=\"5\"/>" +
+                        "<g><rect class=\"c\" width=\"1\" height=\"1\" style=\"stroke-miterlimit:3;vector-effect:non-scaling-stroke\"/></g>" +
+                        "</svg>");
+    }
+
+
+    public void  testText() throws Exception
+    {
+        assertRoundTrip(SVG_START +
+                        "<text x=\"10\" y=\"20\" text-anchor=\"middle\">  Hello   <tspan dx=\"1 2 3\" font-weight=\"bold\" font-style=\"italic\">big \n\t world</tspan>  end  </text>" +
+                        "<text x=\"10\" y=\"40\" xml:space=\"preserve\" text-decoration=\"underline\">  keep   <tspan>  all \n spaces </tspan>  </text>" +
+                        "<defs><text id=\"t\">referenced</text></defs>" +
+                        "<text x=\"10\" y=\"90\"><tref xlink:href=\"#t\"/> and <textPath xlink:href=\"#path\" startOffset=\"10%\">on a path</textPath></text>" +
+                        "<path id=\"path\" d=\"M0 0 L100 0\"/>" +
+                        "</svg>");
+    }
+
+
+    public void  testTruncatedDataIsRejected() throws Exception
+    {
+        byte[]  bytes = write(SVG.getFromString(SHAPES));
+        for (int length = 0; length < bytes.length; length++)
+        {
+            try {
+                SVG.getFromBinary(ByteBuffer.wrap(bytes, 0, length));
+                fail("Binary SVG truncated to " + length + " of " + bytes.length + " bytes was accepted");
+            } catch (SVGParseException e) {
+                // Expected
+            }
+        }
+    }
+
+
+    public void  testBadCountsAreRejected() throws Exception
+    {
+        byte[]  bytes = write(SVG.getFromString(SHAPES));
+        // The string table count follows the four byte magic number and the two byte version
+        int[]  badCounts = { Integer.MAX_VALUE, bytes.length, -2, Integer.MIN_VALUE };
+        for (int count: badCounts)
+        {
+            ByteBuffer  buffer = ByteBuffer.wrap(bytes.clone());
+            buffer.putInt(6, count);
+            try {
+                SVG.getFromBinary(buffer);
+                fail("Binary SVG with a string count of " + count + " was accepted");
+            } catch (SVGParseException e) {
+                // Expected
+            }
+        }
+    }
+
+
+    //=========================================================================
+
+
+    private static void  assertRoundTrip(String svg) throws Exception
+    {
+        SVG  document = SVG.getFromString(svg);
+        // Writing computes the cascade, which the reader restores, so dump the original afterwards
+        byte[]  bytes = write(document);
+        SVG  copy = SVG.getFromBinary(ByteBuffer.wrap(bytes));
+        assertEquals(SVGParserBackendTest.dumpTree(document), SVGParserBackendTest.dumpTree(copy));
+    }
+
+
+    private static byte[]  write(SVG document) throws Exception
+    {
+        ByteArrayOutputStream  bytes = new ByteArrayOutputStream();
+        SVGBinaryWriter.write(document, bytes);
+        return bytes.toByteArray();
+    }
+}
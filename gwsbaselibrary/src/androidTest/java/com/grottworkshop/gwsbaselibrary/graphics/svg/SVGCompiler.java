@@ -0,0 +1,127 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Command line tool that precompiles SVG files into the binary form loaded by
+ * {@link SVG#getFromBinary(java.nio.ByteBuffer)}.
+ * <p>
+ * Usage: {@code SVGCompiler <input.svg|input dir> <output.svgb|output dir>}
+ * <p>
+ * When given a directory, every .svg and .svgz file in it (and its subdirectories) is
+ * compiled to a .svgb file at the same relative location in the output directory.
+ * <p>
+ * This is a developer tool, not part of the library, and there is no build-time conversion.
+ * The parser uses the platform XML parser and android.graphics.Matrix, so the tool has to run
+ * on an Android runtime. It is built into the test APK, and can be run on a device or
+ * emulator once both APKs have been installed, with the library APK and the test APK on
+ * the class path:
+ * <pre>
+ * adb shell CLASSPATH=&lt;library apk&gt;:&lt;test apk&gt; app_process / \
+ *     com.grottworkshop.gwsbaselibrary.graphics.svg.SVGCompiler /sdcard/svg /sdcard/svgb
+ * </pre>
+ * where the APK paths are those printed by {@code adb shell pm path com.grottworkshop.gwsbaselibrary}
+ * and {@code adb shell pm path com.grottworkshop.gwsbaselibrary.test}.
+ */
+public class SVGCompiler
+{
+    public static final String  BINARY_EXTENSION = ".svgb";
+
+
+    public static void  main(String[] args)
+    {
+        if (args.length != 2) {
+            System.err.println("Usage: SVGCompiler <input.svg|input dir> <output.svgb|output dir>");
+            System.exit(2);
+        }
+
+        File  in = new File(args[0]);
+        File  out = new File(args[1]);
+        int   failures;
+        if (in.isDirectory())
+            failures = compileDirectory(in, out);
+        else
+            failures = compileFile(in, out) ? 0 : 1;
+        System.exit((failures == 0) ? 0 : 1);
+    }
+
+
+    /**
+     * Compile every SVG file in a directory tree.
+     *
+     * @param inDir the directory containing the SVG files
+     * @param outDir the directory to write the compiled files to
+     * @return the number of files that could not be compiled
+     */
+    public static int  compileDirectory(File inDir, File outDir)
+    {
+        File[]  files = inDir.listFiles();
+        if (files == null)
+            return 0;
+
+        int  failures = 0;
+        for (File file: files)
+        {
+            String  name = file.getName();
+            if (file.isDirectory()) {
+                failures += compileDirectory(file, new File(outDir, name));
+            } else if (name.endsWith(".svg") || name.endsWith(".svgz")) {
+                String  baseName = name.substring(0, name.lastIndexOf('.'));
+                if (!compileFile(file, new File(outDir, baseName + BINARY_EXTENSION)))
+                    failures++;
+            }
+        }
+        return failures;
+    }
+
+
+    /**
+     * Compile a single SVG file.
+     *
+     * @param in the SVG file
+     * @param out the file to write the compiled form to
+     * @return true if the file was compiled successfully
+     */
+    public static boolean  compileFile(File in, File out)
+    {
+        try
+        {
+            SVG  svg;
+            InputStream  is = new FileInputStream(in);
+            try {
+                svg = SVG.getFromInputStream(is);
+            } finally {
+                is.close();
+            }
+
+            File  parent = out.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Could not create directory "+parent);
+
+            OutputStream  os = new BufferedOutputStream(new FileOutputStream(out));
+            try {
+                svg.writeBinary(os);
+            } finally {
+                os.close();
+            }
+            System.out.println(in + " -> " + out);
+            return true;
+        }
+        catch (SVGParseException e)
+        {
+            System.err.println(in + ": " + e.getMessage());
+        }
+        catch (IOException e)
+        {
+            System.err.println(in + ": " + e.getMessage());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+
+
+/**
+ * Measures how much spatial index culling saves when a document of 10,000 elements is zoomed
+ * in, so that only a small part of it is visible. Each zoomed frame is also compared, pixel by
+ * pixel, with the same view played back from a Picture of the whole document, which is never
+ * culled. The timings are written to the log under the tag "SVGCulling"; run it on a device
+ * with {@code ./gradlew connectedAndroidTest} and read them with {@code adb logcat -s SVGCulling}.
+ */
+public class SVGCullingBenchmark extends AndroidTestCase
+{
+    private static final String  TAG = "SVGCulling";
+
+    private static final int    SIZE = 1000;
+    private static final int    GRID = 100;     // GRID x GRID elements
+    private static final float  ZOOM = 10f;
+    private static final int    WARMUP_FRAMES = 3;
+    private static final int    MEASURED_FRAMES = 20;
+
+
+    public void  testZoomedFrameTime() throws Exception
+    {
+        SVG     document = SVG.getFromString(buildGridDocument());
+        RectF   viewPort = new RectF(0, 0, SIZE, SIZE);
+        Bitmap  culled = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap  unculled = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+        try
+        {
+            long  start = System.nanoTime();
+            document.getSpatialIndex();
+            Log.i(TAG, String.format("index build: %.2f ms", (System.nanoTime() - start) / 1e6));
+
+            // The whole document, recorded without a clip, so nothing is culled
+            Picture  picture = new Picture();
+            document.renderToCanvas(picture.beginRecording(SIZE, SIZE), viewPort);
+            picture.endRecording();
+
+            long[]  fullTimes = measure(document, new Canvas(culled), viewPort, 1f, 0f, 0f);
+            long[]  culledTimes = measure(document, new Canvas(culled), viewPort, ZOOM, SIZE * 0.45f, SIZE * 0.45f);
+            long[]  unculledTimes = measurePicture(picture, new Canvas(unculled), ZOOM, SIZE * 0.45f, SIZE * 0.45f);
+
+            Log.i(TAG, "whole document: " + describe(fullTimes));
+            Log.i(TAG, "zoomed, culled: " + describe(culledTimes));
+            Log.i(TAG, "zoomed, from picture: " + describe(unculledTimes));
+            Log.i(TAG, "culled/whole median: " + ((float) median(culledTimes) / median(fullTimes)));
+
+            assertEquals("pixels that differ between the culled and unculled zoomed frames", 0, countDifferences(culled, unculled));
+        }
+        finally
+        {
+            culled.recycle();
+            unculled.recycle();
+        }
+    }
+
+
+    //=========================================================================
+
+
+    private static long[]  measure(SVG document, Canvas canvas, RectF viewPort, float zoom, float focusX, float focusY)
+    {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            renderFrame(document, null, canvas, viewPort, zoom, focusX, focusY);
+
+        long[]  times = new long[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++)
+        {
+            long  start = System.nanoTime();
+            renderFrame(document, null, canvas, viewPort, zoom, focusX, focusY);
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+
+    private static long[]  measurePicture(Picture picture, Canvas canvas, float zoom, float focusX, float focusY)
+    {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            renderFrame(null, picture, canvas, null, zoom, focusX, focusY);
+
+        long[]  times = new long[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++)
+        {
+            long  start = System.nanoTime();
+            renderFrame(null, picture, canvas, null, zoom, focusX, focusY);
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+
+    /*
+     * Draw one frame, zoomed in on (focusX, focusY), either by rendering the document or by
+     * playing back the picture.
+     */
+    private static void  renderFrame(SVG document, Picture picture, Canvas canvas, RectF viewPort, float zoom, float focusX, float focusY)
+    {
+        canvas.drawColor(0xffffffff);
+        canvas.save();
+        canvas.scale(zoom, zoom);
+        canvas.translate(-focusX, -focusY);
+        if (document != null)
+            document.renderToCanvas(canvas, viewPort);
+        else
+            canvas.drawPicture(picture);
+        canvas.restore();
+    }
+
+
+    private static int  countDifferences(Bitmap a, Bitmap b)
+    {
+        int    count = 0;
+        int[]  rowA = new int[a.getWidth()];
+        int[]  rowB = new int[b.getWidth()];
+        for (int y = 0; y < a.getHeight(); y++)
+        {
+            a.getPixels(rowA, 0, a.getWidth(), 0, y, a.getWidth(), 1);
+            b.getPixels(rowB, 0, b.getWidth(), 0, y, b.getWidth(), 1);
+            for (int x = 0; x < rowA.length; x++) {
+                if (rowA[x] != rowB[x])
+                    count++;
+            }
+        }
+        return count;
+    }
+
+
+    private static long  median(long[] times)
+    {
+        long[]  sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+
+    private static String  describe(long[] times)
+    {
+        long[]  sorted = times.clone();
+        Arrays.sort(sorted);
+        return String.format("median %.2f ms, 90th percentile %.2f ms, max %.2f ms",
+                             sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 9 / 10] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+
+    /*
+     * A grid of small shapes in nested groups, so that culling has containers as well as
+     * leaves to skip. Every tenth cell is a stroked path, to exercise the stroke padding.
+     */
+    private static String  buildGridDocument()
+    {
+        float          cell = (float) SIZE / GRID;
+        StringBuilder  sb = new StringBuilder();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(SIZE).append("\" height=\"").append(SIZE)
+          .append("\" viewBox=\"0 0 ").append(SIZE).append(' ').append(SIZE).append("\">");
+        for (int row = 0; row < GRID; row++)
+        {
+            sb.append("<g transform=\"translate(0,").append(row * cell).append(")\">");
+            for (int col = 0; col < GRID; col++)
+            {
+                float   x = col * cell;
+                String  fill = String.format("#%02x%02x80", (row * 255) / GRID, (col * 255) / GRID);
+                if ((row * GRID + col) % 10 == 0)
+                {
+                    sb.append("<path fill=\"none\" stroke=\"").append(fill).append("\" stroke-width=\"2\" d=\"M")
+                      .append(x + 1).append(",1 L").append(x + cell - 1).append(',').append(cell - 1).append("\"/>");
+                }
+                else
+                {
+                    sb.append("<rect x=\"").append(x + 1).append("\" y=\"1\" width=\"").append(cell - 2)
+                      .append("\" height=\"").append(cell - 2).append("\" fill=\"").append(fill).append("\"/>");
+                }
+            }
+            sb.append("</g>");
+        }
+        sb.append("</svg>");
+        return sb.toString();
+    }
+}
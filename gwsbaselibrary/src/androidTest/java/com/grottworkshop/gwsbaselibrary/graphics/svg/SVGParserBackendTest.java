@@ -0,0 +1,380 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import android.graphics.Matrix;
+import android.test.AndroidTestCase;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Checks that the SAX and XmlPullParser backends build identical documents.
+ */
+public class SVGParserBackendTest extends AndroidTestCase
+{
+    private static final String  SVG_START = "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"100\" height=\"100\" viewBox=\"0 0 100 100\">";
+
+    private SVG.ParserBackend  savedBackend;
+
+
+    @Override
+    protected void  setUp() throws Exception
+    {
+        super.setUp();
+        savedBackend = SVG.getParserBackend();
+    }
+
+
+    @Override
+    protected void  tearDown() throws Exception
+    {
+        SVG.setParserBackend(savedBackend);
+        super.tearDown();
+    }
+
+
+    //=========================================================================
+
+
+    public void  testShapesAndStructure() throws Exception
+    {
+        assertSameDocument(SVG_START +
+                           "<title>Shapes</title><desc>Some shapes</desc>" +
+                           "<defs><linearGradient id=\"lg\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"1\"><stop offset=\"0\" stop-color=\"red\"/><stop offset=\"1\" stop-color=\"blue\" stop-opacity=\"0.5\"/></linearGradient>" +
+                           "<radialGradient id=\"rg\" xlink:href=\"#lg\" r=\"50%\"/>" +
+                           "<clipPath id=\"cp\"><circle cx=\"50\" cy=\"50\" r=\"40\"/></clipPath>" +
+                           "<marker id=\"m\" markerWidth=\"4\" markerHeight=\"4\"><path d=\"M0,0 L4,2 L0,4 z\"/></marker>" +
+                           "<pattern id=\"p\" width=\"10\" height=\"10\" patternUnits=\"userSpaceOnUse\"><rect width=\"5\" height=\"5\"/></pattern>" +
+                           "<symbol id=\"s\" viewBox=\"0 0 10 10\"><ellipse cx=\"5\" cy=\"5\" rx=\"4\" ry=\"2\"/></symbol></defs>" +
+                           "<g id=\"g1\" transform=\"translate(10,20) rotate(45) scale(0.5)\" style=\"fill:url(#lg);stroke:#00f\" clip-path=\"url(#cp)\">" +
+                           "<rect x=\"1\" y=\"2\" width=\"30\" height=\"40\" rx=\"3\" fill=\"url(#p) none\"/>" +
+                           "<line x1=\"0\" y1=\"0\" x2=\"1e2\" y2=\"-.5E1\" marker-end=\"url(#m)\"/>" +
+                           "<polyline points=\"0,0 10,10 20,0\"/><polygon points=\"0 0 10 10 20 0\"/>" +
+                           "<path d=\"M10 10h20v20H10zm5 5c1,2 3,4 5,6s1-1 2-2q1 1 2 2t3 3a5 5 0 0 1 10 10\"/>" +
+                           "</g>" +
+                           "<use xlink:href=\"#s\" x=\"5\" y=\"5\" width=\"20\" height=\"20\"/>" +
+                           "<switch><rect requiredFeatures=\"http://www.w3.org/TR/SVG11/feature#Shape\" width=\"1\" height=\"1\"/><circle r=\"1\" systemLanguage=\"en\"/></switch>" +
+                           "<view id=\"v\" viewBox=\"0 0 50 50\"/>" +
+                           "</svg>");
+    }
+
+
+    public void  testCommentsAndProcessingInstructions() throws Exception
+    {
+        assertSameDocument("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n" +
+                           "<!-- Generator: something -->\n" +
+                           "<?xml-stylesheet href=\"style.css\" type=\"text/css\"?>\n" +
+                           SVG_START + "<!-- a comment --><g><!-- another --><rect width=\"10\" height=\"10\"/></g></svg>");
+    }
+
+
+    public void  testPublicDoctype() throws Exception
+    {
+        assertSameDocument("<?xml version=\"1.0\"?>\n" +
+                           "<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n" +
+                           SVG_START + "<rect width=\"10\" height=\"10\" fill=\"green\"/></svg>");
+    }
+
+
+    public void  testEntityDeclarationsFallBackToSAX() throws Exception
+    {
+        String  svg = "<?xml version=\"1.0\"?>\n" +
+                      "<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\" [\n" +
+                      "  <!ENTITY ns_svg \"http://www.w3.org/2000/svg\">\n" +
+                      "  <!ENTITY ns_xlink \"http://www.w3.org/1999/xlink\">\n" +
+                      "  <!ENTITY rectId \"expanded\">\n" +
+                      "  <!ENTITY words \"entity text\">\n" +
+                      "]>\n" +
+                      "<svg xmlns=\"&ns_svg;\" xmlns:xlink=\"&ns_xlink;\" width=\"100\" height=\"100\">" +
+                      "<rect id=\"&rectId;\" width=\"10\" height=\"10\" fill=\"#ff0000\"/>" +
+                      "<text x=\"1\" y=\"2\">Some &words; &amp; more</text>" +
+                      "</svg>";
+        assertSameDocument(svg);
+
+        SVG.setParserBackend(SVG.ParserBackend.XML_PULL);
+        SVG  document = SVG.getFromString(svg);
+        assertTrue(document.idToElementMap.containsKey("expanded"));
+    }
+
+
+    public void  testPredefinedAndCharacterEntities() throws Exception
+    {
+        assertSameDocument(SVG_START + "<text x=\"0\" y=\"10\">a &lt; b &gt; c &amp; &quot;d&quot; &apos;e&apos; &#169; &#x263A;</text></svg>");
+    }
+
+
+    public void  testStyleElement() throws Exception
+    {
+        assertSameDocument(SVG_START +
+                           "<style type=\"text/css\"><![CDATA[\n" +
+                           "  .a { fill: blue; stroke-width: 2px }\n" +
+                           "  rect > circle, #b { stroke: red }\n" +
+                           "]]></style>" +
+                           "<style type=\"text/css\">g .c { opacity: 0.5 }</style>" +
+                           "<style>  /* comment */ <![CDATA[ .d { fill: none } ]]> .e { fill: #123 } </style>" +
+                           "<rect class=\"a\" width=\"10\" height=\"10\"/><circle id=\"b\" r=\"5\"/>" +
+                           "<g><rect class=\"c d e\" width=\"1\" height=\"1\"/></g>" +
+                           "</svg>");
+    }
+
+
+    public void  testTextWhitespace() throws Exception
+    {
+        assertSameDocument(SVG_START +
+                           "<text x=\"10\" y=\"20\">  Hello   <tspan dx=\"1 2 3\" font-weight=\"bold\">big \n\t world</tspan>  end  </text>" +
+                           "<text x=\"10\" y=\"40\" xml:space=\"preserve\">  keep   <tspan>  all \n spaces </tspan>  </text>" +
+                           "<text x=\"10\" y=\"60\"><tspan>a</tspan><tspan> b </tspan>\n  <tspan>c</tspan></text>" +
+                           "<text x=\"10\" y=\"80\">split <![CDATA[ cdata <text> ]]> text</text>" +
+                           "<defs><text id=\"t\">referenced</text></defs>" +
+                           "<text x=\"10\" y=\"90\"><tref xlink:href=\"#t\"/> and <textPath xlink:href=\"#path\">on a path</textPath></text>" +
+                           "<path id=\"path\" d=\"M0 0 L100 0\"/>" +
+                           "</svg>");
+    }
+
+
+    public void  testUnknownElementsAreSkipped() throws Exception
+    {
+        assertSameDocument("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:sodipodi=\"http://sodipodi.sourceforge.net/DTD/sodipodi-0.dtd\"" +
+                           " xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:foo=\"http://example.com/foo\" width=\"100\" height=\"100\">" +
+                           "<metadata><rdf:RDF><rdf:Description><title>not the title</title></rdf:Description></rdf:RDF></metadata>" +
+                           "<sodipodi:namedview id=\"nv\" pagecolor=\"#ffffff\"><rect width=\"1\" height=\"1\"/></sodipodi:namedview>" +
+                           "<foo:bar><g><circle r=\"1\"/><foo:bar><text>nested</text></foo:bar></g></foo:bar>" +
+                           "<filter id=\"f\"><feGaussianBlur stdDeviation=\"2\"/></filter>" +
+                           "<unknown>text inside <b>an unknown</b> element</unknown>" +
+                           "<animate attributeName=\"x\" from=\"0\" to=\"10\"/>" +
+                           "<rect id=\"after\" width=\"10\" height=\"10\"/>" +
+                           "<g><unknown/><circle id=\"c\" r=\"2\"/></g>" +
+                           "</svg>");
+    }
+
+
+    //=========================================================================
+
+
+    private static void  assertSameDocument(String svg) throws Exception
+    {
+        SVG.setParserBackend(SVG.ParserBackend.SAX);
+        String  sax = dump(SVG.getFromString(svg));
+        SVG.setParserBackend(SVG.ParserBackend.XML_PULL);
+        String  pull = dump(SVG.getFromString(svg));
+        assertEquals(sax, pull);
+    }
+
+
+    /*
+     * Describe everything the parser builds: the element tree with all of its fields, the CSS
+     * rules and the metadata. Caches that are only filled in by rendering are left out.
+     */
+    private static String  dump(SVG document) throws Exception
+    {
+        StringBuilder  sb = new StringBuilder();
+        sb.append("css=");
+        dumpValue(sb, getField(document, "cssRules"), new IdentityHashMap<Object, Object>(), 0);
+        sb.append('\n').append(dumpTree(document));
+        return sb.toString();
+    }
+
+
+    /*
+     * As dump(), but without the CSS rules. Used by SVGBinaryRoundTripTest, as the binary form
+     * keeps the cascaded styles rather than the stylesheet.
+     */
+    static String  dumpTree(SVG document) throws Exception
+    {
+        StringBuilder  sb = new StringBuilder();
+        sb.append("title=").append(document.getDocumentTitle()).append('\n');
+        sb.append("desc=").append(document.getDocumentDescription()).append('\n');
+        sb.append("ids=").append(new TreeMap<String, Object>(document.idToElementMap).keySet()).append('\n');
+        sb.append("root=");
+        dumpValue(sb, document.getRootElement(), new IdentityHashMap<Object, Object>(), 0);
+        return sb.toString();
+    }
+
+
+    private static Object  getField(Object object, String name) throws Exception
+    {
+        Field  field = SVG.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+
+    private static void  dumpValue(StringBuilder sb, Object value, Map<Object, Object> path, int depth) throws Exception
+    {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                          || value instanceof Character || value instanceof Enum) {
+            sb.append(value);
+            return;
+        }
+        if (path.containsKey(value)) {
+            sb.append("<cycle>");
+            return;
+        }
+        path.put(value, value);
+
+        Class<?>  cls = value.getClass();
+        if (cls.isArray())
+        {
+            sb.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                dumpValue(sb, Array.get(value, i), path, depth + 1);
+            }
+            sb.append(']');
+        }
+        else if (value instanceof Collection)
+        {
+            sb.append('[');
+            boolean  first = true;
+            for (Object item: (Collection<?>) value) {
+                if (!first)
+                    sb.append(", ");
+                first = false;
+                dumpValue(sb, item, path, depth + 1);
+            }
+            sb.append(']');
+        }
+        else if (value instanceof Map)
+        {
+            TreeMap<String, Object>  sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet())
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            sb.append('{');
+            for (Map.Entry<String, Object> entry: sorted.entrySet()) {
+                sb.append(entry.getKey()).append('=');
+                dumpValue(sb, entry.getValue(), path, depth + 1);
+                sb.append(' ');
+            }
+            sb.append('}');
+        }
+        else if (value instanceof SVG.PathDefinition)
+        {
+            // The path itself, not its arrays, whose spare capacity depends on how it was built
+            ((SVG.PathDefinition) value).enumeratePath(new PathDumper(sb));
+        }
+        else if (value instanceof Matrix)
+        {
+            float[]  values = new float[9];
+            ((Matrix) value).getValues(values);
+            sb.append(Arrays.toString(values));
+        }
+        else if (!cls.getName().startsWith(SVG.class.getPackage().getName()))
+        {
+            // Platform objects, such as Paths built by the renderer, aren't part of the parse
+            sb.append(cls.getName());
+        }
+        else
+        {
+            sb.append(cls.getSimpleName()).append(" {\n");
+            for (Field field: getInstanceFields(cls))
+            {
+                indent(sb, depth + 1);
+                sb.append(field.getName()).append('=');
+                dumpValue(sb, field.get(value), path, depth + 1);
+                sb.append('\n');
+            }
+            indent(sb, depth);
+            sb.append('}');
+        }
+        path.remove(value);
+    }
+
+
+    private static List<Field>  getInstanceFields(Class<?> cls)
+    {
+        List<Field>  fields = new ArrayList<Field>();
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass())
+        {
+            List<Field>  declared = new ArrayList<Field>();
+            for (Field field: c.getDeclaredFields())
+            {
+                int  modifiers = field.getModifiers();
+                // Skip the back references, which would only repeat what we are already dumping
+                if (Modifier.isStatic(modifiers) || field.isSynthetic() || field.getName().equals("document") || field.getName().equals("parent"))
+                    continue;
+                field.setAccessible(true);
+                declared.add(field);
+            }
+            Collections.sort(declared, FIELD_ORDER);
+            fields.addAll(declared);
+        }
+        return fields;
+    }
+
+
+    private static final Comparator<Field>  FIELD_ORDER = new Comparator<Field>()
+    {
+        @Override
+        public int  compare(Field a, Field b)
+        {
+            return a.getName().compareTo(b.getName());
+        }
+    };
+
+
+    private static class PathDumper implements SVG.PathInterface
+    {
+        private StringBuilder  sb;
+
+        PathDumper(StringBuilder sb)
+        {
+            this.sb = sb;
+        }
+
+        @Override
+        public void  moveTo(float x, float y)
+        {
+            sb.append("M ").append(x).append(' ').append(y).append(' ');
+        }
+
+        @Override
+        public void  lineTo(float x, float y)
+        {
+            sb.append("L ").append(x).append(' ').append(y).append(' ');
+        }
+
+        @Override
+        public void  cubicTo(float x1, float y1, float x2, float y2, float x3, float y3)
+        {
+            sb.append("C ").append(x1).append(' ').append(y1).append(' ').append(x2).append(' ').append(y2)
+              .append(' ').append(x3).append(' ').append(y3).append(' ');
+        }
+
+        @Override
+        public void  quadTo(float x1, float y1, float x2, float y2)
+        {
+            sb.append("Q ").append(x1).append(' ').append(y1).append(' ').append(x2).append(' ').append(y2).append(' ');
+        }
+
+        @Override
+        public void  arcTo(float rx, float ry, float xAxisRotation, boolean largeArcFlag, boolean sweepFlag, float x, float y)
+        {
+            sb.append("A ").append(rx).append(' ').append(ry).append(' ').append(xAxisRotation).append(' ').append(largeArcFlag)
+              .append(' ').append(sweepFlag).append(' ').append(x).append(' ').append(y).append(' ');
+        }
+
+        @Override
+        public void  close()
+        {
+            sb.append("Z ");
+        }
+    }
+
+
+    private static void  indent(StringBuilder sb, int depth)
+    {
+        for (int i = 0; i < depth; i++)
+            sb.append("  ");
+    }
+}
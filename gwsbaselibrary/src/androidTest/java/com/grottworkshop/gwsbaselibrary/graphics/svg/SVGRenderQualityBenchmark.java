@@ -0,0 +1,127 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Compares the time taken to render a heavy document at draft and final quality. The results
+ * are written to the log under the tag "SVGRenderQuality"; run it on a device with
+ * {@code ./gradlew connectedAndroidTest} and read them with {@code adb logcat -s SVGRenderQuality}.
+ */
+public class SVGRenderQualityBenchmark extends AndroidTestCase
+{
+    private static final String  TAG = "SVGRenderQuality";
+
+    private static final int  SIZE = 1080;
+    private static final int  WARMUP_FRAMES = 5;
+    private static final int  MEASURED_FRAMES = 30;
+
+
+    public void  testDraftVersusFinalFrameTime() throws Exception
+    {
+        SVG     document = SVG.getFromString(buildHeavyDocument(200, 400));
+        Bitmap  bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas  canvas = new Canvas(bitmap);
+        RectF   viewPort = new RectF(0, 0, SIZE, SIZE);
+
+        try
+        {
+            long[]  finalTimes = measure(document, canvas, viewPort, SVG.RenderQuality.FINAL);
+            long[]  draftTimes = measure(document, canvas, viewPort, SVG.RenderQuality.DRAFT);
+
+            Log.i(TAG, "final: " + describe(finalTimes));
+            Log.i(TAG, "draft: " + describe(draftTimes));
+            Log.i(TAG, "draft/final median: " + ((float) median(draftTimes) / median(finalTimes)));
+        }
+        finally
+        {
+            bitmap.recycle();
+        }
+    }
+
+
+    //=========================================================================
+
+
+    private static long[]  measure(SVG document, Canvas canvas, RectF viewPort, SVG.RenderQuality quality)
+    {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            renderFrame(document, canvas, viewPort, quality);
+
+        long[]  times = new long[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++)
+        {
+            long  start = System.nanoTime();
+            renderFrame(document, canvas, viewPort, quality);
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+
+    private static void  renderFrame(SVG document, Canvas canvas, RectF viewPort, SVG.RenderQuality quality)
+    {
+        canvas.drawColor(0xffffffff);
+        document.renderToCanvas(canvas, viewPort, quality);
+    }
+
+
+    private static long  median(long[] times)
+    {
+        long[]  sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+
+    private static String  describe(long[] times)
+    {
+        long[]  sorted = times.clone();
+        Arrays.sort(sorted);
+        return String.format("median %.2f ms, 90th percentile %.2f ms, max %.2f ms",
+                             sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 9 / 10] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+
+    /*
+     * A document that exercises everything draft quality changes: long paths, antialiased
+     * strokes, gradients, markers and a mask.
+     */
+    private static String  buildHeavyDocument(int pathCount, int pointsPerPath)
+    {
+        Random         random = new Random(42);
+        StringBuilder  sb = new StringBuilder();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"1000\" height=\"1000\" viewBox=\"0 0 1000 1000\">");
+        sb.append("<defs>");
+        sb.append("<linearGradient id=\"lg\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"1\"><stop offset=\"0\" stop-color=\"#f00\"/><stop offset=\"0.5\" stop-color=\"#0f0\"/><stop offset=\"1\" stop-color=\"#00f\"/></linearGradient>");
+        sb.append("<radialGradient id=\"rg\"><stop offset=\"0\" stop-color=\"#ff0\"/><stop offset=\"1\" stop-color=\"#0ff\" stop-opacity=\"0.3\"/></radialGradient>");
+        sb.append("<marker id=\"m\" markerWidth=\"6\" markerHeight=\"6\" refX=\"3\" refY=\"3\"><circle cx=\"3\" cy=\"3\" r=\"2\" fill=\"#333\"/></marker>");
+        sb.append("<mask id=\"mask\"><rect width=\"1000\" height=\"1000\" fill=\"url(#rg)\"/></mask>");
+        sb.append("</defs>");
+        sb.append("<g mask=\"url(#mask)\">");
+        for (int p = 0; p < pathCount; p++)
+        {
+            sb.append("<path fill=\"").append((p % 2 == 0) ? "url(#lg)" : "url(#rg)")
+              .append("\" stroke=\"#000\" stroke-width=\"1.5\" marker-mid=\"url(#m)\" d=\"M");
+            float  x = random.nextFloat() * 1000;
+            float  y = random.nextFloat() * 1000;
+            sb.append(x).append(',').append(y);
+            for (int i = 1; i < pointsPerPath; i++)
+            {
+                x = Math.max(0, Math.min(1000, x + random.nextFloat() * 20 - 10));
+                y = Math.max(0, Math.min(1000, y + random.nextFloat() * 20 - 10));
+                sb.append(" L").append(x).append(',').append(y);
+            }
+            sb.append("z\"/>");
+        }
+        sb.append("</g></svg>");
+        return sb.toString();
+    }
+}
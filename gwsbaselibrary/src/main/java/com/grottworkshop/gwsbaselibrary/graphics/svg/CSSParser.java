@@ -17,8 +17,12 @@
 package com.grottworkshop.gwsbaselibrary.graphics.svg;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.xml.sax.SAXException;
 
@@ -271,6 +275,105 @@ public class CSSParser
     }
 
 
+    /*
+     * An index over a Ruleset that buckets each rule by the most selective part (id, then
+     * class, then tag) of its rightmost simple selector. Looking up an element only returns
+     * the rules that could possibly match it. The candidates are returned in the same order
+     * as the ruleset, so the specificity ordering is preserved.
+     */
+    protected static class  RuleIndex
+    {
+        private List<Rule>           rules;
+        private Map<String, BitSet>  byId = new HashMap<String, BitSet>();
+        private Map<String, BitSet>  byClass = new HashMap<String, BitSet>();
+        private Map<String, BitSet>  byTag = new HashMap<String, BitSet>();
+        private BitSet               universal = new BitSet();
+
+        public RuleIndex(Ruleset ruleset)
+        {
+            this.rules = ruleset.isEmpty() ? new ArrayList<Rule>(0) : ruleset.getRules();
+            for (int i = 0; i < rules.size(); i++)
+            {
+                Selector  selector = rules.get(i).selector;
+                if (selector.isEmpty()) {
+                    universal.set(i);
+                    continue;
+                }
+                SimpleSelector  subject = selector.get(selector.size() - 1);
+                String  idValue = null;
+                String  classValue = null;
+                if (subject.attribs != null)
+                {
+                    for (Attrib attr: subject.attribs)
+                    {
+                        if (attr.name == ID) {
+                            idValue = attr.value;
+                            break;
+                        }
+                        if (attr.name == CLASS && classValue == null)
+                            classValue = attr.value;
+                    }
+                }
+                if (idValue != null)
+                    bucket(byId, idValue).set(i);
+                else if (classValue != null)
+                    bucket(byClass, classValue).set(i);
+                else if (subject.tag != null)
+                    bucket(byTag, subject.tag.equalsIgnoreCase("G") ? "g" : subject.tag).set(i);
+                else
+                    universal.set(i);
+            }
+        }
+
+        private static BitSet  bucket(Map<String, BitSet> map, String key)
+        {
+            BitSet  bits = map.get(key);
+            if (bits == null) {
+                bits = new BitSet();
+                map.put(key, bits);
+            }
+            return bits;
+        }
+
+        public boolean  isEmpty()
+        {
+            return rules.isEmpty();
+        }
+
+        public Rule  get(int i)
+        {
+            return rules.get(i);
+        }
+
+        // Fills 'result' with the indexes of the rules that may match the given element.
+        public void  getCandidates(SVG.SvgElementBase obj, BitSet result)
+        {
+            result.clear();
+            result.or(universal);
+            BitSet  bits = byTag.get(obj.getClass().getSimpleName().toLowerCase(Locale.US));
+            if (bits != null)
+                result.or(bits);
+            if (obj instanceof SVG.Group) {
+                bits = byTag.get("g");
+                if (bits != null)
+                    result.or(bits);
+            }
+            if (obj.id != null) {
+                bits = byId.get(obj.id);
+                if (bits != null)
+                    result.or(bits);
+            }
+            if (obj.classNames != null) {
+                for (String className: obj.classNames) {
+                    bits = byClass.get(className);
+                    if (bits != null)
+                        result.or(bits);
+                }
+            }
+        }
+    }
+
+
     //===========================================================================================
 
 
@@ -771,10 +874,21 @@ public class CSSParser
         List<SVG.SvgContainer> ancestors = new ArrayList<SVG.SvgContainer>();
         SVG.SvgContainer parent = obj.parent;
         while (parent != null) {
-            ancestors.add(0, parent);
+            ancestors.add(parent);
             parent = ((SVG.SvgObject) parent).parent;
         }
+        Collections.reverse(ancestors);
+
+        return ruleMatch(selector, ancestors, obj);
+    }
+
 
+    /*
+     * Used by the cascade pass, which already knows the ancestors of the element being
+     * matched (outermost first), so that the list doesn't have to be rebuilt for every rule.
+     */
+    protected static boolean  ruleMatch(Selector selector, List<SVG.SvgContainer> ancestors, SVG.SvgElementBase obj)
+    {
         int  ancestorsPos = ancestors.size() - 1;
 
         // Check the most common case first as a shortcut.
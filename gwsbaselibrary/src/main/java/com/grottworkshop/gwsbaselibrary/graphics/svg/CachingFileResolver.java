@@ -0,0 +1,180 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+
+/**
+ * An {@link SVGExternalFileResolver} that caches the images and fonts returned by another resolver.
+ * <p>
+ * Images are kept in an LRU cache limited by an approximate byte budget. An image is cached
+ * at the size the wrapped resolver returned for the first request, and is only resolved again
+ * if a later request needs it bigger. Typefaces are small, so every one is kept. Lookups that
+ * failed are remembered too, so a missing file is only searched for once.
+ * <p>
+ * One instance can be shared by any number of documents:
+ * <pre>
+ * CachingFileResolver  resolver = new CachingFileResolver(new SimpleAssetResolver(getAssets()));
+ * svg.registerExternalFileResolver(resolver);
+ * </pre>
+ * The cached Bitmaps are shared, so the wrapped resolver should not recycle them.
+ */
+public class CachingFileResolver extends SVGExternalFileResolver
+{
+    public static final int  DEFAULT_IMAGE_BUDGET = 4 * 1024 * 1024;
+
+    private SVGExternalFileResolver  resolver;
+
+    private LruCache<String, CachedImage>  images;
+    private Set<String>                    missingImages = new HashSet<String>();
+    private Map<String, Typeface>          fonts = new HashMap<String, Typeface>();   // null value means not found
+
+
+    private static class CachedImage
+    {
+        public Bitmap   bitmap;
+        public boolean  fullSize;   // true if this was a request for the full size image
+
+        public CachedImage(Bitmap bitmap, boolean fullSize)
+        {
+            this.bitmap = bitmap;
+            this.fullSize = fullSize;
+        }
+    }
+
+
+    /**
+     * Create a caching resolver with the default image budget of 4MB.
+     *
+     * @param resolver the resolver that does the actual work of finding fonts and images
+     */
+    public CachingFileResolver(SVGExternalFileResolver resolver)
+    {
+        this(resolver, DEFAULT_IMAGE_BUDGET);
+    }
+
+
+    /**
+     * Create a caching resolver.
+     *
+     * @param resolver the resolver that does the actual work of finding fonts and images
+     * @param imageBudget the approximate maximum number of bytes of image data to keep
+     */
+    public CachingFileResolver(SVGExternalFileResolver resolver, int imageBudget)
+    {
+        if (resolver == null)
+            throw new IllegalArgumentException("Resolver cannot be null");
+        this.resolver = resolver;
+        this.images = new LruCache<String, CachedImage>(Math.max(imageBudget, 1))
+        {
+            @Override
+            protected int sizeOf(String key, CachedImage value)
+            {
+                return value.bitmap.getRowBytes() * value.bitmap.getHeight();
+            }
+        };
+    }
+
+
+    @Override
+    public Typeface  resolveFont(String fontFamily, int fontWeight, String fontStyle)
+    {
+        String  key = fontFamily + '|' + fontWeight + '|' + fontStyle;
+        synchronized (fonts)
+        {
+            if (fonts.containsKey(key))
+                return fonts.get(key);
+        }
+
+        Typeface  typeface = resolver.resolveFont(fontFamily, fontWeight, fontStyle);
+        synchronized (fonts)
+        {
+            fonts.put(key, typeface);
+        }
+        return typeface;
+    }
+
+
+    @Override
+    public Bitmap  resolveImage(String filename)
+    {
+        return resolveImage(filename, 0, 0);
+    }
+
+
+    @Override
+    public Bitmap  resolveImage(String filename, int targetWidth, int targetHeight)
+    {
+        synchronized (missingImages)
+        {
+            if (missingImages.contains(filename))
+                return null;
+        }
+
+        boolean      fullSize = (targetWidth <= 0 || targetHeight <= 0);
+        CachedImage  cached = images.get(filename);
+        if (cached != null && !cached.bitmap.isRecycled())
+        {
+            if (cached.fullSize)
+                return cached.bitmap;
+            if (!fullSize && cached.bitmap.getWidth() >= targetWidth && cached.bitmap.getHeight() >= targetHeight)
+                return cached.bitmap;
+        }
+
+        Bitmap  bitmap = resolver.resolveImage(filename, targetWidth, targetHeight);
+        if (bitmap == null)
+        {
+            // Better to draw the smaller version than nothing
+            if (cached != null && !cached.bitmap.isRecycled())
+                return cached.bitmap;
+            synchronized (missingImages)
+            {
+                missingImages.add(filename);
+            }
+            return null;
+        }
+        images.put(filename, new CachedImage(bitmap, fullSize));
+        return bitmap;
+    }
+
+
+    @Override
+    public boolean  isFormatSupported(String mimeType)
+    {
+        return resolver.isFormatSupported(mimeType);
+    }
+
+
+    /**
+     * Forget all cached images and fonts, including failed lookups.
+     */
+    public void  evictAll()
+    {
+        images.evictAll();
+        synchronized (missingImages)
+        {
+            missingImages.clear();
+        }
+        synchronized (fonts)
+        {
+            fonts.clear();
+        }
+    }
+
+
+    /**
+     * Returns the approximate number of bytes of image data currently cached.
+     *
+     * @return the size of the image cache
+     */
+    public int  getImageCacheSize()
+    {
+        return images.size();
+    }
+}
@@ -0,0 +1,490 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+
+/**
+ * An InputStream that reads straight from a ByteBuffer, usually a memory mapped file. The
+ * parser reads the mapped pages directly, without a BufferedInputStream copying them first,
+ * and mark() and reset() cost nothing.
+ * <p>
+ * The {@code open()} methods map a file and also handle gzipped (.svgz) files. The gzip
+ * header is read in place, and the compressed data is inflated as the parser reads it.
+ * Small files are inflated on the reading thread, straight into the parser's buffer. Large
+ * files are inflated on a second thread into a few recycled chunks, so inflating one chunk
+ * overlaps parsing the one before. Page faults on the mapped file are spread over both.
+ *
+ * @hide
+ */
+public class MappedInputStream extends InputStream
+{
+    // Compressed files bigger than this are inflated on a separate thread
+    public static final int  PIPELINE_THRESHOLD = 64 * 1024;
+
+    private static final int  INPUT_CHUNK_SIZE = 16 * 1024;
+    private static final int  OUTPUT_CHUNK_SIZE = 64 * 1024;
+    private static final int  OUTPUT_CHUNK_COUNT = 3;
+
+    // gzip header flags
+    private static final int  FHCRC = 2;
+    private static final int  FEXTRA = 4;
+    private static final int  FNAME = 8;
+    private static final int  FCOMMENT = 16;
+
+    private ByteBuffer  buffer;
+    private int         mark;
+
+
+    public MappedInputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer.duplicate();
+        this.mark = this.buffer.position();
+    }
+
+
+    /**
+     * Map a file and return a stream of its (inflated, if it is gzipped) contents.
+     */
+    public static InputStream  open(File file) throws IOException
+    {
+        FileInputStream  fis = new FileInputStream(file);
+        try {
+            return open(map(fis.getChannel()));
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+        }
+    }
+
+
+    /**
+     * Map the file behind a file descriptor, from its start, and return a stream of its
+     * (inflated, if it is gzipped) contents. The file descriptor is not closed.
+     */
+    public static InputStream  open(FileDescriptor fd) throws IOException
+    {
+        // Closing this stream would close the descriptor, which belongs to the caller
+        return open(map(new FileInputStream(fd).getChannel()));
+    }
+
+
+    /**
+     * Return a stream of the contents of a buffer, inflating it if it is gzipped. The
+     * position of the buffer is not changed.
+     */
+    public static InputStream  open(ByteBuffer buffer) throws IOException
+    {
+        if (!isGzipped(buffer))
+            return new MappedInputStream(buffer);
+
+        Decompressor  decompressor = new Decompressor(skipGzipHeader(buffer));
+        if (buffer.remaining() <= PIPELINE_THRESHOLD)
+            return new InflatingInputStream(decompressor);
+        PipelinedInflatingInputStream  pipeline = new PipelinedInflatingInputStream(decompressor);
+        pipeline.start();
+        return pipeline;
+    }
+
+
+    // The mapping stays valid after the channel is closed
+    private static ByteBuffer  map(FileChannel channel) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+
+    private static boolean  isGzipped(ByteBuffer buffer)
+    {
+        int  pos = buffer.position();
+        return buffer.remaining() >= 2 && ((buffer.get(pos) & 0xff) | ((buffer.get(pos + 1) & 0xff) << 8)) == GZIPInputStream.GZIP_MAGIC;
+    }
+
+
+    /*
+     * Returns a view of the buffer positioned at the start of the compressed data.
+     */
+    private static ByteBuffer  skipGzipHeader(ByteBuffer buffer) throws IOException
+    {
+        ByteBuffer  data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            data.getShort();   // magic
+            if (data.get() != 8)
+                throw new IOException("Unsupported gzip compression method");
+            int  flags = data.get() & 0xff;
+            data.position(data.position() + 6);   // mtime, xfl, os
+            if ((flags & FEXTRA) != 0)
+                data.position(data.position() + (data.getShort() & 0xffff));
+            if ((flags & FNAME) != 0)
+                while (data.get() != 0) { /* skip */ }
+            if ((flags & FCOMMENT) != 0)
+                while (data.get() != 0) { /* skip */ }
+            if ((flags & FHCRC) != 0)
+                data.getShort();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new EOFException("Truncated gzip header");
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new EOFException("Truncated gzip header");
+        }
+        return data;
+    }
+
+
+    //===============================================================================
+
+
+    @Override
+    public int  read()
+    {
+        return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+
+    @Override
+    public int  read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+            return 0;
+        if (!buffer.hasRemaining())
+            return -1;
+        int  n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+
+    @Override
+    public long  skip(long n)
+    {
+        int  skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+
+    @Override
+    public int  available()
+    {
+        return buffer.remaining();
+    }
+
+
+    @Override
+    public boolean  markSupported()
+    {
+        return true;
+    }
+
+
+    @Override
+    public void  mark(int readLimit)
+    {
+        mark = buffer.position();
+    }
+
+
+    @Override
+    public void  reset()
+    {
+        buffer.position(mark);
+    }
+
+
+    //===============================================================================
+
+
+    /*
+     * Inflates the raw deflate data of a gzip member straight out of the mapped buffer, and
+     * checks the CRC and length in the trailer that follows it. Only the compressed input is
+     * copied, one small chunk at a time, because Inflater can't read from a ByteBuffer.
+     */
+    private static class Decompressor
+    {
+        private ByteBuffer  source;
+        private Inflater    inflater = new Inflater(true);
+        private byte[]      input = new byte[INPUT_CHUNK_SIZE];
+        private CRC32       crc = new CRC32();
+        private boolean     finished = false;
+
+        public Decompressor(ByteBuffer source)
+        {
+            this.source = source;
+        }
+
+        public boolean  isFinished()
+        {
+            return finished;
+        }
+
+        /*
+         * Inflate up to 'len' bytes. Returns the number inflated, or -1 at the end of the data.
+         */
+        public int  inflate(byte[] b, int off, int len) throws IOException
+        {
+            if (finished)
+                return -1;
+            if (len == 0)
+                return 0;
+            try
+            {
+                while (true)
+                {
+                    int  n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        crc.update(b, off, n);
+                        return n;
+                    }
+                    if (inflater.finished()) {
+                        checkTrailer();
+                        finished = true;
+                        return -1;
+                    }
+                    if (inflater.needsDictionary())
+                        throw new IOException("Invalid gzip data");
+                    if (inflater.needsInput())
+                    {
+                        if (!source.hasRemaining())
+                            throw new EOFException("Unexpected end of gzip data");
+                        int  count = Math.min(input.length, source.remaining());
+                        source.get(input, 0, count);
+                        inflater.setInput(input, 0, count);
+                    }
+                }
+            }
+            catch (DataFormatException e)
+            {
+                throw new IOException("Invalid gzip data: " + e.getMessage());
+            }
+        }
+
+        private void  checkTrailer() throws IOException
+        {
+            int  trailer = source.position() - inflater.getRemaining();
+            if (source.limit() - trailer < 8)
+                throw new EOFException("Missing gzip trailer");
+            long  expectedCrc = source.getInt(trailer) & 0xffffffffL;
+            long  expectedSize = source.getInt(trailer + 4) & 0xffffffffL;
+            if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL))
+                throw new IOException("Corrupt gzip trailer");
+        }
+
+        public void  end()
+        {
+            inflater.end();
+        }
+    }
+
+
+    /*
+     * Inflates on the reading thread, straight into the reader's buffer.
+     */
+    private static class InflatingInputStream extends InputStream
+    {
+        private Decompressor  decompressor;
+        private byte[]        single = new byte[1];
+
+        public InflatingInputStream(Decompressor decompressor)
+        {
+            this.decompressor = decompressor;
+        }
+
+        @Override
+        public int  read() throws IOException
+        {
+            return (read(single, 0, 1) < 0) ? -1 : (single[0] & 0xff);
+        }
+
+        @Override
+        public int  read(byte[] b, int off, int len) throws IOException
+        {
+            return decompressor.inflate(b, off, len);
+        }
+
+        @Override
+        public void  close()
+        {
+            decompressor.end();
+        }
+    }
+
+
+    private static class Chunk
+    {
+        public byte[]       data;
+        public int          length = 0;
+        public int          pos = 0;
+        public boolean      end = false;
+        public IOException  error = null;
+
+        public Chunk(byte[] data)
+        {
+            this.data = data;
+        }
+    }
+
+
+    /*
+     * Inflates on a thread of its own, ahead of the reader. Filled chunks are passed to the
+     * reader through one queue and returned through another, so only OUTPUT_CHUNK_COUNT chunk
+     * buffers are ever allocated. The end of the data, or an error, is marked by a final chunk.
+     */
+    private static class PipelinedInflatingInputStream extends InputStream implements Runnable
+    {
+        private Decompressor          decompressor;
+        private BlockingQueue<Chunk>  free = new ArrayBlockingQueue<Chunk>(OUTPUT_CHUNK_COUNT);
+        private BlockingQueue<Chunk>  filled = new ArrayBlockingQueue<Chunk>(OUTPUT_CHUNK_COUNT + 1);
+        private Chunk                 current = null;
+        private Thread                thread;
+        private volatile boolean      closed = false;
+
+        public PipelinedInflatingInputStream(Decompressor decompressor)
+        {
+            this.decompressor = decompressor;
+            for (int i=0; i<OUTPUT_CHUNK_COUNT; i++)
+                free.add(new Chunk(new byte[OUTPUT_CHUNK_SIZE]));
+        }
+
+        public void  start()
+        {
+            thread = new Thread(this, "SVG inflater");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void  run()
+        {
+            try
+            {
+                while (!closed)
+                {
+                    Chunk  chunk = free.take();
+                    chunk.length = 0;
+                    chunk.pos = 0;
+                    int  n;
+                    while (chunk.length < chunk.data.length &&
+                           (n = decompressor.inflate(chunk.data, chunk.length, chunk.data.length - chunk.length)) >= 0)
+                        chunk.length += n;
+                    if (chunk.length > 0)
+                        filled.put(chunk);
+                    if (decompressor.isFinished()) {
+                        filled.put(endChunk(null));
+                        return;
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                filled.offer(endChunk(e));
+            }
+            catch (InterruptedException e)
+            {
+                // The stream has been closed
+            }
+            finally
+            {
+                decompressor.end();
+            }
+        }
+
+        private static Chunk  endChunk(IOException error)
+        {
+            Chunk  chunk = new Chunk(null);
+            chunk.end = true;
+            chunk.error = error;
+            return chunk;
+        }
+
+        /*
+         * Move on to the next filled chunk. Returns false at the end of the data.
+         */
+        private boolean  nextChunk() throws IOException
+        {
+            if (current != null)
+            {
+                if (current.end) {
+                    if (current.error != null)
+                        throw new IOException(current.error.getMessage(), current.error);
+                    return false;
+                }
+                free.add(current);
+            }
+            try
+            {
+                current = filled.take();
+            }
+            catch (InterruptedException e)
+            {
+                current = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating");
+            }
+            if (current.error != null)
+                throw new IOException(current.error.getMessage(), current.error);
+            return !current.end;
+        }
+
+        @Override
+        public int  read() throws IOException
+        {
+            while (current == null || current.pos == current.length) {
+                if (!nextChunk())
+                    return -1;
+            }
+            return current.data[current.pos++] & 0xff;
+        }
+
+        @Override
+        public int  read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            while (current == null || current.pos == current.length) {
+                if (!nextChunk())
+                    return -1;
+            }
+            int  n = Math.min(len, current.length - current.pos);
+            System.arraycopy(current.data, current.pos, b, off, n);
+            current.pos += n;
+            return n;
+        }
+
+        @Override
+        public int  available()
+        {
+            return (current != null && !current.end) ? current.length - current.pos : 0;
+        }
+
+        @Override
+        public void  close()
+        {
+            if (closed)
+                return;
+            closed = true;
+            thread.interrupt();
+        }
+    }
+}
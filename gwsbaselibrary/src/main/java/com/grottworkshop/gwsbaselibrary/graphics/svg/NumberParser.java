@@ -58,6 +58,7 @@ public class NumberParser
     /*
      * Scan the string for an SVG number.
      * Assumes maxPos will not be greater than str.length().
+     * The string is read in place, without copying it.
      */
     public float  parseNumber(String input, int startpos, int len)
     {
@@ -225,6 +226,191 @@ public class NumberParser
             }
         }
 
+        return toFloat(isNegative, significand, numDigits, exponent);
+    }
+
+
+    /*
+     * Scan the character array for an SVG number.
+     * Assumes len will not be greater than input.length.
+     * The same scan as parseNumber(String, int, int), kept separate so that neither loop has
+     * to test which kind of input it is reading on every character.
+     */
+    public float  parseNumber(char[] input, int startpos, int len)
+    {
+        boolean  isNegative = false;
+        long     significand = 0;
+        int      numDigits = 0;
+        int      numLeadingZeroes = 0;
+        int      numTrailingZeroes = 0;
+        boolean  decimalSeen = false;
+        int      sigStart = 0;
+        int      decimalPos = 0;
+        int      exponent = 0;
+
+        pos = startpos;
+
+        if (pos >= len)
+            return Float.NaN;  // String is empty - no number found
+
+        char  ch = input[pos];
+        switch (ch) {
+            case '-': isNegative = true;
+                // fall through
+            case '+': pos++;
+        }
+
+        sigStart = pos;
+
+        while (pos < len)
+        {
+            ch = input[pos];
+            if (ch == '0')
+            {
+                if (numDigits == 0) {
+                    numLeadingZeroes++;
+                } else {
+                    // We potentially skip trailing zeroes. Keep count for now.
+                    numTrailingZeroes++;
+                }
+            }
+            else if (ch >= '1' && ch <= '9')
+            {
+                // Multiply any skipped zeroes into buffer
+                numDigits += numTrailingZeroes;
+                while (numTrailingZeroes > 0) {
+                    if (significand > TOO_BIG) {
+                        //Log.e("Number is too large");
+                        return Float.NaN;
+                    }
+                    significand *= 10;
+                    numTrailingZeroes--;
+                }
+
+                if (significand > TOO_BIG) {
+                    // We will overflow if we continue...
+                    //Log.e("Number is too large");
+                    return Float.NaN;
+                }
+                significand = significand * 10 + ((int)ch - (int)'0');
+                numDigits++;
+
+                if (significand < 0)
+                    return Float.NaN;  // overflowed from +ve to -ve
+            }
+            else if (ch == '.')
+            {
+                if (decimalSeen) {
+                    // Stop parsing here.  We may be looking at a new number.
+                    break;
+                }
+                decimalPos = pos - sigStart;
+                decimalSeen = true;
+            }
+            else
+                break;
+            pos++;
+        }
+
+        if (decimalSeen && pos == (decimalPos + 1)) {
+            // No digits following decimal point (eg. "1.")
+            //Log.e("Missing fraction part of number");
+            return Float.NaN;
+        }
+
+        // Have we seen anything number-ish at all so far?
+        if (numDigits == 0) {
+            if (numLeadingZeroes == 0) {
+                //Log.e("Number not found");
+                return Float.NaN;
+            }
+            // Leading zeroes have been seen though, so we
+            // treat that as a '0'.
+            numDigits = 1;
+        }
+
+        if (decimalSeen) {
+            exponent = decimalPos - numLeadingZeroes - numDigits;
+        } else {
+            exponent = numTrailingZeroes;
+        }
+
+        // Now look for exponent
+        if (pos < len)
+        {
+            ch = input[pos];
+            if (ch == 'E' || ch == 'e')
+            {
+                boolean  expIsNegative = false;
+                int      expVal = 0;
+                boolean  abortExponent = false;
+
+                pos++;
+                if (pos == len) {
+                    // Incomplete exponent.
+                    //Log.e("Incomplete exponent of number");
+                    return Float.NaN;
+                }
+
+                switch (input[pos]) {
+                    case '-': expIsNegative = true;
+                        // fall through
+                    case '+': pos++;
+                        break;
+                    case '0': case '1': case '2': case '3': case '4':
+                    case '5': case '6': case '7': case '8': case '9':
+                        break; // acceptable next char
+                    default:
+                        // any other character is a failure, ie no exponent.
+                        // Could be something legal like "em" though.
+                        abortExponent = true;
+                        pos--;  // reset pos to position of 'E'/'e'
+                }
+
+                if (!abortExponent)
+                {
+                    int  expStart = pos;
+
+                    while (pos < len)
+                    {
+                        ch = input[pos];
+                        if (ch >= '0' && ch <= '9')
+                        {
+                            if (expVal > TOO_BIG) {
+                                // We will overflow if we continue...
+                                //Log.e("Exponent of number is too large");
+                                return Float.NaN;
+                            }
+                            expVal = expVal * 10 + ((int)ch - (int)'0');
+                            pos++;
+                        }
+                        else
+                            break;
+                    }
+
+                    // Check that at least some exponent digits were read
+                    if (pos == expStart) {
+                        //Log.e(""Incomplete exponent of number"");
+                        return Float.NaN;
+                    }
+
+                    if (expIsNegative)
+                        exponent -= expVal;
+                    else
+                        exponent += expVal;
+                }
+            }
+        }
+
+        return toFloat(isNegative, significand, numDigits, exponent);
+    }
+
+
+    /*
+     * Build the float from the parts found by the scan.
+     */
+    private static float  toFloat(boolean isNegative, long significand, int numDigits, int exponent)
+    {
         // Quick check to eliminate huge exponents.
         // Biggest float is (2 - 2^23) . 2^127 ~== 3.4e38
         // Biggest negative float is 2^-149 ~== 1.4e-45
@@ -0,0 +1,124 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.Map;
+
+import android.graphics.Path;
+import android.util.LruCache;
+
+
+/**
+ * Per-document cache of the android.graphics.Path objects built by the renderer for
+ * path and shape elements. Converting a PathDefinition (especially one with arcs) is
+ * relatively expensive, and documents are often rendered many times at different sizes.
+ * <p>
+ * Entries are keyed by element and remember the DPI they were built at, so that a
+ * change of render DPI causes a rebuild. Elements with lengths that depend on the
+ * viewport or font size are never cached. The size of the cache is limited by an
+ * approximate byte budget.
+ * <p>
+ * Cached Paths are shared between renders and must never be modified. They are built with
+ * the default fill type, and the renderer draws a copy when it needs a different one.
+ *
+ * @hide
+ */
+public class PathCache
+{
+    public static final int  DEFAULT_BUDGET = 256 * 1024;
+
+    // Rough per-Path overhead (Java object plus native SkPath) used in size estimates
+    private static final int  PATH_OVERHEAD = 64;
+
+    private volatile LruCache<SVG.SvgElement, Entry>  entries;
+
+
+    private static class Entry
+    {
+        public Path   path;
+        public float  dpi;
+        public int    size;
+
+        public Entry(Path path, float dpi, int size)
+        {
+            this.path = path;
+            this.dpi = dpi;
+            this.size = size;
+        }
+    }
+
+
+    public PathCache()
+    {
+        this(DEFAULT_BUDGET);
+    }
+
+
+    public PathCache(int budget)
+    {
+        this.entries = createEntries(budget);
+    }
+
+
+    private static LruCache<SVG.SvgElement, Entry>  createEntries(int budget)
+    {
+        return new LruCache<SVG.SvgElement, Entry>(Math.max(budget, 1))
+        {
+            @Override
+            protected int sizeOf(SVG.SvgElement key, Entry value)
+            {
+                return value.size;
+            }
+        };
+    }
+
+
+    /*
+     * Returns the cached Path for an element, or null if there isn't one for this DPI.
+     */
+    public Path  get(SVG.SvgElement obj, float dpi)
+    {
+        Entry  entry = entries.get(obj);
+        if (entry == null || entry.dpi != dpi)
+            return null;
+        return entry.path;
+    }
+
+
+    /*
+     * Store the Path built for an element. 'numPoints' is the number of coordinate
+     * pairs in the path and is used to estimate its memory footprint.
+     */
+    public void  put(SVG.SvgElement obj, Path path, float dpi, int numPoints)
+    {
+        entries.put(obj, new Entry(path, dpi, PATH_OVERHEAD + numPoints * 9));
+    }
+
+
+    /*
+     * Change the memory budget. The most recently used entries are kept if they fit.
+     */
+    public synchronized void  setBudget(int budget)
+    {
+        LruCache<SVG.SvgElement, Entry>  resized = createEntries(budget);
+        for (Map.Entry<SVG.SvgElement, Entry> e: entries.snapshot().entrySet())
+            resized.put(e.getKey(), e.getValue());
+        entries = resized;
+    }
+
+
+    public int  getBudget()
+    {
+        return entries.maxSize();
+    }
+
+
+    public int  getSize()
+    {
+        return entries.size();
+    }
+
+
+    public void  invalidate()
+    {
+        entries.evictAll();
+    }
+}
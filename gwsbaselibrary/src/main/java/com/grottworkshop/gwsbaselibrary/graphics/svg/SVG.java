@@ -1,9 +1,16 @@
 package com.grottworkshop.gwsbaselibrary.graphics.svg;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +23,7 @@ import org.xml.sax.SAXException;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Picture;
@@ -89,6 +97,61 @@ public class SVG
     // Map from id attribute to element
     Map<String, SvgElementBase> idToElementMap = new HashMap<String, SvgElementBase>();
 
+    // Set once the cascaded style of every element has been calculated
+    private boolean  cascadeComputed = false;
+
+    // Paths built by the renderer for path and shape elements
+    private PathCache  pathCache = new PathCache();
+
+    // Gradient and pattern shaders built by the renderer
+    private ShaderCache  shaderCache = new ShaderCache();
+
+    // Processed and measured text built by the renderer
+    private TextLayoutCache  textLayoutCache = new TextLayoutCache();
+
+    // Incremented whenever the document is changed through the public API
+    private volatile int  modificationCount = 0;
+
+    // Bounds of everything drawn by the document. Built when first needed.
+    private SpatialIndex  spatialIndex = null;
+
+    // Bitmaps decoded from data: URLs in <image> elements. A null value means decoding failed.
+    private Map<String, Bitmap>  dataImages = null;
+
+    // Pools of Styles and Paints for the renderer, kept between renders. One per concurrent render.
+    private List<SVGAndroidRenderer.StatePool>  statePools = new ArrayList<SVGAndroidRenderer.StatePool>();
+
+    // The XML parser used by the getFromX() methods
+    private static volatile ParserBackend  parserBackend = ParserBackend.SAX;
+
+
+    /**
+     * The XML parsers that can be used to read SVG files.
+     */
+    public enum ParserBackend
+    {
+        /** The platform SAX parser. The default. */
+        SAX,
+        /** The platform XmlPullParser. Faster to start up and allocates less. */
+        XML_PULL
+    }
+
+
+    /**
+     * How much rendering accuracy to trade for speed.
+     */
+    public enum RenderQuality
+    {
+        /** Everything the renderer supports is drawn as accurately as it can be. The default. */
+        FINAL,
+        /**
+         * For use while the image is being zoomed or scrolled. Antialiasing is turned off, masks
+         * and markers are skipped, gradients are drawn in their average colour, and paths with
+         * many points are simplified.
+         */
+        DRAFT
+    }
+
 
     protected enum Unit
     {
@@ -117,6 +180,33 @@ public class SVG
     }
 
 
+    /**
+     * Select the XML parser used to read SVG files. Both produce identical documents. The pull
+     * parser is cheaper, particularly for small files such as icons, but SAX remains the default
+     * until the pull parser has seen wider use. Documents that declare their own entities are
+     * always handed over to the SAX parser.
+     *
+     * @param backend the parser to use for all subsequent parses.
+     */
+    public static void  setParserBackend(ParserBackend backend)
+    {
+        if (backend == null)
+            throw new IllegalArgumentException("Parser backend cannot be null");
+        parserBackend = backend;
+    }
+
+
+    /**
+     * Get the XML parser currently used to read SVG files.
+     *
+     * @return the parser backend
+     */
+    public static ParserBackend  getParserBackend()
+    {
+        return parserBackend;
+    }
+
+
     /**
      * Read and parse an SVG from the given {@code InputStream}.
      *
@@ -145,6 +235,99 @@ public class SVG
     }
 
 
+    /**
+     * Read and parse an SVG or SVGZ file. The file is memory mapped, and the parser reads the
+     * mapped pages directly rather than through stream buffers. Gzipped files are inflated as
+     * they are parsed. Large ones are inflated on a second thread, so that inflating and
+     * parsing overlap. See {@link MappedInputStream}.
+     *
+     * @param file the SVG or SVGZ file.
+     * @return an SVG instance on which you can call one of the render methods.
+     * @throws SVGParseException if there is an error parsing the document.
+     * @throws IOException if there is some IO error while reading the file.
+     */
+    public static SVG  getFromFile(File file) throws SVGParseException, IOException
+    {
+        SVGParser  parser = new SVGParser();
+        return parser.parse(MappedInputStream.open(file));
+    }
+
+
+    /**
+     * Read and parse an SVG or SVGZ file from an open file descriptor, for example one from
+     * {@code ParcelFileDescriptor.getFileDescriptor()}. The descriptor must refer to a file that
+     * can be memory mapped, not a pipe or socket. The whole file is read, from its start,
+     * whatever the current position of the descriptor. The descriptor is not closed.
+     *
+     * @param fd the file descriptor of the SVG or SVGZ file.
+     * @return an SVG instance on which you can call one of the render methods.
+     * @throws SVGParseException if there is an error parsing the document.
+     * @throws IOException if there is some IO error while reading the file.
+     * @see #getFromFile(File)
+     */
+    public static SVG  getFromFileDescriptor(FileDescriptor fd) throws SVGParseException, IOException
+    {
+        SVGParser  parser = new SVGParser();
+        return parser.parse(MappedInputStream.open(fd));
+    }
+
+
+    /**
+     * Load an SVG that has been precompiled with {@link #writeBinary(OutputStream)}, or with the
+     * SVGCompiler tool in the library's androidTest sources. No XML or CSS parsing is involved,
+     * so this is much faster than parsing the original file. The buffer may be a memory mapped
+     * file. Its position is not changed.
+     *
+     * @param buffer the buffer containing the precompiled document.
+     * @return an SVG instance on which you can call one of the render methods.
+     * @throws SVGParseException if the buffer does not contain a valid precompiled document.
+     */
+    public static SVG  getFromBinary(ByteBuffer buffer) throws SVGParseException
+    {
+        return SVGBinaryReader.read(buffer);
+    }
+
+
+    /**
+     * Load a precompiled SVG from a file. The file is memory mapped rather than read.
+     *
+     * @param file the precompiled SVG file.
+     * @return an SVG instance on which you can call one of the render methods.
+     * @throws SVGParseException if the file does not contain a valid precompiled document.
+     * @throws IOException if there is some IO error while reading the file.
+     * @see #getFromBinary(ByteBuffer)
+     */
+    public static SVG  getFromBinaryFile(File file) throws SVGParseException, IOException
+    {
+        FileInputStream  fis = new FileInputStream(file);
+        try {
+            FileChannel  channel = fis.getChannel();
+            return getFromBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+        }
+    }
+
+
+    /**
+     * Write this document in the precompiled binary form read by {@link #getFromBinary(ByteBuffer)}.
+     * The CSS cascade is resolved before writing, so stylesheets do not need to be parsed again
+     * when the document is loaded.
+     *
+     * @param os the stream to write to. It is not closed.
+     * @throws IOException if there is an error writing to the stream.
+     * @throws IllegalArgumentException if there is no current SVG document loaded.
+     */
+    public void  writeBinary(OutputStream os) throws IOException
+    {
+        SVGBinaryWriter.write(this, os);
+    }
+
+
     /**
      * Read and parse an SVG from the given resource location.
      *
@@ -161,6 +344,9 @@ public class SVG
 
     /**
      * Read and parse an SVG from the given resource location.
+     * <p>
+     * Every call parses the resource again and returns a new SVG instance. To share parsed
+     * documents between callers, use {@link SVGCache} instead.
      *
      * @param resources the set of Resources in which to locate the file.
      * @param resourceId the resource identifier of the SVG document.
@@ -185,6 +371,9 @@ public class SVG
 
     /**
      * Read and parse an SVG from the assets folder.
+     * <p>
+     * Every call parses the asset again and returns a new SVG instance. To share parsed
+     * documents between callers, use {@link SVGCache} instead.
      *
      * @param assetManager the AssetManager instance to use when reading the file.
      * @param filename the filename of the SVG document within assets.
@@ -235,6 +424,21 @@ public class SVG
     public void  setRenderDPI(float dpi)
     {
         this.renderDPI = dpi;
+        documentChanged();
+    }
+
+
+    /**
+     * Set the maximum amount of memory, in bytes, used to cache the Paths that the renderer
+     * builds for path and shape elements.  The cache allows repeated renders of the same document,
+     * at any size, to skip the work of converting those elements. The default is 256KB.
+     * A value of zero effectively disables the cache.
+     *
+     * @param bytes the approximate maximum size of the cache
+     */
+    public void  setPathCacheBudget(int bytes)
+    {
+        pathCache.setBudget(bytes);
     }
 
 
@@ -262,7 +466,16 @@ public class SVG
      */
     public Picture  renderToPicture()
     {
-        // Determine the initial viewport. See SVG spec section 7.2.
+        Box  viewPort = getInitialPictureViewPort();
+        return renderToPicture((int) viewPort.width, (int) viewPort.height);
+    }
+
+
+    /*
+     * Determine the initial viewport used by renderToPicture(). See SVG spec section 7.2.
+     */
+    protected Box  getInitialPictureViewPort()
+    {
         Length  width = rootElement.width;
         if (width != null)
         {
@@ -280,11 +493,11 @@ public class SVG
                     h = w;
                 }
             }
-            return renderToPicture( (int) Math.ceil(w), (int) Math.ceil(h) );
+            return new Box(0f, 0f, (float) Math.ceil(w), (float) Math.ceil(h));
         }
         else
         {
-            return renderToPicture(DEFAULT_PICTURE_WIDTH, DEFAULT_PICTURE_HEIGHT);
+            return new Box(0f, 0f, DEFAULT_PICTURE_WIDTH, DEFAULT_PICTURE_HEIGHT);
         }
     }
 
@@ -297,12 +510,28 @@ public class SVG
      * @return a Picture object suitable for later rendering using {@code Canvas.darwPicture()}
      */
     public Picture  renderToPicture(int widthInPixels, int heightInPixels)
+    {
+        return renderToPicture(widthInPixels, heightInPixels, RenderQuality.FINAL);
+    }
+
+
+    /**
+     * Renders this SVG document to a Picture object, at the given quality. A draft Picture is
+     * cheaper to create and to draw, so it is suitable for showing during zooming and scrolling.
+     *
+     * @param widthInPixels the width of the initial viewport
+     * @param heightInPixels the height of the initial viewport
+     * @param quality the render quality
+     * @return a Picture object suitable for later rendering using {@code Canvas.drawPicture()}
+     */
+    public Picture  renderToPicture(int widthInPixels, int heightInPixels, RenderQuality quality)
     {
         Picture  picture = new Picture();
         Canvas   canvas = picture.beginRecording(widthInPixels, heightInPixels);
         Box      viewPort = new Box(0f, 0f, (float) widthInPixels, (float) heightInPixels);
 
         SVGAndroidRenderer  renderer = new SVGAndroidRenderer(canvas, viewPort, this.renderDPI);
+        renderer.setRenderQuality(quality);
 
         renderer.renderDocument(this, null, null, false);
 
@@ -375,6 +604,19 @@ public class SVG
      * @param viewPort the bounds of the area on the canvas you want the SVG rendered, or null for the whole canvas.
      */
     public void  renderToCanvas(Canvas canvas, RectF viewPort)
+    {
+        renderToCanvas(canvas, viewPort, RenderQuality.FINAL);
+    }
+
+
+    /**
+     * Renders this SVG document to a Canvas object, at the given quality.
+     *
+     * @param canvas the canvas to which the document should be rendered.
+     * @param viewPort the bounds of the area on the canvas you want the SVG rendered, or null for the whole canvas.
+     * @param quality the render quality
+     */
+    public void  renderToCanvas(Canvas canvas, RectF viewPort, RenderQuality quality)
     {
         Box  svgViewPort;
 
@@ -385,6 +627,7 @@ public class SVG
         }
 
         SVGAndroidRenderer  renderer = new SVGAndroidRenderer(canvas, svgViewPort, this.renderDPI);
+        renderer.setRenderQuality(quality);
 
         renderer.renderDocument(this, null, null, true);
     }
@@ -574,6 +817,7 @@ public class SVG
             throw new IllegalArgumentException("SVG document is empty");
 
         this.rootElement.width = new Length(pixels);
+        documentChanged();
     }
 
 
@@ -595,6 +839,7 @@ public class SVG
         } catch (SAXException e) {
             throw new SVGParseException(e.getMessage());
         }
+        documentChanged();
     }
 
 
@@ -632,6 +877,7 @@ public class SVG
             throw new IllegalArgumentException("SVG document is empty");
 
         this.rootElement.height = new Length(pixels);
+        documentChanged();
     }
 
 
@@ -653,6 +899,7 @@ public class SVG
         } catch (SAXException e) {
             throw new SVGParseException(e.getMessage());
         }
+        documentChanged();
     }
 
 
@@ -680,6 +927,7 @@ public class SVG
             throw new IllegalArgumentException("SVG document is empty");
 
         this.rootElement.viewBox = new Box(minX, minY, width, height);
+        documentChanged();
     }
 
 
@@ -716,6 +964,7 @@ public class SVG
             throw new IllegalArgumentException("SVG document is empty");
 
         this.rootElement.preserveAspectRatio = preserveAspectRatio;
+        documentChanged();
     }
 
 
@@ -776,6 +1025,95 @@ public class SVG
 
 
 
+    //===============================================================================
+    // Hit testing
+
+
+    /**
+     * Returns the ids of the elements drawn at the given point.
+     * <p>
+     * The point is in document coordinates, ie. the user space of the root &lt;svg&gt; element,
+     * which is the space of the {@code viewBox} if there is one. Elements are matched using
+     * their bounding boxes (including any stroke), not their exact shapes. An element without
+     * an id is reported using the id of its nearest ancestor that has one. Elements with no
+     * such ancestor are not reported.
+     * <p>
+     * The first call builds an index of the document, which takes about as long as a
+     * call to {@link #renderToPicture()}. Later calls are fast until the document is changed.
+     *
+     * @param x the x coordinate of the point.
+     * @param y the y coordinate of the point.
+     * @return the ids of the matching elements, topmost first.
+     * @throws IllegalArgumentException if there is no current SVG document loaded.
+     */
+    public List<String>  findElementsAt(float x, float y)
+    {
+        if (this.rootElement == null)
+            throw new IllegalArgumentException("SVG document is empty");
+
+        return getElementIds(getSpatialIndex().findAt(x, y));
+    }
+
+
+    /**
+     * Returns the ids of the elements drawn within the given rectangle.
+     * <p>
+     * The rectangle is in document coordinates, and elements are matched and reported in the
+     * same way as for {@link #findElementsAt(float, float)}.
+     *
+     * @param rect the area to search.
+     * @return the ids of the matching elements, in document order.
+     * @throws IllegalArgumentException if there is no current SVG document loaded.
+     */
+    public List<String>  findElementsIntersecting(RectF rect)
+    {
+        if (this.rootElement == null)
+            throw new IllegalArgumentException("SVG document is empty");
+
+        return getElementIds(getSpatialIndex().findIntersecting(rect));
+    }
+
+
+    private static List<String>  getElementIds(List<SvgElement> elements)
+    {
+        List<String>  ids = new ArrayList<String>();
+        Set<String>   seen = new HashSet<String>();
+        for (SvgElement element: elements)
+        {
+            SvgObject  obj = element;
+            while (obj instanceof SvgElementBase && ((SvgElementBase) obj).id == null)
+                obj = (SvgObject) obj.parent;
+            if (obj instanceof SvgElementBase && seen.add(((SvgElementBase) obj).id))
+                ids.add(((SvgElementBase) obj).id);
+        }
+        return ids;
+    }
+
+
+    /*
+     * Returns the spatial index of the document, building it if necessary by recording a
+     * render at the same size as renderToPicture() would use.
+     */
+    protected synchronized SpatialIndex  getSpatialIndex()
+    {
+        if (spatialIndex == null)
+        {
+            Box      viewPort = getInitialPictureViewPort();
+            Picture  picture = new Picture();
+            Canvas   canvas = picture.beginRecording((int) viewPort.width, (int) viewPort.height);
+
+            SpatialIndex.Builder  builder = new SpatialIndex.Builder();
+            SVGAndroidRenderer    renderer = new SVGAndroidRenderer(canvas, viewPort, this.renderDPI);
+            renderer.setSpatialIndexBuilder(builder);
+            renderer.renderDocument(this, null, null, false);
+            picture.endRecording();
+
+            spatialIndex = builder.build();
+        }
+        return spatialIndex;
+    }
+
+
     //===============================================================================
 
 
@@ -785,12 +1123,115 @@ public class SVG
     }
 
 
+    protected PathCache  getPathCache()
+    {
+        return pathCache;
+    }
+
+
+    protected ShaderCache  getShaderCache()
+    {
+        return shaderCache;
+    }
+
+
+    protected TextLayoutCache  getTextLayoutCache()
+    {
+        return textLayoutCache;
+    }
+
+
+    protected int  getModificationCount()
+    {
+        return modificationCount;
+    }
+
+
+    // Called whenever the document is changed through the public API
+    private void  documentChanged()
+    {
+        this.modificationCount++;
+        this.pathCache.invalidate();
+        this.shaderCache.invalidate();
+        this.textLayoutCache.invalidate();
+        synchronized (this) {
+            this.spatialIndex = null;
+        }
+    }
+
+
+    /*
+     * Forget everything the renderer has worked out about the document, as if it had never
+     * been rendered. Used after rendering a partly loaded document (see SVGProgressiveLoader),
+     * since bounding boxes and cached layouts may depend on elements or CSS rules that came later.
+     */
+    protected void  discardRenderData()
+    {
+        if (rootElement != null)
+            clearBoundingBoxes(rootElement);
+        this.pathCache.invalidate();
+        this.shaderCache.invalidate();
+        this.textLayoutCache.invalidate();
+        synchronized (this) {
+            this.spatialIndex = null;
+        }
+    }
+
+
+    private static void  clearBoundingBoxes(SvgObject obj)
+    {
+        if (obj instanceof SvgElement)
+            ((SvgElement) obj).boundingBox = null;
+        if (obj instanceof SvgContainer) {
+            for (SvgObject child: ((SvgContainer) obj).getChildren())
+                clearBoundingBoxes(child);
+        }
+    }
+
+
     protected void setRootElement(SVG.Svg rootElement)
     {
         this.rootElement = rootElement;
     }
 
 
+    /*
+     * Get a pool of renderer Styles and Paints for the exclusive use of one render.
+     * It should be returned with releaseStatePool() when the render is finished.
+     */
+    protected synchronized SVGAndroidRenderer.StatePool  obtainStatePool()
+    {
+        int  n = statePools.size();
+        return (n > 0) ? statePools.remove(n - 1) : new SVGAndroidRenderer.StatePool();
+    }
+
+
+    protected synchronized void  releaseStatePool(SVGAndroidRenderer.StatePool pool)
+    {
+        statePools.add(pool);
+    }
+
+
+    protected synchronized boolean  hasDataImage(String url)
+    {
+        return dataImages != null && dataImages.containsKey(url);
+    }
+
+
+    protected synchronized Bitmap  getDataImage(String url)
+    {
+        return (dataImages != null) ? dataImages.get(url) : null;
+    }
+
+
+    protected synchronized void  putDataImage(String url, Bitmap image)
+    {
+        if (dataImages == null)
+            dataImages = new HashMap<String, Bitmap>();
+        dataImages.put(url, image);
+    }
+
+
     protected SvgObject  resolveIRI(String iri)
     {
         if (iri == null)
@@ -840,6 +1281,7 @@ public class SVG
     protected void  addCSSRules(CSSParser.Ruleset ruleset)
     {
         this.cssRules.addAll(ruleset);
+        this.cascadeComputed = false;
     }
 
 
@@ -855,6 +1297,66 @@ public class SVG
     }
 
 
+    protected boolean  isCascadeComputed()
+    {
+        return this.cascadeComputed;
+    }
+
+
+    // Used when the cascaded styles have been loaded along with the document (see SVGBinaryReader)
+    protected void  setCascadeComputed()
+    {
+        this.cascadeComputed = true;
+    }
+
+
+    /*
+     * Resolve the styles of every element in the document once, so the renderer doesn't
+     * have to match CSS selectors on every draw. The result for each element is its
+     * presentation attributes, the matching CSS rules (in specificity order) and its
+     * 'style' attribute, merged into SvgElementBase.cascadedStyle.
+     */
+    protected void  computeCascade()
+    {
+        if (rootElement != null)
+        {
+            CSSParser.RuleIndex  index = hasCSSRules() ? new CSSParser.RuleIndex(cssRules) : null;
+            computeCascade(rootElement, new ArrayList<SvgContainer>(), index, new BitSet());
+        }
+        this.cascadeComputed = true;
+    }
+
+
+    private void  computeCascade(SvgElementBase obj, List<SvgContainer> ancestors, CSSParser.RuleIndex index, BitSet candidates)
+    {
+        Style  cascaded = obj.baseStyle;
+
+        if (index != null)
+        {
+            index.getCandidates(obj, candidates);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+            {
+                CSSParser.Rule  rule = index.get(i);
+                if (CSSParser.ruleMatch(rule.selector, ancestors, obj))
+                    cascaded = Style.cascade(cascaded, rule.style);
+            }
+        }
+        obj.cascadedStyle = Style.cascade(cascaded, obj.style);
+
+        if (obj instanceof SvgContainer)
+        {
+            SvgContainer  container = (SvgContainer) obj;
+            ancestors.add(container);
+            for (SvgObject child: container.getChildren())
+            {
+                if (child instanceof SvgElementBase)
+                    computeCascade((SvgElementBase) child, ancestors, index, candidates);
+            }
+            ancestors.remove(ancestors.size() - 1);
+        }
+    }
+
+
     //===============================================================================
     // Object sub-types used in the SVG object tree
 
@@ -1114,6 +1616,24 @@ public class SVG
             resetNonInheritingProperties(false);
         }
 
+        // Returns true if resetNonInheritingProperties() would not change anything
+        public boolean  hasResetNonInheritingProperties(boolean isRootSVG)
+        {
+            return Boolean.TRUE.equals(display) &&
+                   (isRootSVG ? Boolean.TRUE : Boolean.FALSE).equals(overflow) &&
+                   clip == null &&
+                   clipPath == null &&
+                   opacity != null && opacity == 1f &&
+                   stopColor == Colour.BLACK &&
+                   stopOpacity != null && stopOpacity == 1f &&
+                   mask == null &&
+                   solidColor == null &&
+                   solidOpacity != null && solidOpacity == 1f &&
+                   viewportFill == null &&
+                   viewportFillOpacity != null && viewportFillOpacity == 1f &&
+                   vectorEffect == VectorEffect.None;
+        }
+
         public void  resetNonInheritingProperties(boolean isRootSVG)
         {
             this.display = Boolean.TRUE;
@@ -1132,6 +1652,62 @@ public class SVG
         }
 
 
+        /*
+         * Combine two styles in cascade order. Properties specified by 'over' win. Either
+         * argument may be null. The arguments are never modified, but may be returned as-is.
+         */
+        protected static Style  cascade(Style under, Style over)
+        {
+            if (over == null)
+                return under;
+            if (under == null)
+                return over;
+
+            Style  result = (Style) under.clone();
+            long   flags = over.specifiedFlags;
+            result.specifiedFlags |= flags;
+
+            if ((flags & SPECIFIED_FILL) != 0)                  result.fill = over.fill;
+            if ((flags & SPECIFIED_FILL_RULE) != 0)             result.fillRule = over.fillRule;
+            if ((flags & SPECIFIED_FILL_OPACITY) != 0)          result.fillOpacity = over.fillOpacity;
+            if ((flags & SPECIFIED_STROKE) != 0)                result.stroke = over.stroke;
+            if ((flags & SPECIFIED_STROKE_OPACITY) != 0)        result.strokeOpacity = over.strokeOpacity;
+            if ((flags & SPECIFIED_STROKE_WIDTH) != 0)          result.strokeWidth = over.strokeWidth;
+            if ((flags & SPECIFIED_STROKE_LINECAP) != 0)        result.strokeLineCap = over.strokeLineCap;
+            if ((flags & SPECIFIED_STROKE_LINEJOIN) != 0)       result.strokeLineJoin = over.strokeLineJoin;
+            if ((flags & SPECIFIED_STROKE_MITERLIMIT) != 0)     result.strokeMiterLimit = over.strokeMiterLimit;
+            if ((flags & SPECIFIED_STROKE_DASHARRAY) != 0)      result.strokeDashArray = over.strokeDashArray;
+            if ((flags & SPECIFIED_STROKE_DASHOFFSET) != 0)     result.strokeDashOffset = over.strokeDashOffset;
+            if ((flags & SPECIFIED_OPACITY) != 0)               result.opacity = over.opacity;
+            if ((flags & SPECIFIED_COLOR) != 0)                 result.color = over.color;
+            if ((flags & SPECIFIED_FONT_FAMILY) != 0)           result.fontFamily = over.fontFamily;
+            if ((flags & SPECIFIED_FONT_SIZE) != 0)             result.fontSize = over.fontSize;
+            if ((flags & SPECIFIED_FONT_WEIGHT) != 0)           result.fontWeight = over.fontWeight;
+            if ((flags & SPECIFIED_FONT_STYLE) != 0)            result.fontStyle = over.fontStyle;
+            if ((flags & SPECIFIED_TEXT_DECORATION) != 0)       result.textDecoration = over.textDecoration;
+            if ((flags & SPECIFIED_DIRECTION) != 0)             result.direction = over.direction;
+            if ((flags & SPECIFIED_TEXT_ANCHOR) != 0)           result.textAnchor = over.textAnchor;
+            if ((flags & SPECIFIED_OVERFLOW) != 0)              result.overflow = over.overflow;
+            if ((flags & SPECIFIED_CLIP) != 0)                  result.clip = over.clip;
+            if ((flags & SPECIFIED_MARKER_START) != 0)          result.markerStart = over.markerStart;
+            if ((flags & SPECIFIED_MARKER_MID) != 0)            result.markerMid = over.markerMid;
+            if ((flags & SPECIFIED_MARKER_END) != 0)            result.markerEnd = over.markerEnd;
+            if ((flags & SPECIFIED_DISPLAY) != 0)               result.display = over.display;
+            if ((flags & SPECIFIED_VISIBILITY) != 0)            result.visibility = over.visibility;
+            if ((flags & SPECIFIED_STOP_COLOR) != 0)            result.stopColor = over.stopColor;
+            if ((flags & SPECIFIED_STOP_OPACITY) != 0)          result.stopOpacity = over.stopOpacity;
+            if ((flags & SPECIFIED_CLIP_PATH) != 0)             result.clipPath = over.clipPath;
+            if ((flags & SPECIFIED_CLIP_RULE) != 0)             result.clipRule = over.clipRule;
+            if ((flags & SPECIFIED_MASK) != 0)                  result.mask = over.mask;
+            if ((flags & SPECIFIED_SOLID_COLOR) != 0)           result.solidColor = over.solidColor;
+            if ((flags & SPECIFIED_SOLID_OPACITY) != 0)         result.solidOpacity = over.solidOpacity;
+            if ((flags & SPECIFIED_VIEWPORT_FILL) != 0)         result.viewportFill = over.viewportFill;
+            if ((flags & SPECIFIED_VIEWPORT_FILL_OPACITY) != 0) result.viewportFillOpacity = over.viewportFillOpacity;
+            if ((flags & SPECIFIED_VECTOR_EFFECT) != 0)         result.vectorEffect = over.vectorEffect;
+            return result;
+        }
+
+
         @Override
         protected Object  clone()
         {
@@ -1149,6 +1725,54 @@ public class SVG
                 throw new InternalError(e.toString());
             }
         }
+
+
+        /*
+         * Make this style a copy of another one. Unlike clone(), the property values
+         * (including strokeDashArray) are shared, not copied. Used for recycling Style
+         * objects in the renderer.
+         */
+        protected void  set(Style other)
+        {
+            this.specifiedFlags = other.specifiedFlags;
+            this.fill = other.fill;
+            this.fillRule = other.fillRule;
+            this.fillOpacity = other.fillOpacity;
+            this.stroke = other.stroke;
+            this.strokeOpacity = other.strokeOpacity;
+            this.strokeWidth = other.strokeWidth;
+            this.strokeLineCap = other.strokeLineCap;
+            this.strokeLineJoin = other.strokeLineJoin;
+            this.strokeMiterLimit = other.strokeMiterLimit;
+            this.strokeDashArray = other.strokeDashArray;
+            this.strokeDashOffset = other.strokeDashOffset;
+            this.opacity = other.opacity;
+            this.color = other.color;
+            this.fontFamily = other.fontFamily;
+            this.fontSize = other.fontSize;
+            this.fontWeight = other.fontWeight;
+            this.fontStyle = other.fontStyle;
+            this.textDecoration = other.textDecoration;
+            this.direction = other.direction;
+            this.textAnchor = other.textAnchor;
+            this.overflow = other.overflow;
+            this.clip = other.clip;
+            this.markerStart = other.markerStart;
+            this.markerMid = other.markerMid;
+            this.markerEnd = other.markerEnd;
+            this.display = other.display;
+            this.visibility = other.visibility;
+            this.stopColor = other.stopColor;
+            this.stopOpacity = other.stopOpacity;
+            this.clipPath = other.clipPath;
+            this.clipRule = other.clipRule;
+            this.mask = other.mask;
+            this.solidColor = other.solidColor;
+            this.solidOpacity = other.solidOpacity;
+            this.viewportFill = other.viewportFill;
+            this.viewportFillOpacity = other.viewportFillOpacity;
+            this.vectorEffect = other.vectorEffect;
+        }
     }
 
 
@@ -1394,6 +2018,7 @@ public class SVG
         public Style         baseStyle = null;   // style defined by explicit style attributes in the element (eg. fill="black")
         public Style         style = null;       // style expressed in a 'style' attribute (eg. style="fill:black")
         public List<String>  classNames = null;  // contents of the 'class' attribute
+        public Style         cascadedStyle = null;  // baseStyle, matching CSS rules and style merged (see SVG.computeCascade())
     }
 
 
@@ -1930,16 +2555,49 @@ public class SVG
         }
 
 
+        // Create a definition with room for the given number of commands and coordinates
+        public PathDefinition(int commandsHint, int coordsHint)
+        {
+            this.commands = new byte[Math.max(commandsHint, 8)];
+            this.coords = new float[Math.max(coordsHint, 16)];
+        }
+
+
+        // Create a definition that uses the given arrays. Used by SVGBinaryReader.
+        public PathDefinition(byte[] commands, float[] coords)
+        {
+            this.commands = commands;
+            this.commandsLength = commands.length;
+            this.coords = coords;
+            this.coordsLength = coords.length;
+        }
+
+
         public boolean  isEmpty()
         {
             return commandsLength == 0;
         }
 
 
+        // A rough upper bound on the number of points in the android.graphics.Path built from
+        // this definition. Allows for arcs being expanded into several bezier curves.
+        public int  estimatedPointCount()
+        {
+            return commandsLength + coordsLength;
+        }
+
+
+        // Raw access to the arrays. Used by SVGBinaryWriter.
+        public byte[]   getCommands()       { return commands; }
+        public int      getCommandsLength() { return commandsLength; }
+        public float[]  getCoords()         { return coords; }
+        public int      getCoordsLength()   { return coordsLength; }
+
+
         private void  addCommand(byte value)
         {
             if (commandsLength == commands.length) {
-                byte[]  newCommands = new byte[commands.length * 2];
+                byte[]  newCommands = new byte[Math.max(commands.length * 2, 8)];
                 System.arraycopy(commands, 0, newCommands, 0, commands.length);
                 commands = newCommands;
             }
@@ -1950,7 +2608,7 @@ public class SVG
         private void  coordsEnsure(int num)
         {
             if (coords.length < (coordsLength + num)) {
-                float[]  newCoords = new float[coords.length * 2];
+                float[]  newCoords = new float[Math.max(coords.length * 2, coordsLength + num)];
                 System.arraycopy(coords, 0, newCoords, 0, coords.length);
                 coords = newCoords;
             }
@@ -17,6 +17,7 @@
 package com.grottworkshop.gwsbaselibrary.graphics.svg;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -26,14 +27,20 @@ import java.util.Stack;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.DashPathEffect;
 import android.graphics.LinearGradient;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PathMeasure;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.RadialGradient;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.Shader.TileMode;
@@ -63,30 +70,66 @@ public class SVGAndroidRenderer
     private SVG                  document;
     private RendererState        state;
     private Stack<RendererState> stateStack;  // Keeps track of render state as we render
+    private StatePool            statePool;   // Recycled Styles and Paints, borrowed from the document
 
     // Keep track of element stack while rendering.
     private Stack<SVG.SvgContainer>  parentStack; // The 'render parent' for elements like Symbol cf. file parent
     private Stack<Matrix>        matrixStack; // Keeps track of current transform as we descend into element tree
 
-    // Canvas stack for when we are processing mask elements
-    private Stack<Canvas>  canvasStack;
-    private Stack<Bitmap>  bitmapStack;
+    // Paint used to composite a rendered mask onto the masked content. Created when first needed.
+    private Paint  maskPaint = null;
+
+    // Greater than zero while the content of a mask is being rendered
+    private int  maskDepth = 0;
+
+    // Paint used to fill shapes with a cached pattern tile. Created when first needed.
+    private Paint  patternPaint = null;
+
+    // The largest pattern tile, in pixels, that will be rendered to a bitmap
+    private static final int  MAX_PATTERN_TILE_SIZE = 1024;
+
+    // If set, every drawing is added to this spatial index builder (see SVG.getSpatialIndex())
+    private SpatialIndex.Builder  indexBuilder = null;
+    private Matrix                canvasToDocument = null;
+    private SVG.SvgElement        contentOwner = null;  // Element whose markers or pattern are being drawn
+
+    // When zoomed in, elements whose indexed bounds lie outside this document-space rectangle are skipped
+    private SpatialIndex  cullIndex = null;
+    private RectF         cullRect = null;
+
+    // Cull only when the visible area is less than this fraction of the document
+    private static final float  CULL_AREA_FRACTION = 0.5f;
+
+    // Set when rendering at SVG.RenderQuality.DRAFT
+    private boolean  draft = false;
+
+    // In draft quality, paths with more points than this are simplified
+    private static final int  DRAFT_SIMPLIFY_MIN_POINTS = 64;
+
+    // In draft quality, path points closer than this many pixels to the previous one are dropped
+    private static final float  DRAFT_SIMPLIFY_TOLERANCE = 1.5f;
 
 
     private static final float  BEZIER_ARC_FACTOR = 0.5522847498f;
 
-    // The feColorMatrix luminance-to-alpha coefficient. Used for <mask>s.
-    // Using integer arithmetic for a little extra speed.
-    private static final int  LUMINANCE_FACTOR_SHIFT = 15;
-    private static final int  LUMINANCE_TO_ALPHA_RED = (int)(0.2125f * (1 << LUMINANCE_FACTOR_SHIFT));
-    private static final int  LUMINANCE_TO_ALPHA_GREEN = (int)(0.7154f * (1 << LUMINANCE_FACTOR_SHIFT));
-    private static final int  LUMINANCE_TO_ALPHA_BLUE = (int)(0.0721f * (1 << LUMINANCE_FACTOR_SHIFT));
+    // The feColorMatrix luminance-to-alpha matrix. Used for <mask>s.
+    private static final float[]  LUMINANCE_TO_ALPHA = {
+            0f,      0f,      0f,      0f, 0f,
+            0f,      0f,      0f,      0f, 0f,
+            0f,      0f,      0f,      0f, 0f,
+            0.2125f, 0.7154f, 0.0721f, 0f, 0f
+    };
 
     private static final String DEFAULT_FONT_FAMILY = "sans-serif";
 
     private static HashSet<String>  supportedFeatures = null;
 
 
+    /*
+     * The style, fillPaint and strokePaint fields are copy-on-write. A clone shares them with
+     * the state it was cloned from, so they must be treated as read-only. Use editStyle(),
+     * editFillPaint() and editStrokePaint() to get a private copy that can be changed.
+     */
     private class RendererState implements Cloneable
     {
         public SVG.Style style;
@@ -101,20 +144,18 @@ public class SVGAndroidRenderer
         // Set when we doing direct rendering.
         public boolean  directRendering;
 
+        // Whether this state has its own copy of the style and paints, or shares them with another state
+        private boolean  ownsStyle;
+        private boolean  ownsFillPaint;
+        private boolean  ownsStrokePaint;
+
 
         public RendererState()
         {
-            fillPaint = new Paint();
-            fillPaint.setFlags(Paint.ANTI_ALIAS_FLAG | Paint.DEV_KERN_TEXT_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
-            fillPaint.setStyle(Paint.Style.FILL);
-            fillPaint.setTypeface(Typeface.DEFAULT);
-
-            strokePaint = new Paint();
-            strokePaint.setFlags(Paint.ANTI_ALIAS_FLAG | Paint.DEV_KERN_TEXT_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
-            strokePaint.setStyle(Paint.Style.STROKE);
-            strokePaint.setTypeface(Typeface.DEFAULT);
-
-            style = SVG.Style.getDefaultStyle();
+            fillPaint = statePool.obtainDefaultFillPaint();
+            strokePaint = statePool.obtainDefaultStrokePaint();
+            style = statePool.obtainDefaultStyle();
+            ownsStyle = ownsFillPaint = ownsStrokePaint = true;
         }
 
         @Override
@@ -124,9 +165,7 @@ public class SVGAndroidRenderer
             try
             {
                 obj = (RendererState) super.clone();
-                obj.style = (SVG.Style) style.clone();
-                obj.fillPaint = new Paint(fillPaint);
-                obj.strokePaint = new Paint(strokePaint);
+                obj.ownsStyle = obj.ownsFillPaint = obj.ownsStrokePaint = false;
                 return obj;
             }
             catch (CloneNotSupportedException e)
@@ -135,6 +174,111 @@ public class SVGAndroidRenderer
             }
         }
 
+        public SVG.Style  editStyle()
+        {
+            if (!ownsStyle) {
+                style = statePool.obtainStyle(style);
+                ownsStyle = true;
+            }
+            return style;
+        }
+
+        public Paint  editFillPaint()
+        {
+            if (!ownsFillPaint) {
+                fillPaint = statePool.obtainPaint(fillPaint);
+                ownsFillPaint = true;
+            }
+            return fillPaint;
+        }
+
+        public Paint  editStrokePaint()
+        {
+            if (!ownsStrokePaint) {
+                strokePaint = statePool.obtainPaint(strokePaint);
+                ownsStrokePaint = true;
+            }
+            return strokePaint;
+        }
+
+        // Return our own copies of the style and paints to the pool. The state is discarded afterwards.
+        public void  recycle()
+        {
+            if (ownsStyle)
+                statePool.recycle(style);
+            if (ownsFillPaint)
+                statePool.recycle(fillPaint);
+            if (ownsStrokePaint)
+                statePool.recycle(strokePaint);
+            ownsStyle = ownsFillPaint = ownsStrokePaint = false;
+        }
+    }
+
+
+    /*
+     * Recycles the Style and Paint objects used by RendererStates. A pool is only used by one
+     * renderer at a time. Each document keeps its pools between renders (see SVG.obtainStatePool()).
+     */
+    protected static class StatePool
+    {
+        private static final int  MAX_POOL_SIZE = 64;
+
+        private ArrayList<SVG.Style>  styles = new ArrayList<SVG.Style>();
+        private ArrayList<Paint>      paints = new ArrayList<Paint>();
+
+        private SVG.Style  defaultStyle = SVG.Style.getDefaultStyle();
+        private Paint      defaultFillPaint;
+        private Paint      defaultStrokePaint;
+
+
+        public StatePool()
+        {
+            defaultFillPaint = new Paint();
+            defaultFillPaint.setFlags(Paint.ANTI_ALIAS_FLAG | Paint.DEV_KERN_TEXT_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+            defaultFillPaint.setStyle(Paint.Style.FILL);
+            defaultFillPaint.setTypeface(Typeface.DEFAULT);
+
+            defaultStrokePaint = new Paint();
+            defaultStrokePaint.setFlags(Paint.ANTI_ALIAS_FLAG | Paint.DEV_KERN_TEXT_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+            defaultStrokePaint.setStyle(Paint.Style.STROKE);
+            defaultStrokePaint.setTypeface(Typeface.DEFAULT);
+        }
+
+        public SVG.Style  obtainStyle(SVG.Style src)
+        {
+            int        n = styles.size();
+            SVG.Style  style = (n > 0) ? styles.remove(n - 1) : new SVG.Style();
+            style.set(src);
+            return style;
+        }
+
+        public Paint  obtainPaint(Paint src)
+        {
+            int  n = paints.size();
+            if (n == 0)
+                return new Paint(src);
+            Paint  paint = paints.remove(n - 1);
+            paint.set(src);
+            return paint;
+        }
+
+        public SVG.Style  obtainDefaultStyle()        { return obtainStyle(defaultStyle); }
+        public Paint      obtainDefaultFillPaint()    { return obtainPaint(defaultFillPaint); }
+        public Paint      obtainDefaultStrokePaint()  { return obtainPaint(defaultStrokePaint); }
+
+        public void  recycle(SVG.Style style)
+        {
+            if (styles.size() < MAX_POOL_SIZE)
+                styles.add(style);
+        }
+
+        public void  recycle(Paint paint)
+        {
+            if (paints.size() < MAX_POOL_SIZE) {
+                paint.setShader(null);   // Don't keep gradients alive
+                paints.add(paint);
+            }
+        }
     }
 
 
@@ -152,11 +296,10 @@ public class SVGAndroidRenderer
         state.directRendering = this.directRenderingMode;
 
         // Push a copy of the state with 'default' style, so that inherit works for top level objects
-        stateStack.push((RendererState) state.clone());   // Manual push here - don't use statePush();
+        stateStack.push(state);   // Manual push here - don't use statePush();
+        state = (RendererState) state.clone();
 
-        // Initialise the stacks used for mask handling
-        canvasStack = new Stack<Canvas>();
-        bitmapStack = new Stack<Bitmap>();
+        maskDepth = 0;
 
         // Keep track of element stack while rendering.
         // The 'render parent' for some elements (eg <use> references) is different from its DOM parent.
@@ -187,6 +330,25 @@ public class SVGAndroidRenderer
     }
 
 
+    /*
+     * Select the render quality. See SVG.RenderQuality.
+     */
+    protected void  setRenderQuality(SVG.RenderQuality quality)
+    {
+        this.draft = (quality == SVG.RenderQuality.DRAFT);
+    }
+
+
+    /*
+     * Ask the renderer to add the document-space bounds of everything it draws to the
+     * given spatial index builder.
+     */
+    protected void  setSpatialIndexBuilder(SpatialIndex.Builder indexBuilder)
+    {
+        this.indexBuilder = indexBuilder;
+    }
+
+
     protected float  getCurrentFontSize()
     {
         return state.fillPaint.getTextSize();
@@ -228,15 +390,32 @@ public class SVGAndroidRenderer
             return;
         }
 
-        // Initialise the state
-        resetState();
+        // Normally done at the end of parsing, but CSS rules may have been added since then
+        if (!document.isCascadeComputed())
+            document.computeCascade();
 
-        checkXMLSpaceAttribute(rootObj);
+        statePool = document.obtainStatePool();
+        try
+        {
+            // Initialise the state
+            resetState();
+            if (draft) {
+                state.editFillPaint().setAntiAlias(false);
+                state.editStrokePaint().setAntiAlias(false);
+            }
+
+            checkXMLSpaceAttribute(rootObj);
 
-        // Render the document
-        render(rootObj, rootObj.width, rootObj.height,
-                (viewBox != null) ? viewBox : rootObj.viewBox,
-                (positioning != null) ? positioning : rootObj.preserveAspectRatio);
+            // Render the document
+            render(rootObj, rootObj.width, rootObj.height,
+                    (viewBox != null) ? viewBox : rootObj.viewBox,
+                    (positioning != null) ? positioning : rootObj.preserveAspectRatio);
+        }
+        finally
+        {
+            document.releaseStatePool(statePool);
+            statePool = null;
+        }
     }
 
 
@@ -249,6 +428,14 @@ public class SVGAndroidRenderer
         if (obj instanceof SVG.NotDirectlyRendered)
             return;
 
+        // Skip elements that are entirely outside the visible part of the document
+        if (cullRect != null && obj instanceof SVG.SvgElement && ((SVG.SvgElement) obj).parent != null)
+        {
+            RectF  bounds = cullIndex.getBounds(obj);
+            if (bounds != null && !RectF.intersects(bounds, cullRect))
+                return;
+        }
+
         // Save state
         statePush();
 
@@ -324,6 +511,7 @@ public class SVGAndroidRenderer
         // Restore matrix and clip
         canvas.restore();
         // Restore style state
+        state.recycle();
         state = stateStack.pop();
     }
 
@@ -352,26 +540,13 @@ public class SVGAndroidRenderer
     private void updateStyleForElement(RendererState state, SVG.SvgElementBase obj)
     {
         boolean  isRootSVG = (obj.parent == null);
-        state.style.resetNonInheritingProperties(isRootSVG);
-
-        // Apply the styles defined by style attributes on the element
-        if (obj.baseStyle != null)
-            updateStyle(state, obj.baseStyle);
-
-        // Apply the styles from any CSS files or <style> elements
-        if (document.hasCSSRules())
-        {
-            for (CSSParser.Rule rule: document.getCSSRules())
-            {
-                if (CSSParser.ruleMatch(rule.selector, obj)) {
-                    updateStyle(state, rule.style);
-                }
-            }
-        }
+        if (!state.style.hasResetNonInheritingProperties(isRootSVG))
+            state.editStyle().resetNonInheritingProperties(isRootSVG);
 
-        // Apply the styles defined by the 'style' attribute. They have the highest precedence.
-        if (obj.style != null)
-            updateStyle(state, obj.style);
+        // Apply the style attributes, matching CSS rules and 'style' attribute of the element.
+        // These were merged, in order of precedence, when the document was loaded.
+        if (obj.cascadedStyle != null)
+            updateStyle(state, obj.cascadedStyle);
     }
 
 
@@ -546,7 +721,10 @@ public class SVGAndroidRenderer
             canvas.translate(_x, _y);
         }
 
-        boolean  compositing = pushLayer();
+        if (obj.parent == null)
+            initSpatialIndexing(viewBox);
+
+        boolean  compositing = pushLayer(obj);
 
         // Action the viewport-fill property (if set)
         viewportFill();
@@ -560,6 +738,60 @@ public class SVGAndroidRenderer
     }
 
 
+    /*
+     * Called once the root element has set up the document coordinate system. Starts recording
+     * into the index builder, if there is one. Otherwise, if only a small part of the document
+     * is visible (eg. zoomed in, or drawing one tile), fetch the document's spatial index so
+     * that elements outside the visible area can be skipped.
+     */
+    @SuppressWarnings("deprecation")
+    private void  initSpatialIndexing(SVG.Box viewBox)
+    {
+        if (indexBuilder != null)
+        {
+            canvasToDocument = new Matrix();
+            if (!canvas.getMatrix().invert(canvasToDocument))
+                indexBuilder = null;
+            else
+                indexBuilder.setViewPort(state.viewPort, viewBox);
+            return;
+        }
+
+        if (!directRenderingMode)
+            return;
+
+        Rect  clip = new Rect();
+        if (!canvas.getClipBounds(clip))
+            return;
+        SVG.Box  docBox = getCurrentViewPortInUserUnits();
+        if ((float) clip.width() * clip.height() >= docBox.width * docBox.height * CULL_AREA_FRACTION)
+            return;
+
+        SpatialIndex  index = document.getSpatialIndex();
+        SVG.Box       indexViewPort = index.getViewPort();
+        if (indexViewPort == null)
+            return;
+        // Document coordinates, and percentage lengths, depend on the viewBox. Without one, they
+        // depend on the viewport instead. Either way, the index must have been built with the same.
+        SVG.Box  indexViewBox = index.getViewBox();
+        if (viewBox == null) {
+            if (indexViewBox != null || !sameSize(indexViewPort, state.viewPort))
+                return;
+        } else {
+            if (indexViewBox == null || indexViewBox.minX != viewBox.minX || indexViewBox.minY != viewBox.minY || !sameSize(indexViewBox, viewBox))
+                return;
+        }
+        cullIndex = index;
+        cullRect = new RectF(clip);
+    }
+
+
+    private static boolean  sameSize(SVG.Box a, SVG.Box b)
+    {
+        return a.width == b.width && a.height == b.height;
+    }
+
+
     //==============================================================================
 
 
@@ -578,7 +810,7 @@ public class SVGAndroidRenderer
 
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         renderChildren(obj, true);
 
@@ -601,6 +833,10 @@ public class SVGAndroidRenderer
     @SuppressWarnings("deprecation")
     private void updateParentBoundingBox(SVG.SvgElement obj)
     {
+        if (indexBuilder != null && obj.boundingBox != null && maskDepth == 0 &&
+                (!(obj instanceof SVG.SvgContainer) || obj instanceof SVG.Image || obj instanceof SVG.Text))
+            addDrawnBounds(obj);
+
         if (obj.parent == null)       // skip this if obj is root element
             return;
         if (obj.boundingBox == null)  // empty bbox, possibly as a result of a badly defined element (eg bad use reference etc)
@@ -635,35 +871,89 @@ public class SVGAndroidRenderer
     }
 
 
+    /*
+     * Record the document-space bounds of an element that has just been drawn in the spatial
+     * index builder. The bounds aren't trimmed to the clip, as the clip of the recording render
+     * isn't the clip of later renders.
+     */
+    @SuppressWarnings("deprecation")
+    private void  addDrawnBounds(SVG.SvgElement obj)
+    {
+        SVG.Box  bbox = obj.boundingBox;
+
+        // Allow for the stroke, including miter joins, in user space
+        float  pad = 0f;
+        float  devicePad = 2f;  // anti-aliasing
+        if (state.hasStroke)
+        {
+            pad = state.strokePaint.getStrokeWidth() / 2f;
+            if (state.strokePaint.getStrokeJoin() == Paint.Join.MITER)
+                pad *= Math.max(1f, state.strokePaint.getStrokeMiter());
+            if (state.style.vectorEffect == SVG.Style.VectorEffect.NonScalingStroke) {
+                devicePad += pad;
+                pad = 0f;
+            }
+        }
+        RectF   rect = new RectF(bbox.minX - pad, bbox.minY - pad, bbox.maxX() + pad, bbox.maxY() + pad);
+        Matrix  matrix = canvas.getMatrix();
+        matrix.mapRect(rect);
+        rect.inset(-devicePad, -devicePad);
+
+        canvasToDocument.mapRect(rect);
+        // Markers and pattern content are counted as part of the element that uses them
+        indexBuilder.add((contentOwner != null) ? contentOwner : obj, rect, parentStack, (contentOwner != null) ? obj : null);
+    }
+
+
     //==============================================================================
 
 
-    private boolean  pushLayer()
+    /*
+     * Start an offscreen layer for the element if it needs one for opacity or masking.
+     *
+     * Masks are done entirely with canvas layers, so they work the same when drawing to a
+     * Picture. The content is drawn into a layer. Then popLayer() renders the mask into a
+     * second layer, which is composited onto the first using a luminance-to-alpha colour filter
+     * and DST_IN. When the element's bounding box is already known, the layers are limited to
+     * the mask region.
+     */
+    private boolean  pushLayer(SVG.SvgElement obj)
     {
+        // Masks are skipped in draft quality
+        if (draft && state.style.mask != null)
+            state.editStyle().mask = null;
+
         if (!requiresCompositing())
             return false;
 
-        // Custom version of statePush() that also saves the layer
-        canvas.saveLayerAlpha(null, clamp255(state.style.opacity), Canvas.HAS_ALPHA_LAYER_SAVE_FLAG);
-
-        // Save style state
-        stateStack.push(state);
-        state = (RendererState) state.clone();
-
-        if (state.style.mask != null && state.directRendering) {
+        RectF  layerBounds = null;
+        if (state.style.mask != null)
+        {
             SVG.SvgObject  ref = document.resolveIRI(state.style.mask);
             // Check the we are referencing a mask element
             if (ref == null || !(ref instanceof SVG.Mask)) {
                 // This is an invalid mask reference - disable this object's mask
                 error("Mask reference '%s' not found", state.style.mask);
-                state.style.mask = null;
-                return true;
+                state.editStyle().mask = null;
+                if (state.style.opacity >= 1.0f)
+                    return false;
+            }
+            else if (obj.boundingBox != null && (!(obj instanceof SVG.SvgContainer) || obj instanceof SVG.Image || obj instanceof SVG.Text))
+            {
+                // Containers only know their bounding box once their children have been drawn
+                SVG.Box  region = calculateMaskRegion((SVG.Mask) ref, obj.boundingBox);
+                if (region != null)
+                    layerBounds = new RectF(region.minX, region.minY, region.maxX(), region.maxY());
             }
-            // We now need to replace the canvas with one onto which we draw the content that is getting masked
-            canvasStack.push(canvas);
-            duplicateCanvas();
         }
 
+        // Custom version of statePush() that also saves the layer
+        canvas.saveLayerAlpha(layerBounds, clamp255(state.style.opacity), Canvas.HAS_ALPHA_LAYER_SAVE_FLAG);
+
+        // Save style state
+        stateStack.push(state);
+        state = (RendererState) state.clone();
+
         return true;
     }
 
@@ -671,21 +961,18 @@ public class SVGAndroidRenderer
     private void  popLayer(SVG.SvgElement obj)
     {
         // If this is masked content, apply the mask now
-        if (state.style.mask != null && state.directRendering) {
-            // The masked content has been drawn, now we have to render the mask to a separate canvas
-            SVG.SvgObject  ref = document.resolveIRI(state.style.mask);
-            duplicateCanvas();
-            renderMask((SVG.Mask) ref, obj);
-
-            Bitmap  maskedContent = processMaskBitmaps();
-
-            // Retrieve the real canvas
-            canvas = canvasStack.pop();
-            canvas.save();
-            // Reset the canvas matrix so that we can draw the maskedContent exactly over the top of the root bitmap
-            canvas.setMatrix(new Matrix());
-            canvas.drawBitmap(maskedContent, 0, 0, state.fillPaint);
-            maskedContent.recycle();
+        if (state.style.mask != null)
+        {
+            if (maskPaint == null) {
+                maskPaint = new Paint();
+                maskPaint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(LUMINANCE_TO_ALPHA)));
+                maskPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_IN));
+            }
+            // The mask layer covers the content layer. Black has zero luminance, so anything
+            // outside the mask region, or not drawn by the mask, hides the content.
+            canvas.saveLayer(null, maskPaint, Canvas.ALL_SAVE_FLAG);
+            canvas.drawColor(Color.BLACK);
+            renderMask((SVG.Mask) document.resolveIRI(state.style.mask), obj);
             canvas.restore();
         }
 
@@ -695,69 +982,8 @@ public class SVGAndroidRenderer
 
     private boolean requiresCompositing()
     {
-        if (state.style.mask != null && !state.directRendering)
-            warn("Masks are not supported when using getPicture()");
-
         return (state.style.opacity < 1.0f) ||
-                (state.style.mask != null && state.directRendering);
-    }
-
-
-    @SuppressWarnings("deprecation")
-    private void duplicateCanvas()
-    {
-        try {
-            Bitmap  newBM = Bitmap.createBitmap(canvas.getWidth(), canvas.getHeight(), Bitmap.Config.ARGB_8888);
-            bitmapStack.push(newBM);
-            Canvas  newCanvas = new Canvas(newBM);
-            newCanvas.setMatrix(canvas.getMatrix());
-            canvas = newCanvas;
-        } catch (OutOfMemoryError e) {
-            error("Not enough memory to create temporary bitmaps for mask processing");
-            throw e;
-        }
-    }
-
-
-    private Bitmap  processMaskBitmaps()
-    {
-        // Retrieve the rendered mask
-        Bitmap  mask = bitmapStack.pop();
-        // Retrieve the rendered content to which the mask is to be applied
-        Bitmap  maskedContent = bitmapStack.pop();
-        // Convert the mask bitmap to an alpha channel and multiply it to the content
-        // We will process the bitmaps in a row-wise fashion to save memory.
-        // It doesn't seem to be be significantly slower than doing it all at once.
-        int    w = mask.getWidth();
-        int    h = mask.getHeight();
-        int[]  maskBuf = new int[w];
-        int[]  maskedContentBuf = new int[w];
-        for (int y=0; y<h; y++)
-        {
-            mask.getPixels(maskBuf, 0, w, 0, y, w, 1);
-            maskedContent.getPixels(maskedContentBuf, 0, w, 0, y, w, 1);
-            for (int x=0; x<w; x++)
-            {
-                int  px = maskBuf[x];
-                int  b = px & 0xff;
-                int  g = (px >> 8) & 0xff;
-                int  r = (px >> 16) & 0xff;
-                int  a = (px >> 24) & 0xff;
-                if (a == 0) {
-                    // Shortcut for transparent mask pixels
-                    maskedContentBuf[x] = 0;
-                    continue;
-                }
-                int  maskAlpha = (r * LUMINANCE_TO_ALPHA_RED + g * LUMINANCE_TO_ALPHA_GREEN + b * LUMINANCE_TO_ALPHA_BLUE) * a / (255 << LUMINANCE_FACTOR_SHIFT);
-                int  content = maskedContentBuf[x];
-                int  contentAlpha = (content >> 24) & 0xff;
-                contentAlpha = (contentAlpha * maskAlpha) / 255;
-                maskedContentBuf[x] = (content & 0x00ffffff) | (contentAlpha << 24);
-            }
-            maskedContent.setPixels(maskedContentBuf, 0, w, 0, y, w, 1);
-        }
-        mask.recycle();
-        return maskedContent;
+                (state.style.mask != null);
     }
 
 
@@ -782,7 +1008,7 @@ public class SVGAndroidRenderer
 
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         renderSwitchChild(obj);
 
@@ -963,7 +1189,7 @@ public class SVGAndroidRenderer
 
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         parentPush(obj);
 
@@ -1020,20 +1246,19 @@ public class SVGAndroidRenderer
         if (obj.transform != null)
             canvas.concat(obj.transform);
 
-        Path  path = (new PathConverter(obj.d)).getPath();
-
-        if (obj.boundingBox == null) {
-            obj.boundingBox = calculatePathBounds(path);
-        }
+        Path  path = makePathAndBoundingBox(obj);
         updateParentBoundingBox(obj);
 
+        if (draft && obj.d.estimatedPointCount() > DRAFT_SIMPLIFY_MIN_POINTS)
+            path = makeDraftPath(obj);
+
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill) {
-            path.setFillType(getFillTypeFromState());
+            path = withFillType(path, getFillTypeFromState());
             doFilledPath(obj, path);
         }
         if (state.hasStroke)
@@ -1080,7 +1305,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill)
             doFilledPath(obj, path);
@@ -1119,7 +1344,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill)
             doFilledPath(obj, path);
@@ -1157,7 +1382,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill)
             doFilledPath(obj, path);
@@ -1194,7 +1419,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         doStroke(path);
 
@@ -1249,7 +1474,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill)
             doFilledPath(obj, path);
@@ -1333,7 +1558,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         if (state.hasFill)
             doFilledPath(obj, path);
@@ -1389,7 +1614,7 @@ public class SVGAndroidRenderer
         checkForGradiantsAndPatterns(obj);
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         enumerateTextSpans(obj, new PlainTextDrawer(x + dx, y + dy));
 
@@ -1433,7 +1658,7 @@ public class SVGAndroidRenderer
             }
 
             // Update the current text position
-            x += state.fillPaint.measureText(text);
+            x += measureText(text);
         }
     }
 
@@ -1470,7 +1695,7 @@ public class SVGAndroidRenderer
             SVG.SvgObject child = iter.next();
 
             if (child instanceof SVG.TextSequence) {
-                textprocessor.processText(textXMLSpaceTransform(((SVG.TextSequence) child).text, isFirstChild, !iter.hasNext() /*isLastChild*/));
+                textprocessor.processText(getSequenceText((SVG.TextSequence) child, isFirstChild, !iter.hasNext() /*isLastChild*/));
             } else {
                 processTextChild(child, textprocessor);
             }
@@ -1524,7 +1749,7 @@ public class SVGAndroidRenderer
                     ((PlainTextDrawer) textprocessor).y = y + dy;
                 }
 
-                boolean  compositing = pushLayer();
+                boolean  compositing = pushLayer(tspan);
 
                 enumerateTextSpans(tspan, textprocessor);
 
@@ -1552,10 +1777,9 @@ public class SVGAndroidRenderer
                 SVG.SvgObject  ref = obj.document.resolveIRI(tref.href);
                 if (ref != null && (ref instanceof SVG.TextContainer))
                 {
-                    StringBuilder  str = new StringBuilder();
-                    extractRawText((SVG.TextContainer) ref, str);
+                    String  str = getRawText((SVG.TextContainer) ref);
                     if (str.length() > 0) {
-                        textprocessor.processText(str.toString());
+                        textprocessor.processText(str);
                     }
                 }
                 else
@@ -1591,15 +1815,11 @@ public class SVGAndroidRenderer
             return;
         }
 
-        SVG.Path     pathObj = (SVG.Path) ref;
-        Path         path = (new PathConverter(pathObj.d)).getPath();
-
-        if (pathObj.transform != null)
-            path.transform(pathObj.transform);
+        SVG.Path                        pathObj = (SVG.Path) ref;
+        TextLayoutCache.TextPathLayout  layout = document.getTextLayoutCache().getTextPathLayout(obj, makePathAndBoundingBox(pathObj), pathObj.transform);
+        Path                            path = layout.path;
 
-        PathMeasure  measure = new PathMeasure(path, false);
-
-        float  startOffset = (obj.startOffset != null) ? obj.startOffset.floatValue(this, measure.getLength()) : 0f;
+        float  startOffset = (obj.startOffset != null) ? obj.startOffset.floatValue(this, layout.length) : 0f;
 
         // Handle text alignment
         SVG.Style.TextAnchor  anchor = getAnchorPosition();
@@ -1614,7 +1834,7 @@ public class SVGAndroidRenderer
 
         checkForGradiantsAndPatterns((SVG.SvgElement) obj.getTextRoot());
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         enumerateTextSpans(obj, new PathTextDrawer(path, startOffset, 0f));
 
@@ -1645,7 +1865,7 @@ public class SVGAndroidRenderer
             }
 
             // Update the current text position
-            x += state.fillPaint.measureText(text);
+            x += measureText(text);
         }
     }
 
@@ -1660,11 +1880,28 @@ public class SVGAndroidRenderer
     */
     private float  calculateTextWidth(SVG.TextContainer parentTextObj)
     {
+        // The width only depends on the font the element inherits, since the fonts of
+        // its children are all relative to that.
+        TextLayoutCache  cache = document.getTextLayoutCache();
+        float            width = cache.getAnchorWidth(parentTextObj, state.fillPaint, state.spacePreserve);
+        if (!Float.isNaN(width))
+            return width;
+
         TextWidthCalculator  proc = new TextWidthCalculator();
         enumerateTextSpans(parentTextObj, proc);
+        cache.putAnchorWidth(parentTextObj, state.fillPaint, state.spacePreserve, proc.x);
         return proc.x;
     }
 
+
+    /*
+     * Returns the advance of some text in the current font.
+     */
+    private float  measureText(String text)
+    {
+        return document.getTextLayoutCache().measure(state.fillPaint, text).advance;
+    }
+
     private class  TextWidthCalculator extends TextProcessor
     {
         public float x = 0;
@@ -1672,7 +1909,7 @@ public class SVGAndroidRenderer
         @Override
         public void processText(String text)
         {
-            x += state.fillPaint.measureText(text);
+            x += measureText(text);
         }
     }
 
@@ -1709,9 +1946,7 @@ public class SVGAndroidRenderer
                     return false;
                 }
                 SVG.Path  pathObj = (SVG.Path) ref;
-                Path      path = (new PathConverter(pathObj.d)).getPath();
-                if (pathObj.transform != null)
-                    path.transform(pathObj.transform);
+                Path      path = document.getTextLayoutCache().getTextPathLayout(tpath, makePathAndBoundingBox(pathObj), pathObj.transform).path;
                 RectF     pathBounds = new RectF();
                 path.computeBounds(pathBounds, true);
                 bbox.union(pathBounds);
@@ -1725,10 +1960,8 @@ public class SVGAndroidRenderer
         {
             if (visible())
             {
-                android.graphics.Rect  rect = new android.graphics.Rect();
                 // Get text bounding box (for offset 0)
-                state.fillPaint.getTextBounds(text, 0, text.length(), rect);
-                RectF  textbounds = new RectF(rect);
+                RectF  textbounds = new RectF(document.getTextLayoutCache().getBounds(state.fillPaint, text));
                 // Adjust bounds to offset at text position
                 textbounds.offset(x, y);
                 // Merge with accumulated bounding box
@@ -1736,13 +1969,31 @@ public class SVGAndroidRenderer
             }
 
             // Update the current text position
-            x += state.fillPaint.measureText(text);
+            x += measureText(text);
+        }
+    }
+
+
+    /*
+    * Returns the raw text of a TextContainer. Used by <tref> handler code.
+    */
+    private String  getRawText(SVG.TextContainer obj)
+    {
+        TextLayoutCache  cache = document.getTextLayoutCache();
+        String           text = cache.getText(obj, state.spacePreserve);
+        if (text == null)
+        {
+            StringBuilder  str = new StringBuilder();
+            extractRawText(obj, str);
+            text = str.toString();
+            cache.putText(obj, state.spacePreserve, text);
         }
+        return text;
     }
 
 
     /*
-    * Extract the raw text from a TextContainer. Used by <tref> handler code.
+    * Extract the raw text from a TextContainer.
     */
     private void  extractRawText(SVG.TextContainer parent, StringBuilder str)
     {
@@ -1756,7 +2007,7 @@ public class SVGAndroidRenderer
             if (child instanceof SVG.TextContainer) {
                 extractRawText((SVG.TextContainer) child, str);
             } else if (child instanceof SVG.TextSequence) {
-                str.append(textXMLSpaceTransform(((SVG.TextSequence) child).text, isFirstChild, !iter.hasNext() /*isLastChild*/));
+                str.append(getSequenceText((SVG.TextSequence) child, isFirstChild, !iter.hasNext() /*isLastChild*/));
             }
             isFirstChild = false;
         }
@@ -1766,6 +2017,24 @@ public class SVGAndroidRenderer
     //==============================================================================
 
 
+    /*
+     * Returns the text of a text node after the xml:space rules have been applied.
+     * A node is always the first or last child of its parent, or not, so the result
+     * only depends on the xml:space setting.
+     */
+    private String  getSequenceText(SVG.TextSequence obj, boolean isFirstChild, boolean isLastChild)
+    {
+        TextLayoutCache  cache = document.getTextLayoutCache();
+        String           text = cache.getText(obj, state.spacePreserve);
+        if (text == null)
+        {
+            text = textXMLSpaceTransform(obj.text, isFirstChild, isLastChild);
+            cache.putText(obj, state.spacePreserve, text);
+        }
+        return text;
+    }
+
+
     // Process the text string according to the xml:space rules
     private String  textXMLSpaceTransform(String text, boolean isFirstChild, boolean isLastChild)
     {
@@ -1813,7 +2082,7 @@ public class SVGAndroidRenderer
             state.viewBox = obj.viewBox;
         }
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         renderChildren(obj, true);
 
@@ -1841,20 +2110,10 @@ public class SVGAndroidRenderer
         // "If attribute 'preserveAspectRatio' is not specified, then the effect is as if a value of xMidYMid meet were specified."
         PreserveAspectRatio  positioning = (obj.preserveAspectRatio != null) ? obj.preserveAspectRatio : PreserveAspectRatio.LETTERBOX;
 
-        // Locate the referenced image
-        Bitmap  image = checkForImageDataURL(obj.href);
-        if (image == null)
-        {
-            SVGExternalFileResolver  fileResolver = document.getFileResolver();
-            if (fileResolver == null)
-                return;
-
-            image = fileResolver.resolveImage(obj.href);
-        }
-        if (image == null) {
-            error("Could not locate image '%s'", obj.href);
+        SVGExternalFileResolver  fileResolver = document.getFileResolver();
+        boolean                  isDataURL = obj.href.startsWith("data:");
+        if (!isDataURL && fileResolver == null)
             return;
-        }
 
         updateStyleForElement(state, obj);
 
@@ -1873,6 +2132,20 @@ public class SVGAndroidRenderer
         float  _h = obj.height.floatValueX(this);
         state.viewPort = new SVG.Box(_x, _y, _w, _h);
 
+        // Locate the referenced image. We only do this once we know it is going to be drawn,
+        // so that the resolver can decode it at a size appropriate for the viewport.
+        Bitmap  image = isDataURL ? checkForImageDataURL(obj.href) : null;
+        if (image == null && fileResolver != null)
+        {
+            RectF  deviceViewPort = state.viewPort.toRectF();
+            canvas.getMatrix().mapRect(deviceViewPort);
+            image = fileResolver.resolveImage(obj.href, (int) Math.ceil(deviceViewPort.width()), (int) Math.ceil(deviceViewPort.height()));
+        }
+        if (image == null) {
+            error("Could not locate image '%s'", obj.href);
+            return;
+        }
+
         if (!state.style.overflow) {
             setClipRect(state.viewPort.minX, state.viewPort.minY, state.viewPort.width, state.viewPort.height);
         }
@@ -1884,7 +2157,7 @@ public class SVGAndroidRenderer
 
         checkForClipPath(obj);
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(obj);
 
         viewportFill();
 
@@ -1899,13 +2172,24 @@ public class SVGAndroidRenderer
 
 
     /*
-    * Check for an decode an image encoded in a data URL.
-    * We don't handle all permutations of data URLs. Only base64 ones.
-    */
+     * Decode an image embedded in a data: URL. Only base64 data URLs are handled. The result
+     * (including failure) is remembered by the document, so each image is only decoded once.
+     */
     private Bitmap  checkForImageDataURL(String url)
     {
         if (!url.startsWith("data:"))
             return null;
+        if (document.hasDataImage(url))
+            return document.getDataImage(url);
+
+        Bitmap  image = decodeImageDataURL(url);
+        document.putDataImage(url, image);
+        return image;
+    }
+
+
+    private static Bitmap  decodeImageDataURL(String url)
+    {
         if (url.length() < 14)
             return null;
 
@@ -1947,7 +2231,7 @@ public class SVGAndroidRenderer
     * Note values in the two Box parameters whould be in user units. If you pass values
     * that are in "objectBoundingBox" space, you will get incorrect results.
     */
-    private Matrix calculateViewBoxTransform(SVG.Box viewPort, SVG.Box viewBox, PreserveAspectRatio positioning)
+    static Matrix calculateViewBoxTransform(SVG.Box viewPort, SVG.Box viewBox, PreserveAspectRatio positioning)
     {
         Matrix m = new Matrix();
 
@@ -2031,23 +2315,23 @@ public class SVGAndroidRenderer
         // Now update each style property we know about
         if (isSpecified(style, SVG.SPECIFIED_COLOR))
         {
-            state.style.color = style.color;
+            state.editStyle().color = style.color;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_OPACITY))
         {
-            state.style.opacity = style.opacity;
+            state.editStyle().opacity = style.opacity;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_FILL))
         {
-            state.style.fill = style.fill;
+            state.editStyle().fill = style.fill;
             state.hasFill = (style.fill != null);
         }
 
         if (isSpecified(style, SVG.SPECIFIED_FILL_OPACITY))
         {
-            state.style.fillOpacity = style.fillOpacity;
+            state.editStyle().fillOpacity = style.fillOpacity;
         }
 
         // If either fill or its opacity has changed, update the fillPaint
@@ -2058,19 +2342,19 @@ public class SVGAndroidRenderer
 
         if (isSpecified(style, SVG.SPECIFIED_FILL_RULE))
         {
-            state.style.fillRule = style.fillRule;
+            state.editStyle().fillRule = style.fillRule;
         }
 
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE))
         {
-            state.style.stroke = style.stroke;
+            state.editStyle().stroke = style.stroke;
             state.hasStroke = (style.stroke != null);
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_OPACITY))
         {
-            state.style.strokeOpacity = style.strokeOpacity;
+            state.editStyle().strokeOpacity = style.strokeOpacity;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE | SVG.SPECIFIED_STROKE_OPACITY | SVG.SPECIFIED_COLOR | SVG.SPECIFIED_OPACITY))
@@ -2080,28 +2364,28 @@ public class SVGAndroidRenderer
 
         if (isSpecified(style, SVG.SPECIFIED_VECTOR_EFFECT))
         {
-            state.style.vectorEffect = style.vectorEffect;
+            state.editStyle().vectorEffect = style.vectorEffect;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_WIDTH))
         {
-            state.style.strokeWidth = style.strokeWidth;
-            state.strokePaint.setStrokeWidth(state.style.strokeWidth.floatValue(this));
+            state.editStyle().strokeWidth = style.strokeWidth;
+            state.editStrokePaint().setStrokeWidth(state.style.strokeWidth.floatValue(this));
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_LINECAP))
         {
-            state.style.strokeLineCap = style.strokeLineCap;
+            state.editStyle().strokeLineCap = style.strokeLineCap;
             switch (style.strokeLineCap)
             {
                 case Butt:
-                    state.strokePaint.setStrokeCap(Paint.Cap.BUTT);
+                    state.editStrokePaint().setStrokeCap(Paint.Cap.BUTT);
                     break;
                 case Round:
-                    state.strokePaint.setStrokeCap(Paint.Cap.ROUND);
+                    state.editStrokePaint().setStrokeCap(Paint.Cap.ROUND);
                     break;
                 case Square:
-                    state.strokePaint.setStrokeCap(Paint.Cap.SQUARE);
+                    state.editStrokePaint().setStrokeCap(Paint.Cap.SQUARE);
                     break;
                 default:
                     break;
@@ -2110,17 +2394,17 @@ public class SVGAndroidRenderer
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_LINEJOIN))
         {
-            state.style.strokeLineJoin = style.strokeLineJoin;
+            state.editStyle().strokeLineJoin = style.strokeLineJoin;
             switch (style.strokeLineJoin)
             {
                 case Miter:
-                    state.strokePaint.setStrokeJoin(Paint.Join.MITER);
+                    state.editStrokePaint().setStrokeJoin(Paint.Join.MITER);
                     break;
                 case Round:
-                    state.strokePaint.setStrokeJoin(Paint.Join.ROUND);
+                    state.editStrokePaint().setStrokeJoin(Paint.Join.ROUND);
                     break;
                 case Bevel:
-                    state.strokePaint.setStrokeJoin(Paint.Join.BEVEL);
+                    state.editStrokePaint().setStrokeJoin(Paint.Join.BEVEL);
                     break;
                 default:
                     break;
@@ -2129,18 +2413,18 @@ public class SVGAndroidRenderer
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_MITERLIMIT))
         {
-            state.style.strokeMiterLimit = style.strokeMiterLimit;
-            state.strokePaint.setStrokeMiter(style.strokeMiterLimit);
+            state.editStyle().strokeMiterLimit = style.strokeMiterLimit;
+            state.editStrokePaint().setStrokeMiter(style.strokeMiterLimit);
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_DASHARRAY))
         {
-            state.style.strokeDashArray = style.strokeDashArray;
+            state.editStyle().strokeDashArray = style.strokeDashArray;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_DASHOFFSET))
         {
-            state.style.strokeDashOffset = style.strokeDashOffset;
+            state.editStyle().strokeDashOffset = style.strokeDashOffset;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STROKE_DASHARRAY | SVG.SPECIFIED_STROKE_DASHOFFSET))
@@ -2148,7 +2432,7 @@ public class SVGAndroidRenderer
             // Either the dash array or dash offset has changed.
             if (state.style.strokeDashArray == null)
             {
-                state.strokePaint.setPathEffect(null);
+                state.editStrokePaint().setPathEffect(null);
             }
             else
             {
@@ -2163,7 +2447,7 @@ public class SVGAndroidRenderer
                     intervalSum += intervals[i];
                 }
                 if (intervalSum == 0f) {
-                    state.strokePaint.setPathEffect(null);
+                    state.editStrokePaint().setPathEffect(null);
                 } else {
                     float offset = state.style.strokeDashOffset.floatValue(this);
                     if (offset < 0) {
@@ -2171,7 +2455,7 @@ public class SVGAndroidRenderer
                         // Just in case we will convert it.
                         offset = intervalSum + (offset % intervalSum);
                     }
-                    state.strokePaint.setPathEffect( new DashPathEffect(intervals, offset) );
+                    state.editStrokePaint().setPathEffect( new DashPathEffect(intervals, offset) );
                 }
             }
         }
@@ -2179,30 +2463,30 @@ public class SVGAndroidRenderer
         if (isSpecified(style, SVG.SPECIFIED_FONT_SIZE))
         {
             float  currentFontSize = getCurrentFontSize();
-            state.style.fontSize = style.fontSize;
-            state.fillPaint.setTextSize(style.fontSize.floatValue(this, currentFontSize));
-            state.strokePaint.setTextSize(style.fontSize.floatValue(this, currentFontSize));
+            state.editStyle().fontSize = style.fontSize;
+            state.editFillPaint().setTextSize(style.fontSize.floatValue(this, currentFontSize));
+            state.editStrokePaint().setTextSize(style.fontSize.floatValue(this, currentFontSize));
         }
 
         if (isSpecified(style, SVG.SPECIFIED_FONT_FAMILY))
         {
-            state.style.fontFamily = style.fontFamily;
+            state.editStyle().fontFamily = style.fontFamily;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_FONT_WEIGHT))
         {
             // Font weights are 100,200...900
             if (style.fontWeight == SVG.Style.FONT_WEIGHT_LIGHTER && state.style.fontWeight > 100)
-                state.style.fontWeight -= 100;
+                state.editStyle().fontWeight -= 100;
             else if (style.fontWeight == SVG.Style.FONT_WEIGHT_BOLDER && state.style.fontWeight < 900)
-                state.style.fontWeight += 100;
+                state.editStyle().fontWeight += 100;
             else
-                state.style.fontWeight = style.fontWeight;
+                state.editStyle().fontWeight = style.fontWeight;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_FONT_STYLE))
         {
-            state.style.fontStyle = style.fontStyle;
+            state.editStyle().fontStyle = style.fontStyle;
         }
 
         // If typeface, weight or style has changed, update the paint typeface
@@ -2227,101 +2511,101 @@ public class SVGAndroidRenderer
                 // Fall back to default font
                 font = checkGenericFont(DEFAULT_FONT_FAMILY, state.style.fontWeight, state.style.fontStyle);
             }
-            state.fillPaint.setTypeface(font);
-            state.strokePaint.setTypeface(font);
+            state.editFillPaint().setTypeface(font);
+            state.editStrokePaint().setTypeface(font);
         }
 
         if (isSpecified(style, SVG.SPECIFIED_TEXT_DECORATION))
         {
-            state.style.textDecoration = style.textDecoration;
-            state.fillPaint.setStrikeThruText(style.textDecoration == SVG.Style.TextDecoration.LineThrough);
-            state.fillPaint.setUnderlineText(style.textDecoration == SVG.Style.TextDecoration.Underline);
+            state.editStyle().textDecoration = style.textDecoration;
+            state.editFillPaint().setStrikeThruText(style.textDecoration == SVG.Style.TextDecoration.LineThrough);
+            state.editFillPaint().setUnderlineText(style.textDecoration == SVG.Style.TextDecoration.Underline);
             // There is a bug in Android <= JELLY_BEAN (16) that causes stroked underlines to
             // not be drawn properly. See bug (39511). This has been fixed in JELLY_BEAN_MR1 (4.2)
             if (android.os.Build.VERSION.SDK_INT >= 17) {
-                state.strokePaint.setStrikeThruText(style.textDecoration == SVG.Style.TextDecoration.LineThrough);
-                state.strokePaint.setUnderlineText(style.textDecoration == SVG.Style.TextDecoration.Underline);
+                state.editStrokePaint().setStrikeThruText(style.textDecoration == SVG.Style.TextDecoration.LineThrough);
+                state.editStrokePaint().setUnderlineText(style.textDecoration == SVG.Style.TextDecoration.Underline);
             }
         }
 
         if (isSpecified(style, SVG.SPECIFIED_DIRECTION))
         {
-            state.style.direction = style.direction;
+            state.editStyle().direction = style.direction;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_TEXT_ANCHOR))
         {
-            state.style.textAnchor = style.textAnchor;
+            state.editStyle().textAnchor = style.textAnchor;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_OVERFLOW))
         {
-            state.style.overflow = style.overflow;
+            state.editStyle().overflow = style.overflow;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_MARKER_START))
         {
-            state.style.markerStart = style.markerStart;
+            state.editStyle().markerStart = style.markerStart;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_MARKER_MID))
         {
-            state.style.markerMid = style.markerMid;
+            state.editStyle().markerMid = style.markerMid;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_MARKER_END))
         {
-            state.style.markerEnd = style.markerEnd;
+            state.editStyle().markerEnd = style.markerEnd;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_DISPLAY))
         {
-            state.style.display = style.display;
+            state.editStyle().display = style.display;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_VISIBILITY))
         {
-            state.style.visibility = style.visibility;
+            state.editStyle().visibility = style.visibility;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_CLIP))
         {
-            state.style.clip = style.clip;
+            state.editStyle().clip = style.clip;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_CLIP_PATH))
         {
-            state.style.clipPath = style.clipPath;
+            state.editStyle().clipPath = style.clipPath;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_CLIP_RULE))
         {
-            state.style.clipRule = style.clipRule;
+            state.editStyle().clipRule = style.clipRule;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_MASK))
         {
-            state.style.mask = style.mask;
+            state.editStyle().mask = style.mask;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STOP_COLOR))
         {
-            state.style.stopColor = style.stopColor;
+            state.editStyle().stopColor = style.stopColor;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_STOP_OPACITY))
         {
-            state.style.stopOpacity = style.stopOpacity;
+            state.editStyle().stopOpacity = style.stopOpacity;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_VIEWPORT_FILL))
         {
-            state.style.viewportFill = style.viewportFill;
+            state.editStyle().viewportFill = style.viewportFill;
         }
 
         if (isSpecified(style, SVG.SPECIFIED_VIEWPORT_FILL_OPACITY))
         {
-            state.style.viewportFillOpacity = style.viewportFillOpacity;
+            state.editStyle().viewportFillOpacity = style.viewportFillOpacity;
         }
 
     }
@@ -2340,9 +2624,9 @@ public class SVGAndroidRenderer
         }
         col = clamp255(paintOpacity) << 24 | col;
         if (isFill)
-            state.fillPaint.setColor(col);
+            state.editFillPaint().setColor(col);
         else
-            state.strokePaint.setColor(col);
+            state.editStrokePaint().setColor(col);
     }
 
 
@@ -2427,6 +2711,9 @@ public class SVGAndroidRenderer
             col = clamp255(state.style.viewportFillOpacity) << 24 | col;
 
         canvas.drawColor(col);
+
+        if (indexBuilder != null)
+            indexBuilder.setFillsViewPort();
     }
 
 
@@ -2854,6 +3141,8 @@ public class SVGAndroidRenderer
 
     private void  renderMarkers(SVG.GraphicsElement obj)
     {
+        if (draft)
+            return;
         if (state.style.markerStart == null && state.style.markerMid == null && state.style.markerEnd == null)
             return;
 
@@ -2901,7 +3190,12 @@ public class SVGAndroidRenderer
             return;
 
         // We don't want the markers to inherit themselves as markers, otherwise we get infinite recursion. 
-        state.style.markerStart = state.style.markerMid = state.style.markerEnd = null;
+        SVG.Style  markerStyle = state.editStyle();
+        markerStyle.markerStart = markerStyle.markerMid = markerStyle.markerEnd = null;
+
+        SVG.SvgElement  savedOwner = contentOwner;
+        if (contentOwner == null)
+            contentOwner = obj;
 
         if (_markerStart != null)
             renderMarker(_markerStart, markers.get(0));
@@ -2915,6 +3209,8 @@ public class SVGAndroidRenderer
 
         if (_markerEnd != null)
             renderMarker(_markerEnd, markers.get(markerCount-1));
+
+        contentOwner = savedOwner;
     }
 
 
@@ -3039,7 +3335,7 @@ public class SVGAndroidRenderer
             }
         }
 
-        boolean  compositing = pushLayer();
+        boolean  compositing = pushLayer(marker);
 
         renderChildren(marker, false);
 
@@ -3136,6 +3432,10 @@ public class SVGAndroidRenderer
             }
             return;
         }
+        if (draft && ref instanceof SVG.GradientElement) {
+            setAverageGradientColour(isFill, (SVG.GradientElement) ref);
+            return;
+        }
         if (ref instanceof SVG.SvgLinearGradient)
             makeLinearGradiant(isFill, boundingBox, (SVG.SvgLinearGradient) ref);
         if (ref instanceof SVG.SvgRadialGradient)
@@ -3148,11 +3448,10 @@ public class SVGAndroidRenderer
 
     private void  makeLinearGradiant(boolean isFill, SVG.Box boundingBox, SVG.SvgLinearGradient gradient)
     {
-        if (gradient.href != null)
-            fillInChainedGradientFields(gradient, gradient.href);
+        ShaderCache.GradientStops  stops = getGradientStops(gradient);
 
         boolean  userUnits = (gradient.gradientUnitsAreUser != null && gradient.gradientUnitsAreUser);
-        Paint    paint = isFill ? state.fillPaint : state.strokePaint;
+        Paint    paint = isFill ? state.editFillPaint() : state.editStrokePaint();
 
         float  _x1,_y1,_x2,_y2;
         if (userUnits)
@@ -3171,29 +3470,8 @@ public class SVGAndroidRenderer
             _y2 = (gradient.y2 != null) ? gradient.y2.floatValue(this, 1f): 0f;
         }
 
-        // Push the state
-        statePush();
-
-        // Set the style for the gradient (inherits from its own ancestors, not from callee's state)
-        state = findInheritFromAncestorState(gradient);
-
-        // Calculate the gradient transform matrix
-        Matrix m = new Matrix();
-        if (!userUnits)
-        {
-            m.preTranslate(boundingBox.minX, boundingBox.minY);
-            m.preScale(boundingBox.width, boundingBox.height);
-        }
-        if (gradient.gradientTransform != null)
-        {
-            m.preConcat(gradient.gradientTransform);
-        }
-
-        // Create the colour and position arrays for the shader
-        int    numStops = gradient.children.size();
-        if (numStops == 0) {
+        if (stops == null) {
             // If there are no stops defined, we are to treat it as paint = 'none' (see spec 13.2.4)
-            statePop();
             if (isFill)
                 state.hasFill = false;
             else
@@ -3201,67 +3479,33 @@ public class SVGAndroidRenderer
             return;
         }
 
-        int[]  colours = new int[numStops];
-        float[]  positions = new float[numStops];
-        int  i = 0;
-        float  lastOffset = -1;
-        for (SVG.SvgObject child: gradient.children)
-        {
-            SVG.Stop stop = (SVG.Stop) child;
-            if (i == 0 || stop.offset >= lastOffset) {
-                positions[i] = stop.offset;
-                lastOffset = stop.offset;
-            } else {
-                // Each offset must be equal or greater than the last one.
-                // If it doesn't we need to replace it with the previous value.
-                positions[i] = lastOffset;
-            }
-
-            statePush();
-
-            updateStyleForElement(state, stop);
-            SVG.Colour col = (SVG.Colour) state.style.stopColor;
-            if (col == null)
-                col = SVG.Colour.BLACK;
-            colours[i] = clamp255(state.style.stopOpacity) << 24 | col.colour;
-            i++;
-
-            statePop();
-        }
-
         // If gradient vector is zero length, we instead fill with last stop colour
+        int  numStops = stops.colours.length;
         if ((_x1 == _x2 && _y1 == _y2) || numStops == 1) {
-            statePop();
-            paint.setColor(colours[numStops - 1]);
+            paint.setColor(stops.colours[numStops - 1]);
             return;
         }
 
-        // Convert spreadMethod->TileMode
-        TileMode  tileMode = TileMode.CLAMP;
-        if (gradient.spreadMethod != null)
+        ShaderCache.Key  key = getGradientShaderKey(isFill, gradient, userUnits, boundingBox, _x1, _y1, _x2, _y2);
+        Shader  shader = (key != null) ? document.getShaderCache().getGradientShader(key) : null;
+        if (shader == null)
         {
-            if (gradient.spreadMethod == SVG.GradientSpread.reflect)
-                tileMode = TileMode.MIRROR;
-            else if (gradient.spreadMethod == SVG.GradientSpread.repeat)
-                tileMode = TileMode.REPEAT;
+            // Create shader instance
+            shader = new LinearGradient(_x1, _y1, _x2, _y2, stops.colours, stops.positions, getGradientTileMode(gradient));
+            shader.setLocalMatrix(getGradientMatrix(gradient, userUnits, boundingBox));
+            if (key != null)
+                document.getShaderCache().putGradientShader(key, shader);
         }
-
-        statePop();
-
-        // Create shader instance
-        LinearGradient  gr = new LinearGradient(_x1, _y1, _x2, _y2, colours, positions, tileMode);
-        gr.setLocalMatrix(m);
-        paint.setShader(gr);
-    }
+        paint.setShader(shader);
+    }
 
 
     private void makeRadialGradiant(boolean isFill, SVG.Box boundingBox, SVG.SvgRadialGradient gradient)
     {
-        if (gradient.href != null)
-            fillInChainedGradientFields(gradient, gradient.href);
+        ShaderCache.GradientStops  stops = getGradientStops(gradient);
 
         boolean  userUnits = (gradient.gradientUnitsAreUser != null && gradient.gradientUnitsAreUser);
-        Paint    paint = isFill ? state.fillPaint : state.strokePaint;
+        Paint    paint = isFill ? state.editFillPaint() : state.editStrokePaint();
 
         float  _cx,_cy,_r;
         if (userUnits)
@@ -3280,29 +3524,45 @@ public class SVGAndroidRenderer
         // fx and fy are ignored because Android RadialGradient doesn't support a
         // 'focus' point that is different from cx,cy.
 
-        // Push the state
-        statePush();
-
-        // Set the style for the gradient (inherits from its own ancestors, not from callee's state)
-        state = findInheritFromAncestorState(gradient);
+        if (stops == null) {
+            // If there are no stops defined, we are to treat it as paint = 'none' (see spec 13.2.4)
+            if (isFill)
+                state.hasFill = false;
+            else
+                state.hasStroke = false;
+            return;
+        }
 
-        // Calculate the gradient transform matrix
-        Matrix m = new Matrix();
-        if (!userUnits)
-        {
-            m.preTranslate(boundingBox.minX, boundingBox.minY);
-            m.preScale(boundingBox.width, boundingBox.height);
+        // If gradient radius is zero, we instead fill with last stop colour
+        int  numStops = stops.colours.length;
+        if (_r == 0 || numStops == 1) {
+            paint.setColor(stops.colours[numStops - 1]);
+            return;
         }
-        if (gradient.gradientTransform != null)
+
+        ShaderCache.Key  key = getGradientShaderKey(isFill, gradient, userUnits, boundingBox, _cx, _cy, _r);
+        Shader  shader = (key != null) ? document.getShaderCache().getGradientShader(key) : null;
+        if (shader == null)
         {
-            m.preConcat(gradient.gradientTransform);
+            // Create shader instance
+            shader = new RadialGradient(_cx, _cy, _r, stops.colours, stops.positions, getGradientTileMode(gradient));
+            shader.setLocalMatrix(getGradientMatrix(gradient, userUnits, boundingBox));
+            if (key != null)
+                document.getShaderCache().putGradientShader(key, shader);
         }
+        paint.setShader(shader);
+    }
 
-        // Create the colour and position arrays for the shader
-        int    numStops = gradient.children.size();
-        if (numStops == 0) {
-            // If there are no stops defined, we are to treat it as paint = 'none' (see spec 13.2.4)
-            statePop();
+
+    /*
+    * Used instead of a gradient in draft quality. Fill with the average colour of the
+    * gradient along its vector, allowing for the stops being interpolated linearly.
+    */
+    private void  setAverageGradientColour(boolean isFill, SVG.GradientElement gradient)
+    {
+        ShaderCache.GradientStops  stops = getGradientStops(gradient);
+        if (stops == null) {
+            // No stops means paint = 'none' (see spec 13.2.4)
             if (isFill)
                 state.hasFill = false;
             else
@@ -3310,42 +3570,133 @@ public class SVGAndroidRenderer
             return;
         }
 
-        int[]  colours = new int[numStops];
-        float[]  positions = new float[numStops];
-        int  i = 0;
-        float  lastOffset = -1;
-        for (SVG.SvgObject child: gradient.children)
+        int[]    colours = stops.colours;
+        float[]  positions = stops.positions;
+        int      last = colours.length - 1;
+        float[]  sum = new float[4];
+
+        // Solid colour before the first stop and after the last
+        addWeightedColour(sum, colours[0], positions[0]);
+        addWeightedColour(sum, colours[last], 1f - positions[last]);
+        for (int i = 0; i < last; i++)
         {
-            SVG.Stop stop = (SVG.Stop) child;
-            if (i == 0 || stop.offset >= lastOffset) {
-                positions[i] = stop.offset;
-                lastOffset = stop.offset;
-            } else {
-                // Each offset must be equal or greater than the last one.
-                // If it doesn't we need to replace it with the previous value.
-                positions[i] = lastOffset;
-            }
+            float  weight = (positions[i + 1] - positions[i]) / 2;
+            addWeightedColour(sum, colours[i], weight);
+            addWeightedColour(sum, colours[i + 1], weight);
+        }
 
-            statePush();
+        Paint  paint = isFill ? state.editFillPaint() : state.editStrokePaint();
+        paint.setShader(null);
+        paint.setColor(Color.argb(Math.round(sum[0]), Math.round(sum[1]), Math.round(sum[2]), Math.round(sum[3])));
+    }
 
-            updateStyleForElement(state, stop);
-            SVG.Colour col = (SVG.Colour) state.style.stopColor;
-            if (col == null)
-                col = SVG.Colour.BLACK;
-            colours[i] = clamp255(state.style.stopOpacity) << 24 | col.colour;
-            i++;
 
-            statePop();
+    private static void  addWeightedColour(float[] sum, int colour, float weight)
+    {
+        sum[0] += Color.alpha(colour) * weight;
+        sum[1] += Color.red(colour) * weight;
+        sum[2] += Color.green(colour) * weight;
+        sum[3] += Color.blue(colour) * weight;
+    }
+
+
+    /*
+    * Get the colours and offsets of a gradient's stops, resolving any href chain first.
+    * They only depend on the document, so they are cached. Returns null if there are no stops.
+    */
+    private ShaderCache.GradientStops  getGradientStops(SVG.GradientElement gradient)
+    {
+        ShaderCache                cache = document.getShaderCache();
+        ShaderCache.GradientStops  stops = cache.getStops(gradient);
+        if (stops == null)
+        {
+            if (gradient.href != null)
+                fillInChainedGradientFields(gradient, gradient.href);
+
+            // Create the colour and position arrays for the shader
+            stops = new ShaderCache.GradientStops(gradient.children.size());
+            if (stops.colours.length > 0)
+            {
+                // Push the state
+                statePush();
+
+                // Set the style for the gradient (inherits from its own ancestors, not from callee's state)
+                state = findInheritFromAncestorState(gradient);
+
+                int  i = 0;
+                float  lastOffset = -1;
+                for (SVG.SvgObject child: gradient.children)
+                {
+                    SVG.Stop stop = (SVG.Stop) child;
+                    if (i == 0 || stop.offset >= lastOffset) {
+                        stops.positions[i] = stop.offset;
+                        lastOffset = stop.offset;
+                    } else {
+                        // Each offset must be equal or greater than the last one.
+                        // If it doesn't we need to replace it with the previous value.
+                        stops.positions[i] = lastOffset;
+                    }
+
+                    statePush();
+
+                    updateStyleForElement(state, stop);
+                    SVG.Colour col = (SVG.Colour) state.style.stopColor;
+                    if (col == null)
+                        col = SVG.Colour.BLACK;
+                    stops.colours[i] = clamp255(state.style.stopOpacity) << 24 | col.colour;
+                    i++;
+
+                    statePop();
+                }
+
+                statePop();
+            }
+            cache.putStops(gradient, stops);
         }
+        return (stops.colours.length > 0) ? stops : null;
+    }
 
-        // If gradient radius is zero, we instead fill with last stop colour
-        if (_r == 0 || numStops == 1) {
-            statePop();
-            paint.setColor(colours[numStops - 1]);
-            return;
+
+    /*
+    * Returns the shader cache key for a gradient with the given geometry, or null if the
+    * shader shouldn't be cached. Non-scaling strokes temporarily change the shader's matrix
+    * (see doStroke()), so they can't use a shared shader.
+    */
+    private ShaderCache.Key  getGradientShaderKey(boolean isFill, SVG.GradientElement gradient, boolean userUnits, SVG.Box boundingBox, float... geometry)
+    {
+        if (!isFill && state.style.vectorEffect == SVG.Style.VectorEffect.NonScalingStroke)
+            return null;
+        if (userUnits)
+            return new ShaderCache.Key(gradient, geometry);
+        float[]  values = Arrays.copyOf(geometry, geometry.length + 4);
+        values[geometry.length] = boundingBox.minX;
+        values[geometry.length + 1] = boundingBox.minY;
+        values[geometry.length + 2] = boundingBox.width;
+        values[geometry.length + 3] = boundingBox.height;
+        return new ShaderCache.Key(gradient, values);
+    }
+
+
+    // Calculate the gradient transform matrix
+    private Matrix  getGradientMatrix(SVG.GradientElement gradient, boolean userUnits, SVG.Box boundingBox)
+    {
+        Matrix m = new Matrix();
+        if (!userUnits)
+        {
+            m.preTranslate(boundingBox.minX, boundingBox.minY);
+            m.preScale(boundingBox.width, boundingBox.height);
+        }
+        if (gradient.gradientTransform != null)
+        {
+            m.preConcat(gradient.gradientTransform);
         }
+        return m;
+    }
+
 
-        // Convert spreadMethod->TileMode
+    // Convert spreadMethod->TileMode
+    private TileMode  getGradientTileMode(SVG.GradientElement gradient)
+    {
         TileMode  tileMode = TileMode.CLAMP;
         if (gradient.spreadMethod != null)
         {
@@ -3354,13 +3705,7 @@ public class SVGAndroidRenderer
             else if (gradient.spreadMethod == SVG.GradientSpread.repeat)
                 tileMode = TileMode.REPEAT;
         }
-
-        statePop();
-
-        // Create shader instance
-        RadialGradient  gr = new RadialGradient(_cx, _cy, _r, colours, positions, tileMode);
-        gr.setLocalMatrix(m);
-        paint.setShader(gr);
+        return tileMode;
     }
 
 
@@ -3447,13 +3792,13 @@ public class SVGAndroidRenderer
         {
             if (isSpecified(ref.baseStyle, SVG.SPECIFIED_SOLID_COLOR))
             {
-                state.style.fill = ref.baseStyle.solidColor;
+                state.editStyle().fill = ref.baseStyle.solidColor;
                 state.hasFill = (ref.baseStyle.solidColor != null);
             }
 
             if (isSpecified(ref.baseStyle, SVG.SPECIFIED_SOLID_OPACITY))
             {
-                state.style.fillOpacity = ref.baseStyle.solidOpacity;
+                state.editStyle().fillOpacity = ref.baseStyle.solidOpacity;
             }
 
             // If either fill or its opacity has changed, update the fillPaint
@@ -3466,13 +3811,13 @@ public class SVGAndroidRenderer
         {
             if (isSpecified(ref.baseStyle, SVG.SPECIFIED_SOLID_COLOR))
             {
-                state.style.stroke = ref.baseStyle.solidColor;
+                state.editStyle().stroke = ref.baseStyle.solidColor;
                 state.hasStroke = (ref.baseStyle.solidColor != null);
             }
 
             if (isSpecified(ref.baseStyle, SVG.SPECIFIED_SOLID_OPACITY))
             {
-                state.style.strokeOpacity = ref.baseStyle.solidOpacity;
+                state.editStyle().strokeOpacity = ref.baseStyle.solidOpacity;
             }
 
             // If either fill or its opacity has changed, update the fillPaint
@@ -3601,6 +3946,7 @@ public class SVGAndroidRenderer
         // Restore matrix and clip
         canvas.restore();
         // Restore style state
+        state.recycle();
         state = stateStack.pop();
     }
 
@@ -3632,11 +3978,7 @@ public class SVGAndroidRenderer
         if (obj.transform != null)
             combinedPathMatrix.preConcat(obj.transform);
 
-        Path  path = (new PathConverter(obj.d)).getPath();
-
-        if (obj.boundingBox == null) {
-            obj.boundingBox = calculatePathBounds(path);
-        }
+        Path  path = makePathAndBoundingBox(obj);
         checkForClipPath(obj);
 
         //path.setFillType(getClipRuleFromState());
@@ -3778,7 +4120,7 @@ public class SVGAndroidRenderer
             }
 
             // Update the current text position
-            x += state.fillPaint.measureText(text);
+            x += measureText(text);
         }
     }
 
@@ -3788,8 +4130,180 @@ public class SVGAndroidRenderer
     //==============================================================================
 
 
+    /*
+     * Returns the Path previously built for this element, if it is in the document's
+     * path cache. The bounding box is set at the same time the path is first built.
+     */
+    private Path  getCachedPath(SVG.SvgElement obj)
+    {
+        if (obj.boundingBox == null)
+            return null;
+        return document.getPathCache().get(obj, dpi);
+    }
+
+
+    /*
+     * Cached Paths are shared between renders (and possibly threads), so they are never
+     * modified. If a different fill type is needed, a copy is made for this draw only.
+     */
+    private static Path  withFillType(Path path, Path.FillType fillType)
+    {
+        if (path.getFillType() == fillType)
+            return path;
+        Path  copy = new Path(path);
+        copy.setFillType(fillType);
+        return copy;
+    }
+
+
+    /*
+     * Lengths relative to the viewport or the font size may change from render to render,
+     * so shapes that use them can't be cached.
+     */
+    private static boolean  isCacheable(SVG.Length length)
+    {
+        return length == null || (length.unit != SVG.Unit.percent && length.unit != SVG.Unit.em && length.unit != SVG.Unit.ex);
+    }
+
+
+    private Path  makePathAndBoundingBox(SVG.Path obj)
+    {
+        Path  path = getCachedPath(obj);
+        if (path != null)
+            return path;
+
+        path = (new PathConverter(obj.d)).getPath();
+        if (obj.boundingBox == null) {
+            obj.boundingBox = calculatePathBounds(path);
+        }
+        document.getPathCache().put(obj, path, dpi, obj.d.estimatedPointCount());
+        return path;
+    }
+
+
+    /*
+     * Build a simplified version of a path for draft quality rendering. Points closer than
+     * DRAFT_SIMPLIFY_TOLERANCE device pixels to the last point kept are dropped. The result is
+     * not cached, as it depends on the current scale.
+     */
+    private Path  makeDraftPath(SVG.Path obj)
+    {
+        float[]  m = new float[9];
+        canvas.getMatrix().getValues(m);
+        float  scale = (float) Math.sqrt(Math.abs(m[Matrix.MSCALE_X] * m[Matrix.MSCALE_Y] - m[Matrix.MSKEW_X] * m[Matrix.MSKEW_Y]));
+        if (scale == 0f)
+            scale = 1f;
+
+        SVG.PathDefinition  simplified = new SVG.PathDefinition();
+        PathDecimator       decimator = new PathDecimator(simplified, DRAFT_SIMPLIFY_TOLERANCE / scale);
+        obj.d.enumeratePath(decimator);
+        decimator.finish();
+        return (new PathConverter(simplified)).getPath();
+    }
+
+
+    /*
+     * Distance-based decimation. Passes a path through to 'target', dropping segments that
+     * end within 'tolerance' of the end of the last segment passed through. The end of the
+     * last dropped segment of a subpath is always kept, so open subpaths still end where they should.
+     */
+    private static class  PathDecimator implements SVG.PathInterface
+    {
+        private SVG.PathInterface  target;
+        private float              toleranceSquared;
+        private float              lastX, lastY;
+        private float              startX, startY;    // Start of the current subpath
+        private boolean            pending = false;   // True if segments have been dropped since lastX,lastY
+        private float              pendingX, pendingY;
+
+        public PathDecimator(SVG.PathInterface target, float tolerance)
+        {
+            this.target = target;
+            this.toleranceSquared = tolerance * tolerance;
+        }
+
+        private boolean  drop(float x, float y)
+        {
+            float  dx = x - lastX;
+            float  dy = y - lastY;
+            if (dx * dx + dy * dy < toleranceSquared) {
+                pending = true;
+                pendingX = x;
+                pendingY = y;
+                return true;
+            }
+            pending = false;
+            lastX = x;
+            lastY = y;
+            return false;
+        }
+
+        public void  finish()
+        {
+            if (pending) {
+                target.lineTo(pendingX, pendingY);
+                pending = false;
+            }
+        }
+
+        @Override
+        public void  moveTo(float x, float y)
+        {
+            finish();
+            target.moveTo(x, y);
+            lastX = startX = x;
+            lastY = startY = y;
+        }
+
+        @Override
+        public void  lineTo(float x, float y)
+        {
+            if (!drop(x, y))
+                target.lineTo(x, y);
+        }
+
+        @Override
+        public void  cubicTo(float x1, float y1, float x2, float y2, float x3, float y3)
+        {
+            if (!drop(x3, y3))
+                target.cubicTo(x1, y1, x2, y2, x3, y3);
+        }
+
+        @Override
+        public void  quadTo(float x1, float y1, float x2, float y2)
+        {
+            if (!drop(x2, y2))
+                target.quadTo(x1, y1, x2, y2);
+        }
+
+        @Override
+        public void  arcTo(float rx, float ry, float xAxisRotation, boolean largeArcFlag, boolean sweepFlag, float x, float y)
+        {
+            if (!drop(x, y))
+                target.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+        }
+
+        @Override
+        public void  close()
+        {
+            // The close segment leads back to the start, so dropped points at the end don't matter
+            pending = false;
+            target.close();
+            lastX = startX;
+            lastY = startY;
+        }
+    }
+
+
     private Path  makePathAndBoundingBox(SVG.Line obj)
     {
+        boolean  cacheable = isCacheable(obj.x1) && isCacheable(obj.y1) && isCacheable(obj.x2) && isCacheable(obj.y2);
+        if (cacheable) {
+            Path  cached = getCachedPath(obj);
+            if (cached != null)
+                return cached;
+        }
+
         float x1 = (obj.x1 == null) ? 0 : obj.x1.floatValueX(this);
         float y1 = (obj.y1 == null) ? 0 : obj.y1.floatValueY(this);
         float x2 = (obj.x2 == null) ? 0 : obj.x2.floatValueX(this);
@@ -3802,12 +4316,22 @@ public class SVGAndroidRenderer
         Path  p = new Path();
         p.moveTo(x1, y1);
         p.lineTo(x2, y2);
+        if (cacheable)
+            document.getPathCache().put(obj, p, dpi, 2);
         return p;
     }
 
 
     private Path  makePathAndBoundingBox(SVG.Rect obj)
     {
+        boolean  cacheable = isCacheable(obj.x) && isCacheable(obj.y) && isCacheable(obj.width) && isCacheable(obj.height)
+                             && isCacheable(obj.rx) && isCacheable(obj.ry);
+        if (cacheable) {
+            Path  cached = getCachedPath(obj);
+            if (cached != null)
+                return cached;
+        }
+
         float x, y, w, h, rx, ry;
 
         if (obj.rx == null && obj.ry == null) {
@@ -3864,12 +4388,21 @@ public class SVGAndroidRenderer
             p.lineTo(x, y+ry);
         }
         p.close();
+        if (cacheable)
+            document.getPathCache().put(obj, p, dpi, 17);
         return p;
     }
 
 
     private Path makePathAndBoundingBox(SVG.Circle obj)
     {
+        boolean  cacheable = isCacheable(obj.cx) && isCacheable(obj.cy) && isCacheable(obj.r);
+        if (cacheable) {
+            Path  cached = getCachedPath(obj);
+            if (cached != null)
+                return cached;
+        }
+
         float  cx = (obj.cx != null) ? obj.cx.floatValueX(this) : 0f;
         float  cy = (obj.cy != null) ? obj.cy.floatValueY(this) : 0f;
         float  r = obj.r.floatValue(this);
@@ -3892,12 +4425,21 @@ public class SVGAndroidRenderer
         p.cubicTo(cx-cp, bottom, left, cy+cp, left, cy);
         p.cubicTo(left, cy-cp, cx-cp, top, cx, top);
         p.close();
+        if (cacheable)
+            document.getPathCache().put(obj, p, dpi, 13);
         return p;
     }
 
 
     private Path makePathAndBoundingBox(SVG.Ellipse obj)
     {
+        boolean  cacheable = isCacheable(obj.cx) && isCacheable(obj.cy) && isCacheable(obj.rx) && isCacheable(obj.ry);
+        if (cacheable) {
+            Path  cached = getCachedPath(obj);
+            if (cached != null)
+                return cached;
+        }
+
         float  cx = (obj.cx != null) ? obj.cx.floatValueX(this) : 0f;
         float  cy = (obj.cy != null) ? obj.cy.floatValueY(this) : 0f;
         float  rx = obj.rx.floatValueX(this);
@@ -3922,27 +4464,33 @@ public class SVGAndroidRenderer
         p.cubicTo(cx-cpx, bottom, left, cy+cpy, left, cy);
         p.cubicTo(left, cy-cpy, cx-cpx, top, cx, top);
         p.close();
+        if (cacheable)
+            document.getPathCache().put(obj, p, dpi, 13);
         return p;
     }
 
 
     private Path makePathAndBoundingBox(SVG.PolyLine obj)
     {
-        Path  path = new Path();
+        Path  path = getCachedPath(obj);
 
-        path.moveTo(obj.points[0], obj.points[1]);
-        for (int i=2; i<obj.points.length; i+=2) {
-            path.lineTo(obj.points[i], obj.points[i+1]);
-        }
-        if (obj instanceof SVG.Polygon)
-            path.close();
+        if (path == null)
+        {
+            path = new Path();
+            path.moveTo(obj.points[0], obj.points[1]);
+            for (int i=2; i<obj.points.length; i+=2) {
+                path.lineTo(obj.points[i], obj.points[i+1]);
+            }
+            if (obj instanceof SVG.Polygon)
+                path.close();
 
-        if (obj.boundingBox == null) {
-            obj.boundingBox = calculatePathBounds(path);
+            if (obj.boundingBox == null) {
+                obj.boundingBox = calculatePathBounds(path);
+            }
+            document.getPathCache().put(obj, path, dpi, obj.points.length / 2 + 1);
         }
 
-        path.setFillType(getClipRuleFromState());
-        return path;
+        return withFillType(path, getClipRuleFromState());
     }
 
 
@@ -3989,6 +4537,10 @@ public class SVGAndroidRenderer
         // "If attribute 'preserveAspectRatio' is not specified, then the effect is as if a value of xMidYMid meet were specified."
         PreserveAspectRatio  positioning = (pattern.preserveAspectRatio != null) ? pattern.preserveAspectRatio : PreserveAspectRatio.LETTERBOX;
 
+        // When drawing to a bitmap, try to use a cached tile
+        if (directRenderingMode && fillWithPatternShader(obj, path, pattern, x, y, w, h, positioning))
+            return;
+
         // Push the state
         statePush();
         // Set path as the clip region
@@ -3997,7 +4549,7 @@ public class SVGAndroidRenderer
         // Set the style for the pattern (inherits from its own ancestors, not from callee's state)
         RendererState  baseState = new RendererState();
         updateStyle(baseState, SVG.Style.getDefaultStyle());
-        baseState.style.overflow = false;    // By default patterns do not overflow
+        baseState.editStyle().overflow = false;    // By default patterns do not overflow
         state = findInheritFromAncestorState(pattern, baseState);
 
         // The bounds of the area we need to cover with pattern to ensure that our shape is filled
@@ -4061,12 +4613,16 @@ public class SVGAndroidRenderer
                     }
                 }
 
-                boolean  compositing = pushLayer();
+                boolean  compositing = pushLayer(pattern);
 
                 // Render the pattern
+                SVG.SvgElement  savedOwner = contentOwner;
+                if (contentOwner == null)
+                    contentOwner = obj;
                 for (SVG.SvgObject child: pattern.children) {
                     render(child);
                 }
+                contentOwner = savedOwner;
 
                 if (compositing)
                     popLayer(pattern);
@@ -4080,6 +4636,130 @@ public class SVGAndroidRenderer
     }
 
 
+    /*
+    * Fill a path with a pattern using a repeating BitmapShader of one pattern tile, rendered at
+    * the current device scale. The shaders are cached, so the tile is only rendered again if
+    * the pattern is drawn at a different size or scale. Returns false if the pattern can't be
+    * drawn this way, for example because its content overflows the tile. The caller then
+    * renders the tiles one by one.
+    */
+    @SuppressWarnings("deprecation")
+    private boolean  fillWithPatternShader(SVG.SvgElement obj, Path path, SVG.Pattern pattern, float x, float y, float w, float h, PreserveAspectRatio positioning)
+    {
+        // Work out the size of a tile on the device
+        Matrix  tileToDevice = canvas.getMatrix();
+        if (pattern.patternTransform != null)
+            tileToDevice.preConcat(pattern.patternTransform);
+        float[]  m = new float[9];
+        tileToDevice.getValues(m);
+        float  scaleX = (float) Math.sqrt(m[Matrix.MSCALE_X] * m[Matrix.MSCALE_X] + m[Matrix.MSKEW_Y] * m[Matrix.MSKEW_Y]);
+        float  scaleY = (float) Math.sqrt(m[Matrix.MSKEW_X] * m[Matrix.MSKEW_X] + m[Matrix.MSCALE_Y] * m[Matrix.MSCALE_Y]);
+        int    bitmapWidth = (int) Math.ceil(w * scaleX);
+        int    bitmapHeight = (int) Math.ceil(h * scaleY);
+        if (bitmapWidth <= 0 || bitmapHeight <= 0 || bitmapWidth > MAX_PATTERN_TILE_SIZE || bitmapHeight > MAX_PATTERN_TILE_SIZE)
+            return false;
+
+        // With objectBoundingBox content units, the content also depends on the bounding box size
+        boolean  patternContentUnitsAreUser = (pattern.patternContentUnitsAreUser == null || pattern.patternContentUnitsAreUser);
+        float    contentScaleX = 1f, contentScaleY = 1f;
+        if (pattern.viewBox == null && !patternContentUnitsAreUser) {
+            contentScaleX = obj.boundingBox.width;
+            contentScaleY = obj.boundingBox.height;
+        }
+
+        ShaderCache      cache = document.getShaderCache();
+        ShaderCache.Key  key = new ShaderCache.Key(pattern, w, h, bitmapWidth, bitmapHeight, contentScaleX, contentScaleY);
+        Shader           shader = cache.getPatternShader(key);
+        if (shader == null)
+        {
+            Bitmap  tile = renderPatternTile(obj, pattern, w, h, bitmapWidth, bitmapHeight, contentScaleX, contentScaleY, positioning);
+            if (tile == null)
+                return false;
+            shader = new BitmapShader(tile, TileMode.REPEAT, TileMode.REPEAT);
+            cache.putPatternShader(key, shader, tile.getRowBytes() * tile.getHeight());
+        }
+
+        if (patternPaint == null)
+            patternPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+        // Map the tile bitmap onto the first tile, then fill the path with it.
+        // The canvas is transformed rather than the shader, because the shader is shared.
+        canvas.save();
+        canvas.clipPath(path);
+        if (pattern.patternTransform != null)
+            canvas.concat(pattern.patternTransform);
+        canvas.translate(x, y);
+        canvas.scale(w / bitmapWidth, h / bitmapHeight);
+        patternPaint.setShader(shader);
+        canvas.drawPaint(patternPaint);
+        patternPaint.setShader(null);
+        canvas.restore();
+        return true;
+    }
+
+
+    /*
+    * Render a single tile of a pattern into a new bitmap. Returns null if the pattern
+    * content is allowed to overflow the tile, or there isn't enough memory.
+    */
+    private Bitmap  renderPatternTile(SVG.SvgElement obj, SVG.Pattern pattern, float w, float h, int bitmapWidth, int bitmapHeight,
+                                      float contentScaleX, float contentScaleY, PreserveAspectRatio positioning)
+    {
+        // Push the state
+        statePush();
+
+        // Set the style for the pattern (inherits from its own ancestors, not from callee's state)
+        RendererState  baseState = new RendererState();
+        updateStyle(baseState, SVG.Style.getDefaultStyle());
+        baseState.editStyle().overflow = false;    // By default patterns do not overflow
+        state = findInheritFromAncestorState(pattern, baseState);
+
+        if (state.style.overflow) {
+            statePop();
+            return null;
+        }
+
+        Bitmap  tile;
+        try {
+            tile = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            statePop();
+            return null;
+        }
+
+        // Render to the tile instead. It must not be culled, because the tile will be reused.
+        Canvas  mainCanvas = canvas;
+        RectF   mainCullRect = cullRect;
+        canvas = new Canvas(tile);
+        cullRect = null;
+
+        canvas.scale(bitmapWidth / w, bitmapHeight / h);
+        if (pattern.viewBox != null)
+            canvas.concat(calculateViewBoxTransform(new SVG.Box(0, 0, w, h), pattern.viewBox, positioning));
+        else
+            canvas.scale(contentScaleX, contentScaleY);
+
+        boolean  compositing = pushLayer(pattern);
+
+        // Render the pattern
+        parentPush(pattern);
+        for (SVG.SvgObject child: pattern.children) {
+            render(child);
+        }
+        parentPop();
+
+        if (compositing)
+            popLayer(pattern);
+
+        canvas = mainCanvas;
+        cullRect = mainCullRect;
+
+        // Pop the state
+        statePop();
+        return tile;
+    }
+
+
     /*
     * Any unspecified fields in this pattern can be 'borrowed' from another
     * pattern specified by the href attribute.
@@ -4138,46 +4818,65 @@ public class SVGAndroidRenderer
 
 
     /*
-    * Render the contents of a mask element.
+    * Calculate the mask region, in the user space of the masked element.
+    * Returns null if the region is empty, or depends on a bounding box that is not known.
     */
-    private void  renderMask(SVG.Mask mask, SVG.SvgElement obj)
+    private SVG.Box  calculateMaskRegion(SVG.Mask mask, SVG.Box boundingBox)
     {
-        debug("Mask render");
-
         boolean      maskUnitsAreUser = (mask.maskUnitsAreUser != null && mask.maskUnitsAreUser);
         float        x, y, w, h;
 
         if (maskUnitsAreUser)
         {
-            w = (mask.width != null) ? mask.width.floatValueX(this): obj.boundingBox.width;
-            h = (mask.height != null) ? mask.height.floatValueY(this): obj.boundingBox.height;
-            x = (mask.x != null) ? mask.x.floatValueX(this): (float)(obj.boundingBox.minX - 0.1 * obj.boundingBox.width);
-            y = (mask.y != null) ? mask.y.floatValueY(this): (float)(obj.boundingBox.minY - 0.1 * obj.boundingBox.height);
+            if (boundingBox == null && (mask.x == null || mask.y == null || mask.width == null || mask.height == null))
+                return null;
+            w = (mask.width != null) ? mask.width.floatValueX(this): boundingBox.width;
+            h = (mask.height != null) ? mask.height.floatValueY(this): boundingBox.height;
+            x = (mask.x != null) ? mask.x.floatValueX(this): (float)(boundingBox.minX - 0.1 * boundingBox.width);
+            y = (mask.y != null) ? mask.y.floatValueY(this): (float)(boundingBox.minY - 0.1 * boundingBox.height);
         }
         else
         {
+            if (boundingBox == null)
+                return null;
             // Convert objectBoundingBox space to user space
             x = (mask.x != null) ? mask.x.floatValue(this, 1f): -0.1f;
             y = (mask.y != null) ? mask.y.floatValue(this, 1f): -0.1f;
             w = (mask.width != null) ? mask.width.floatValue(this, 1f): 1.2f;
             h = (mask.height != null) ? mask.height.floatValue(this, 1f): 1.2f;
-            x = obj.boundingBox.minX + x * obj.boundingBox.width;
-            y = obj.boundingBox.minY + y * obj.boundingBox.height;
-            w *= obj.boundingBox.width;
-            h *= obj.boundingBox.height;
+            x = boundingBox.minX + x * boundingBox.width;
+            y = boundingBox.minY + y * boundingBox.height;
+            w *= boundingBox.width;
+            h *= boundingBox.height;
         }
-        if (w == 0 || h == 0)
+        if (w <= 0 || h <= 0)
+            return null;
+        return new SVG.Box(x, y, w, h);
+    }
+
+
+    /*
+    * Render the contents of a mask element, clipped to the mask region.
+    */
+    private void  renderMask(SVG.Mask mask, SVG.SvgElement obj)
+    {
+        debug("Mask render");
+
+        SVG.Box  region = calculateMaskRegion(mask, obj.boundingBox);
+        if (region == null)
             return;
 
         // Push the state
         statePush();
 
+        setClipRect(region.minX, region.minY, region.width, region.height);
+
         state = findInheritFromAncestorState(mask);
         // Set the style for the pattern (inherits from its own ancestors, not from callee's state)
         // The 'opacity', 'filter' and 'display' properties do not apply to the 'mask' element" (sect 14.4)
         // Next line is not actually needed since we aren't calling pushLayer() here. Kept for future reference.
-        state.style.opacity = 1f;
-        //state.style.filter = null;
+        state.editStyle().opacity = 1f;
+        //state.editStyle().filter = null;
 
         boolean  maskContentUnitsAreUser = (mask.maskContentUnitsAreUser == null || mask.maskContentUnitsAreUser);
         if (!maskContentUnitsAreUser) {
@@ -4186,7 +4885,9 @@ public class SVGAndroidRenderer
         }
 
         // Render the mask
+        maskDepth++;
         renderChildren(mask, false);
+        maskDepth--;
 
         // Pop the state
         statePop();
@@ -0,0 +1,648 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.xml.sax.SAXException;
+
+import android.graphics.Matrix;
+
+import static com.grottworkshop.gwsbaselibrary.graphics.svg.SVGBinaryWriter.*;
+
+
+/**
+ * Builds an SVG document from the binary form written by {@link SVGBinaryWriter}.
+ * <p>
+ * The reader works directly from a ByteBuffer, so the file can be memory mapped. Nothing
+ * is parsed: strings, styles and elements are rebuilt from the buffer, and path and
+ * polyline coordinates are bulk copied. The cascaded styles are loaded as they were
+ * written, so the document is ready to render without any CSS processing.
+ *
+ * @hide
+ */
+public class SVGBinaryReader
+{
+    private static final SVG.Unit[]                        UNITS = SVG.Unit.values();
+    private static final SVG.GradientSpread[]              SPREADS = SVG.GradientSpread.values();
+    private static final SVG.Style.FillRule[]              FILL_RULES = SVG.Style.FillRule.values();
+    private static final SVG.Style.LineCaps[]              LINE_CAPS = SVG.Style.LineCaps.values();
+    private static final SVG.Style.LineJoin[]              LINE_JOINS = SVG.Style.LineJoin.values();
+    private static final SVG.Style.FontStyle[]             FONT_STYLES = SVG.Style.FontStyle.values();
+    private static final SVG.Style.TextDecoration[]        TEXT_DECORATIONS = SVG.Style.TextDecoration.values();
+    private static final SVG.Style.TextDirection[]         TEXT_DIRECTIONS = SVG.Style.TextDirection.values();
+    private static final SVG.Style.TextAnchor[]            TEXT_ANCHORS = SVG.Style.TextAnchor.values();
+    private static final SVG.Style.VectorEffect[]          VECTOR_EFFECTS = SVG.Style.VectorEffect.values();
+    private static final PreserveAspectRatio.Alignment[]   ALIGNMENTS = PreserveAspectRatio.Alignment.values();
+    private static final PreserveAspectRatio.Scale[]       SCALES = PreserveAspectRatio.Scale.values();
+
+    private ByteBuffer   buf;
+    private SVG          document;
+    private String[]     strings;
+    private SVG.Style[]  styles;
+
+
+    private SVGBinaryReader(ByteBuffer buffer)
+    {
+        // Work on our own view of the buffer so the caller's position is untouched
+        this.buf = buffer.duplicate();
+        this.buf.order(ByteOrder.BIG_ENDIAN);
+    }
+
+
+    /**
+     * Read a document from the given buffer, starting at its current position.
+     *
+     * @param buffer the buffer containing the binary document
+     * @return the document
+     * @throws SVGParseException if the buffer does not contain a valid binary document
+     */
+    public static SVG  read(ByteBuffer buffer) throws SVGParseException
+    {
+        try
+        {
+            return new SVGBinaryReader(buffer).readDocument();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new SVGParseException("Binary SVG is truncated", e);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new SVGParseException("Binary SVG is corrupt", e);
+        }
+        catch (ClassCastException e)
+        {
+            throw new SVGParseException("Binary SVG is corrupt", e);
+        }
+        catch (SAXException e)
+        {
+            throw new SVGParseException("Binary SVG is corrupt: "+e.getMessage(), e);
+        }
+    }
+
+
+    private SVG  readDocument() throws SVGParseException, SAXException
+    {
+        if (buf.getInt() != MAGIC)
+            throw new SVGParseException("Not a binary SVG file");
+        short  version = buf.getShort();
+        if (version != FORMAT_VERSION)
+            throw new SVGParseException("Unsupported binary SVG version: "+version);
+
+        document = new SVG();
+
+        strings = new String[readCount(4, false)];
+        for (int i=0; i<strings.length; i++)
+        {
+            char[]  chars = new char[readCount(2, false)];
+            buf.asCharBuffer().get(chars);
+            buf.position(buf.position() + chars.length * 2);
+            strings[i] = new String(chars);
+        }
+
+        styles = new SVG.Style[readCount(8, false)];
+        for (int i=0; i<styles.length; i++)
+            styles[i] = readStyle();
+
+        String  title = readString();
+        String  desc = readString();
+        if (title != null)
+            document.setTitle(title);
+        if (desc != null)
+            document.setDesc(desc);
+
+        SVG.SvgObject  root = readObject(null);
+        if (!(root instanceof SVG.Svg))
+            throw new SVGParseException("Binary SVG has no root <svg> element");
+        document.setRootElement((SVG.Svg) root);
+        document.setCascadeComputed();
+        return document;
+    }
+
+
+    //=========================================================================
+    // Elements
+
+
+    private SVG.SvgObject  readObject(SVG.SvgContainer parent) throws SVGParseException, SAXException
+    {
+        byte  tag = buf.get();
+
+        if (tag == TAG_TEXT_SEQUENCE)
+        {
+            SVG.TextSequence  seq = new SVG.TextSequence(readString());
+            seq.document = document;
+            seq.parent = parent;
+            return seq;
+        }
+
+        SVG.SvgElementBase  elem = createElement(tag);
+        elem.document = document;
+        elem.parent = parent;
+        readElementBase(elem);
+        if (elem instanceof SVG.SvgConditional)
+            readConditional((SVG.SvgConditional) elem);
+        if (elem instanceof SVG.TextChild)
+            setTextRoot((SVG.TextChild) elem, parent);
+
+        // Type specific attributes, in the same order as SVGBinaryWriter.writeObject()
+        if (elem instanceof SVG.Svg)
+        {
+            SVG.Svg  svg = (SVG.Svg) elem;
+            readViewBoxContainer(svg);
+            svg.x = readLength();
+            svg.y = readLength();
+            svg.width = readLength();
+            svg.height = readLength();
+            svg.version = readString();
+        }
+        else if (elem instanceof SVG.Use)
+        {
+            SVG.Use  use = (SVG.Use) elem;
+            use.transform = readMatrix();
+            use.href = readString();
+            use.x = readLength();
+            use.y = readLength();
+            use.width = readLength();
+            use.height = readLength();
+        }
+        else if (elem instanceof SVG.ClipPath)
+        {
+            ((SVG.ClipPath) elem).transform = readMatrix();
+            ((SVG.ClipPath) elem).clipPathUnitsAreUser = readBoolean();
+        }
+        else if (elem instanceof SVG.Group)
+        {
+            ((SVG.Group) elem).transform = readMatrix();
+        }
+        else if (elem instanceof SVG.Path)
+        {
+            SVG.Path  path = (SVG.Path) elem;
+            path.transform = readMatrix();
+            path.d = readPathDefinition();
+            path.pathLength = readFloat();
+        }
+        else if (elem instanceof SVG.Rect)
+        {
+            SVG.Rect  rect = (SVG.Rect) elem;
+            rect.transform = readMatrix();
+            rect.x = readLength();
+            rect.y = readLength();
+            rect.width = readLength();
+            rect.height = readLength();
+            rect.rx = readLength();
+            rect.ry = readLength();
+        }
+        else if (elem instanceof SVG.Circle)
+        {
+            SVG.Circle  circle = (SVG.Circle) elem;
+            circle.transform = readMatrix();
+            circle.cx = readLength();
+            circle.cy = readLength();
+            circle.r = readLength();
+        }
+        else if (elem instanceof SVG.Ellipse)
+        {
+            SVG.Ellipse  ellipse = (SVG.Ellipse) elem;
+            ellipse.transform = readMatrix();
+            ellipse.cx = readLength();
+            ellipse.cy = readLength();
+            ellipse.rx = readLength();
+            ellipse.ry = readLength();
+        }
+        else if (elem instanceof SVG.Line)
+        {
+            SVG.Line  line = (SVG.Line) elem;
+            line.transform = readMatrix();
+            line.x1 = readLength();
+            line.y1 = readLength();
+            line.x2 = readLength();
+            line.y2 = readLength();
+        }
+        else if (elem instanceof SVG.PolyLine)
+        {
+            SVG.PolyLine  polyline = (SVG.PolyLine) elem;
+            polyline.transform = readMatrix();
+            polyline.points = readFloatArray();
+        }
+        else if (elem instanceof SVG.Text)
+        {
+            ((SVG.Text) elem).transform = readMatrix();
+            readTextPosition((SVG.TextPositionedContainer) elem);
+        }
+        else if (elem instanceof SVG.TSpan)
+        {
+            readTextPosition((SVG.TextPositionedContainer) elem);
+        }
+        else if (elem instanceof SVG.TRef)
+        {
+            ((SVG.TRef) elem).href = readString();
+        }
+        else if (elem instanceof SVG.TextPath)
+        {
+            ((SVG.TextPath) elem).href = readString();
+            ((SVG.TextPath) elem).startOffset = readLength();
+        }
+        else if (elem instanceof SVG.Marker)
+        {
+            SVG.Marker  marker = (SVG.Marker) elem;
+            readViewBoxContainer(marker);
+            marker.markerUnitsAreUser = (buf.get() != 0);
+            marker.refX = readLength();
+            marker.refY = readLength();
+            marker.markerWidth = readLength();
+            marker.markerHeight = readLength();
+            marker.orient = readFloat();
+        }
+        else if (elem instanceof SVG.Pattern)
+        {
+            SVG.Pattern  pattern = (SVG.Pattern) elem;
+            readViewBoxContainer(pattern);
+            pattern.patternUnitsAreUser = readBoolean();
+            pattern.patternContentUnitsAreUser = readBoolean();
+            pattern.patternTransform = readMatrix();
+            pattern.x = readLength();
+            pattern.y = readLength();
+            pattern.width = readLength();
+            pattern.height = readLength();
+            pattern.href = readString();
+        }
+        else if (elem instanceof SVG.SvgViewBoxContainer)
+        {
+            readViewBoxContainer((SVG.SvgViewBoxContainer) elem);
+        }
+        else if (elem instanceof SVG.Image)
+        {
+            SVG.Image  image = (SVG.Image) elem;
+            image.preserveAspectRatio = readPreserveAspectRatio();
+            image.href = readString();
+            image.x = readLength();
+            image.y = readLength();
+            image.width = readLength();
+            image.height = readLength();
+            image.transform = readMatrix();
+        }
+        else if (elem instanceof SVG.Mask)
+        {
+            SVG.Mask  mask = (SVG.Mask) elem;
+            mask.maskUnitsAreUser = readBoolean();
+            mask.maskContentUnitsAreUser = readBoolean();
+            mask.x = readLength();
+            mask.y = readLength();
+            mask.width = readLength();
+            mask.height = readLength();
+        }
+        else if (elem instanceof SVG.GradientElement)
+        {
+            SVG.GradientElement  grad = (SVG.GradientElement) elem;
+            grad.gradientUnitsAreUser = readBoolean();
+            grad.gradientTransform = readMatrix();
+            grad.spreadMethod = readEnum(SPREADS);
+            grad.href = readString();
+            if (grad instanceof SVG.SvgLinearGradient)
+            {
+                SVG.SvgLinearGradient  linear = (SVG.SvgLinearGradient) grad;
+                linear.x1 = readLength();
+                linear.y1 = readLength();
+                linear.x2 = readLength();
+                linear.y2 = readLength();
+            }
+            else
+            {
+                SVG.SvgRadialGradient  radial = (SVG.SvgRadialGradient) grad;
+                radial.cx = readLength();
+                radial.cy = readLength();
+                radial.r = readLength();
+                radial.fx = readLength();
+                radial.fy = readLength();
+            }
+        }
+        else if (elem instanceof SVG.Stop)
+        {
+            ((SVG.Stop) elem).offset = readFloat();
+        }
+        else if (elem instanceof SVG.SolidColor)
+        {
+            ((SVG.SolidColor) elem).solidColor = readLength();
+            ((SVG.SolidColor) elem).solidOpacity = readLength();
+        }
+
+        // Children
+        if (elem instanceof SVG.SvgContainer)
+        {
+            SVG.SvgContainer  container = (SVG.SvgContainer) elem;
+            int  numChildren = readCount(1, false);
+            for (int i=0; i<numChildren; i++)
+                container.addChild(readObject(container));
+        }
+        return elem;
+    }
+
+
+    private static SVG.SvgElementBase  createElement(byte tag) throws SVGParseException
+    {
+        switch (tag)
+        {
+            case TAG_SVG:             return new SVG.Svg();
+            case TAG_GROUP:           return new SVG.Group();
+            case TAG_DEFS:            return new SVG.Defs();
+            case TAG_USE:             return new SVG.Use();
+            case TAG_PATH:            return new SVG.Path();
+            case TAG_RECT:            return new SVG.Rect();
+            case TAG_CIRCLE:          return new SVG.Circle();
+            case TAG_ELLIPSE:         return new SVG.Ellipse();
+            case TAG_LINE:            return new SVG.Line();
+            case TAG_POLYLINE:        return new SVG.PolyLine();
+            case TAG_POLYGON:         return new SVG.Polygon();
+            case TAG_TEXT:            return new SVG.Text();
+            case TAG_TSPAN:           return new SVG.TSpan();
+            case TAG_TREF:            return new SVG.TRef();
+            case TAG_TEXTPATH:        return new SVG.TextPath();
+            case TAG_SWITCH:          return new SVG.Switch();
+            case TAG_SYMBOL:          return new SVG.Symbol();
+            case TAG_MARKER:          return new SVG.Marker();
+            case TAG_LINEAR_GRADIENT: return new SVG.SvgLinearGradient();
+            case TAG_RADIAL_GRADIENT: return new SVG.SvgRadialGradient();
+            case TAG_STOP:            return new SVG.Stop();
+            case TAG_CLIPPATH:        return new SVG.ClipPath();
+            case TAG_PATTERN:         return new SVG.Pattern();
+            case TAG_IMAGE:           return new SVG.Image();
+            case TAG_VIEW:            return new SVG.View();
+            case TAG_MASK:            return new SVG.Mask();
+            case TAG_SOLID_COLOR:     return new SVG.SolidColor();
+            default:
+                throw new SVGParseException("Binary SVG contains an unknown element type: "+tag);
+        }
+    }
+
+
+    // Same rule as SVGParser uses when it creates text child elements
+    private static void  setTextRoot(SVG.TextChild obj, SVG.SvgContainer parent)
+    {
+        if (parent instanceof SVG.TextRoot)
+            obj.setTextRoot((SVG.TextRoot) parent);
+        else if (parent instanceof SVG.TextChild)
+            obj.setTextRoot(((SVG.TextChild) parent).getTextRoot());
+    }
+
+
+    private void  readElementBase(SVG.SvgElementBase elem) throws SVGParseException
+    {
+        elem.id = readString();
+        elem.spacePreserve = readBoolean();
+        elem.classNames = readStringList();
+        elem.baseStyle = readStyleRef();
+        elem.style = readStyleRef();
+        elem.cascadedStyle = readStyleRef();
+    }
+
+
+    private void  readConditional(SVG.SvgConditional elem) throws SVGParseException
+    {
+        elem.setRequiredFeatures(readStringSet());
+        elem.setRequiredExtensions(readString());
+        elem.setSystemLanguage(readStringSet());
+        elem.setRequiredFormats(readStringSet());
+        elem.setRequiredFonts(readStringSet());
+    }
+
+
+    private void  readViewBoxContainer(SVG.SvgViewBoxContainer elem)
+    {
+        elem.preserveAspectRatio = readPreserveAspectRatio();
+        if (buf.get() != 0)
+            elem.viewBox = new SVG.Box(buf.getFloat(), buf.getFloat(), buf.getFloat(), buf.getFloat());
+    }
+
+
+    private void  readTextPosition(SVG.TextPositionedContainer elem) throws SVGParseException
+    {
+        elem.x = readLengthList();
+        elem.y = readLengthList();
+        elem.dx = readLengthList();
+        elem.dy = readLengthList();
+    }
+
+
+    //=========================================================================
+    // Styles
+
+
+    private SVG.Style  readStyleRef()
+    {
+        int  index = buf.getInt();
+        return (index == -1) ? null : styles[index];
+    }
+
+
+    private SVG.Style  readStyle() throws SVGParseException
+    {
+        SVG.Style  style = new SVG.Style();
+        style.specifiedFlags = buf.getLong();
+        style.fill = readPaint();
+        style.fillRule = readEnum(FILL_RULES);
+        style.fillOpacity = readFloat();
+        style.stroke = readPaint();
+        style.strokeOpacity = readFloat();
+        style.strokeWidth = readLength();
+        style.strokeLineCap = readEnum(LINE_CAPS);
+        style.strokeLineJoin = readEnum(LINE_JOINS);
+        style.strokeMiterLimit = readFloat();
+        int  numDashes = readCount(1, true);
+        if (numDashes != -1) {
+            style.strokeDashArray = new SVG.Length[numDashes];
+            for (int i=0; i<numDashes; i++)
+                style.strokeDashArray[i] = readLength();
+        }
+        style.strokeDashOffset = readLength();
+        style.opacity = readFloat();
+        style.color = (SVG.Colour) readPaint();
+        style.fontFamily = readStringList();
+        style.fontSize = readLength();
+        if (buf.get() != 0)
+            style.fontWeight = buf.getInt();
+        style.fontStyle = readEnum(FONT_STYLES);
+        style.textDecoration = readEnum(TEXT_DECORATIONS);
+        style.direction = readEnum(TEXT_DIRECTIONS);
+        style.textAnchor = readEnum(TEXT_ANCHORS);
+        style.overflow = readBoolean();
+        if (buf.get() != 0)
+            style.clip = new SVG.CSSClipRect(readLength(), readLength(), readLength(), readLength());
+        style.markerStart = readString();
+        style.markerMid = readString();
+        style.markerEnd = readString();
+        style.display = readBoolean();
+        style.visibility = readBoolean();
+        style.stopColor = readPaint();
+        style.stopOpacity = readFloat();
+        style.clipPath = readString();
+        style.clipRule = readEnum(FILL_RULES);
+        style.mask = readString();
+        style.solidColor = readPaint();
+        style.solidOpacity = readFloat();
+        style.viewportFill = readPaint();
+        style.viewportFillOpacity = readFloat();
+        style.vectorEffect = readEnum(VECTOR_EFFECTS);
+        return style;
+    }
+
+
+    private SVG.SvgPaint  readPaint()
+    {
+        switch (buf.get())
+        {
+            case PAINT_COLOUR:
+                return new SVG.Colour(buf.getInt());
+            case PAINT_CURRENT_COLOR:
+                return SVG.CurrentColor.getInstance();
+            case PAINT_REFERENCE:
+                String  href = readString();
+                return new SVG.PaintReference(href, readPaint());
+            default:
+                return null;
+        }
+    }
+
+
+    //=========================================================================
+    // Values
+
+
+    /*
+     * Read the count that precedes an array or list. Every entry takes at least bytesEach bytes,
+     * so a count that the rest of the buffer could not hold means the data is corrupt, and is
+     * rejected before anything is allocated for it. If nullable, a count of -1 stands for null.
+     */
+    private int  readCount(int bytesEach, boolean nullable) throws SVGParseException
+    {
+        int  count = buf.getInt();
+        if (count == -1 && nullable)
+            return count;
+        if (count < 0 || count > buf.remaining() / bytesEach)
+            throw new SVGParseException("Binary SVG is corrupt: bad count "+count+" at offset "+(buf.position() - 4));
+        return count;
+    }
+
+
+    private String  readString()
+    {
+        int  index = buf.getInt();
+        return (index == -1) ? null : strings[index];
+    }
+
+
+    private List<String>  readStringList() throws SVGParseException
+    {
+        int  count = readCount(4, true);
+        if (count == -1)
+            return null;
+        List<String>  list = new ArrayList<String>(count);
+        for (int i=0; i<count; i++)
+            list.add(readString());
+        return list;
+    }
+
+
+    private Set<String>  readStringSet() throws SVGParseException
+    {
+        int  count = readCount(4, true);
+        if (count == -1)
+            return null;
+        Set<String>  set = new HashSet<String>(count);
+        for (int i=0; i<count; i++)
+            set.add(readString());
+        return set;
+    }
+
+
+    private Boolean  readBoolean()
+    {
+        byte  value = buf.get();
+        return (value == -1) ? null : Boolean.valueOf(value != 0);
+    }
+
+
+    private Float  readFloat()
+    {
+        return (buf.get() == 0) ? null : Float.valueOf(buf.getFloat());
+    }
+
+
+    private <E extends Enum<E>> E  readEnum(E[] values)
+    {
+        byte  ordinal = buf.get();
+        return (ordinal == -1) ? null : values[ordinal];
+    }
+
+
+    private SVG.Length  readLength()
+    {
+        byte  unit = buf.get();
+        if (unit == -1)
+            return null;
+        return new SVG.Length(buf.getFloat(), UNITS[unit]);
+    }
+
+
+    private List<SVG.Length>  readLengthList() throws SVGParseException
+    {
+        int  count = readCount(1, true);
+        if (count == -1)
+            return null;
+        List<SVG.Length>  list = new ArrayList<SVG.Length>(count);
+        for (int i=0; i<count; i++)
+            list.add(readLength());
+        return list;
+    }
+
+
+    private float[]  readFloatArray() throws SVGParseException
+    {
+        int  count = readCount(4, true);
+        if (count == -1)
+            return null;
+        float[]  values = new float[count];
+        buf.asFloatBuffer().get(values);
+        buf.position(buf.position() + count * 4);
+        return values;
+    }
+
+
+    private Matrix  readMatrix()
+    {
+        if (buf.get() == 0)
+            return null;
+        float[]  values = new float[9];
+        buf.asFloatBuffer().get(values);
+        buf.position(buf.position() + 9 * 4);
+        Matrix  matrix = new Matrix();
+        matrix.setValues(values);
+        return matrix;
+    }
+
+
+    private PreserveAspectRatio  readPreserveAspectRatio()
+    {
+        if (buf.get() == 0)
+            return null;
+        PreserveAspectRatio.Alignment  alignment = readEnum(ALIGNMENTS);
+        return new PreserveAspectRatio(alignment, readEnum(SCALES));
+    }
+
+
+    private SVG.PathDefinition  readPathDefinition() throws SVGParseException
+    {
+        int  numCommands = readCount(1, true);
+        if (numCommands == -1)
+            return null;
+        byte[]  commands = new byte[numCommands];
+        buf.get(commands);
+        float[]  coords = readFloatArray();
+        return new SVG.PathDefinition(commands, coords);
+    }
+}
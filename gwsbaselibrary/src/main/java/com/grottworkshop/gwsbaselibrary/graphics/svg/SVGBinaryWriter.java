@@ -0,0 +1,645 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.graphics.Matrix;
+
+
+/**
+ * Writes a parsed SVG document in a compact binary form that can be loaded again with
+ * {@link SVGBinaryReader}, without going through the XML, CSS and number parsers.
+ * <p>
+ * The file consists of a header, a string table, a table of the distinct Style objects
+ * in the document and then the element tree in document order. Styles are written after
+ * the CSS cascade has been resolved, so the stylesheet itself is not needed when reading.
+ * All values are big-endian. Path coordinates are written as raw floats so that the
+ * reader can copy them straight out of the buffer.
+ *
+ * @hide
+ */
+public class SVGBinaryWriter
+{
+    // Header
+    static final int    MAGIC = 0x53564742;   // "SVGB"
+    static final short  FORMAT_VERSION = 1;
+
+    // Element tags
+    static final byte  TAG_SVG = 1;
+    static final byte  TAG_GROUP = 2;
+    static final byte  TAG_DEFS = 3;
+    static final byte  TAG_USE = 4;
+    static final byte  TAG_PATH = 5;
+    static final byte  TAG_RECT = 6;
+    static final byte  TAG_CIRCLE = 7;
+    static final byte  TAG_ELLIPSE = 8;
+    static final byte  TAG_LINE = 9;
+    static final byte  TAG_POLYLINE = 10;
+    static final byte  TAG_POLYGON = 11;
+    static final byte  TAG_TEXT = 12;
+    static final byte  TAG_TSPAN = 13;
+    static final byte  TAG_TEXT_SEQUENCE = 14;
+    static final byte  TAG_TREF = 15;
+    static final byte  TAG_TEXTPATH = 16;
+    static final byte  TAG_SWITCH = 17;
+    static final byte  TAG_SYMBOL = 18;
+    static final byte  TAG_MARKER = 19;
+    static final byte  TAG_LINEAR_GRADIENT = 20;
+    static final byte  TAG_RADIAL_GRADIENT = 21;
+    static final byte  TAG_STOP = 22;
+    static final byte  TAG_CLIPPATH = 23;
+    static final byte  TAG_PATTERN = 24;
+    static final byte  TAG_IMAGE = 25;
+    static final byte  TAG_VIEW = 26;
+    static final byte  TAG_MASK = 27;
+    static final byte  TAG_SOLID_COLOR = 28;
+
+    // Paint types
+    static final byte  PAINT_NONE = 0;
+    static final byte  PAINT_COLOUR = 1;
+    static final byte  PAINT_CURRENT_COLOR = 2;
+    static final byte  PAINT_REFERENCE = 3;
+
+    private Map<String, Integer>           strings = new HashMap<String, Integer>();
+    private List<String>                   stringList = new ArrayList<String>();
+    private Map<SVG.Style, Integer>        styles = new IdentityHashMap<SVG.Style, Integer>();
+
+    private ByteArrayOutputStream  styleBytes = new ByteArrayOutputStream();
+    private DataOutputStream       styleOut = new DataOutputStream(styleBytes);
+
+
+    /**
+     * Write the document to the given stream. The stream is not closed.
+     *
+     * @param document the document to write
+     * @param os the stream to write to
+     * @throws IOException if the stream could not be written to
+     */
+    public static void  write(SVG document, OutputStream os) throws IOException
+    {
+        new SVGBinaryWriter().writeDocument(document, os);
+    }
+
+
+    private void  writeDocument(SVG document, OutputStream os) throws IOException
+    {
+        if (document.getRootElement() == null)
+            throw new IllegalArgumentException("SVG document is empty");
+        if (!document.isCascadeComputed())
+            document.computeCascade();
+
+        // Write the tree first, collecting strings and styles as we go
+        ByteArrayOutputStream  treeBytes = new ByteArrayOutputStream();
+        DataOutputStream       treeOut = new DataOutputStream(treeBytes);
+        int  title = stringIndex(document.getDocumentTitle());
+        int  desc = stringIndex(document.getDocumentDescription());
+        writeObject(treeOut, document.getRootElement());
+        treeOut.flush();
+        styleOut.flush();
+
+        DataOutputStream  out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeInt(stringList.size());
+        for (String str: stringList) {
+            out.writeInt(str.length());
+            out.writeChars(str);
+        }
+        out.writeInt(styles.size());
+        styleBytes.writeTo(out);
+        out.writeInt(title);
+        out.writeInt(desc);
+        treeBytes.writeTo(out);
+        out.flush();
+    }
+
+
+    //=========================================================================
+    // Elements
+
+
+    private void  writeObject(DataOutputStream out, SVG.SvgObject obj) throws IOException
+    {
+        if (obj instanceof SVG.TextSequence) {
+            out.writeByte(TAG_TEXT_SEQUENCE);
+            out.writeInt(stringIndex(((SVG.TextSequence) obj).text));
+            return;
+        }
+
+        SVG.SvgElementBase  elem = (SVG.SvgElementBase) obj;
+        out.writeByte(tagFor(elem));
+        writeElementBase(out, elem);
+        if (elem instanceof SVG.SvgConditional)
+            writeConditional(out, (SVG.SvgConditional) elem);
+
+        // Type specific attributes. Subclasses before their superclasses.
+        if (elem instanceof SVG.Svg)
+        {
+            SVG.Svg  svg = (SVG.Svg) elem;
+            writeViewBoxContainer(out, svg);
+            writeLength(out, svg.x);
+            writeLength(out, svg.y);
+            writeLength(out, svg.width);
+            writeLength(out, svg.height);
+            writeString(out, svg.version);
+        }
+        else if (elem instanceof SVG.Use)
+        {
+            SVG.Use  use = (SVG.Use) elem;
+            writeMatrix(out, use.transform);
+            writeString(out, use.href);
+            writeLength(out, use.x);
+            writeLength(out, use.y);
+            writeLength(out, use.width);
+            writeLength(out, use.height);
+        }
+        else if (elem instanceof SVG.ClipPath)
+        {
+            writeMatrix(out, ((SVG.ClipPath) elem).transform);
+            writeBoolean(out, ((SVG.ClipPath) elem).clipPathUnitsAreUser);
+        }
+        else if (elem instanceof SVG.Group)
+        {
+            // Also Defs and Switch
+            writeMatrix(out, ((SVG.Group) elem).transform);
+        }
+        else if (elem instanceof SVG.Path)
+        {
+            SVG.Path  path = (SVG.Path) elem;
+            writeMatrix(out, path.transform);
+            writePathDefinition(out, path.d);
+            writeFloat(out, path.pathLength);
+        }
+        else if (elem instanceof SVG.Rect)
+        {
+            SVG.Rect  rect = (SVG.Rect) elem;
+            writeMatrix(out, rect.transform);
+            writeLength(out, rect.x);
+            writeLength(out, rect.y);
+            writeLength(out, rect.width);
+            writeLength(out, rect.height);
+            writeLength(out, rect.rx);
+            writeLength(out, rect.ry);
+        }
+        else if (elem instanceof SVG.Circle)
+        {
+            SVG.Circle  circle = (SVG.Circle) elem;
+            writeMatrix(out, circle.transform);
+            writeLength(out, circle.cx);
+            writeLength(out, circle.cy);
+            writeLength(out, circle.r);
+        }
+        else if (elem instanceof SVG.Ellipse)
+        {
+            SVG.Ellipse  ellipse = (SVG.Ellipse) elem;
+            writeMatrix(out, ellipse.transform);
+            writeLength(out, ellipse.cx);
+            writeLength(out, ellipse.cy);
+            writeLength(out, ellipse.rx);
+            writeLength(out, ellipse.ry);
+        }
+        else if (elem instanceof SVG.Line)
+        {
+            SVG.Line  line = (SVG.Line) elem;
+            writeMatrix(out, line.transform);
+            writeLength(out, line.x1);
+            writeLength(out, line.y1);
+            writeLength(out, line.x2);
+            writeLength(out, line.y2);
+        }
+        else if (elem instanceof SVG.PolyLine)
+        {
+            // Also Polygon
+            SVG.PolyLine  polyline = (SVG.PolyLine) elem;
+            writeMatrix(out, polyline.transform);
+            writeFloatArray(out, polyline.points, (polyline.points != null) ? polyline.points.length : 0);
+        }
+        else if (elem instanceof SVG.Text)
+        {
+            writeMatrix(out, ((SVG.Text) elem).transform);
+            writeTextPosition(out, (SVG.TextPositionedContainer) elem);
+        }
+        else if (elem instanceof SVG.TSpan)
+        {
+            writeTextPosition(out, (SVG.TextPositionedContainer) elem);
+        }
+        else if (elem instanceof SVG.TRef)
+        {
+            writeString(out, ((SVG.TRef) elem).href);
+        }
+        else if (elem instanceof SVG.TextPath)
+        {
+            writeString(out, ((SVG.TextPath) elem).href);
+            writeLength(out, ((SVG.TextPath) elem).startOffset);
+        }
+        else if (elem instanceof SVG.Marker)
+        {
+            SVG.Marker  marker = (SVG.Marker) elem;
+            writeViewBoxContainer(out, marker);
+            out.writeBoolean(marker.markerUnitsAreUser);
+            writeLength(out, marker.refX);
+            writeLength(out, marker.refY);
+            writeLength(out, marker.markerWidth);
+            writeLength(out, marker.markerHeight);
+            writeFloat(out, marker.orient);
+        }
+        else if (elem instanceof SVG.Pattern)
+        {
+            SVG.Pattern  pattern = (SVG.Pattern) elem;
+            writeViewBoxContainer(out, pattern);
+            writeBoolean(out, pattern.patternUnitsAreUser);
+            writeBoolean(out, pattern.patternContentUnitsAreUser);
+            writeMatrix(out, pattern.patternTransform);
+            writeLength(out, pattern.x);
+            writeLength(out, pattern.y);
+            writeLength(out, pattern.width);
+            writeLength(out, pattern.height);
+            writeString(out, pattern.href);
+        }
+        else if (elem instanceof SVG.SvgViewBoxContainer)
+        {
+            // Symbol and View
+            writeViewBoxContainer(out, (SVG.SvgViewBoxContainer) elem);
+        }
+        else if (elem instanceof SVG.Image)
+        {
+            SVG.Image  image = (SVG.Image) elem;
+            writePreserveAspectRatio(out, image.preserveAspectRatio);
+            writeString(out, image.href);
+            writeLength(out, image.x);
+            writeLength(out, image.y);
+            writeLength(out, image.width);
+            writeLength(out, image.height);
+            writeMatrix(out, image.transform);
+        }
+        else if (elem instanceof SVG.Mask)
+        {
+            SVG.Mask  mask = (SVG.Mask) elem;
+            writeBoolean(out, mask.maskUnitsAreUser);
+            writeBoolean(out, mask.maskContentUnitsAreUser);
+            writeLength(out, mask.x);
+            writeLength(out, mask.y);
+            writeLength(out, mask.width);
+            writeLength(out, mask.height);
+        }
+        else if (elem instanceof SVG.GradientElement)
+        {
+            SVG.GradientElement  grad = (SVG.GradientElement) elem;
+            writeBoolean(out, grad.gradientUnitsAreUser);
+            writeMatrix(out, grad.gradientTransform);
+            writeEnum(out, grad.spreadMethod);
+            writeString(out, grad.href);
+            if (grad instanceof SVG.SvgLinearGradient)
+            {
+                SVG.SvgLinearGradient  linear = (SVG.SvgLinearGradient) grad;
+                writeLength(out, linear.x1);
+                writeLength(out, linear.y1);
+                writeLength(out, linear.x2);
+                writeLength(out, linear.y2);
+            }
+            else
+            {
+                SVG.SvgRadialGradient  radial = (SVG.SvgRadialGradient) grad;
+                writeLength(out, radial.cx);
+                writeLength(out, radial.cy);
+                writeLength(out, radial.r);
+                writeLength(out, radial.fx);
+                writeLength(out, radial.fy);
+            }
+        }
+        else if (elem instanceof SVG.Stop)
+        {
+            writeFloat(out, ((SVG.Stop) elem).offset);
+        }
+        else if (elem instanceof SVG.SolidColor)
+        {
+            writeLength(out, ((SVG.SolidColor) elem).solidColor);
+            writeLength(out, ((SVG.SolidColor) elem).solidOpacity);
+        }
+
+        // Children
+        if (elem instanceof SVG.SvgContainer)
+        {
+            List<SVG.SvgObject>  children = ((SVG.SvgContainer) elem).getChildren();
+            out.writeInt(children.size());
+            for (SVG.SvgObject child: children)
+                writeObject(out, child);
+        }
+    }
+
+
+    private static byte  tagFor(SVG.SvgElementBase elem)
+    {
+        // Subclasses must be tested before their superclasses
+        if (elem instanceof SVG.Svg)                return TAG_SVG;
+        if (elem instanceof SVG.Defs)               return TAG_DEFS;
+        if (elem instanceof SVG.Use)                return TAG_USE;
+        if (elem instanceof SVG.Switch)             return TAG_SWITCH;
+        if (elem instanceof SVG.ClipPath)           return TAG_CLIPPATH;
+        if (elem instanceof SVG.Group)              return TAG_GROUP;
+        if (elem instanceof SVG.Path)               return TAG_PATH;
+        if (elem instanceof SVG.Rect)               return TAG_RECT;
+        if (elem instanceof SVG.Circle)             return TAG_CIRCLE;
+        if (elem instanceof SVG.Ellipse)            return TAG_ELLIPSE;
+        if (elem instanceof SVG.Line)               return TAG_LINE;
+        if (elem instanceof SVG.Polygon)            return TAG_POLYGON;
+        if (elem instanceof SVG.PolyLine)           return TAG_POLYLINE;
+        if (elem instanceof SVG.Text)               return TAG_TEXT;
+        if (elem instanceof SVG.TSpan)              return TAG_TSPAN;
+        if (elem instanceof SVG.TRef)               return TAG_TREF;
+        if (elem instanceof SVG.TextPath)           return TAG_TEXTPATH;
+        if (elem instanceof SVG.Symbol)             return TAG_SYMBOL;
+        if (elem instanceof SVG.Marker)             return TAG_MARKER;
+        if (elem instanceof SVG.SvgLinearGradient)  return TAG_LINEAR_GRADIENT;
+        if (elem instanceof SVG.SvgRadialGradient)  return TAG_RADIAL_GRADIENT;
+        if (elem instanceof SVG.Stop)               return TAG_STOP;
+        if (elem instanceof SVG.Pattern)            return TAG_PATTERN;
+        if (elem instanceof SVG.Image)              return TAG_IMAGE;
+        if (elem instanceof SVG.View)               return TAG_VIEW;
+        if (elem instanceof SVG.Mask)               return TAG_MASK;
+        if (elem instanceof SVG.SolidColor)         return TAG_SOLID_COLOR;
+        throw new IllegalArgumentException("Unexpected element type: "+elem);
+    }
+
+
+    private void  writeElementBase(DataOutputStream out, SVG.SvgElementBase elem) throws IOException
+    {
+        writeString(out, elem.id);
+        writeBoolean(out, elem.spacePreserve);
+        writeStringCollection(out, elem.classNames);
+        out.writeInt(styleIndex(elem.baseStyle));
+        out.writeInt(styleIndex(elem.style));
+        out.writeInt(styleIndex(elem.cascadedStyle));
+    }
+
+
+    private void  writeConditional(DataOutputStream out, SVG.SvgConditional elem) throws IOException
+    {
+        writeStringCollection(out, elem.getRequiredFeatures());
+        writeString(out, elem.getRequiredExtensions());
+        writeStringCollection(out, elem.getSystemLanguage());
+        writeStringCollection(out, elem.getRequiredFormats());
+        writeStringCollection(out, elem.getRequiredFonts());
+    }
+
+
+    private void  writeViewBoxContainer(DataOutputStream out, SVG.SvgViewBoxContainer elem) throws IOException
+    {
+        writePreserveAspectRatio(out, elem.preserveAspectRatio);
+        if (elem.viewBox == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeFloat(elem.viewBox.minX);
+            out.writeFloat(elem.viewBox.minY);
+            out.writeFloat(elem.viewBox.width);
+            out.writeFloat(elem.viewBox.height);
+        }
+    }
+
+
+    private void  writeTextPosition(DataOutputStream out, SVG.TextPositionedContainer elem) throws IOException
+    {
+        writeLengthList(out, elem.x);
+        writeLengthList(out, elem.y);
+        writeLengthList(out, elem.dx);
+        writeLengthList(out, elem.dy);
+    }
+
+
+    //=========================================================================
+    // Styles
+
+
+    private int  styleIndex(SVG.Style style) throws IOException
+    {
+        if (style == null)
+            return -1;
+        Integer  index = styles.get(style);
+        if (index == null) {
+            writeStyle(styleOut, style);
+            index = styles.size();
+            styles.put(style, index);
+        }
+        return index;
+    }
+
+
+    private void  writeStyle(DataOutputStream out, SVG.Style style) throws IOException
+    {
+        out.writeLong(style.specifiedFlags);
+        writePaint(out, style.fill);
+        writeEnum(out, style.fillRule);
+        writeFloat(out, style.fillOpacity);
+        writePaint(out, style.stroke);
+        writeFloat(out, style.strokeOpacity);
+        writeLength(out, style.strokeWidth);
+        writeEnum(out, style.strokeLineCap);
+        writeEnum(out, style.strokeLineJoin);
+        writeFloat(out, style.strokeMiterLimit);
+        if (style.strokeDashArray == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(style.strokeDashArray.length);
+            for (SVG.Length dash: style.strokeDashArray)
+                writeLength(out, dash);
+        }
+        writeLength(out, style.strokeDashOffset);
+        writeFloat(out, style.opacity);
+        writePaint(out, style.color);
+        writeStringCollection(out, style.fontFamily);
+        writeLength(out, style.fontSize);
+        if (style.fontWeight == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeInt(style.fontWeight);
+        }
+        writeEnum(out, style.fontStyle);
+        writeEnum(out, style.textDecoration);
+        writeEnum(out, style.direction);
+        writeEnum(out, style.textAnchor);
+        writeBoolean(out, style.overflow);
+        if (style.clip == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeLength(out, style.clip.top);
+            writeLength(out, style.clip.right);
+            writeLength(out, style.clip.bottom);
+            writeLength(out, style.clip.left);
+        }
+        writeString(out, style.markerStart);
+        writeString(out, style.markerMid);
+        writeString(out, style.markerEnd);
+        writeBoolean(out, style.display);
+        writeBoolean(out, style.visibility);
+        writePaint(out, style.stopColor);
+        writeFloat(out, style.stopOpacity);
+        writeString(out, style.clipPath);
+        writeEnum(out, style.clipRule);
+        writeString(out, style.mask);
+        writePaint(out, style.solidColor);
+        writeFloat(out, style.solidOpacity);
+        writePaint(out, style.viewportFill);
+        writeFloat(out, style.viewportFillOpacity);
+        writeEnum(out, style.vectorEffect);
+    }
+
+
+    private void  writePaint(DataOutputStream out, SVG.SvgPaint paint) throws IOException
+    {
+        if (paint instanceof SVG.Colour) {
+            out.writeByte(PAINT_COLOUR);
+            out.writeInt(((SVG.Colour) paint).colour);
+        } else if (paint instanceof SVG.CurrentColor) {
+            out.writeByte(PAINT_CURRENT_COLOR);
+        } else if (paint instanceof SVG.PaintReference) {
+            out.writeByte(PAINT_REFERENCE);
+            writeString(out, ((SVG.PaintReference) paint).href);
+            writePaint(out, ((SVG.PaintReference) paint).fallback);
+        } else {
+            out.writeByte(PAINT_NONE);
+        }
+    }
+
+
+    //=========================================================================
+    // Values
+
+
+    private int  stringIndex(String str)
+    {
+        if (str == null)
+            return -1;
+        Integer  index = strings.get(str);
+        if (index == null) {
+            index = stringList.size();
+            strings.put(str, index);
+            stringList.add(str);
+        }
+        return index;
+    }
+
+
+    private void  writeString(DataOutputStream out, String str) throws IOException
+    {
+        out.writeInt(stringIndex(str));
+    }
+
+
+    private void  writeStringCollection(DataOutputStream out, Collection<String> list) throws IOException
+    {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (String str: list)
+            out.writeInt(stringIndex(str));
+    }
+
+
+    private static void  writeBoolean(DataOutputStream out, Boolean value) throws IOException
+    {
+        out.writeByte((value == null) ? -1 : (value ? 1 : 0));
+    }
+
+
+    private static void  writeFloat(DataOutputStream out, Float value) throws IOException
+    {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeFloat(value);
+        }
+    }
+
+
+    private static void  writeEnum(DataOutputStream out, Enum<?> value) throws IOException
+    {
+        out.writeByte((value == null) ? -1 : value.ordinal());
+    }
+
+
+    private static void  writeLength(DataOutputStream out, SVG.Length length) throws IOException
+    {
+        if (length == null) {
+            out.writeByte(-1);
+        } else {
+            out.writeByte(length.unit.ordinal());
+            out.writeFloat(length.value);
+        }
+    }
+
+
+    private static void  writeLengthList(DataOutputStream out, List<SVG.Length> list) throws IOException
+    {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (SVG.Length length: list)
+            writeLength(out, length);
+    }
+
+
+    private static void  writeFloatArray(DataOutputStream out, float[] values, int length) throws IOException
+    {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(length);
+        for (int i=0; i<length; i++)
+            out.writeFloat(values[i]);
+    }
+
+
+    private static void  writeMatrix(DataOutputStream out, Matrix matrix) throws IOException
+    {
+        if (matrix == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        float[]  values = new float[9];
+        matrix.getValues(values);
+        out.writeBoolean(true);
+        for (float value: values)
+            out.writeFloat(value);
+    }
+
+
+    private static void  writePreserveAspectRatio(DataOutputStream out, PreserveAspectRatio par) throws IOException
+    {
+        if (par == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeEnum(out, par.getAlignment());
+            writeEnum(out, par.getScale());
+        }
+    }
+
+
+    private static void  writePathDefinition(DataOutputStream out, SVG.PathDefinition path) throws IOException
+    {
+        if (path == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(path.getCommandsLength());
+        out.write(path.getCommands(), 0, path.getCommandsLength());
+        writeFloatArray(out, path.getCoords(), path.getCoordsLength());
+    }
+}
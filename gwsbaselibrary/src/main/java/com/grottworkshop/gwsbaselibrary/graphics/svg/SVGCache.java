@@ -0,0 +1,620 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import android.content.ContentResolver;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.LruCache;
+import android.util.TypedValue;
+
+
+/**
+ * An application wide cache of SVG documents and their rendered forms. There are three tiers:
+ * <ul>
+ * <li>parsed {@link SVG} documents, keyed by resource (the id and the file it resolves to in
+ * the current configuration), asset filename, file path or URI. File and URI keys include
+ * the size and modification time of the content, and URIs whose provider doesn't report
+ * them aren't cached.</li>
+ * <li>rendered {@code Picture}s, keyed by document, size and DPI</li>
+ * <li>rasterised {@code Bitmap}s, keyed the same way. This tier is disabled by default.</li>
+ * </ul>
+ * Each tier is an LRU cache limited by an approximate byte budget. Concurrent requests for
+ * the same key are merged, so that only one thread does the loading or rendering and the
+ * others wait for its result.
+ * <p>
+ * Objects returned from the cache are shared. Don't modify the documents, or recycle the
+ * bitmaps, unless the cache has been disabled with {@link #setEnabled(boolean)}.
+ *
+ * @hide
+ */
+public class SVGCache
+{
+    public static final int  DEFAULT_DOCUMENT_BUDGET = 1024 * 1024;
+    public static final int  DEFAULT_PICTURE_BUDGET = 2 * 1024 * 1024;
+
+    // DocumentsContract.Document.COLUMN_LAST_MODIFIED, which is only defined from API 19
+    private static final String  COLUMN_LAST_MODIFIED = "last_modified";
+
+    // Approximate bytes per node in the document tree, and per point in a path
+    private static final int  NODE_SIZE = 128;
+    private static final int  POINT_SIZE = 9;
+
+    private static SVGCache  instance = null;
+
+    private volatile boolean                enabled = true;
+    private LruCache<String, SVG>           documents;
+    private LruCache<RenderKey, Picture>    pictures;
+    private volatile LruCache<RenderKey, Bitmap>  bitmaps = null;
+
+    // Loads that are in progress. Used to merge concurrent requests for the same key.
+    private ConcurrentHashMap<Object, FutureTask<?>>  inProgress = new ConcurrentHashMap<Object, FutureTask<?>>();
+
+
+    /*
+     * Key for the Picture and Bitmap tiers.
+     */
+    private static class RenderKey
+    {
+        public SVG    document;
+        public int    width;
+        public int    height;
+        public float  dpi;
+        public int    modificationCount;
+        public int    size;   // not part of the key. Set before the entry is added to a cache.
+
+        public RenderKey(SVG document, int width, int height)
+        {
+            this.document = document;
+            this.width = width;
+            this.height = height;
+            this.dpi = document.getRenderDPI();
+            this.modificationCount = document.getModificationCount();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof RenderKey))
+                return false;
+            RenderKey  other = (RenderKey) o;
+            return document == other.document && width == other.width && height == other.height
+                   && dpi == other.dpi && modificationCount == other.modificationCount;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int  result = System.identityHashCode(document);
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + Float.floatToIntBits(dpi);
+            return 31 * result + modificationCount;
+        }
+    }
+
+
+    /**
+     * Returns the shared instance used by {@link SVGImageView} and {@link SVGImageLoader}.
+     */
+    public static synchronized SVGCache  getInstance()
+    {
+        if (instance == null)
+            instance = new SVGCache(DEFAULT_DOCUMENT_BUDGET, DEFAULT_PICTURE_BUDGET, 0);
+        return instance;
+    }
+
+
+    /**
+     * Create a cache with the given budgets, in bytes. A bitmap budget of zero disables the bitmap tier.
+     */
+    public SVGCache(int documentBudget, int pictureBudget, int bitmapBudget)
+    {
+        documents = new LruCache<String, SVG>(Math.max(documentBudget, 1))
+        {
+            @Override
+            protected int sizeOf(String key, SVG value)
+            {
+                return estimateSize(value);
+            }
+        };
+        pictures = new LruCache<RenderKey, Picture>(Math.max(pictureBudget, 1))
+        {
+            @Override
+            protected int sizeOf(RenderKey key, Picture value)
+            {
+                return key.size;
+            }
+        };
+        setBitmapBudget(bitmapBudget);
+    }
+
+
+    /**
+     * Enable or disable the cache. When disabled, every request loads or renders a new object.
+     * Disabling the cache also empties it.
+     */
+    public void  setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        if (!enabled)
+            evictAll();
+    }
+
+
+    public boolean  isEnabled()
+    {
+        return enabled;
+    }
+
+
+    /**
+     * Set the budget of the bitmap tier, in bytes. Zero disables the tier. Existing bitmaps are discarded.
+     */
+    public synchronized void  setBitmapBudget(int bitmapBudget)
+    {
+        if (bitmapBudget <= 0) {
+            bitmaps = null;
+            return;
+        }
+        bitmaps = new LruCache<RenderKey, Bitmap>(bitmapBudget)
+        {
+            @Override
+            protected int sizeOf(RenderKey key, Bitmap value)
+            {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+
+    public void  evictAll()
+    {
+        documents.evictAll();
+        pictures.evictAll();
+        LruCache<RenderKey, Bitmap>  bitmapCache = bitmaps;
+        if (bitmapCache != null)
+            bitmapCache.evictAll();
+    }
+
+
+    //===============================================================================
+    // Document tier
+
+
+    /**
+     * Get the SVG document with the given resource id, loading it if necessary.
+     */
+    public SVG  getResource(Resources resources, int resourceId) throws SVGParseException
+    {
+        return getResource(resources, resourceId, null);
+    }
+
+
+    /**
+     * Get the SVG document with the given resource id. If it has to be loaded, and a
+     * progressive loader is given, the loader is used to parse it.
+     */
+    public SVG  getResource(final Resources resources, final int resourceId, final SVGProgressiveLoader loader) throws SVGParseException
+    {
+        try
+        {
+            return load(documents, resourceKey(resources, resourceId), new Callable<SVG>()
+            {
+                public SVG call() throws SVGParseException, IOException
+                {
+                    if (loader == null)
+                        return SVG.getFromResource(resources, resourceId);
+                    return parseProgressively(loader, resources.openRawResource(resourceId), true);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            // getFromResource() doesn't throw this
+            throw new SVGParseException(e);
+        }
+    }
+
+
+    /*
+     * The document key for a resource. The same id can resolve to different files, depending on
+     * the configuration (density, night mode, locale etc.), so the key includes the file that
+     * the id resolves to in the given Resources' current configuration.
+     */
+    static String  resourceKey(Resources resources, int resourceId)
+    {
+        TypedValue  value = new TypedValue();
+        try
+        {
+            resources.getValue(resourceId, value, true);
+        }
+        catch (Resources.NotFoundException e)
+        {
+            // Loading it will fail and report the error
+            return "res:" + resourceId;
+        }
+        return "res:" + resourceId + ":" + value.assetCookie + ":" + value.string;
+    }
+
+
+    /**
+     * Get the SVG document with the given asset filename, loading it if necessary.
+     */
+    public SVG  getAsset(AssetManager assetManager, String filename) throws SVGParseException, IOException
+    {
+        return getAsset(assetManager, filename, null);
+    }
+
+
+    /**
+     * Get the SVG document with the given asset filename. If it has to be loaded, and a
+     * progressive loader is given, the loader is used to parse it.
+     */
+    public SVG  getAsset(final AssetManager assetManager, final String filename, final SVGProgressiveLoader loader) throws SVGParseException, IOException
+    {
+        return load(documents, "asset:" + filename, new Callable<SVG>()
+        {
+            public SVG call() throws SVGParseException, IOException
+            {
+                if (loader == null)
+                    return SVG.getFromAsset(assetManager, filename);
+                return parseProgressively(loader, assetManager.open(filename), true);
+            }
+        });
+    }
+
+
+    /**
+     * Get the SVG document for the given URI. The stream is only read if the document
+     * isn't already in the cache. The caller is responsible for closing it.
+     */
+    public SVG  getUri(ContentResolver contentResolver, Uri uri, InputStream is) throws SVGParseException
+    {
+        return getUri(contentResolver, uri, is, null);
+    }
+
+
+    /**
+     * Get the SVG document for the given URI. If it has to be loaded, and a progressive
+     * loader is given, the loader is used to parse it. The caller is responsible for
+     * closing the stream.
+     * <p>
+     * The document is only cached if the content provider reports the size and modification
+     * time of the URI's content, so that a change to the content isn't hidden by the cache.
+     */
+    public SVG  getUri(ContentResolver contentResolver, Uri uri, final InputStream is, final SVGProgressiveLoader loader) throws SVGParseException
+    {
+        try
+        {
+            return load(documents, uriKey(contentResolver, uri), new Callable<SVG>()
+            {
+                public SVG call() throws SVGParseException, IOException
+                {
+                    if (loader == null)
+                        return SVG.getFromInputStream(is);
+                    return parseProgressively(loader, is, false);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            // getFromInputStream() doesn't throw this
+            throw new SVGParseException(e);
+        }
+    }
+
+
+    /*
+     * The document key for a URI, or null if the provider can't tell us when its content
+     * last changed. Document providers report the modification time in milliseconds, and
+     * the media store in seconds. Either will do, as it is only compared with itself.
+     */
+    static String  uriKey(ContentResolver contentResolver, Uri uri)
+    {
+        Cursor  cursor = null;
+        try
+        {
+            cursor = contentResolver.query(uri, null, null, null, null);
+            if (cursor == null || !cursor.moveToFirst())
+                return null;
+
+            int  sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+            int  modifiedColumn = cursor.getColumnIndex(COLUMN_LAST_MODIFIED);
+            if (modifiedColumn < 0)
+                modifiedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            if (sizeColumn < 0 || modifiedColumn < 0 || cursor.isNull(sizeColumn) || cursor.isNull(modifiedColumn))
+                return null;
+
+            return "uri:" + uri + ":" + cursor.getLong(modifiedColumn) + ":" + cursor.getLong(sizeColumn);
+        }
+        catch (RuntimeException e)
+        {
+            // Providers throw SecurityException, IllegalArgumentException etc. for queries they don't support
+            return null;
+        }
+        finally
+        {
+            if (cursor != null)
+                cursor.close();
+        }
+    }
+
+
+    /**
+     * Get the SVG document in the given file, loading it with {@link SVG#getFromFile(File)} if necessary.
+     */
+    public SVG  getFile(File file) throws SVGParseException, IOException
+    {
+        return getFile(file, null);
+    }
+
+
+    /**
+     * Get the SVG document in the given file. If it has to be loaded, and a progressive
+     * loader is given, the loader is used to parse it from the mapped file. A file that
+     * has been rewritten since it was cached is loaded again.
+     */
+    public SVG  getFile(final File file, final SVGProgressiveLoader loader) throws SVGParseException, IOException
+    {
+        return load(documents, fileKey(file), new Callable<SVG>()
+        {
+            public SVG call() throws SVGParseException, IOException
+            {
+                if (loader == null)
+                    return SVG.getFromFile(file);
+                // The length is only known in advance if the file isn't compressed
+                InputStream  is = MappedInputStream.open(file);
+                try {
+                    return loader.parse(is, (is instanceof MappedInputStream) ? file.length() : -1);
+                } finally {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        // Do nothing
+                    }
+                }
+            }
+        });
+    }
+
+
+    // The document key for a file. It changes when the file is rewritten.
+    static String  fileKey(File file)
+    {
+        return "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+    }
+
+
+    /*
+     * Parse a document with a progressive loader. If we opened the stream ourselves, it is an
+     * asset or resource stream, which knows its length, so that is passed on for progress reports.
+     */
+    private static SVG  parseProgressively(SVGProgressiveLoader loader, InputStream is, boolean ownsStream) throws SVGParseException, IOException
+    {
+        try {
+            return loader.parse(is, ownsStream ? is.available() : -1);
+        } finally {
+            if (ownsStream) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+
+    //===============================================================================
+    // Picture and Bitmap tiers
+
+
+    /**
+     * Get the result of {@link SVG#renderToPicture()} for this document.
+     */
+    public Picture  getPicture(SVG svg) throws SVGParseException
+    {
+        return getPicture(svg, -1, -1);
+    }
+
+
+    /**
+     * Get the result of {@link SVG#renderToPicture(int, int)} for this document.
+     * Pass -1 for the width and height to use the natural size of the document.
+     */
+    public Picture  getPicture(final SVG svg, final int widthInPixels, final int heightInPixels) throws SVGParseException
+    {
+        final RenderKey  key = new RenderKey(svg, widthInPixels, heightInPixels);
+        try
+        {
+            return load(pictures, key, new Callable<Picture>()
+            {
+                public Picture call()
+                {
+                    key.size = estimateSize(svg);
+                    if (widthInPixels < 0 || heightInPixels < 0)
+                        return svg.renderToPicture();
+                    return svg.renderToPicture(widthInPixels, heightInPixels);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            // Rendering doesn't throw this
+            throw new SVGParseException(e);
+        }
+    }
+
+
+    /**
+     * Get this document rendered into an ARGB_8888 bitmap of the given size. If the bitmap tier
+     * is disabled, a new bitmap is rendered on every call.
+     */
+    public Bitmap  getBitmap(final SVG svg, final int widthInPixels, final int heightInPixels) throws SVGParseException
+    {
+        Callable<Bitmap>  renderer = new Callable<Bitmap>()
+        {
+            public Bitmap call()
+            {
+                Bitmap  bitmap = Bitmap.createBitmap(widthInPixels, heightInPixels, Bitmap.Config.ARGB_8888);
+                svg.renderToCanvas(new Canvas(bitmap), new RectF(0, 0, widthInPixels, heightInPixels));
+                return bitmap;
+            }
+        };
+
+        LruCache<RenderKey, Bitmap>  bitmapCache = bitmaps;
+        try
+        {
+            if (bitmapCache == null)
+                return call(renderer);
+            return load(bitmapCache, new RenderKey(svg, widthInPixels, heightInPixels), renderer);
+        }
+        catch (IOException e)
+        {
+            // Rendering doesn't throw this
+            throw new SVGParseException(e);
+        }
+    }
+
+
+    //===============================================================================
+    // Statistics
+
+
+    public int  getDocumentHitCount()    { return documents.hitCount(); }
+    public int  getDocumentMissCount()   { return documents.missCount(); }
+    public int  getPictureHitCount()     { return pictures.hitCount(); }
+    public int  getPictureMissCount()    { return pictures.missCount(); }
+
+    public int  getBitmapHitCount()
+    {
+        LruCache<RenderKey, Bitmap>  bitmapCache = bitmaps;
+        return (bitmapCache != null) ? bitmapCache.hitCount() : 0;
+    }
+
+    public int  getBitmapMissCount()
+    {
+        LruCache<RenderKey, Bitmap>  bitmapCache = bitmaps;
+        return (bitmapCache != null) ? bitmapCache.missCount() : 0;
+    }
+
+
+    @Override
+    public String  toString()
+    {
+        return "SVGCache[documents=" + documents + ", pictures=" + pictures + ", bitmaps=" + bitmaps + "]";
+    }
+
+
+    //===============================================================================
+
+
+    /*
+     * Fetch a value from one of the tiers, or load it. If another thread is already loading
+     * the same key, wait for it to finish and share its result.
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> V  load(LruCache<K, V> cache, K key, Callable<V> loader) throws SVGParseException, IOException
+    {
+        if (!enabled || key == null)
+            return call(loader);
+
+        V  value = cache.get(key);
+        if (value != null)
+            return value;
+
+        FutureTask<V>  task = new FutureTask<V>(loader);
+        FutureTask<V>  existing = (FutureTask<V>) inProgress.putIfAbsent(key, task);
+        if (existing == null)
+        {
+            try {
+                task.run();
+                value = getResult(task);
+                cache.put(key, value);
+                return value;
+            } finally {
+                inProgress.remove(key, task);
+            }
+        }
+        return getResult(existing);
+    }
+
+
+    private static <V> V  call(Callable<V> loader) throws SVGParseException, IOException
+    {
+        FutureTask<V>  task = new FutureTask<V>(loader);
+        task.run();
+        return getResult(task);
+    }
+
+
+    private static <V> V  getResult(FutureTask<V> task) throws SVGParseException, IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SVGParseException("Interrupted while waiting for document", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable  cause = e.getCause();
+            if (cause instanceof SVGParseException)
+                throw (SVGParseException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new SVGParseException(cause);
+        }
+    }
+
+
+    /*
+     * Approximate the memory used by a document (or a Picture recorded from it).
+     */
+    private static int  estimateSize(SVG svg)
+    {
+        SVG.Svg  root = svg.getRootElement();
+        return (root != null) ? estimateSize(root) : NODE_SIZE;
+    }
+
+
+    private static int  estimateSize(SVG.SvgObject obj)
+    {
+        int  size = NODE_SIZE;
+        if (obj instanceof SVG.Path && ((SVG.Path) obj).d != null)
+            size += ((SVG.Path) obj).d.estimatedPointCount() * POINT_SIZE;
+        else if (obj instanceof SVG.PolyLine && ((SVG.PolyLine) obj).points != null)
+            size += ((SVG.PolyLine) obj).points.length * 4;
+        else if (obj instanceof SVG.TextSequence)
+            size += ((SVG.TextSequence) obj).text.length() * 2;
+
+        if (obj instanceof SVG.SvgContainer)
+        {
+            for (SVG.SvgObject child: ((SVG.SvgContainer) obj).getChildren())
+                size += estimateSize(child);
+        }
+        return size;
+    }
+}
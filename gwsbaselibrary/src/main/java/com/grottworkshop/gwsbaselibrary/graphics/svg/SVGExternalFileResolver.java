@@ -37,7 +37,7 @@ public abstract class SVGExternalFileResolver
      * this font and use the default Android font instead.
      * <p>
      * Note that AndroidSVG does not attempt to cache Typeface references.  If you want
-     * them cached, for speed or memory reasons, you should do so yourself.
+     * them cached, for speed or memory reasons, wrap your resolver in a {@link CachingFileResolver}.
      *
      * @param fontFamily Font family as specified in a font-family style attribute.
      * @param fontWeight Font weight as specified in a font-weight style attribute.
@@ -56,7 +56,7 @@ public abstract class SVGExternalFileResolver
      * this image.
      * <p>
      * Note that AndroidSVG does not attempt to cache Bitmap references.  If you want
-     * them cached, for speed or memory reasons, you should do so yourself.
+     * them cached, for speed or memory reasons, wrap your resolver in a {@link CachingFileResolver}.
      *
      * @param filename the filename as provided in the xlink:href attribute of a &lt;image&gt; element.
      * @return an Android Bitmap object, or null if the image could not be found.
@@ -66,6 +66,26 @@ public abstract class SVGExternalFileResolver
         return null;
     }
 
+    /**
+     * Called by renderer to resolve image file references in &lt;image&gt; elements.
+     * <p>
+     * The target size is the size, in canvas pixels, that the image will be drawn at.  Implementations
+     * can use it to decode a smaller version of a large image (for example using
+     * {@code BitmapFactory.Options.inSampleSize}).  The returned Bitmap may be any size; it will
+     * be scaled to fit.
+     * <p>
+     * The default implementation ignores the target size and calls {@link #resolveImage(String)}.
+     *
+     * @param filename the filename as provided in the xlink:href attribute of a &lt;image&gt; element.
+     * @param targetWidth the width the image will be drawn at, or 0 if the full size image is wanted.
+     * @param targetHeight the height the image will be drawn at, or 0 if the full size image is wanted.
+     * @return an Android Bitmap object, or null if the image could not be found.
+     */
+    public Bitmap  resolveImage(String filename, int targetWidth, int targetHeight)
+    {
+        return resolveImage(filename);
+    }
+
     /**
      * Called by renderer to determine whether a particular format is supported.  In particular,
      * this method is used in &lt;switch&gt; elements when processing {@code requiredFormats}
@@ -0,0 +1,452 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Picture;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+
+/**
+ * Loads the documents displayed by {@link SVGImageView}s on a small pool of background threads.
+ * <p>
+ * A view submits a {@link Source} (a resource, asset or URI) and gets back a {@link Request}.
+ * <ul>
+ * <li>The pool has a fixed number of threads, so a fast fling through a grid of icons queues
+ * its loads rather than running them all at once.</li>
+ * <li>Requests for the same key share one job, and all of them receive its result.</li>
+ * <li>A request can be cancelled, for example when its view is recycled. A job that no request
+ * wants any more is removed from the queue before it starts.</li>
+ * <li>Jobs for views that are visible on screen run before the others. After that, the newest
+ * jobs run first, as they are the most likely to still be on screen when they finish.</li>
+ * </ul>
+ * Results are delivered on the UI thread, and never to a cancelled request. Each request also
+ * carries the load generation of its view, so that the view can ignore the results of any
+ * request but its latest.
+ * <p>
+ * The request and cancellation methods must be called on the UI thread.
+ *
+ * @hide
+ */
+public class SVGImageLoader
+{
+    private static final String  TAG = "SVGImageLoader";
+
+    public static final int  DEFAULT_THREAD_COUNT = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    private static final int  KEEP_ALIVE_SECONDS = 5;
+
+    private static SVGImageLoader  instance = null;
+
+    private ThreadPoolExecutor  executor;
+    private Handler             handler = new Handler(Looper.getMainLooper());
+    private long                nextSequence = 0;
+
+    // Jobs that are queued or running, by key. Guarded by 'this', as is the state of every job and request.
+    private Map<String, Job>  jobs = new HashMap<String, Job>();
+
+
+    private static final ThreadFactory  THREAD_FACTORY = new ThreadFactory()
+    {
+        private final AtomicInteger  count = new AtomicInteger(1);
+
+        @Override
+        public Thread  newThread(final Runnable r)
+        {
+            return new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "SVGImageLoader #" + count.getAndIncrement());
+        }
+    };
+
+
+    /*
+     * Something that can be loaded. A source may be submitted again after it has been
+     * loaded or released, so load() must work every time it is called.
+     */
+    protected static abstract class Source
+    {
+        public final String  key;
+
+        protected Source(String key)
+        {
+            this.key = key;
+        }
+
+        /*
+         * Called on a loader thread. 'loader' is not null if the document should be parsed
+         * progressively. Returns null, after logging the reason, if the document can't be loaded.
+         */
+        protected abstract SVG  load(SVGProgressiveLoader loader);
+
+        /*
+         * Called when this submission of the source won't be loaded, because it was merged
+         * with another job or cancelled before it started.
+         */
+        protected void  release()
+        {
+        }
+    }
+
+
+    /*
+     * Receives the results of a request, on the UI thread.
+     */
+    protected interface Target
+    {
+        public void  onLoadProgress(Request request, SVGProgressiveLoader loader, long bytesRead, long totalBytes);
+
+        // 'picture' is null if the load failed
+        public void  onLoadFinished(Request request, SVG document, Picture picture);
+    }
+
+
+    protected static class Request
+    {
+        public final Target   target;
+        public final int      generation;
+        public final boolean  progressive;
+
+        private Job      job;
+        private long     sequence;
+        private boolean  visible;
+        private boolean  cancelled = false;
+
+        private Request(Target target, int generation, boolean progressive, boolean visible)
+        {
+            this.target = target;
+            this.generation = generation;
+            this.progressive = progressive;
+            this.visible = visible;
+        }
+    }
+
+
+    /*
+     * Something run by the executor. Visible work runs first, then the most recent.
+     * The priority fields must only change while the task is out of the queue.
+     */
+    private static abstract class Task implements Runnable, Comparable<Task>
+    {
+        public boolean  visible = false;
+        public long     sequence = 0;
+
+        @Override
+        public int  compareTo(Task other)
+        {
+            if (visible != other.visible)
+                return visible ? -1 : 1;
+            return (sequence > other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+
+    /*
+     * The loading of one source on behalf of one or more requests.
+     */
+    private class Job extends Task
+    {
+        public Source         source;
+        public List<Request>  requests = new ArrayList<Request>();
+        public boolean        queued = false;
+        public boolean        started = false;
+
+        public Job(Source source)
+        {
+            this.source = source;
+        }
+
+        @Override
+        public void  run()
+        {
+            runJob(this);
+        }
+    }
+
+
+    /**
+     * Returns the shared instance used by {@link SVGImageView}.
+     */
+    public static synchronized SVGImageLoader  getInstance()
+    {
+        if (instance == null)
+            instance = new SVGImageLoader(DEFAULT_THREAD_COUNT);
+        return instance;
+    }
+
+
+    /**
+     * Create a loader with the given number of threads. Idle threads are stopped after a few seconds.
+     */
+    public SVGImageLoader(int threadCount)
+    {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Invalid thread count");
+        executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                          new PriorityBlockingQueue<Runnable>(), THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * Set the number of threads that load documents at the same time.
+     */
+    public synchronized void  setThreadCount(int threadCount)
+    {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Invalid thread count");
+        if (threadCount > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threadCount);
+            executor.setCorePoolSize(threadCount);
+        } else {
+            executor.setCorePoolSize(threadCount);
+            executor.setMaximumPoolSize(threadCount);
+        }
+    }
+
+
+    public int  getThreadCount()
+    {
+        return executor.getMaximumPoolSize();
+    }
+
+
+    //===============================================================================
+
+
+    /*
+     * Request a document. If a job for the same key is already queued or running, the request
+     * joins it. 'visible' says whether the requesting view is currently visible on screen.
+     */
+    protected synchronized Request  submit(Source source, Target target, int generation, boolean progressive, boolean visible)
+    {
+        Request  request = new Request(target, generation, progressive, visible);
+        request.sequence = ++nextSequence;
+
+        Job  job = jobs.get(source.key);
+        if (job == null) {
+            job = new Job(source);
+            jobs.put(source.key, job);
+        } else if (job.source != source) {
+            source.release();
+        }
+        request.job = job;
+        job.requests.add(request);
+        schedule(job);
+        return request;
+    }
+
+
+    /*
+     * Cancel a request. Its target won't hear from it again. Does nothing if the request has
+     * already been cancelled or finished.
+     */
+    protected synchronized void  cancel(Request request)
+    {
+        if (request.cancelled)
+            return;
+        request.cancelled = true;
+
+        Job  job = request.job;
+        if (!job.requests.remove(request) || job.started)
+            return;
+        if (job.requests.isEmpty())
+        {
+            if (executor.remove(job)) {
+                jobs.remove(job.source.key);
+                job.source.release();
+            }
+            // Otherwise a thread has just taken it from the queue, and will drop it
+        }
+        else
+        {
+            schedule(job);
+        }
+    }
+
+
+    /*
+     * Tell the loader whether the view that made a request is visible on screen.
+     */
+    protected synchronized void  setVisible(Request request, boolean visible)
+    {
+        if (request.cancelled || request.visible == visible)
+            return;
+        request.visible = visible;
+        schedule(request.job);
+    }
+
+
+    /*
+     * Run some work for a view that is on screen on one of the loader's threads, ahead of
+     * any loads for views that aren't visible.
+     */
+    protected synchronized void  execute(final Runnable runnable)
+    {
+        Task  task = new Task()
+        {
+            @Override
+            public void  run()
+            {
+                runnable.run();
+            }
+        };
+        task.visible = true;
+        task.sequence = ++nextSequence;
+        executor.execute(task);
+    }
+
+
+    /*
+     * Queue a job, or move it to its new place in the queue after its requests have changed.
+     * Jobs that have been taken from the queue are left alone.
+     */
+    private void  schedule(Job job)
+    {
+        if (job.started || (job.queued && !executor.getQueue().remove(job)))
+            return;
+
+        job.visible = false;
+        job.sequence = 0;
+        for (Request request: job.requests) {
+            job.visible |= request.visible;
+            job.sequence = Math.max(job.sequence, request.sequence);
+        }
+        job.queued = true;
+        executor.execute(job);
+    }
+
+
+    /*
+     * Load a job's document on the current (loader) thread, then post the result to its requests.
+     */
+    private void  runJob(final Job job)
+    {
+        boolean  progressive = false;
+        synchronized (this)
+        {
+            if (job.requests.isEmpty())
+            {
+                // Every request was cancelled while the job was on its way out of the queue
+                jobs.remove(job.source.key);
+                job.source.release();
+                return;
+            }
+            job.started = true;
+            for (Request request: job.requests)
+                progressive |= request.progressive;
+        }
+
+        final SVGProgressiveLoader  loader;
+        if (progressive)
+        {
+            loader = new SVGProgressiveLoader(new SVGProgressiveLoader.Listener()
+            {
+                @Override
+                public void onStageRendered(final SVGProgressiveLoader loader, final long bytesRead, final long totalBytes)
+                {
+                    handler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            for (Request request: getRequests(job)) {
+                                if (request.progressive && !request.cancelled)
+                                    request.target.onLoadProgress(request, loader, bytesRead, totalBytes);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        else
+        {
+            loader = null;
+        }
+
+        // Whatever happens, the job must be forgotten and its requests told, or later requests
+        // for the same key would join a job that never finishes
+        SVG      document = null;
+        Picture  picture = null;
+        try
+        {
+            document = job.source.load(loader);
+            if (document != null)
+            {
+                try
+                {
+                    picture = SVGCache.getInstance().getPicture(document);
+                }
+                catch (SVGParseException e)
+                {
+                    // Only happens if we are interrupted while another thread renders the same picture
+                    Log.w(TAG, "Interrupted while rendering " + job.source.key);
+                    picture = document.renderToPicture();
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            Log.e(TAG, "Error loading " + job.source.key, e);
+            picture = null;
+        }
+        finally
+        {
+            finishJob(job, loader, (picture != null) ? document : null, picture);
+        }
+    }
+
+
+    /*
+     * Remove a job that has run, and post its result to its requests. If the load failed,
+     * 'document' and 'picture' are null.
+     */
+    private void  finishJob(Job job, final SVGProgressiveLoader loader, final SVG document, final Picture picture)
+    {
+        final List<Request>  requests;
+        synchronized (this)
+        {
+            jobs.remove(job.source.key);
+            requests = new ArrayList<Request>(job.requests);
+        }
+
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Request request: requests)
+                {
+                    if (request.cancelled)
+                        continue;
+                    request.cancelled = true;   // It is finished, so there is nothing left to cancel
+                    request.target.onLoadFinished(request, document, picture);
+                }
+                if (loader != null)
+                    loader.recycle();
+            }
+        });
+    }
+
+
+    private synchronized List<Request>  getRequests(Job job)
+    {
+        return new ArrayList<Request>(job.requests);
+    }
+}
@@ -16,18 +16,32 @@
 
 package com.grottworkshop.gwsbaselibrary.graphics.svg;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Picture;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PictureDrawable;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -41,22 +55,69 @@ import com.grottworkshop.gwsbaselibrary.R;
  *
  * It is implemented as a thin layer over {@code android.widget.ImageView}.
  * <p>
- * In its present form it has one significant limitation.  It uses the {@link SVG#renderToPicture()}
- * method. That means that SVG documents that use {@code <mask>} elements will not display correctly.
+ * By default the document is displayed as a {@code Picture} (see {@link SVG#renderToPicture()}).
+ * Before API 23, hardware accelerated views can't draw Pictures, so the view switches itself to
+ * a software layer. In bitmap mode (see {@link #setBitmapMode(boolean)}) the document is instead
+ * rasterised at the size it is displayed at, so the view keeps its hardware acceleration.
+ * <p>
+ * Documents set with {@link #setImageResource(int)}, {@link #setImageAsset(String)} or
+ * {@link #setImageURI(Uri)} are loaded in the background by a shared {@link SVGImageLoader}.
+ * A new load, or a call to {@link #setSVG(SVG)}, replaces any load in progress, and a view
+ * that is detached from its window cancels its load until it is attached again. So views
+ * recycled by a list or grid only ever show the document they were last given.
+ * <p>
+ * Very large documents can be shown while they are still loading by calling
+ * {@link #setProgressiveLoading(boolean)}. See {@link SVGProgressiveLoader}.
  *
  * @attr ref R.styleable#SVGImageView_svg
  * Created by fgrott on 10/10/2014.
  */
 public class SVGImageView extends ImageView
 {
-    private static Method  setLayerTypeMethod = null;
+    // Hardware accelerated canvases can only draw Pictures from API 23
+    private static final boolean  HARDWARE_PICTURES = Build.VERSION.SDK_INT >= 23;
+
+    private boolean                 bitmapMode = false;
+    private boolean                 softwareLayerForced = false;
+    private boolean                 progressiveLoading = false;
+    private OnLoadProgressListener  loadProgressListener = null;
+
+    // The document being displayed, and a draft quality rendering of it made when first needed
+    private SVG                     svg = null;
+    private Picture                 draftPicture = null;
+    private boolean                 interacting = false;
+    private AsyncTask<?, ?, ?>      qualityTask = null;
+
+    // The load in progress. The source is kept so that the load can be resumed if the view is
+    // detached and then reattached. Results from earlier generations are ignored.
+    private int                     loadGeneration;
+    private SVGImageLoader.Source   loadSource;
+    private SVGImageLoader.Request  loadRequest;
+    private Rect                    visibleRect = new Rect();
 
+
+    /**
+     * Interface definition for callbacks reporting the progress of a progressive load.
+     * The methods are called on the UI thread.
+     */
+    public interface OnLoadProgressListener
     {
-        try
-        {
-            setLayerTypeMethod = View.class.getMethod("setLayerType", Integer.TYPE, Paint.class);
-        }
-        catch (NoSuchMethodException e) { /* do nothing */ }
+        /**
+         * Called each time more of the document has been loaded and the view has been updated.
+         *
+         * @param view the view that is loading.
+         * @param bytesRead the number of bytes of the file read so far.
+         * @param totalBytes the size of the file, or -1 if it isn't known.
+         */
+        public void  onLoadProgress(SVGImageView view, long bytesRead, long totalBytes);
+
+        /**
+         * Called when the document has been fully loaded and is displayed, or has failed to load.
+         *
+         * @param view the view that was loading.
+         * @param success true if the document is now displayed.
+         */
+        public void  onLoadComplete(SVGImageView view, boolean success);
     }
 
 
@@ -113,6 +174,112 @@ public class SVGImageView extends ImageView
 
 
 
+    /**
+     * Enable or disable bitmap mode. In bitmap mode the document is rasterised into a bitmap the
+     * size it is displayed at, which is kept until the displayed size, the document or its DPI
+     * changes. Bitmaps can be drawn with hardware acceleration on every API level, so the view
+     * doesn't need a software layer, and scrolling lists of SVG icons stay cheap. Only when the
+     * image is displayed too big for a bitmap does it fall back to drawing the Picture. The
+     * default is disabled.
+     *
+     * @param bitmapMode true to enable bitmap mode.
+     */
+    public void  setBitmapMode(boolean bitmapMode)
+    {
+        if (bitmapMode == this.bitmapMode)
+            return;
+        this.bitmapMode = bitmapMode;
+
+        // Redisplay the current document in the new mode
+        Drawable  drawable = getDrawable();
+        if (drawable instanceof BitmapModeDrawable)
+            showPicture(((BitmapModeDrawable) drawable).picture, false);
+        else if (drawable instanceof PictureDrawable && svg != null && !interacting)
+            showPicture(((PictureDrawable) drawable).getPicture(), false);
+    }
+
+
+    public boolean  isBitmapMode()
+    {
+        return bitmapMode;
+    }
+
+
+    /**
+     * Enable or disable progressive loading. When enabled, documents loaded by the view are
+     * drawn in stages as they are parsed, rather than only once they have been fully loaded.
+     * The view shows the same final result either way. Documents that are already in the
+     * {@link SVGCache} are displayed straight away. The default is disabled.
+     *
+     * @param progressiveLoading true to enable progressive loading.
+     */
+    public void  setProgressiveLoading(boolean progressiveLoading)
+    {
+        this.progressiveLoading = progressiveLoading;
+    }
+
+
+    public boolean  isProgressiveLoading()
+    {
+        return progressiveLoading;
+    }
+
+
+    /**
+     * Register a callback to be told about the progress of progressive loads.
+     *
+     * @param listener the callback, or null to remove it.
+     */
+    public void  setOnLoadProgressListener(OnLoadProgressListener listener)
+    {
+        this.loadProgressListener = listener;
+    }
+
+
+    /**
+     * Tell the view that the user is zooming or scrolling it. While interacting, the view
+     * shows a draft quality rendering of the document (see {@link SVG.RenderQuality#DRAFT}),
+     * which is cheaper to draw. The draft is rendered in the background the first time it is
+     * needed, and the full quality image is shown until it is ready. When the interaction
+     * ends, the full quality rendering replaces the draft, again from a background thread.
+     * <p>
+     * In bitmap mode, the bitmap is scaled rather than rebuilt while interacting, and it is
+     * rebuilt at the new size when the interaction ends.
+     *
+     * @param interacting true when a gesture starts, false when it has settled.
+     */
+    public void  setInteracting(boolean interacting)
+    {
+        if (interacting == this.interacting)
+            return;
+        this.interacting = interacting;
+        if (svg == null)
+            return;
+
+        Drawable  drawable = getDrawable();
+        if (drawable instanceof BitmapModeDrawable) {
+            ((BitmapModeDrawable) drawable).setFrozen(interacting);
+            return;
+        }
+
+        if (qualityTask != null) {
+            qualityTask.cancel(false);
+            qualityTask = null;
+        }
+        if (interacting && draftPicture != null) {
+            showPicture(draftPicture, true);
+            return;
+        }
+        qualityTask = new QualityRenderTask(svg, interacting).execute();
+    }
+
+
+    public boolean  isInteracting()
+    {
+        return interacting;
+    }
+
+
     /**
      * Directly set the SVG.
      */
@@ -121,8 +288,69 @@ public class SVGImageView extends ImageView
         if (mysvg == null)
             throw new IllegalArgumentException("Null value passed to setSVG()");
 
-        setSoftwareLayerType();
-        setImageDrawable(new PictureDrawable(mysvg.renderToPicture()));
+        Picture  picture;
+        try
+        {
+            picture = SVGCache.getInstance().getPicture(mysvg);
+        }
+        catch (SVGParseException e)
+        {
+            // Only happens if we are interrupted while another thread renders the same picture
+            picture = mysvg.renderToPicture();
+        }
+        cancelLoad();
+        loadSource = null;
+        setDocument(mysvg);
+        showPicture(picture, false);
+    }
+
+
+    /*
+     * Remember the document now being displayed.
+     */
+    private void  setDocument(SVG newSvg)
+    {
+        if (qualityTask != null) {
+            qualityTask.cancel(false);
+            qualityTask = null;
+        }
+        svg = newSvg;
+        draftPicture = null;
+    }
+
+
+    /*
+     * Display a rendering of the current document. In bitmap mode, final quality renderings
+     * are shown through a BitmapModeDrawable.
+     */
+    private void  showPicture(Picture picture, boolean draft)
+    {
+        if (bitmapMode && !draft)
+            showDrawable(new BitmapModeDrawable(svg, picture));
+        else
+            showDrawable(new PictureDrawable(picture));
+    }
+
+
+    private void  showDrawable(Drawable drawable)
+    {
+        updateLayerType(drawable instanceof PictureDrawable);
+        setImageDrawable(drawable);
+    }
+
+
+    @Override
+    protected void  onDraw(Canvas canvas)
+    {
+        // We are being drawn, so we must be on screen
+        if (loadRequest != null)
+            SVGImageLoader.getInstance().setVisible(loadRequest, true);
+
+        // Let a bitmap mode drawable know how big it is going to appear
+        Drawable  drawable = getDrawable();
+        if (drawable instanceof BitmapModeDrawable)
+            ((BitmapModeDrawable) drawable).setDisplayMatrix(getImageMatrix());
+        super.onDraw(canvas);
     }
 
 
@@ -132,7 +360,7 @@ public class SVGImageView extends ImageView
     @Override
     public void setImageResource(int resourceId)
     {
-        new LoadResourceTask().execute(resourceId);
+        startLoad(new ResourceSource(getContext().getResources(), resourceId));
     }
 
 
@@ -151,7 +379,7 @@ public class SVGImageView extends ImageView
      */
     public void  setImageAsset(String filename)
     {
-        new LoadAssetTask().execute(filename);
+        startLoad(new AssetSource(getContext().getAssets(), filename));
     }
 
 
@@ -160,6 +388,19 @@ public class SVGImageView extends ImageView
      */
     private boolean  internalSetImageURI(Uri uri, boolean isDirectRequestFromUser)
     {
+        // Local files are memory mapped rather than streamed
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null)
+        {
+            File  file = new File(uri.getPath());
+            if (!file.isFile()) {
+                if (isDirectRequestFromUser)
+                    Log.e("SVGImageView", "File not found: " + uri);
+                return false;
+            }
+            startLoad(new FileSource(file));
+            return true;
+        }
+
         InputStream  is = null;
         try
         {
@@ -172,22 +413,144 @@ public class SVGImageView extends ImageView
             return false;
         }
 
-        new LoadURITask().execute(is);
+        startLoad(new URISource(getContext().getContentResolver(), uri, is));
         return true;
     }
 
 
+    @Override
+    protected void  onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        // Resume a load that was cancelled when we were detached
+        if (loadSource != null && loadRequest == null)
+            submitLoad();
+    }
+
+
+    @Override
+    protected void  onDetachedFromWindow()
+    {
+        cancelLoad();
+        super.onDetachedFromWindow();
+    }
+
+
+    @Override
+    protected void  onVisibilityChanged(View changedView, int visibility)
+    {
+        super.onVisibilityChanged(changedView, visibility);
+        updateLoadPriority();
+    }
+
+
+    @Override
+    protected void  onWindowVisibilityChanged(int visibility)
+    {
+        super.onWindowVisibilityChanged(visibility);
+        updateLoadPriority();
+    }
+
+
     //===============================================================================================
 
 
-    private class LoadResourceTask extends AsyncTask<Integer, Integer, Picture>
+    /*
+     * Start loading a document, replacing any load in progress.
+     */
+    private void  startLoad(SVGImageLoader.Source source)
     {
-        protected Picture  doInBackground(Integer... resourceId)
+        cancelLoad();
+        loadSource = source;
+        submitLoad();
+    }
+
+
+    private void  submitLoad()
+    {
+        loadRequest = SVGImageLoader.getInstance().submit(loadSource, loadTarget, ++loadGeneration, progressiveLoading, isVisibleOnScreen());
+    }
+
+
+    private void  cancelLoad()
+    {
+        if (loadRequest != null) {
+            SVGImageLoader.getInstance().cancel(loadRequest);
+            loadRequest = null;
+        }
+    }
+
+
+    private void  updateLoadPriority()
+    {
+        if (loadRequest != null)
+            SVGImageLoader.getInstance().setVisible(loadRequest, isVisibleOnScreen());
+    }
+
+
+    private boolean  isVisibleOnScreen()
+    {
+        return getWindowVisibility() == VISIBLE && isShown() && getGlobalVisibleRect(visibleRect);
+    }
+
+
+    //===============================================================================================
+
+
+    /*
+     * Receives the results of our loads. Anything from a load that has been replaced is ignored.
+     */
+    private SVGImageLoader.Target  loadTarget = new SVGImageLoader.Target()
+    {
+        @Override
+        public void  onLoadProgress(SVGImageLoader.Request request, SVGProgressiveLoader loader, long bytesRead, long totalBytes)
+        {
+            if (request.generation != loadGeneration)
+                return;
+            Drawable  drawable = getDrawable();
+            if (drawable instanceof PreviewDrawable && ((PreviewDrawable) drawable).loader == loader) {
+                drawable.invalidateSelf();
+            } else {
+                showDrawable(new PreviewDrawable(loader));
+            }
+            if (loadProgressListener != null)
+                loadProgressListener.onLoadProgress(SVGImageView.this, bytesRead, totalBytes);
+        }
+
+        @Override
+        public void  onLoadFinished(SVGImageLoader.Request request, SVG document, Picture picture)
+        {
+            if (request.generation != loadGeneration)
+                return;
+            loadRequest = null;
+            loadSource = null;
+            if (picture != null) {
+                setDocument(document);
+                showPicture(picture, false);
+            }
+            if (request.progressive && loadProgressListener != null)
+                loadProgressListener.onLoadComplete(SVGImageView.this, picture != null);
+        }
+    };
+
+
+    private static class ResourceSource extends SVGImageLoader.Source
+    {
+        private Resources  resources;
+        private int        resourceId;
+
+        public ResourceSource(Resources resources, int resourceId)
+        {
+            super(SVGCache.resourceKey(resources, resourceId));
+            this.resources = resources;
+            this.resourceId = resourceId;
+        }
+
+        protected SVG  load(SVGProgressiveLoader loader)
         {
             try
             {
-                SVG  svg = SVG.getFromResource(getContext(), resourceId[0]);
-                return svg.renderToPicture();
+                return SVGCache.getInstance().getResource(resources, resourceId, loader);
             }
             catch (SVGParseException e)
             {
@@ -195,25 +558,26 @@ public class SVGImageView extends ImageView
             }
             return null;
         }
-
-        protected void  onPostExecute(Picture picture)
-        {
-            if (picture != null) {
-                setSoftwareLayerType();
-                setImageDrawable(new PictureDrawable(picture));
-            }
-        }
     }
 
 
-    private class LoadAssetTask extends AsyncTask<String, Integer, Picture>
+    private static class AssetSource extends SVGImageLoader.Source
     {
-        protected Picture  doInBackground(String... filename)
+        private AssetManager  assetManager;
+        private String        filename;
+
+        public AssetSource(AssetManager assetManager, String filename)
+        {
+            super("asset:" + filename);
+            this.assetManager = assetManager;
+            this.filename = filename;
+        }
+
+        protected SVG  load(SVGProgressiveLoader loader)
         {
             try
             {
-                SVG  svg = SVG.getFromAsset(getContext().getAssets(), filename[0]);
-                return svg.renderToPicture();
+                return SVGCache.getInstance().getAsset(assetManager, filename, loader);
             }
             catch (SVGParseException e)
             {
@@ -229,25 +593,75 @@ public class SVGImageView extends ImageView
             }
             return null;
         }
+    }
 
-        protected void  onPostExecute(Picture picture)
+
+    private static class FileSource extends SVGImageLoader.Source
+    {
+        private File  file;
+
+        public FileSource(File file)
         {
-            if (picture != null) {
-                setSoftwareLayerType();
-                setImageDrawable(new PictureDrawable(picture));
+            super("file:" + file.getAbsolutePath());
+            this.file = file;
+        }
+
+        protected SVG  load(SVGProgressiveLoader loader)
+        {
+            try
+            {
+                return SVGCache.getInstance().getFile(file, loader);
             }
+            catch (SVGParseException e)
+            {
+                Log.e("SVGImageView", "Error loading file " + file + ": " + e.getMessage());
+            }
+            catch (IOException e)
+            {
+                Log.e("SVGImageView", "Unable to load file: " + file, e);
+            }
+            return null;
         }
     }
 
 
-    private class LoadURITask extends AsyncTask<InputStream, Integer, Picture>
+    /*
+     * Loads a URI. The stream opened to check that the URI exists is used for the first load.
+     * Later loads, after a cancellation, open a new one.
+     */
+    private static class URISource extends SVGImageLoader.Source
     {
-        protected Picture  doInBackground(InputStream... is)
+        private ContentResolver  contentResolver;
+        private Uri              uri;
+        private InputStream      initialStream;
+
+        public URISource(ContentResolver contentResolver, Uri uri, InputStream initialStream)
         {
+            super("uri:" + uri);
+            this.contentResolver = contentResolver;
+            this.uri = uri;
+            this.initialStream = initialStream;
+        }
+
+        private synchronized InputStream  takeInitialStream()
+        {
+            InputStream  is = initialStream;
+            initialStream = null;
+            return is;
+        }
+
+        protected SVG  load(SVGProgressiveLoader loader)
+        {
+            InputStream  is = takeInitialStream();
             try
             {
-                SVG  svg = SVG.getFromInputStream(is[0]);
-                return svg.renderToPicture();
+                if (is == null)
+                    is = contentResolver.openInputStream(uri);
+                return SVGCache.getInstance().getUri(contentResolver, uri, is, loader);
+            }
+            catch (FileNotFoundException e)
+            {
+                Log.e("SVGImageView", "File not found: " + uri);
             }
             catch (SVGParseException e)
             {
@@ -255,44 +669,311 @@ public class SVGImageView extends ImageView
             }
             finally
             {
-                try
-                {
-                    is[0].close();
-                }
-                catch (IOException e) { /* do nothing */ }
+                close(is);
             }
             return null;
         }
 
-        protected void  onPostExecute(Picture picture)
+        @Override
+        protected void  release()
         {
-            if (picture != null) {
-                setSoftwareLayerType();
-                setImageDrawable(new PictureDrawable(picture));
+            close(takeInitialStream());
+        }
+
+        private static void  close(InputStream is)
+        {
+            if (is == null)
+                return;
+            try
+            {
+                is.close();
             }
+            catch (IOException e) { /* do nothing */ }
         }
     }
 
 
-    //===============================================================================================
+    /*
+     * Renders the document at draft or final quality, and shows it if the interaction
+     * state still calls for it.
+     */
+    private class QualityRenderTask extends AsyncTask<Void, Void, Picture>
+    {
+        private SVG      document;
+        private boolean  draft;
+
+        public QualityRenderTask(SVG document, boolean draft)
+        {
+            this.document = document;
+            this.draft = draft;
+        }
+
+        protected Picture  doInBackground(Void... params)
+        {
+            if (draft)
+            {
+                SVG.Box  viewPort = document.getInitialPictureViewPort();
+                return document.renderToPicture((int) viewPort.width, (int) viewPort.height, SVG.RenderQuality.DRAFT);
+            }
+            try
+            {
+                return SVGCache.getInstance().getPicture(document);
+            }
+            catch (SVGParseException e)
+            {
+                // Only happens if we are interrupted while another thread renders the same picture
+                return document.renderToPicture();
+            }
+        }
+
+        protected void  onPostExecute(Picture picture)
+        {
+            if (qualityTask == this)
+                qualityTask = null;
+            if (document != svg)
+                return;
+            if (draft)
+                draftPicture = picture;
+            if (draft == interacting)
+                showPicture(picture, draft);
+        }
+    }
 
 
     /*
-     * Use reflection to call an API 11 method from this library (which is configured with a minSdkVersion of 8)
+     * Shows a document in bitmap mode. The document is rasterised at the size the drawable is
+     * displayed at, and the bitmap is kept until that size, or the document, changes. Displays
+     * too big for a bitmap fall back to the Picture, unless the canvas is hardware accelerated
+     * and can't draw Pictures, in which case a smaller bitmap is scaled up.
+     * <p>
+     * Bitmaps are built on a loader thread, by drawing the recorded Picture. Until the new one
+     * is ready, the old bitmap is scaled to fit.
      */
-    private void  setSoftwareLayerType()
+    private static class BitmapModeDrawable extends Drawable
     {
-        if (setLayerTypeMethod == null)
-            return;
+        // Larger than this in either direction, and the bitmap won't fit in a texture on some devices
+        private static final int  MAX_BITMAP_SIZE = 2048;
 
-        try
+        private static final Handler  MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+        private SVG      document;
+        private Picture  picture;
+        private Paint    paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private boolean  frozen = false;
+
+        private Bitmap   bitmap = null;
+        private float    bitmapDPI;
+        private int      bitmapModificationCount;
+        private boolean  rebuilding = false;
+
+        private Matrix   displayMatrix = new Matrix();
+        private RectF    displayRect = new RectF();
+
+        public BitmapModeDrawable(SVG document, Picture picture)
+        {
+            this.document = document;
+            this.picture = picture;
+        }
+
+        public void  setDisplayMatrix(Matrix matrix)
         {
-            int  LAYER_TYPE_SOFTWARE = View.class.getField("LAYER_TYPE_SOFTWARE").getInt(new View(getContext()));
-            setLayerTypeMethod.invoke(this, LAYER_TYPE_SOFTWARE, null);
+            displayMatrix.set(matrix);
         }
-        catch (Exception e)
+
+        // While frozen, the bitmap is scaled to the display size rather than rebuilt
+        public void  setFrozen(boolean frozen)
         {
-            Log.w("SVGImageView", "Unexpected failure calling setLayerType", e);
+            this.frozen = frozen;
+            if (!frozen)
+                invalidateSelf();
+        }
+
+        @Override
+        public void  draw(Canvas canvas)
+        {
+            Rect  bounds = getBounds();
+            if (bounds.isEmpty())
+                return;
+
+            displayRect.set(bounds);
+            displayMatrix.mapRect(displayRect);
+            int  width = Math.max(1, Math.round(displayRect.width()));
+            int  height = Math.max(1, Math.round(displayRect.height()));
+
+            boolean  canDrawPicture = !canvas.isHardwareAccelerated() || HARDWARE_PICTURES;
+            if (width > MAX_BITMAP_SIZE || height > MAX_BITMAP_SIZE)
+            {
+                if (canDrawPicture) {
+                    canvas.drawPicture(picture, bounds);
+                    return;
+                }
+                float  scale = Math.min((float) MAX_BITMAP_SIZE / width, (float) MAX_BITMAP_SIZE / height);
+                width = Math.max(1, (int) (width * scale));
+                height = Math.max(1, (int) (height * scale));
+            }
+
+            if (!rebuilding && (bitmap == null || (!frozen && needsRebuild(width, height))))
+                rebuild(width, height);
+
+            if (bitmap != null)
+                canvas.drawBitmap(bitmap, null, bounds, paint);
+            else if (canDrawPicture)
+                canvas.drawPicture(picture, bounds);
+            // Otherwise there is nothing to show until the first bitmap is ready
         }
+
+        private boolean  needsRebuild(int width, int height)
+        {
+            return bitmap.getWidth() != width || bitmap.getHeight() != height ||
+                   bitmapDPI != document.getRenderDPI() || bitmapModificationCount != document.getModificationCount();
+        }
+
+        /*
+         * Draw the Picture into a new bitmap on a loader thread, then swap it in on the UI thread.
+         * A Picture is not changed once it has been recorded, so it is safe to draw from another
+         * thread. The old bitmap isn't recycled, as a display list may still be using it.
+         */
+        private void  rebuild(final int width, final int height)
+        {
+            final float  dpi = document.getRenderDPI();
+            final int    modificationCount = document.getModificationCount();
+
+            rebuilding = true;
+            SVGImageLoader.getInstance().execute(new Runnable()
+            {
+                @Override
+                public void  run()
+                {
+                    Bitmap  newBitmap = null;
+                    try
+                    {
+                        newBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                        Canvas  bitmapCanvas = new Canvas(newBitmap);
+                        bitmapCanvas.scale((float) width / picture.getWidth(), (float) height / picture.getHeight());
+                        bitmapCanvas.drawPicture(picture);
+                    }
+                    catch (OutOfMemoryError e)
+                    {
+                        Log.w("SVGImageView", "Not enough memory for a " + width + "x" + height + " bitmap");
+                        newBitmap = null;
+                    }
+
+                    final Bitmap  result = newBitmap;
+                    MAIN_HANDLER.post(new Runnable()
+                    {
+                        @Override
+                        public void  run()
+                        {
+                            rebuilding = false;
+                            if (result == null)
+                                return;
+                            bitmap = result;
+                            bitmapDPI = dpi;
+                            bitmapModificationCount = modificationCount;
+                            invalidateSelf();
+                        }
+                    });
+                }
+            });
+        }
+
+        @Override
+        public int  getIntrinsicWidth()
+        {
+            return picture.getWidth();
+        }
+
+        @Override
+        public int  getIntrinsicHeight()
+        {
+            return picture.getHeight();
+        }
+
+        @Override
+        public void  setAlpha(int alpha)
+        {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void  setColorFilter(ColorFilter cf)
+        {
+            paint.setColorFilter(cf);
+            invalidateSelf();
+        }
+
+        @Override
+        public int  getOpacity()
+        {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+
+    /*
+     * Shows the latest stage of a progressive load, at the natural size of the document.
+     */
+    private static class PreviewDrawable extends Drawable
+    {
+        private SVGProgressiveLoader  loader;
+        private Rect                  previewBounds;
+
+        public PreviewDrawable(SVGProgressiveLoader loader)
+        {
+            this.loader = loader;
+            this.previewBounds = loader.getPreviewBounds();
+        }
+
+        @Override
+        public void  draw(Canvas canvas)
+        {
+            loader.drawPreview(canvas, getBounds());
+        }
+
+        @Override
+        public int  getIntrinsicWidth()
+        {
+            return (previewBounds != null) ? previewBounds.width() : -1;
+        }
+
+        @Override
+        public int  getIntrinsicHeight()
+        {
+            return (previewBounds != null) ? previewBounds.height() : -1;
+        }
+
+        @Override
+        public void  setAlpha(int alpha) { /* not supported */ }
+
+        @Override
+        public void  setColorFilter(ColorFilter cf) { /* not supported */ }
+
+        @Override
+        public int  getOpacity()
+        {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+
+    //===============================================================================================
+
+
+    /*
+     * Pictures can't be drawn by hardware accelerated canvases before API 23, so use a software
+     * layer while one is displayed. Only undo a software layer that we set ourselves.
+     */
+    private void  updateLayerType(boolean drawsPicture)
+    {
+        boolean  needSoftwareLayer = drawsPicture && !HARDWARE_PICTURES;
+        if (needSoftwareLayer == softwareLayerForced)
+            return;
+
+        if (needSoftwareLayer)
+            setLayerType(LAYER_TYPE_SOFTWARE, null);
+        else if (getLayerType() == LAYER_TYPE_SOFTWARE)
+            setLayerType(LAYER_TYPE_NONE, null);
+        softwareLayerForced = needSoftwareLayer;
     }
 }
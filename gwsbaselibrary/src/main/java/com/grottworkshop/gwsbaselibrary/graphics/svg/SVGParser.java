@@ -22,9 +22,12 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.ext.DefaultHandler2;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.graphics.Matrix;
 import android.util.Log;
+import android.util.Xml;
 
 
 /**
@@ -59,9 +62,33 @@ public class SVGParser extends DefaultHandler2
 
     private Set<String> supportedFormats = null;
 
+    // Told about each child of the root element as soon as it has been parsed
+    private TopLevelElementListener  topLevelListener = null;
 
-    // Define SVG tags
-    private enum  SVGElem
+    // How far into the stream the pull parser can get before we give up on being able to
+    // rewind and reparse with SAX (see parseUsingXmlPullParser()).
+    private static final int  ENTITY_WATCH_BUFFER_SIZE = 64 * 1024;
+
+    // One pull parser per thread. Creating them is relatively expensive and they can be
+    // reused by calling setInput() again.
+    private static final ThreadLocal<XmlPullParser>  pullParsers = new ThreadLocal<XmlPullParser>()
+    {
+        @Override
+        protected XmlPullParser  initialValue()
+        {
+            XmlPullParser  parser = Xml.newPullParser();
+            try {
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            } catch (XmlPullParserException e) {
+                Log.e(TAG, "XmlPullParser does not support namespaces", e);
+            }
+            return parser;
+        }
+    };
+
+
+    // Define SVG tags. Package visible so the benchmark module can time the lookups.
+    enum  SVGElem
     {
         svg,
         a,
@@ -96,35 +123,26 @@ public class SVGParser extends DefaultHandler2
         view,
         UNSUPPORTED;
 
-        private static final Map<String,SVGElem>  cache = new HashMap<String,SVGElem>();
+        // Built once when the class is initialised and never modified afterwards,
+        // so it is safe to read from several parser threads at once.
+        private static final Map<String,SVGElem>  lookup = new HashMap<String,SVGElem>();
 
-        public static SVGElem  fromString(String str)
+        static
         {
-            // First check cache to see if it is there
-            SVGElem  elem = cache.get(str);
-            if (elem != null)
-                return elem;
-            // Manual check for "switch" which is in upper case because it's a Java reserved identifier
-            if (str.equals("switch")) {
-                cache.put(str, SWITCH);
-                return SWITCH;
-            }
-            // Do the (slow) Enum.valueOf()
-            try
+            for (SVGElem elem: values())
             {
-                elem = valueOf(str);
-                if (elem != SWITCH) {  // Don't allow matches with "SWITCH"
-                    cache.put(str, elem);
-                    return elem;
-                }
+                // "switch" is in upper case because it's a Java reserved identifier
+                if (elem == SWITCH)
+                    lookup.put("switch", elem);
+                else if (elem != UNSUPPORTED)
+                    lookup.put(elem.name(), elem);
             }
-            catch (IllegalArgumentException e)
-            {
-                // Do nothing
-            }
-            // Unknown element name
-            cache.put(str, UNSUPPORTED);
-            return UNSUPPORTED;
+        }
+
+        public static SVGElem  fromString(String str)
+        {
+            SVGElem  elem = lookup.get(str);
+            return (elem != null) ? elem : UNSUPPORTED;
         }
     }
 
@@ -184,8 +202,8 @@ public class SVGParser extends DefaultHandler2
     //private static final String  TAG_VKERN               = "vkern";
 
 
-    // Supported SVG attributes
-    private enum  SVGAttr
+    // Supported SVG attributes. Package visible so the benchmark module can time the lookups.
+    enum  SVGAttr
     {
         CLASS,    // Upper case because 'class' is a reserved word. Handled as a special case.
         clip,
@@ -261,39 +279,26 @@ public class SVGParser extends DefaultHandler2
         visibility,
         UNSUPPORTED;
 
-        private static final Map<String,SVGAttr>  cache = new HashMap<String,SVGAttr>();
+        // Built once when the class is initialised and never modified afterwards,
+        // so it is safe to read from several parser threads at once.
+        private static final Map<String,SVGAttr>  lookup = new HashMap<String,SVGAttr>();
 
-        public static SVGAttr  fromString(String str)
+        static
         {
-            // First check cache to see if it is there
-            SVGAttr  attr = cache.get(str);
-            if (attr != null)
-                return attr;
-            // Do the (slow) Enum.valueOf()
-            if (str.equals("class")) {
-                cache.put(str, CLASS);
-                return CLASS;
-            }
-            // Check for underscore in attribute - it could potentially confuse us
-            if (str.indexOf('_') != -1) {
-                cache.put(str, UNSUPPORTED);
-                return UNSUPPORTED;
-            }
-            try
+            for (SVGAttr attr: values())
             {
-                attr = valueOf(str.replace('-', '_'));
-                if (attr != CLASS) {
-                    cache.put(str, attr);
-                    return attr;
-                }
+                // "class" is in upper case because it's a Java reserved word
+                if (attr == CLASS)
+                    lookup.put("class", attr);
+                else if (attr != UNSUPPORTED)
+                    lookup.put(attr.name().replace('_', '-'), attr);
             }
-            catch (IllegalArgumentException e)
-            {
-                // Do nothing
-            }
-            // Unknown attribute name
-            cache.put(str, UNSUPPORTED);
-            return UNSUPPORTED;
+        }
+
+        public static SVGAttr  fromString(String str)
+        {
+            SVGAttr  attr = lookup.get(str);
+            return (attr != null) ? attr : UNSUPPORTED;
         }
 
     }
@@ -533,6 +538,23 @@ public class SVGParser extends DefaultHandler2
     }
 
 
+    /*
+     * Receives each child of the root <svg> element as soon as it, and everything inside it,
+     * has been parsed. The document is incomplete at this point: later elements, and any
+     * CSS rules that follow, have not been read yet. Used by SVGProgressiveLoader.
+     */
+    protected interface TopLevelElementListener
+    {
+        public void  onTopLevelElement(SVG document, SVG.SvgObject element);
+    }
+
+
+    protected void  setTopLevelElementListener(TopLevelElementListener listener)
+    {
+        this.topLevelListener = listener;
+    }
+
+
     //=========================================================================
     // Main parser invocation methods
     //=========================================================================
@@ -560,8 +582,31 @@ public class SVGParser extends DefaultHandler2
             // Not a zipped SVG. Fall through and try parsing it normally.
         }
 
-        // Invoke the SAX XML parser on the input.
+        try
+        {
+            if (SVG.getParserBackend() == SVG.ParserBackend.XML_PULL)
+                parseUsingXmlPullParser(is);
+            else
+                parseUsingSAX(is);
+        }
+        finally
+        {
+            try {
+                is.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Exception thrown closing input stream");
+            }
+        }
+        return svgDocument;
+    }
+
+
+    private void  parseUsingSAX(InputStream is) throws SVGParseException
+    {
         SAXParserFactory  spf = SAXParserFactory.newInstance();
+        // Android's parser processes namespaces by default but other JAXP parsers don't, and
+        // without them every element arrives with an empty local name.
+        spf.setNamespaceAware(true);
         try
         {
             SAXParser sp = spf.newSAXParser();
@@ -582,15 +627,269 @@ public class SVGParser extends DefaultHandler2
         {
             throw new SVGParseException("SVG parse error: "+e.getMessage(), e);
         }
+    }
+
+
+    /*
+     * Parse the document with the platform XmlPullParser, feeding its events to the same
+     * handler methods that SAX uses. Subtrees we are going to ignore anyway are skipped
+     * without dispatching any events for them.
+     *
+     * The pull parser does not expand entities declared in the DOCTYPE (as produced by
+     * some versions of Illustrator, for example). If we find any, we rewind the stream
+     * and hand the document over to SAX instead.
+     */
+    private void  parseUsingXmlPullParser(InputStream is) throws SVGParseException
+    {
+        if (!is.markSupported())
+            is = new BufferedInputStream(is);
+        is.mark(ENTITY_WATCH_BUFFER_SIZE);
+
+        XmlPullParser  parser = pullParsers.get();
+        try
+        {
+            parser.setInput(is, null);
+            XPPAttributesWrapper  attributes = new XPPAttributesWrapper(parser);
+            int[]                 startAndLength = new int[2];
+
+            int  eventType = parser.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT)
+            {
+                switch (eventType)
+                {
+                    case XmlPullParser.START_DOCUMENT:
+                        startDocument();
+                        break;
+
+                    case XmlPullParser.START_TAG:
+                        startElement(nonNull(parser.getNamespace()), parser.getName(), qualifiedName(parser), attributes);
+                        if (ignoring && ignoreDepth == 1) {
+                            // We don't support this element, so skip past it and its children
+                            skipSubtree(parser);
+                            ignoring = false;
+                        }
+                        break;
+
+                    case XmlPullParser.END_TAG:
+                        endElement(nonNull(parser.getNamespace()), parser.getName(), qualifiedName(parser));
+                        break;
+
+                    case XmlPullParser.TEXT:
+                    case XmlPullParser.CDSECT:
+                    {
+                        char[]  ch = parser.getTextCharacters(startAndLength);
+                        characters(ch, startAndLength[0], startAndLength[1]);
+                        break;
+                    }
+
+                    case XmlPullParser.ENTITY_REF:
+                    {
+                        String  text = parser.getText();
+                        if (text != null)
+                            characters(text.toCharArray(), 0, text.length());
+                        break;
+                    }
+
+                    case XmlPullParser.COMMENT:
+                    {
+                        String  text = parser.getText();
+                        comment(text.toCharArray(), 0, text.length());
+                        break;
+                    }
+
+                    case XmlPullParser.DOCDECL:
+                        if (parser.getText().contains("<!ENTITY ")) {
+                            reparseUsingSAX(is);
+                            return;
+                        }
+                        break;
+
+                    default:
+                        // Processing instructions and ignorable whitespace
+                }
+                eventType = parser.nextToken();
+            }
+            endDocument();
+        }
+        catch (XmlPullParserException e)
+        {
+            throw new SVGParseException("XML parser problem", e);
+        }
+        catch (IOException e)
+        {
+            throw new SVGParseException("File error", e);
+        }
+        catch (SAXException e)
+        {
+            throw new SVGParseException("SVG parse error: "+e.getMessage(), e);
+        }
         finally
         {
+            // Don't let the thread's parser hold on to the stream
             try {
-                is.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Exception thrown closing input stream");
+                parser.setInput(null);
+            } catch (XmlPullParserException e) {
+                // Do nothing
             }
         }
-        return svgDocument;
+    }
+
+
+    /*
+     * Rewind the input and parse it again with SAX.
+     */
+    private void  reparseUsingSAX(InputStream is) throws SVGParseException
+    {
+        Log.d(TAG, "Document has entity declarations. Switching to the SAX parser.");
+        try {
+            is.reset();
+        } catch (IOException e) {
+            throw new SVGParseException("Could not rewind the input to reparse it", e);
+        }
+        // Reset the handler state. startDocument() will create a new SVG.
+        currentElement = null;
+        ignoring = false;
+        inMetadataElement = false;
+        inStyleElement = false;
+        parseUsingSAX(is);
+    }
+
+
+    /*
+     * Move the parser to the END_TAG matching the START_TAG it is on now.
+     * Using next() rather than nextToken() means comments etc. are dropped by the parser.
+     */
+    private static void  skipSubtree(XmlPullParser parser) throws XmlPullParserException, IOException
+    {
+        int  depth = 1;
+        while (depth > 0)
+        {
+            switch (parser.next())
+            {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    return;
+                default:
+                    // Ignore
+            }
+        }
+    }
+
+
+    private static String  nonNull(String str)
+    {
+        return (str != null) ? str : "";
+    }
+
+
+    private static String  qualifiedName(XmlPullParser parser)
+    {
+        String  prefix = parser.getPrefix();
+        return (prefix != null) ? prefix + ':' + parser.getName() : parser.getName();
+    }
+
+
+    /*
+     * Presents the attributes of the pull parser's current START_TAG through the SAX
+     * Attributes interface, so that the element handlers can be shared by both backends.
+     * Only the index based methods are used by this class.
+     */
+    private static class XPPAttributesWrapper implements Attributes
+    {
+        private XmlPullParser  parser;
+
+        public XPPAttributesWrapper(XmlPullParser parser)
+        {
+            this.parser = parser;
+        }
+
+        @Override
+        public int  getLength()
+        {
+            return parser.getAttributeCount();
+        }
+
+        @Override
+        public String  getURI(int index)
+        {
+            return nonNull(parser.getAttributeNamespace(index));
+        }
+
+        @Override
+        public String  getLocalName(int index)
+        {
+            return parser.getAttributeName(index);
+        }
+
+        @Override
+        public String  getQName(int index)
+        {
+            String  prefix = parser.getAttributePrefix(index);
+            return (prefix != null) ? prefix + ':' + parser.getAttributeName(index) : parser.getAttributeName(index);
+        }
+
+        @Override
+        public String  getType(int index)
+        {
+            return "CDATA";
+        }
+
+        @Override
+        public String  getValue(int index)
+        {
+            return parser.getAttributeValue(index);
+        }
+
+        @Override
+        public int  getIndex(String uri, String localName)
+        {
+            for (int i=0; i<getLength(); i++) {
+                if (getURI(i).equals(nonNull(uri)) && getLocalName(i).equals(localName))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public int  getIndex(String qName)
+        {
+            for (int i=0; i<getLength(); i++) {
+                if (getQName(i).equals(qName))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public String  getType(String uri, String localName)
+        {
+            return (getIndex(uri, localName) == -1) ? null : "CDATA";
+        }
+
+        @Override
+        public String  getType(String qName)
+        {
+            return (getIndex(qName) == -1) ? null : "CDATA";
+        }
+
+        @Override
+        public String  getValue(String uri, String localName)
+        {
+            int  index = getIndex(uri, localName);
+            return (index == -1) ? null : getValue(index);
+        }
+
+        @Override
+        public String  getValue(String qName)
+        {
+            int  index = getIndex(qName);
+            return (index == -1) ? null : getValue(index);
+        }
     }
 
 
@@ -754,10 +1053,10 @@ public class SVGParser extends DefaultHandler2
     public void endElement(String uri, String localName, String qName) throws SAXException
     {
         if (ignoring) {
-            if (--ignoreDepth == 0) {
+            // The end of an element we are skipping, or of one of its descendants
+            if (--ignoreDepth == 0)
                 ignoring = false;
-                return;
-            }
+            return;
         }
 
         if (!SVG_NAMESPACE.equals(uri) && !"".equals(uri)) {
@@ -811,12 +1110,21 @@ public class SVGParser extends DefaultHandler2
                 // no action
         }
 
+        if (topLevelListener != null && currentElement != null && currentElement == svgDocument.getRootElement())
+        {
+            List<SVG.SvgObject>  children = currentElement.getChildren();
+            if (!children.isEmpty())
+                topLevelListener.onTopLevelElement(svgDocument, children.get(children.size() - 1));
+        }
     }
 
 
     @Override
     public void endDocument() throws SAXException
     {
+        // Resolve the CSS cascade now, so that the renderer doesn't have to match selectors
+        svgDocument.computeCascade();
+
         // Dump document
         if (LibConfig.DEBUG)
             dumpNode(svgDocument.getRootElement(), "");
@@ -2481,6 +2789,151 @@ public class SVGParser extends DefaultHandler2
     }
 
 
+    //=========================================================================
+    // Path data tokeniser
+    //=========================================================================
+
+
+    /*
+     * A cut down version of TextScanner for path data. It reads the attribute String in place
+     * and only deals in primitives, so that large paths can be parsed without creating
+     * an object for every coordinate, flag or command.
+     */
+    private static class PathScanner
+    {
+        private String        input;
+        private int           position = 0;
+        private int           inputLength;
+
+        private NumberParser  numberParser = new NumberParser();
+
+
+        public PathScanner(String input)
+        {
+            this.input = input;
+            this.inputLength = input.length();
+            // Trim whitespace at either end
+            while (inputLength > 0 && isWhitespace(input.charAt(inputLength - 1)))
+                inputLength--;
+            skipWhitespace();
+        }
+
+        public boolean  empty()
+        {
+            return (position == inputLength);
+        }
+
+        private static boolean  isWhitespace(int c)
+        {
+            return (c==' ' || c=='\n' || c=='\r' || c =='\t');
+        }
+
+        public void  skipWhitespace()
+        {
+            while (position < inputLength && isWhitespace(input.charAt(position)))
+                position++;
+        }
+
+        // Skip the sequence: <space>*(<comma><space>)?
+        public void  skipCommaWhitespace()
+        {
+            skipWhitespace();
+            if (position < inputLength && input.charAt(position) == ',') {
+                position++;
+                skipWhitespace();
+            }
+        }
+
+        public float  nextFloat()
+        {
+            float  val = numberParser.parseNumber(input, position, inputLength);
+            if (!Float.isNaN(val))
+                position = numberParser.getEndPos();
+            return val;
+        }
+
+        // Like nextFloat(), but skips any comma-whitespace sequence first.
+        public float  possibleNextFloat()
+        {
+            skipCommaWhitespace();
+            return nextFloat();
+        }
+
+        // Reads the next float, but only if the last one read was valid.
+        public float  checkedNextFloat(float lastRead)
+        {
+            if (Float.isNaN(lastRead))
+                return Float.NaN;
+            skipCommaWhitespace();
+            return nextFloat();
+        }
+
+        // A flag is a '0' or '1' digit character. Returns 0 or 1, or -1 if there isn't one.
+        public int  nextFlag()
+        {
+            if (position == inputLength)
+                return -1;
+            char  ch = input.charAt(position);
+            if (ch == '0' || ch == '1') {
+                position++;
+                return ch - '0';
+            }
+            return -1;
+        }
+
+        // Reads the next flag, but only if the last float read was valid.
+        public int  checkedNextFlag(float lastRead)
+        {
+            if (Float.isNaN(lastRead))
+                return -1;
+            skipCommaWhitespace();
+            return nextFlag();
+        }
+
+        // Reads the next flag, but only if the last flag read was valid.
+        public int  checkedNextFlag(int lastRead)
+        {
+            if (lastRead == -1)
+                return -1;
+            skipCommaWhitespace();
+            return nextFlag();
+        }
+
+        // Returns the next character, or -1 at the end of the input.
+        public int  nextChar()
+        {
+            if (position == inputLength)
+                return -1;
+            return input.charAt(position++);
+        }
+
+        public boolean  hasLetter()
+        {
+            if (position == inputLength)
+                return false;
+            char  ch = input.charAt(position);
+            return ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'));
+        }
+
+        /*
+         * Rough estimates of how many commands and coordinates the path will have, used to
+         * size the PathDefinition arrays up front. They are worked out from the length alone,
+         * as counting exactly takes almost as long as parsing. A coordinate and its separator
+         * average five or more characters, and most commands have two or more coordinates.
+         * The arrays still grow if the estimates turn out to be short.
+         */
+        public int  estimateCommands()
+        {
+            return inputLength / 10;
+        }
+
+        public int  estimateCoords()
+        {
+            return inputLength / 5;
+        }
+    }
+
+
     //=========================================================================
     // Attribute parsing
     //=========================================================================
@@ -3546,10 +3999,10 @@ public class SVGParser extends DefaultHandler2
     //=========================================================================
 
 
-    // Parse the string that defines a path.
-    private static SVG.PathDefinition  parsePath(String val) throws SAXException
+    // Parse the string that defines a path. Package visible for the benchmark module.
+    static SVG.PathDefinition  parsePath(String val) throws SAXException
     {
-        TextScanner  scan = new TextScanner(val);
+        PathScanner  scan = new PathScanner(val);
 
         int     pathCommand = '?';
         float   currentX = 0f, currentY = 0f;    // The last point visited in the subpath
@@ -3557,12 +4010,12 @@ public class SVGParser extends DefaultHandler2
         float   lastControlX = 0f, lastControlY = 0f;  // Last control point of the just completed bezier curve.
         float   x,y, x1,y1, x2,y2;
         float   rx,ry, xAxisRotation;
-        Boolean largeArcFlag, sweepFlag;
-
-        SVG.PathDefinition  path = new SVG.PathDefinition();
+        int     largeArcFlag, sweepFlag;         // 0 or 1, or -1 if missing
 
         if (scan.empty())
-            return path;
+            return new SVG.PathDefinition();
+
+        SVG.PathDefinition  path = new SVG.PathDefinition(scan.estimateCommands(), scan.estimateCoords());
 
         pathCommand = scan.nextChar();
 
@@ -3760,7 +4213,7 @@ public class SVGParser extends DefaultHandler2
                     xAxisRotation = scan.checkedNextFloat(ry);
                     largeArcFlag = scan.checkedNextFlag(xAxisRotation);
                     sweepFlag = scan.checkedNextFlag(largeArcFlag);
-                    if (sweepFlag == null)
+                    if (sweepFlag == -1)
                         x = y = Float.NaN;
                     else {
                         x = scan.possibleNextFloat();
@@ -3774,7 +4227,7 @@ public class SVGParser extends DefaultHandler2
                         x += currentX;
                         y += currentY;
                     }
-                    path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+                    path.arcTo(rx, ry, xAxisRotation, largeArcFlag == 1, sweepFlag == 1, x, y);
                     currentX = lastControlX = x;
                     currentY = lastControlY = y;
                     break;
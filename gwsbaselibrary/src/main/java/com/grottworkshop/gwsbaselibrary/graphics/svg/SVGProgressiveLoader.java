@@ -0,0 +1,323 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+
+/**
+ * Parses an SVG document while drawing the part of it that has been loaded so far into a
+ * preview bitmap, so that very large documents can be shown before parsing has finished.
+ * <p>
+ * Each time a child of the root &lt;svg&gt; element (typically a top level group) has been
+ * parsed, the loader may render a new stage. Stages are rendered when the number of loaded
+ * top level elements reaches 1, 2, 4, 8 and so on, so that the previews cost no more than one
+ * extra render of the full document in total. Rendering happens on the loading thread, while
+ * the parser waits, so the renderer never sees the document change underneath it.
+ * <p>
+ * The previews are only approximate. References to elements further on in the file, and CSS
+ * rules that come after the content they apply to, can't be resolved until the end. When
+ * parsing is finished, everything the renderer worked out from the partial document is thrown
+ * away, so the document returned by {@link #parse(InputStream, long)} renders exactly the same
+ * as one loaded with {@link SVG#getFromInputStream(InputStream)}.
+ * <p>
+ * The preview is double buffered: stages are rendered into a back bitmap, which becomes the
+ * front one when complete. Once a front bitmap has been drawn, a display list may still refer
+ * to it, so it is never drawn into or recycled again. The next stage gets a new back bitmap
+ * instead. {@link #drawPreview(Canvas, Rect)} may be called from any thread.
+ */
+public class SVGProgressiveLoader
+{
+    private static final String  TAG = "SVGProgressiveLoader";
+
+    public static final int  DEFAULT_MAX_PREVIEW_SIZE = 1024;
+
+    private Listener  listener;
+    private int       maxPreviewSize = DEFAULT_MAX_PREVIEW_SIZE;
+
+    private CountingInputStream  counter = null;
+    private long                 totalBytes = -1;
+    private int                  elementsLoaded = 0;
+    private int                  nextStage = 1;
+    private boolean              previewFailed = false;
+
+    private SVG.Box  viewPort = null;   // The viewport the document would be rendered at by renderToPicture()
+    private float    previewScale;
+    private Bitmap   backBitmap = null;
+
+    // Guarded by 'this'
+    private Bitmap   frontBitmap = null;
+    private boolean  frontDrawn = false;
+    private Paint    previewPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+
+    /**
+     * Receives the progress of an {@link SVGProgressiveLoader}. The methods are called on the
+     * thread that is doing the loading.
+     */
+    public interface Listener
+    {
+        /**
+         * Called after each stage has been rendered into the preview.
+         *
+         * @param loader the loader. Call {@link SVGProgressiveLoader#drawPreview(Canvas, Rect)} to draw the new stage.
+         * @param bytesRead the number of bytes of the file read so far.
+         * @param totalBytes the size of the file, or -1 if it isn't known.
+         */
+        public void  onStageRendered(SVGProgressiveLoader loader, long bytesRead, long totalBytes);
+    }
+
+
+    /**
+     * Create a loader.
+     *
+     * @param listener the listener that is told about each stage, or null.
+     */
+    public SVGProgressiveLoader(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+
+    /**
+     * Set the largest width or height of the preview bitmap. Documents with a bigger natural size
+     * are previewed at a reduced scale. The default is 1024 pixels.
+     *
+     * @param maxPreviewSize the maximum size of the preview, in pixels.
+     */
+    public void  setMaxPreviewSize(int maxPreviewSize)
+    {
+        if (maxPreviewSize <= 0)
+            throw new IllegalArgumentException("Invalid preview size");
+        this.maxPreviewSize = maxPreviewSize;
+    }
+
+
+    /**
+     * Read and parse an SVG, rendering previews as it goes. A loader can only be used once.
+     *
+     * @param is the input stream from which to read the file. It is not closed.
+     * @param totalBytes the length of the file, if known, or -1. Only used for progress reports.
+     * @return an SVG instance on which you can call one of the render methods.
+     * @throws SVGParseException if there is an error parsing the document.
+     */
+    public SVG  parse(InputStream is, long totalBytes) throws SVGParseException
+    {
+        if (counter != null)
+            throw new IllegalStateException("Loader has already been used");
+        this.counter = new CountingInputStream(is);
+        this.totalBytes = totalBytes;
+
+        SVGParser  parser = new SVGParser();
+        parser.setTopLevelElementListener(new SVGParser.TopLevelElementListener()
+        {
+            @Override
+            public void onTopLevelElement(SVG document, SVG.SvgObject element)
+            {
+                if (++elementsLoaded < nextStage)
+                    return;
+                nextStage *= 2;
+                renderStage(document);
+            }
+        });
+
+        SVG  document = parser.parse(counter);
+        if (elementsLoaded > 0)
+            document.discardRenderData();
+        if (backBitmap != null) {
+            backBitmap.recycle();
+            backBitmap = null;
+        }
+        return document;
+    }
+
+
+    /**
+     * Returns the number of children of the root element loaded so far.
+     *
+     * @return the number of top level elements loaded
+     */
+    public int  getElementsLoaded()
+    {
+        return elementsLoaded;
+    }
+
+
+    /**
+     * Returns the size of the document the preview is a picture of. This is the size of the
+     * Picture returned by {@link SVG#renderToPicture()}.
+     *
+     * @return the natural width and height of the document, or null if no stage has been rendered yet.
+     */
+    public synchronized Rect  getPreviewBounds()
+    {
+        if (frontBitmap == null)
+            return null;
+        return new Rect(0, 0, (int) viewPort.width, (int) viewPort.height);
+    }
+
+
+    /**
+     * Draw the latest stage, scaled to fit the given bounds. Does nothing if no stage has been
+     * rendered yet.
+     *
+     * @param canvas the canvas to draw on.
+     * @param bounds the area to draw the preview into.
+     */
+    public synchronized void  drawPreview(Canvas canvas, Rect bounds)
+    {
+        if (frontBitmap == null || frontBitmap.isRecycled())
+            return;
+        canvas.drawBitmap(frontBitmap, null, bounds, previewPaint);
+        frontDrawn = true;
+    }
+
+
+    /**
+     * Free the preview bitmaps. Call this once the fully loaded document is being displayed.
+     * A bitmap that has been drawn is only released, not recycled, as a display list may
+     * still be using it.
+     */
+    public synchronized void  recycle()
+    {
+        if (frontBitmap != null) {
+            if (!frontDrawn)
+                frontBitmap.recycle();
+            frontBitmap = null;
+        }
+    }
+
+
+    //===============================================================================
+
+
+    /*
+     * Render the partial document into the back bitmap, then make it the front one.
+     * The back bitmap has never been drawn by drawPreview(), so it is safe to erase.
+     */
+    private void  renderStage(SVG document)
+    {
+        if (previewFailed)
+            return;
+
+        try
+        {
+            if (viewPort == null)
+            {
+                viewPort = document.getInitialPictureViewPort();
+                if (viewPort.width <= 0 || viewPort.height <= 0) {
+                    previewFailed = true;
+                    return;
+                }
+                previewScale = Math.min(1f, maxPreviewSize / Math.max(viewPort.width, viewPort.height));
+            }
+            if (backBitmap == null)
+            {
+                int  width = Math.max(1, (int) Math.ceil(viewPort.width * previewScale));
+                int  height = Math.max(1, (int) Math.ceil(viewPort.height * previewScale));
+                backBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+
+            // The elements loaded so far may use CSS rules that were added after the last stage
+            document.computeCascade();
+
+            backBitmap.eraseColor(0);
+            Canvas  canvas = new Canvas(backBitmap);
+            canvas.scale(previewScale, previewScale);
+            SVGAndroidRenderer  renderer = new SVGAndroidRenderer(canvas, viewPort, document.getRenderDPI());
+            renderer.renderDocument(document, null, null, true);
+        }
+        catch (RuntimeException e)
+        {
+            // The partial document may not be renderable. Give up on previews, not on the load.
+            Log.w(TAG, "Unable to render preview", e);
+            previewFailed = true;
+            return;
+        }
+        catch (OutOfMemoryError e)
+        {
+            Log.w(TAG, "Not enough memory for preview");
+            previewFailed = true;
+            return;
+        }
+
+        synchronized (this)
+        {
+            // A front bitmap that was never drawn can be reused. One that was drawn is left alone.
+            Bitmap  previous = frontDrawn ? null : frontBitmap;
+            frontBitmap = backBitmap;
+            frontDrawn = false;
+            backBitmap = previous;
+        }
+
+        if (listener != null)
+            listener.onStageRendered(this, counter.count, totalBytes);
+    }
+
+
+    /*
+     * Keeps count of the bytes read from the stream, for progress reports.
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        public volatile long  count = 0;
+        private long          markedCount = 0;
+
+        public CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int  read() throws IOException
+        {
+            int  b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int  read(byte[] buffer, int offset, int length) throws IOException
+        {
+            int  n = super.read(buffer, offset, length);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long  skip(long n) throws IOException
+        {
+            long  skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void  mark(int readLimit)
+        {
+            super.mark(readLimit);
+            markedCount = count;
+        }
+
+        @Override
+        public synchronized void  reset() throws IOException
+        {
+            super.reset();
+            count = markedCount;
+        }
+
+        @Override
+        public void  close()
+        {
+            // The caller owns the stream
+        }
+    }
+}
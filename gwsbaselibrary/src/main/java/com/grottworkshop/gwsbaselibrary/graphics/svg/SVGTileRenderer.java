@@ -0,0 +1,337 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+
+/**
+ * Renders an SVG document into a large bitmap as a grid of tiles, using several threads.
+ * <p>
+ * Each tile is drawn by its own renderer into a tile-sized bitmap, with the canvas translated
+ * and clipped to the tile. Tiles that the document's spatial index (see
+ * {@link SVG#getSpatialIndex()}) shows contain nothing are skipped.
+ * <p>
+ * Use {@link #renderToBitmap()} to get the whole image as one Bitmap, or
+ * {@link #render(TileListener)} to receive the tiles one at a time, for example to write them
+ * to a file, so that the full image never has to fit in memory.
+ * <p>
+ * The document is shared by the rendering threads, so it must not be modified while a
+ * render is in progress.
+ */
+public class SVGTileRenderer
+{
+    public static final int  DEFAULT_TILE_SIZE = 256;
+
+    // Pixels around each tile that anti-aliased edges outside it may still touch
+    private static final float  ANTIALIAS_PAD = 2f;
+
+    private SVG  document;
+    private int  width;
+    private int  height;
+    private int  tileSize = DEFAULT_TILE_SIZE;
+    private int  threadCount = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService  executor = null;
+
+    private volatile int  tilesRendered;
+    private volatile int  tilesSkipped;
+
+
+    /**
+     * Receives the tiles from {@link SVGTileRenderer#render(TileListener)}.
+     * <p>
+     * The methods are called on the rendering threads, in no particular order, but never
+     * more than one at a time.
+     */
+    public interface TileListener
+    {
+        /**
+         * Called when a tile has been rendered. The Bitmap belongs to the tile renderer and
+         * will be reused once this method returns, so copy or write out its contents here.
+         * The tile may be smaller than the Bitmap, at the right and bottom edges of the image.
+         *
+         * @param tile the bitmap containing the tile in its top left corner.
+         * @param left the x position of the tile in the full image.
+         * @param top the y position of the tile in the full image.
+         * @param width the width of the tile.
+         * @param height the height of the tile.
+         */
+        public void  onTileRendered(Bitmap tile, int left, int top, int width, int height);
+
+        /**
+         * Called instead of {@link #onTileRendered} for tiles that nothing is drawn in.
+         * These tiles are fully transparent.
+         *
+         * @param left the x position of the tile in the full image.
+         * @param top the y position of the tile in the full image.
+         * @param width the width of the tile.
+         * @param height the height of the tile.
+         */
+        public void  onTileEmpty(int left, int top, int width, int height);
+    }
+
+
+    /**
+     * Create a tile renderer that renders the whole document into an image of the given size.
+     *
+     * @param document the document to render.
+     * @param width the width of the image in pixels.
+     * @param height the height of the image in pixels.
+     */
+    public SVGTileRenderer(SVG document, int width, int height)
+    {
+        if (document == null || document.getRootElement() == null)
+            throw new IllegalArgumentException("SVG document is empty");
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid image size");
+        this.document = document;
+        this.width = width;
+        this.height = height;
+    }
+
+
+    /**
+     * Set the size of the (square) tiles. The default is 256 pixels.
+     *
+     * @param tileSize the width and height of each tile, in pixels.
+     */
+    public void  setTileSize(int tileSize)
+    {
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("Invalid tile size");
+        this.tileSize = tileSize;
+    }
+
+
+    /**
+     * Set the number of threads to render with. The default is the number of processors.
+     * Ignored if an executor has been provided.
+     *
+     * @param threadCount the number of threads.
+     */
+    public void  setThreadCount(int threadCount)
+    {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Invalid thread count");
+        this.threadCount = threadCount;
+    }
+
+
+    /**
+     * Render the tiles using an existing executor rather than creating a new thread pool for
+     * each render. The executor is not shut down.
+     *
+     * @param executor the executor to run the tile rendering tasks on, or null to create a pool.
+     * @param threadCount the maximum number of tiles the executor will render at once.
+     */
+    public void  setExecutor(ExecutorService executor, int threadCount)
+    {
+        setThreadCount(threadCount);
+        this.executor = executor;
+    }
+
+
+    /**
+     * Returns the number of tiles drawn by the last render.
+     *
+     * @return the number of tiles rendered
+     */
+    public int  getTilesRendered()
+    {
+        return tilesRendered;
+    }
+
+
+    /**
+     * Returns the number of tiles skipped by the last render because nothing was drawn in them.
+     *
+     * @return the number of tiles skipped
+     */
+    public int  getTilesSkipped()
+    {
+        return tilesSkipped;
+    }
+
+
+    /**
+     * Render the document into a new Bitmap.
+     *
+     * @return an ARGB_8888 Bitmap of the requested size.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the tiles.
+     */
+    public Bitmap  renderToBitmap() throws InterruptedException
+    {
+        final Bitmap  result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas  resultCanvas = new Canvas(result);
+
+        render(new TileListener()
+        {
+            @Override
+            public void onTileRendered(Bitmap tile, int left, int top, int width, int height)
+            {
+                resultCanvas.drawBitmap(tile, new Rect(0, 0, width, height), new Rect(left, top, left + width, top + height), null);
+            }
+
+            @Override
+            public void onTileEmpty(int left, int top, int width, int height)
+            {
+                // Nothing to do. The result is already transparent.
+            }
+        });
+        return result;
+    }
+
+
+    /**
+     * Render the document tile by tile, passing each tile to the listener.
+     * At most one tile-sized Bitmap per thread is allocated.
+     *
+     * @param listener the listener that receives the tiles.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the tiles.
+     */
+    public void  render(final TileListener listener) throws InterruptedException
+    {
+        tilesRendered = 0;
+        tilesSkipped = 0;
+
+        // Building the index also fills in the element bounding boxes and the path cache before
+        // the rendering threads start
+        final SpatialIndex  index = document.getSpatialIndex();
+        final Matrix        imageToDocument = findImageToDocument(index);
+
+        // Tile bitmaps are shared out between the tasks, so we never need more than one per thread
+        final BlockingQueue<Bitmap>  tilePool = new ArrayBlockingQueue<Bitmap>(threadCount);
+        for (int i=0; i<threadCount; i++)
+            tilePool.add(Bitmap.createBitmap(Math.min(tileSize, width), Math.min(tileSize, height), Bitmap.Config.ARGB_8888));
+
+        List<Callable<Void>>  tasks = new ArrayList<Callable<Void>>();
+        for (int top = 0; top < height; top += tileSize)
+        {
+            for (int left = 0; left < width; left += tileSize)
+            {
+                final Rect  tileRect = new Rect(left, top, Math.min(left + tileSize, width), Math.min(top + tileSize, height));
+                if (imageToDocument != null && isEmpty(tileRect, index, imageToDocument))
+                {
+                    tilesSkipped++;
+                    synchronized (listener) {
+                        listener.onTileEmpty(tileRect.left, tileRect.top, tileRect.width(), tileRect.height());
+                    }
+                    continue;
+                }
+                tasks.add(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws InterruptedException
+                    {
+                        Bitmap  tile = tilePool.take();
+                        try
+                        {
+                            renderTile(tile, tileRect);
+                            synchronized (listener) {
+                                listener.onTileRendered(tile, tileRect.left, tileRect.top, tileRect.width(), tileRect.height());
+                            }
+                        }
+                        finally
+                        {
+                            tilePool.add(tile);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+
+        ExecutorService  pool = (executor != null) ? executor : Executors.newFixedThreadPool(threadCount);
+        try
+        {
+            for (Future<Void> result: pool.invokeAll(tasks))
+            {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable  cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+            tilesRendered = tasks.size();
+        }
+        finally
+        {
+            if (pool != executor)
+                pool.shutdown();
+            for (Bitmap tile: tilePool)
+                tile.recycle();
+        }
+    }
+
+
+    /*
+     * Returns the mapping from image pixels to the document coordinates of the spatial index,
+     * or null if the index can't tell which tiles are empty. Without a viewBox, the document
+     * is drawn at the image's scale, and percentage lengths depend on the image size, so the
+     * index is only usable if it was built at the same size.
+     */
+    private Matrix  findImageToDocument(SpatialIndex index)
+    {
+        SVG.Box  indexViewPort = index.getViewPort();
+        if (indexViewPort == null || index.fillsViewPort())
+            return null;
+
+        SVG.Svg  root = document.getRootElement();
+        if (root.viewBox == null)
+        {
+            if (indexViewPort.width != width || indexViewPort.height != height)
+                return null;
+            return new Matrix();
+        }
+
+        PreserveAspectRatio  positioning = (root.preserveAspectRatio != null) ? root.preserveAspectRatio : PreserveAspectRatio.LETTERBOX;
+        Matrix  documentToImage = SVGAndroidRenderer.calculateViewBoxTransform(new SVG.Box(0f, 0f, width, height), root.viewBox, positioning);
+        Matrix  imageToDocument = new Matrix();
+        if (!documentToImage.invert(imageToDocument))
+            return null;
+        return imageToDocument;
+    }
+
+
+    /*
+     * Returns true if nothing in the index is drawn in the tile. The tile is widened to allow
+     * for anti-aliasing. The content of masks is not indexed, because a mask can only hide things.
+     */
+    private static boolean  isEmpty(Rect tileRect, SpatialIndex index, Matrix imageToDocument)
+    {
+        RectF  rect = new RectF(tileRect);
+        rect.inset(-ANTIALIAS_PAD, -ANTIALIAS_PAD);
+        imageToDocument.mapRect(rect);
+        return !index.intersectsAny(rect);
+    }
+
+
+    private void  renderTile(Bitmap tile, Rect tileRect)
+    {
+        tile.eraseColor(0);
+        Canvas  canvas = new Canvas(tile);
+        canvas.clipRect(0, 0, tileRect.width(), tileRect.height());
+        canvas.translate(-tileRect.left, -tileRect.top);
+
+        SVGAndroidRenderer  renderer = new SVGAndroidRenderer(canvas, new SVG.Box(0f, 0f, width, height), document.getRenderDPI());
+        renderer.renderDocument(document, null, null, true);
+    }
+}
@@ -0,0 +1,160 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import android.graphics.Shader;
+import android.util.LruCache;
+
+
+/**
+ * Per-document cache of the Shaders built by the renderer for gradients and patterns.
+ * <p>
+ * The colour stops of each gradient are resolved once, so the stop styles don't have to be
+ * cascaded on every render. Gradient shaders are keyed by the gradient element and by every
+ * value that goes into them: the gradient vector (or circle) in user space and, for
+ * objectBoundingBox units, the bounding box of the element being painted. So a chart that
+ * fills many bars with one userSpaceOnUse gradient shares a single shader.
+ * <p>
+ * Pattern shaders wrap a bitmap of one tile of the pattern, rendered at the device scale it
+ * was first drawn at. They are limited by an approximate byte budget.
+ * <p>
+ * Cached Shaders are shared between renders and threads, so their local matrix must never
+ * be changed.
+ *
+ * @hide
+ */
+public class ShaderCache
+{
+    public static final int  MAX_GRADIENT_SHADERS = 256;
+    public static final int  DEFAULT_PATTERN_BUDGET = 4 * 1024 * 1024;
+
+    private Map<SVG.GradientElement, GradientStops>  stops = Collections.synchronizedMap(new IdentityHashMap<SVG.GradientElement, GradientStops>());
+    private LruCache<Key, Shader>                    gradientShaders = new LruCache<Key, Shader>(MAX_GRADIENT_SHADERS);
+    private LruCache<Key, PatternEntry>              patternShaders;
+
+
+    /*
+     * The resolved stops of a gradient. 'colours' is empty if the gradient has no stops.
+     */
+    protected static class GradientStops
+    {
+        public int[]    colours;
+        public float[]  positions;
+
+        public GradientStops(int numStops)
+        {
+            this.colours = new int[numStops];
+            this.positions = new float[numStops];
+        }
+    }
+
+
+    /*
+     * Identifies a shader by the element it was built for, and the values it was built from.
+     */
+    protected static class Key
+    {
+        private SVG.SvgElementBase  element;
+        private float[]             values;
+        private int                 hash;
+
+        public Key(SVG.SvgElementBase element, float... values)
+        {
+            this.element = element;
+            this.values = values;
+            this.hash = System.identityHashCode(element) * 31 + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int  hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean  equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key  other = (Key) o;
+            return element == other.element && Arrays.equals(values, other.values);
+        }
+    }
+
+
+    private static class PatternEntry
+    {
+        public Shader  shader;
+        public int     size;
+
+        public PatternEntry(Shader shader, int size)
+        {
+            this.shader = shader;
+            this.size = size;
+        }
+    }
+
+
+    public ShaderCache()
+    {
+        this.patternShaders = new LruCache<Key, PatternEntry>(DEFAULT_PATTERN_BUDGET)
+        {
+            @Override
+            protected int sizeOf(Key key, PatternEntry value)
+            {
+                return value.size;
+            }
+        };
+    }
+
+
+    public GradientStops  getStops(SVG.GradientElement gradient)
+    {
+        return stops.get(gradient);
+    }
+
+
+    public void  putStops(SVG.GradientElement gradient, GradientStops gradientStops)
+    {
+        stops.put(gradient, gradientStops);
+    }
+
+
+    public Shader  getGradientShader(Key key)
+    {
+        return gradientShaders.get(key);
+    }
+
+
+    public void  putGradientShader(Key key, Shader shader)
+    {
+        gradientShaders.put(key, shader);
+    }
+
+
+    public Shader  getPatternShader(Key key)
+    {
+        PatternEntry  entry = patternShaders.get(key);
+        return (entry != null) ? entry.shader : null;
+    }
+
+
+    /*
+     * Store a pattern shader. 'size' is the number of bytes in its tile bitmap.
+     */
+    public void  putPatternShader(Key key, Shader shader, int size)
+    {
+        patternShaders.put(key, new PatternEntry(shader, size));
+    }
+
+
+    public void  invalidate()
+    {
+        stops.clear();
+        gradientShaders.evictAll();
+        patternShaders.evictAll();
+    }
+}
@@ -18,7 +18,10 @@ package com.grottworkshop.gwsbaselibrary.graphics.svg;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import android.content.res.AssetManager;
@@ -39,6 +42,10 @@ public class SimpleAssetResolver extends SVGExternalFileResolver
 
     private AssetManager  assetManager;
 
+    // Contents of the asset directories we have looked in, so that checking whether
+    // a font file exists doesn't need an exception.
+    private Map<String, Set<String>>  directoryListings = new HashMap<String, Set<String>>();
+
 
     public SimpleAssetResolver(AssetManager assetManager)
     {
@@ -76,20 +83,21 @@ public class SimpleAssetResolver extends SVGExternalFileResolver
     {
         Log.i(TAG, "resolveFont("+fontFamily+","+fontWeight+","+fontStyle+")");
 
-        // Try font name with suffix ".ttf"
-        try
-        {
-            return Typeface.createFromAsset(assetManager, fontFamily + ".ttf");
+        String  filename = fontFamily + ".ttf";
+        if (!assetExists(filename)) {
+            filename = fontFamily + ".otf";
+            if (!assetExists(filename))
+                return null;
         }
-        catch (Exception e) {}
 
-        // That failed, so try ".otf"
         try
         {
-            return Typeface.createFromAsset(assetManager, fontFamily + ".otf");
+            return Typeface.createFromAsset(assetManager, filename);
         }
-        catch (Exception e)
+        catch (RuntimeException e)
         {
+            // The file exists but isn't a valid font
+            Log.w(TAG, "Could not create Typeface from "+filename, e);
             return null;
         }
     }
@@ -101,17 +109,113 @@ public class SimpleAssetResolver extends SVGExternalFileResolver
     @Override
     public Bitmap resolveImage(String filename)
     {
-        Log.i(TAG, "resolveImage("+filename+")");
+        return resolveImage(filename, 0, 0);
+    }
+
+
+    /**
+     * Attempt to find the specified image file in the "assets" folder and return a decoded Bitmap.
+     * Large images are subsampled so that they are no bigger than necessary for the target size.
+     */
+    @Override
+    public Bitmap resolveImage(String filename, int targetWidth, int targetHeight)
+    {
+        Log.i(TAG, "resolveImage("+filename+","+targetWidth+","+targetHeight+")");
 
+        BitmapFactory.Options  options = new BitmapFactory.Options();
+        if (targetWidth > 0 && targetHeight > 0)
+        {
+            // Read the image size first
+            options.inJustDecodeBounds = true;
+            if (!decodeAsset(filename, options) || options.outWidth <= 0)
+                return null;
+            options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+            options.inJustDecodeBounds = false;
+        }
+
+        InputStream  istream = null;
         try
         {
-            InputStream  istream = assetManager.open(filename);
-            return BitmapFactory.decodeStream(istream);
+            istream = assetManager.open(filename);
+            return BitmapFactory.decodeStream(istream, null, options);
         }
-        catch (IOException e1)
+        catch (IOException e)
         {
             return null;
         }
+        finally
+        {
+            closeQuietly(istream);
+        }
+    }
+
+
+    // Decode using the given options. Returns false if the asset could not be opened.
+    private boolean  decodeAsset(String filename, BitmapFactory.Options options)
+    {
+        InputStream  istream = null;
+        try
+        {
+            istream = assetManager.open(filename);
+            BitmapFactory.decodeStream(istream, null, options);
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            closeQuietly(istream);
+        }
+    }
+
+
+    /*
+     * Returns the largest power of two sample size that still gives an image at least
+     * as big as the target size.
+     */
+    private static int  calculateSampleSize(int width, int height, int targetWidth, int targetHeight)
+    {
+        int  sampleSize = 1;
+        while ((width / (sampleSize * 2)) >= targetWidth && (height / (sampleSize * 2)) >= targetHeight)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+
+    private static void  closeQuietly(InputStream istream)
+    {
+        if (istream == null)
+            return;
+        try {
+            istream.close();
+        } catch (IOException e) {
+            // Do nothing
+        }
+    }
+
+
+    /*
+     * Check whether a file exists in the assets folder. Directory listings are cached.
+     */
+    private synchronized boolean  assetExists(String path)
+    {
+        int     slash = path.lastIndexOf('/');
+        String  dir = (slash == -1) ? "" : path.substring(0, slash);
+        String  name = path.substring(slash + 1);
+
+        Set<String>  listing = directoryListings.get(dir);
+        if (listing == null)
+        {
+            try {
+                listing = new HashSet<String>(Arrays.asList(assetManager.list(dir)));
+            } catch (IOException e) {
+                listing = new HashSet<String>();
+            }
+            directoryListings.put(dir, listing);
+        }
+        return listing.contains(name);
     }
 
 
@@ -0,0 +1,339 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.graphics.RectF;
+
+
+/**
+ * An R-tree over the bounds of everything drawn by a document, in document coordinates
+ * (the user space of the root &lt;svg&gt; element, after all element transforms).
+ * <p>
+ * The index is built from a recording render (see {@link SVG#getSpatialIndex()}). Every time
+ * a graphics element is drawn, its bounds (allowing for stroke width) are added as an entry,
+ * and also merged into the bounds of the element and of each container it was drawn
+ * inside. An element drawn more than once, for example through &lt;use&gt;, has one entry per
+ * drawing, and its merged bounds cover all of them.
+ * <p>
+ * The tree is bulk loaded with the Sort-Tile-Recursive algorithm and is never modified.
+ *
+ * @hide
+ */
+public class SpatialIndex
+{
+    private static final int  NODE_CAPACITY = 16;
+
+    // The viewport and viewBox of the root element when the index was built
+    private SVG.Box  viewPort;
+    private SVG.Box  viewBox;
+    private boolean  fillsViewPort;
+
+    // Merged bounds of each element (leaf and container) that drew something
+    private Map<SVG.SvgObject, RectF>  bounds;
+
+    private Node  root;
+
+
+    // An element drawing. 'order' is its position in the drawing order.
+    private static class Entry
+    {
+        public SVG.SvgElement  element;
+        public RectF           rect;
+        public int             order;
+
+        public Entry(SVG.SvgElement element, RectF rect, int order)
+        {
+            this.element = element;
+            this.rect = rect;
+            this.order = order;
+        }
+    }
+
+
+    private static class Node
+    {
+        public RectF        rect;
+        public List<Node>   children;   // null for leaf nodes
+        public List<Entry>  entries;    // null for internal nodes
+    }
+
+
+    /*
+     * Collects the drawings made during a render. Used by SVGAndroidRenderer.
+     */
+    protected static class Builder
+    {
+        private SVG.Box                    viewPort = null;
+        private SVG.Box                    viewBox = null;
+        private boolean                    fillsViewPort = false;
+        private List<Entry>                entries = new ArrayList<Entry>();
+        private Map<SVG.SvgObject, RectF>  bounds = new IdentityHashMap<SVG.SvgObject, RectF>();
+
+        /*
+         * Record the viewport established by the root element, and the viewBox (if any) that
+         * was mapped into it.
+         */
+        public void  setViewPort(SVG.Box viewPort, SVG.Box viewBox)
+        {
+            this.viewPort = viewPort;
+            this.viewBox = viewBox;
+        }
+
+        /*
+         * Record that something (a viewport-fill) painted the whole of a viewport, which
+         * isn't recorded as an entry.
+         */
+        public void  setFillsViewPort()
+        {
+            this.fillsViewPort = true;
+        }
+
+        /*
+         * Record that 'element' drew within 'rect' (in document coordinates), inside the
+         * given render parents. 'part', if not null, is the marker or pattern content element
+         * that actually did the drawing on behalf of 'element'.
+         */
+        public void  add(SVG.SvgElement element, RectF rect, Iterable<SVG.SvgContainer> parents, SVG.SvgElement part)
+        {
+            entries.add(new Entry(element, rect, entries.size()));
+            union(element, rect);
+            for (SVG.SvgContainer parent: parents)
+                union((SVG.SvgObject) parent, rect);
+            if (part != null)
+                union(part, rect);
+        }
+
+        private void  union(SVG.SvgObject obj, RectF rect)
+        {
+            RectF  existing = bounds.get(obj);
+            if (existing == null)
+                bounds.put(obj, new RectF(rect));
+            else
+                existing.union(rect);
+        }
+
+        public SpatialIndex  build()
+        {
+            return new SpatialIndex(viewPort, viewBox, fillsViewPort, bounds, entries);
+        }
+    }
+
+
+    private SpatialIndex(SVG.Box viewPort, SVG.Box viewBox, boolean fillsViewPort, Map<SVG.SvgObject, RectF> bounds, List<Entry> entries)
+    {
+        this.viewPort = viewPort;
+        this.viewBox = viewBox;
+        this.fillsViewPort = fillsViewPort;
+        this.bounds = bounds;
+
+        List<Node>  level = new ArrayList<Node>();
+        for (List<Entry> group: strPack(entries, ENTRY_X, ENTRY_Y))
+        {
+            Node  node = new Node();
+            node.entries = group;
+            node.rect = new RectF(group.get(0).rect);
+            for (Entry entry: group)
+                node.rect.union(entry.rect);
+            level.add(node);
+        }
+        while (level.size() > 1)
+        {
+            List<Node>  parents = new ArrayList<Node>();
+            for (List<Node> group: strPack(level, NODE_X, NODE_Y))
+            {
+                Node  node = new Node();
+                node.children = group;
+                node.rect = new RectF(group.get(0).rect);
+                for (Node child: group)
+                    node.rect.union(child.rect);
+                parents.add(node);
+            }
+            level = parents;
+        }
+        this.root = level.isEmpty() ? null : level.get(0);
+    }
+
+
+    /*
+     * Sort-Tile-Recursive packing: sort by x into vertical slices, then sort each slice by y
+     * and cut it into groups of NODE_CAPACITY.
+     */
+    private static <T> List<List<T>>  strPack(List<T> items, Comparator<T> byX, Comparator<T> byY)
+    {
+        List<List<T>>  groups = new ArrayList<List<T>>();
+        if (items.isEmpty())
+            return groups;
+
+        List<T>  sorted = new ArrayList<T>(items);
+        Collections.sort(sorted, byX);
+
+        int  numGroups = (sorted.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int  numSlices = (int) Math.ceil(Math.sqrt(numGroups));
+        int  sliceSize = numSlices * NODE_CAPACITY;
+
+        for (int start = 0; start < sorted.size(); start += sliceSize)
+        {
+            List<T>  slice = new ArrayList<T>(sorted.subList(start, Math.min(start + sliceSize, sorted.size())));
+            Collections.sort(slice, byY);
+            for (int i = 0; i < slice.size(); i += NODE_CAPACITY)
+                groups.add(new ArrayList<T>(slice.subList(i, Math.min(i + NODE_CAPACITY, slice.size()))));
+        }
+        return groups;
+    }
+
+
+    private static final Comparator<Entry>  ENTRY_X = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) { return Float.compare(a.rect.centerX(), b.rect.centerX()); }
+    };
+
+    private static final Comparator<Entry>  ENTRY_Y = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) { return Float.compare(a.rect.centerY(), b.rect.centerY()); }
+    };
+
+    private static final Comparator<Node>  NODE_X = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) { return Float.compare(a.rect.centerX(), b.rect.centerX()); }
+    };
+
+    private static final Comparator<Node>  NODE_Y = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) { return Float.compare(a.rect.centerY(), b.rect.centerY()); }
+    };
+
+    private static final Comparator<Entry>  BY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) { return (a.order < b.order) ? -1 : ((a.order == b.order) ? 0 : 1); }
+    };
+
+
+    //=========================================================================
+    // Queries
+
+
+    protected SVG.Box  getViewPort()
+    {
+        return viewPort;
+    }
+
+
+    // Null if the root element had no viewBox
+    protected SVG.Box  getViewBox()
+    {
+        return viewBox;
+    }
+
+
+    // True if a viewport-fill painted a whole viewport, so that drawings aren't confined to the entries
+    protected boolean  fillsViewPort()
+    {
+        return fillsViewPort;
+    }
+
+
+    /*
+     * Returns the merged bounds of everything the given element drew (including its
+     * descendants, if it is a container), or null if it didn't draw anything.
+     */
+    protected RectF  getBounds(SVG.SvgObject obj)
+    {
+        return bounds.get(obj);
+    }
+
+
+    /*
+     * Returns the elements whose drawings intersect the given rectangle, in drawing order.
+     * An element appears once, even if it was drawn more than once.
+     */
+    protected List<SVG.SvgElement>  findIntersecting(RectF rect)
+    {
+        List<Entry>  found = new ArrayList<Entry>();
+        if (root != null)
+            search(root, rect, found);
+        Collections.sort(found, BY_ORDER);
+        return toElements(found);
+    }
+
+
+    /*
+     * Returns the elements whose drawings contain the given point, topmost first.
+     */
+    protected List<SVG.SvgElement>  findAt(float x, float y)
+    {
+        List<Entry>  found = new ArrayList<Entry>();
+        if (root != null)
+            search(root, new RectF(x, y, x, y), found);
+        Collections.sort(found, Collections.reverseOrder(BY_ORDER));
+        return toElements(found);
+    }
+
+
+    /*
+     * Returns true if any drawing intersects the given rectangle. Stops at the first one found.
+     */
+    protected boolean  intersectsAny(RectF rect)
+    {
+        return root != null && intersectsAny(root, rect);
+    }
+
+
+    private static boolean  intersectsAny(Node node, RectF rect)
+    {
+        if (node.entries != null)
+        {
+            for (Entry entry: node.entries) {
+                if (intersects(entry.rect, rect))
+                    return true;
+            }
+            return false;
+        }
+        for (Node child: node.children) {
+            if (intersects(child.rect, rect) && intersectsAny(child, rect))
+                return true;
+        }
+        return false;
+    }
+
+
+    private static void  search(Node node, RectF rect, List<Entry> found)
+    {
+        if (node.entries != null)
+        {
+            for (Entry entry: node.entries) {
+                if (intersects(entry.rect, rect))
+                    found.add(entry);
+            }
+            return;
+        }
+        for (Node child: node.children) {
+            if (intersects(child.rect, rect))
+                search(child, rect, found);
+        }
+    }
+
+
+    // Like RectF.intersects(), but touching counts, so that point queries work
+    private static boolean  intersects(RectF a, RectF b)
+    {
+        return a.left <= b.right && b.left <= a.right && a.top <= b.bottom && b.top <= a.bottom;
+    }
+
+
+    // Remove duplicate elements, keeping the first occurrence
+    private static List<SVG.SvgElement>  toElements(List<Entry> found)
+    {
+        Map<SVG.SvgElement, Boolean>  seen = new IdentityHashMap<SVG.SvgElement, Boolean>();
+        List<SVG.SvgElement>          result = new ArrayList<SVG.SvgElement>(found.size());
+        for (Entry entry: found) {
+            if (seen.put(entry.element, Boolean.TRUE) == null)
+                result.add(entry.element);
+        }
+        return result;
+    }
+}
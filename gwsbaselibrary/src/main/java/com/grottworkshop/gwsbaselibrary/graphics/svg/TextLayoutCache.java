@@ -0,0 +1,238 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PathMeasure;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+
+/**
+ * Per-document cache of the text layout work done by the renderer.
+ * <p>
+ * It holds:
+ * <ul>
+ * <li>the text of each text node (and &lt;tref&gt;) after the xml:space rules have been applied,</li>
+ * <li>the advance and bounds of each run of text, keyed by typeface, text size and text,</li>
+ * <li>the anchor width of each &lt;text&gt; and &lt;textPath&gt; element, keyed by the font it was laid out with,</li>
+ * <li>the path and path length used by each &lt;textPath&gt;.</li>
+ * </ul>
+ * Entries that depend on the style are keyed by the resolved typeface and size, so a change
+ * of style simply misses the cache. Changes to the DPI or other document properties clear
+ * the whole cache.
+ *
+ * @hide
+ */
+public class TextLayoutCache
+{
+    public static final int  MAX_RUNS = 1024;
+
+    // Processed text for each text node or <tref>. Index 0 is xml:space="default", 1 is "preserve".
+    private Map<SVG.SvgObject, String[]>          texts = Collections.synchronizedMap(new IdentityHashMap<SVG.SvgObject, String[]>());
+    private LruCache<RunKey, Run>                 runs = new LruCache<RunKey, Run>(MAX_RUNS);
+    private Map<SVG.TextContainer, AnchorWidth>   anchorWidths = Collections.synchronizedMap(new IdentityHashMap<SVG.TextContainer, AnchorWidth>());
+    private Map<SVG.TextPath, TextPathLayout>     textPaths = Collections.synchronizedMap(new IdentityHashMap<SVG.TextPath, TextPathLayout>());
+
+
+    private static class RunKey
+    {
+        private Typeface  typeface;
+        private float     textSize;
+        private String    text;
+        private int       hash;
+
+        public RunKey(Typeface typeface, float textSize, String text)
+        {
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.text = text;
+            this.hash = ((typeface != null ? typeface.hashCode() : 0) * 31 + Float.floatToIntBits(textSize)) * 31 + text.hashCode();
+        }
+
+        @Override
+        public int  hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean  equals(Object o)
+        {
+            if (!(o instanceof RunKey))
+                return false;
+            RunKey  other = (RunKey) o;
+            return textSize == other.textSize &&
+                   (typeface == null ? other.typeface == null : typeface.equals(other.typeface)) &&
+                   text.equals(other.text);
+        }
+    }
+
+
+    /*
+     * The measurements of a run of text. 'bounds' is relative to the text origin and is
+     * only filled in when first asked for.
+     */
+    protected static class Run
+    {
+        public float  advance;
+        public volatile Rect  bounds;
+    }
+
+
+    private static class AnchorWidth
+    {
+        public Typeface  typeface;
+        public float     textSize;
+        public boolean   spacePreserve;
+        public float     width;
+    }
+
+
+    /*
+     * The transformed path used by a <textPath>, and its length.
+     */
+    protected static class TextPathLayout
+    {
+        public Path   sourcePath;   // The untransformed path this was made from
+        public Path   path;
+        public float  length;
+    }
+
+
+    //=========================================================================
+    // Processed text
+
+
+    public String  getText(SVG.SvgObject node, boolean spacePreserve)
+    {
+        String[]  entry = texts.get(node);
+        return (entry != null) ? entry[spacePreserve ? 1 : 0] : null;
+    }
+
+
+    public void  putText(SVG.SvgObject node, boolean spacePreserve, String text)
+    {
+        synchronized (texts)
+        {
+            String[]  entry = texts.get(node);
+            if (entry == null) {
+                entry = new String[2];
+                texts.put(node, entry);
+            }
+            entry[spacePreserve ? 1 : 0] = text;
+        }
+    }
+
+
+    //=========================================================================
+    // Text runs
+
+
+    /*
+     * Returns the measurements of some text drawn with the given paint. Only the typeface and
+     * text size of the paint are taken into account, because they are the only properties
+     * the renderer sets that affect the size of text.
+     */
+    public Run  measure(Paint paint, String text)
+    {
+        RunKey  key = new RunKey(paint.getTypeface(), paint.getTextSize(), text);
+        Run     run = runs.get(key);
+        if (run == null)
+        {
+            run = new Run();
+            run.advance = paint.measureText(text);
+            runs.put(key, run);
+        }
+        return run;
+    }
+
+
+    public Rect  getBounds(Paint paint, String text)
+    {
+        Run  run = measure(paint, text);
+        if (run.bounds == null)
+        {
+            Rect  bounds = new Rect();
+            paint.getTextBounds(text, 0, text.length(), bounds);
+            run.bounds = bounds;
+        }
+        return run.bounds;
+    }
+
+
+    //=========================================================================
+    // Anchor widths
+
+
+    /*
+     * Returns the cached anchor width of a text element laid out with the given paint and
+     * xml:space setting, or NaN if there isn't one.
+     */
+    public float  getAnchorWidth(SVG.TextContainer obj, Paint paint, boolean spacePreserve)
+    {
+        AnchorWidth  entry = anchorWidths.get(obj);
+        if (entry == null || entry.textSize != paint.getTextSize() || entry.spacePreserve != spacePreserve || !equal(entry.typeface, paint.getTypeface()))
+            return Float.NaN;
+        return entry.width;
+    }
+
+
+    public void  putAnchorWidth(SVG.TextContainer obj, Paint paint, boolean spacePreserve, float width)
+    {
+        AnchorWidth  entry = new AnchorWidth();
+        entry.typeface = paint.getTypeface();
+        entry.textSize = paint.getTextSize();
+        entry.spacePreserve = spacePreserve;
+        entry.width = width;
+        anchorWidths.put(obj, entry);
+    }
+
+
+    private static boolean  equal(Typeface a, Typeface b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+
+    //=========================================================================
+    // Text paths
+
+
+    /*
+     * Returns the layout for a <textPath> that follows 'sourcePath' after applying 'transform'
+     * (which may be null). The layout is reused for as long as the source path object is the same.
+     */
+    public TextPathLayout  getTextPathLayout(SVG.TextPath obj, Path sourcePath, android.graphics.Matrix transform)
+    {
+        TextPathLayout  layout = textPaths.get(obj);
+        if (layout != null && layout.sourcePath == sourcePath)
+            return layout;
+
+        layout = new TextPathLayout();
+        layout.sourcePath = sourcePath;
+        if (transform != null) {
+            // Don't modify the source path. It may be cached.
+            layout.path = new Path();
+            sourcePath.transform(transform, layout.path);
+        } else {
+            layout.path = sourcePath;
+        }
+        layout.length = new PathMeasure(layout.path, false).getLength();
+        textPaths.put(obj, layout);
+        return layout;
+    }
+
+
+    public void  invalidate()
+    {
+        texts.clear();
+        runs.evictAll();
+        anchorWidths.clear();
+        textPaths.clear();
+    }
+}
@@ -0,0 +1,237 @@
+package com.grottworkshop.gwsbaselibrary.view.scrolldispatcher;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Coalesces scroll callbacks into at most one update per frame. A scroll view or list can report
+ * several scroll positions between two frames, and only the last one is ever seen on screen, so
+ * the dispatcher records the latest position and hands it to its listener once, at the start of
+ * the next frame. From API 16 frames are timed by {@link Choreographer}; before that, updates are
+ * spaced at least one 60 Hz frame apart.
+ * <p>
+ * A frame callback posted while a frame is already being processed only runs at the next
+ * frame, so a scroll reported by an animation, such as a list fling, would be applied a frame
+ * late. To avoid that, the owner should call {@link #flush()} from a
+ * {@link android.view.ViewTreeObserver.OnPreDrawListener}, which runs after the animations and
+ * before the views are drawn. Scrolls reported during drawing itself, as {@code ScrollView}
+ * does while flinging, are still applied at the next frame.
+ * <p>
+ * The dispatcher also keeps counters that show whether the updates fit in a frame: how many
+ * scroll events and frames there were, how long the listener took, and how many updates were
+ * applied late. The methods must be called on the UI thread.
+ */
+public class ScrollDispatcher {
+    /**
+     * The constant FRAME_INTERVAL_NANOS, the length of a 60 Hz frame.
+     */
+    public static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    // An update applied this long after its first scroll event missed at least one frame
+    private static final long LATE_FRAME_NANOS = 2 * FRAME_INTERVAL_NANOS;
+
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private FrameCallback frameCallback;
+    private boolean framePending;
+    private int pendingScrollPosition;
+    private long firstEventNanos;
+    private long lastFallbackFrameMillis;
+
+    private int scrollEventCount;
+    private int frameCount;
+    private int lateFrameCount;
+    private long totalFrameTimeNanos;
+    private long maxFrameTimeNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * The interface Listener.
+     */
+    public interface Listener {
+        /**
+         * On scroll frame, called once per frame with the latest scroll position.
+         *
+         * @param scrollPosition the scroll position
+         */
+        void onScrollFrame(int scrollPosition);
+    }
+
+    private final Runnable fallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            lastFallbackFrameMillis = SystemClock.uptimeMillis();
+            doFrame();
+        }
+    };
+
+    /**
+     * Instantiates a new Scroll dispatcher.
+     *
+     * @param listener the listener
+     */
+    public ScrollDispatcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Dispatch scroll. Records the scroll position, and makes sure the listener gets it at the
+     * next frame.
+     *
+     * @param scrollPosition the scroll position
+     */
+    public void dispatchScroll(int scrollPosition) {
+        pendingScrollPosition = scrollPosition;
+        scrollEventCount++;
+        if (framePending) {
+            return;
+        }
+        framePending = true;
+        firstEventNanos = System.nanoTime();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (frameCallback == null) {
+                frameCallback = new FrameCallback();
+            }
+            frameCallback.post();
+        } else {
+            long now = SystemClock.uptimeMillis();
+            handler.postAtTime(fallbackFrame, Math.max(now, lastFallbackFrameMillis + FRAME_INTERVAL_NANOS / 1000000));
+        }
+    }
+
+    /**
+     * Flush, handing any pending scroll position to the listener now rather than at the next frame.
+     */
+    public void flush() {
+        if (framePending) {
+            removeFrame();
+            doFrame();
+        }
+    }
+
+    /**
+     * Cancel any pending scroll position without handing it to the listener.
+     */
+    public void cancel() {
+        if (framePending) {
+            removeFrame();
+            framePending = false;
+        }
+    }
+
+    private void removeFrame() {
+        if (frameCallback != null) {
+            frameCallback.remove();
+        }
+        handler.removeCallbacks(fallbackFrame);
+    }
+
+    private void doFrame() {
+        if (!framePending) {
+            return;
+        }
+        framePending = false;
+        long start = System.nanoTime();
+        listener.onScrollFrame(pendingScrollPosition);
+        long end = System.nanoTime();
+
+        long frameTime = end - start;
+        long latency = end - firstEventNanos;
+        frameCount++;
+        totalFrameTimeNanos += frameTime;
+        maxFrameTimeNanos = Math.max(maxFrameTimeNanos, frameTime);
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        if (latency > LATE_FRAME_NANOS) {
+            lateFrameCount++;
+        }
+    }
+
+    /**
+     * Gets scroll event count, the number of scroll positions dispatched.
+     *
+     * @return the scroll event count
+     */
+    public int getScrollEventCount() {
+        return scrollEventCount;
+    }
+
+    /**
+     * Gets frame count, the number of times the listener was called. The difference with the
+     * scroll event count is the number of updates saved by coalescing.
+     *
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets late frame count, the number of updates applied more than two frames after their
+     * first scroll event.
+     *
+     * @return the late frame count
+     */
+    public int getLateFrameCount() {
+        return lateFrameCount;
+    }
+
+    /**
+     * Gets total frame time, the time spent in the listener, in nanoseconds.
+     *
+     * @return the total frame time
+     */
+    public long getTotalFrameTimeNanos() {
+        return totalFrameTimeNanos;
+    }
+
+    /**
+     * Gets max frame time, the longest time spent in one call to the listener, in nanoseconds.
+     *
+     * @return the max frame time
+     */
+    public long getMaxFrameTimeNanos() {
+        return maxFrameTimeNanos;
+    }
+
+    /**
+     * Gets max latency, the longest time between a scroll event and the end of the update that
+     * applied it, in nanoseconds.
+     *
+     * @return the max latency
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Reset counters.
+     */
+    public void resetCounters() {
+        scrollEventCount = 0;
+        frameCount = 0;
+        lateFrameCount = 0;
+        totalFrameTimeNanos = 0;
+        maxFrameTimeNanos = 0;
+        maxLatencyNanos = 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ScrollDispatcher.this.doFrame();
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
 import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+import android.view.ViewTreeObserver.OnPreDrawListener;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.FrameLayout;
@@ -35,6 +36,7 @@ import android.widget.ListView;
 
 
 import com.grottworkshop.gwsbaselibrary.R;
+import com.grottworkshop.gwsbaselibrary.view.scrolldispatcher.ScrollDispatcher;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -67,6 +69,12 @@ public abstract class FadingActionBarHelperBase {
     private boolean mFirstGlobalLayoutPerformed;
     private FrameLayout mMarginView;
     private View mListViewBackgroundView;
+    private final ScrollDispatcher mScrollDispatcher = new ScrollDispatcher(new ScrollDispatcher.Listener() {
+        @Override
+        public void onScrollFrame(int scrollPosition) {
+            onNewScroll(scrollPosition);
+        }
+    });
 
     /**
      * Action bar background.
@@ -253,6 +261,14 @@ public abstract class FadingActionBarHelperBase {
                 }
             }
         });
+        root.getViewTreeObserver().addOnPreDrawListener(new OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // Apply a scroll made by this frame's animations, such as a fling, before it is drawn
+                mScrollDispatcher.flush();
+                return true;
+            }
+        });
         return root;
     }
 
@@ -272,6 +288,16 @@ public abstract class FadingActionBarHelperBase {
         mActionBarBackgroundDrawable.setAlpha(0);
     }
 
+    /**
+     * Gets scroll dispatcher. The action bar alpha and the parallax header are updated once per
+     * frame through it, and its counters show how long that takes.
+     *
+     * @return the scroll dispatcher
+     */
+    public ScrollDispatcher getScrollDispatcher() {
+        return mScrollDispatcher;
+    }
+
     /**
      * Gets action bar height.
      *
@@ -375,7 +401,7 @@ public abstract class FadingActionBarHelperBase {
 
     private OnScrollChangedCallback mOnScrollChangedListener = new OnScrollChangedCallback() {
         public void onScroll(int l, int t) {
-            onNewScroll(t);
+            mScrollDispatcher.dispatchScroll(t);
         }
     };
 
@@ -406,11 +432,11 @@ public abstract class FadingActionBarHelperBase {
         public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
             View topChild = view.getChildAt(0);
             if (topChild == null) {
-                onNewScroll(0);
+                mScrollDispatcher.dispatchScroll(0);
             } else if (topChild != mMarginView) {
-                onNewScroll(mHeaderContainer.getHeight());
+                mScrollDispatcher.dispatchScroll(mHeaderContainer.getHeight());
             } else {
-                onNewScroll(-topChild.getTop());
+                mScrollDispatcher.dispatchScroll(-topChild.getTop());
             }
         }
 
@@ -0,0 +1,162 @@
+package com.grottworkshop.gwsbaselibrary.widget.glassactionbar;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.Type;
+
+/**
+ * A long-lived blur engine. It holds one RenderScript context and one blur script, and keeps
+ * its allocations sized to the most recent input, so repeated blurs of the same size (such as
+ * the section under the action bar on every scroll) don't create any native objects.
+ * <p>
+ * Before API 17 there is no blur intrinsic, and the engine uses {@link StackBlur} instead,
+ * reusing its pixel buffer between calls.
+ * <p>
+ * The methods are synchronized, so an engine can be shared between threads, but blurs on one
+ * engine run one at a time. Call {@link #release()} when the engine is no longer needed.
+ */
+public class BlurEngine {
+    /**
+     * The constant MAX_RENDERSCRIPT_RADIUS, the largest radius the blur intrinsic supports.
+     */
+    public static final int MAX_RENDERSCRIPT_RADIUS = 25;
+
+    private final Context context;
+    private RenderScript renderScript;
+    private ScriptIntrinsicBlur script;
+    private Allocation input;
+    private Allocation output;
+    private Bitmap outputBitmap;
+    private StackBlur stackBlur;
+    private int[] pixels;
+
+    /**
+     * Instantiates a new Blur engine. Nothing is allocated until the first blur.
+     *
+     * @param context the context
+     */
+    public BlurEngine(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Blur a bitmap into an output bitmap owned by the engine. The same output bitmap is reused
+     * by the next call with a source of the same size, so it must not be recycled or kept.
+     *
+     * @param source the source
+     * @param radius the radius
+     * @return the blurred bitmap
+     */
+    public synchronized Bitmap blur(Bitmap source, int radius) {
+        outputBitmap = blur(source, radius, outputBitmap);
+        return outputBitmap;
+    }
+
+    /**
+     * Blur a bitmap into another. The destination is reused if it is a mutable ARGB_8888 bitmap
+     * the same size as the source; otherwise a new bitmap is created.
+     *
+     * @param source the source
+     * @param radius the radius
+     * @param dest the destination, or null
+     * @return the blurred bitmap, either dest or a new bitmap
+     */
+    public synchronized Bitmap blur(Bitmap source, int radius, Bitmap dest) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Invalid blur radius");
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (dest == null || dest.isRecycled() || !dest.isMutable() || dest.getWidth() != width
+                || dest.getHeight() != height || dest.getConfig() != Bitmap.Config.ARGB_8888) {
+            dest = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        if (Build.VERSION.SDK_INT > 16) {
+            renderScriptBlur(source, Math.min(radius, MAX_RENDERSCRIPT_RADIUS), dest);
+        } else {
+            stackBlur(source, radius, dest);
+        }
+        return dest;
+    }
+
+    @SuppressLint("NewApi")
+    private void renderScriptBlur(Bitmap source, int radius, Bitmap dest) {
+        if (source.getConfig() != Bitmap.Config.ARGB_8888) {
+            source = source.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        if (renderScript == null) {
+            renderScript = RenderScript.create(context);
+            script = ScriptIntrinsicBlur.create(renderScript, Element.U8_4(renderScript));
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (input == null || input.getType().getX() != width || input.getType().getY() != height) {
+            releaseAllocations();
+            Type type = new Type.Builder(renderScript, Element.U8_4(renderScript)).setX(width).setY(height).create();
+            input = Allocation.createTyped(renderScript, type, Allocation.USAGE_SCRIPT);
+            output = Allocation.createTyped(renderScript, type, Allocation.USAGE_SCRIPT);
+        }
+
+        input.copyFrom(source);
+        script.setRadius(radius);
+        script.setInput(input);
+        script.forEach(output);
+        output.copyTo(dest);
+    }
+
+    private void stackBlur(Bitmap source, int radius, Bitmap dest) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        if (stackBlur == null) {
+            stackBlur = new StackBlur();
+        }
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        stackBlur.blur(pixels, width, height, radius);
+        dest.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    @SuppressLint("NewApi")
+    private void releaseAllocations() {
+        if (input != null) {
+            input.destroy();
+            output.destroy();
+            input = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Release the RenderScript context, script, allocations, output bitmap and the Stack Blur
+     * threads and buffers. The engine can
+     * still be used afterwards; they are created again by the next blur.
+     */
+    @SuppressLint("NewApi")
+    public synchronized void release() {
+        releaseAllocations();
+        if (renderScript != null) {
+            script.destroy();
+            renderScript.destroy();
+            script = null;
+            renderScript = null;
+        }
+        if (outputBitmap != null) {
+            outputBitmap.recycle();
+            outputBitmap = null;
+        }
+        if (stackBlur != null) {
+            stackBlur.release();
+            stackBlur = null;
+        }
+        pixels = null;
+    }
+}
@@ -18,8 +18,14 @@ package com.grottworkshop.gwsbaselibrary.widget.glassactionbar;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
@@ -37,6 +43,7 @@ import android.widget.ScrollView;
 
 
 import com.grottworkshop.gwsbaselibrary.R;
+import com.grottworkshop.gwsbaselibrary.view.scrolldispatcher.ScrollDispatcher;
 import com.grottworkshop.gwsbaselibrary.widget.notifyingscrollview.NotifyingScrollView;
 
 
@@ -45,7 +52,7 @@ import com.grottworkshop.gwsbaselibrary.widget.notifyingscrollview.NotifyingScro
  *
  * Created by fgrott on 10/9/2014.
  */
-public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutListener, NotifyingScrollView.OnScrollChangedListener, BlurTask.Listener, ListViewScrollObserver.OnListViewScrollListener {
+public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutListener, ViewTreeObserver.OnPreDrawListener, NotifyingScrollView.OnScrollChangedListener, BlurTask.Listener, ListViewScrollObserver.OnListViewScrollListener {
     private int contentLayout;
     private FrameLayout frame;
     private View content;
@@ -57,6 +64,7 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
     private Bitmap scaled;
     private int blurRadius = GlassActionBar.DEFAULT_BLUR_RADIUS;
     private BlurTask blurTask;
+    private BlurEngine blurEngine;
     private int lastScrollPosition = -1;
     private NotifyingScrollView scrollView;
     private ListView listView;
@@ -64,6 +72,55 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
     private static final String TAG = "GlassActionBarHelper";
     private boolean verbose = GlassActionBar.verbose;
     private Drawable windowBackground;
+    private boolean stripBlur;
+    private Bitmap strip;
+    private Bitmap spareStrip;
+    private Bitmap stripSource;
+    private Canvas stripCanvas;
+    // The content row, in downsampled pixels, shown by the first row of the strip, or -1 if the strip is empty
+    private int stripTop = -1;
+    private final Matrix stripMatrix = new Matrix();
+    private final Rect stripSrc = new Rect();
+    private final Rect stripDst = new Rect();
+    private boolean liveBlur;
+    private int liveFrameBudget = DEFAULT_LIVE_FRAME_BUDGET;
+    private boolean liveBlurDirty;
+    private boolean liveBlurPosted;
+    private long nextLiveBlurTime;
+
+    /**
+     * The constant DEFAULT_LIVE_FRAME_BUDGET, in milliseconds.
+     */
+    public static final int DEFAULT_LIVE_FRAME_BUDGET = 16;
+
+    private final DataSetObserver adapterObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            liveBlurDirty = true;
+        }
+
+        @Override
+        public void onInvalidated() {
+            liveBlurDirty = true;
+        }
+    };
+
+    private final ScrollDispatcher scrollDispatcher = new ScrollDispatcher(new ScrollDispatcher.Listener() {
+        @Override
+        public void onScrollFrame(int scrollPosition) {
+            onNewScroll(scrollPosition);
+        }
+    });
+
+    private final Runnable liveBlurRunnable = new Runnable() {
+        @Override
+        public void run() {
+            liveBlurPosted = false;
+            if (isLiveBlurActive()) {
+                updateLiveBlur();
+            }
+        }
+    };
 
     /**
      * Content layout.
@@ -112,6 +169,7 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
         frame.addView(content, 0);
 
         frame.getViewTreeObserver().addOnGlobalLayoutListener(this);
+        frame.getViewTreeObserver().addOnPreDrawListener(this);
         blurredOverlay = (ImageView) frame.findViewById(R.id.blurredOverlay);
 
         if (content instanceof NotifyingScrollView) {
@@ -122,6 +180,9 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
             if (verbose) Log.v(TAG, "ListView content!");
             listView = (ListView) content;
             listView.setAdapter(adapter);
+            if (adapter != null) {
+                adapter.registerDataSetObserver(adapterObserver);
+            }
             ListViewScrollObserver observer = new ListViewScrollObserver(listView);
             observer.setOnScrollUpAndDownListener(this);
         }
@@ -136,10 +197,147 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
     public void invalidate() {
         if (verbose) Log.v(TAG, "invalidate()");
         scaled = null;
+        stripTop = -1;
+        boolean usesStrip = isStripBlurActive() || isLiveBlurActive();
+        if (blurredOverlay != null) {
+            blurredOverlay.setScaleType(usesStrip ? ImageView.ScaleType.MATRIX : ImageView.ScaleType.CENTER_CROP);
+        }
+        if (usesStrip) {
+            if (blurTask != null) {
+                blurTask.cancel();
+                blurTask = null;
+            }
+            if (isLiveBlurActive()) {
+                updateLiveBlur();
+            } else {
+                updateBlurOverlay(lastScrollPosition, true);
+            }
+            return;
+        }
         computeBlurOverlay();
         updateBlurOverlay(lastScrollPosition, true);
     }
 
+    /**
+     * Release the blur engine and cancel any blur in progress. Call this when the view is
+     * destroyed, for example from the activity's onDestroy().
+     */
+    public void destroy() {
+        if (verbose) Log.v(TAG, "destroy()");
+        scrollDispatcher.cancel();
+        if (blurTask != null) {
+            blurTask.cancel();
+            blurTask = null;
+        }
+        if (blurEngine != null) {
+            blurEngine.release();
+            blurEngine = null;
+        }
+        releaseStrip();
+        if (frame != null) {
+            frame.removeCallbacks(liveBlurRunnable);
+            liveBlurPosted = false;
+            if (frame.getViewTreeObserver().isAlive()) {
+                frame.getViewTreeObserver().removeOnPreDrawListener(this);
+            }
+        }
+        if (listView != null && adapter != null) {
+            adapter.unregisterDataSetObserver(adapterObserver);
+        }
+    }
+
+    /**
+     * Gets scroll dispatcher. Scroll positions are applied to the overlay once per frame through
+     * it, and its counters show how long that takes.
+     *
+     * @return the scroll dispatcher
+     */
+    public ScrollDispatcher getScrollDispatcher() {
+        return scrollDispatcher;
+    }
+
+    /**
+     * Sets strip blur. In strip mode the content of a {@link NotifyingScrollView} is not drawn and
+     * blurred as a whole. Instead, the helper keeps a blurred strip about three action bars tall
+     * around the current scroll position, and when the action bar scrolls out of the strip it
+     * moves the strip and blurs only the rows that are new to it. The memory used doesn't depend
+     * on the height of the content, so this mode is meant for long scroll views. It has no effect
+     * on ListView content.
+     *
+     * @param newValue the new value
+     */
+    public void setStripBlur(boolean newValue) {
+        if (stripBlur == newValue) {
+            return;
+        }
+        stripBlur = newValue;
+        releaseStrip();
+        if (width != 0) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Is strip blur.
+     *
+     * @return the boolean
+     */
+    public boolean isStripBlur() {
+        return stripBlur;
+    }
+
+    /**
+     * Sets live blur. In live mode the content of a ListView is not captured once when it is first
+     * laid out. Instead, the rows under the action bar are drawn and blurred again whenever the
+     * list changes: when the adapter's data changes, when the list scrolls, or when a row redraws
+     * itself, for example after an image has loaded. Captures are limited by the live frame
+     * budget, and reuse the same bitmaps and blur engine. It has no effect on ScrollView content.
+     *
+     * @param newValue the new value
+     */
+    public void setLiveBlur(boolean newValue) {
+        if (liveBlur == newValue) {
+            return;
+        }
+        liveBlur = newValue;
+        releaseStrip();
+        if (width != 0) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Is live blur.
+     *
+     * @return the boolean
+     */
+    public boolean isLiveBlur() {
+        return liveBlur;
+    }
+
+    /**
+     * Sets live frame budget, the minimum time in milliseconds between two captures in live
+     * mode. A capture that takes more than half the budget pushes the next one back, so that
+     * live mode never uses more than half the UI thread.
+     *
+     * @param newValue the new value
+     */
+    public void setLiveFrameBudget(int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Invalid live frame budget");
+        }
+        liveFrameBudget = newValue;
+    }
+
+    /**
+     * Gets live frame budget.
+     *
+     * @return the live frame budget
+     */
+    public int getLiveFrameBudget() {
+        return liveFrameBudget;
+    }
+
     /**
      * Sets blur radius.
      *
@@ -263,11 +461,6 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
     private void updateBlurOverlay(int top, boolean force) {
         if (verbose) Log.v(TAG, "updateBlurOverlay() - top=" + top);
 
-        if (scaled == null) {
-            if (verbose) Log.v(TAG, "updateBlurOverlay() - returning because scaled is null");
-            return;
-        }
-
         if (top < 0) {
             if (verbose) Log.v(TAG, "updateBlurOverlay() - clamping top to 0");
             top = 0;
@@ -277,6 +470,14 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
             return;
         }
         lastScrollPosition = top;
+        if (isStripBlurActive()) {
+            updateBlurStrip(top);
+            return;
+        }
+        if (scaled == null) {
+            if (verbose) Log.v(TAG, "updateBlurOverlay() - returning because scaled is null");
+            return;
+        }
         Bitmap actionBarSection = Bitmap.createBitmap(scaled, 0, top / downSampling, width / downSampling,
                 actionBarHeight / downSampling);
         // Blur here until background finished (will make smooth jerky during the first second or so).
@@ -286,14 +487,196 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
             blurredBitmap = actionBarSection;
         } else {
             if (verbose) Log.v(TAG, "updateBlurOverlay() - blur task not finished, blurring content under action bar");
-            blurredBitmap = Blur.apply(frame.getContext(), actionBarSection);
+            // This engine is only used here, so it never waits for the background blur. Its
+            // allocations and output bitmap are reused on every scroll.
+            if (blurEngine == null) {
+                blurEngine = new BlurEngine(frame.getContext());
+            }
+            blurredBitmap = blurEngine.blur(actionBarSection, GlassActionBar.DEFAULT_BLUR_RADIUS);
         }
         Bitmap enlarged = Bitmap.createScaledBitmap(blurredBitmap, width, actionBarHeight, false);
-        blurredBitmap.recycle();
         actionBarSection.recycle();
         blurredOverlay.setImageBitmap(enlarged);
     }
 
+    private boolean isStripBlurActive() {
+        return stripBlur && scrollView != null;
+    }
+
+    private boolean isLiveBlurActive() {
+        return liveBlur && listView != null;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        // Apply a scroll made by this frame's animations, such as a fling, before it is drawn
+        scrollDispatcher.flush();
+
+        // isDirty() is only true when the list, or one of its rows, is about to be redrawn, so
+        // this doesn't react to the overlay being redrawn after a capture.
+        if (isLiveBlurActive() && (liveBlurDirty || listView.isDirty())) {
+            liveBlurDirty = true;
+            long now = SystemClock.uptimeMillis();
+            if (now >= nextLiveBlurTime) {
+                updateLiveBlur();
+            } else if (!liveBlurPosted) {
+                // Capture the final state even if the list stops changing before the budget runs out
+                liveBlurPosted = true;
+                frame.postDelayed(liveBlurRunnable, nextLiveBlurTime - now);
+            }
+        }
+        return true;
+    }
+
+    private void updateLiveBlur() {
+        if (liveBlurPosted) {
+            frame.removeCallbacks(liveBlurRunnable);
+            liveBlurPosted = false;
+        }
+        if (width == 0) {
+            if (verbose) Log.v(TAG, "updateLiveBlur() - returning because the content hasn't been laid out");
+            return;
+        }
+        long start = SystemClock.uptimeMillis();
+        int stripWidth = width / downSampling;
+        int barRows = (actionBarHeight + downSampling - 1) / downSampling;
+        boolean created = ensureStrip(stripWidth, barRows);
+        stripTop = 0;
+        blurStripRows(0, barRows);
+        liveBlurDirty = false;
+
+        if (created) {
+            stripMatrix.setScale((float) width / stripWidth, downSampling);
+            blurredOverlay.setImageBitmap(strip);
+            blurredOverlay.setImageMatrix(stripMatrix);
+        } else {
+            blurredOverlay.invalidate();
+        }
+        long delta = SystemClock.uptimeMillis() - start;
+        nextLiveBlurTime = start + Math.max(liveFrameBudget, 2 * delta);
+        if (verbose) Log.v(TAG, "updateLiveBlur() - capture took " + delta + " ms");
+    }
+
+    private boolean ensureStrip(int stripWidth, int stripRows) {
+        if (stripCanvas == null) {
+            stripCanvas = new Canvas();
+        }
+        if (strip != null && strip.getWidth() == stripWidth && strip.getHeight() == stripRows) {
+            return false;
+        }
+        strip = Bitmap.createBitmap(stripWidth, stripRows, Bitmap.Config.ARGB_8888);
+        spareStrip = null;
+        stripTop = -1;
+        return true;
+    }
+
+    private void updateBlurStrip(int top) {
+        if (width == 0) {
+            if (verbose) Log.v(TAG, "updateBlurStrip() - returning because the content hasn't been laid out");
+            return;
+        }
+        int stripWidth = width / downSampling;
+        // Enough rows to cover the action bar at any offset, and the strip is one of those above and below it
+        int barRows = actionBarHeight / downSampling + 2;
+        int stripRows = barRows * 3;
+        int first = top / downSampling;
+        int last = (top + actionBarHeight) / downSampling + 1;
+
+        ensureStrip(stripWidth, stripRows);
+        if (stripTop < 0 || first < stripTop || last > stripTop + stripRows) {
+            // Strip positions are multiples of barRows, so a slow scroll moves the strip barRows
+            // rows at a time and the rows to blur are always the same size.
+            long start = System.nanoTime();
+            moveStrip(Math.max(0, (first - barRows) / barRows * barRows));
+            long delta = System.nanoTime() - start;
+            if (verbose) Log.v(TAG, "updateBlurStrip() - moving strip to " + stripTop + " took " + delta/1e6f + " ms");
+            blurredOverlay.setImageBitmap(strip);
+        }
+
+        stripMatrix.setScale((float) width / stripWidth, downSampling);
+        stripMatrix.postTranslate(0, stripTop * downSampling - top);
+        blurredOverlay.setImageMatrix(stripMatrix);
+    }
+
+    private void moveStrip(int newTop) {
+        int stripRows = strip.getHeight();
+        int shift = newTop - stripTop;
+        int exposedTop = newTop;
+        int exposedBottom = newTop + stripRows;
+        if (stripTop >= 0 && Math.abs(shift) < stripRows) {
+            if (spareStrip == null) {
+                spareStrip = Bitmap.createBitmap(strip.getWidth(), stripRows, Bitmap.Config.ARGB_8888);
+            }
+            // Keep the rows the old and new strips share, and blur only the others
+            spareStrip.eraseColor(Color.TRANSPARENT);
+            stripCanvas.setBitmap(spareStrip);
+            stripCanvas.drawBitmap(strip, 0, -shift, null);
+            Bitmap swap = strip;
+            strip = spareStrip;
+            spareStrip = swap;
+            if (shift > 0) {
+                exposedTop = stripTop + stripRows;
+            } else {
+                exposedBottom = stripTop;
+            }
+        } else {
+            strip.eraseColor(Color.TRANSPARENT);
+        }
+        stripTop = newTop;
+        blurStripRows(exposedTop, exposedBottom);
+    }
+
+    private void blurStripRows(int top, int bottom) {
+        // The blur needs blurRadius rows of context on each side to match a blur of the whole
+        // content. There is nothing above the first row, where the blur clamps instead.
+        int sourceTop = Math.max(0, top - blurRadius);
+        int rows = bottom + blurRadius - sourceTop;
+        if (stripSource == null || stripSource.getWidth() != strip.getWidth() || stripSource.getHeight() != rows) {
+            stripSource = Bitmap.createBitmap(strip.getWidth(), rows, Bitmap.Config.ARGB_8888);
+        }
+        drawContentRows(stripSource, sourceTop);
+
+        if (blurEngine == null) {
+            blurEngine = new BlurEngine(frame.getContext());
+        }
+        Bitmap blurred = blurEngine.blur(stripSource, blurRadius);
+        stripSrc.set(0, top - sourceTop, strip.getWidth(), bottom - sourceTop);
+        stripDst.set(0, top - stripTop, strip.getWidth(), bottom - stripTop);
+        stripCanvas.setBitmap(strip);
+        stripCanvas.drawBitmap(blurred, stripSrc, stripDst, null);
+    }
+
+    private void drawContentRows(Bitmap dest, int top) {
+        // A list is drawn as it is on screen. For a scroll view, draw its child rather than the
+        // scroll view itself, so that its scroll position, scroll bars and edge effects don't
+        // get in the way. Either way only the children that intersect the rows are drawn.
+        View child = listView != null ? listView : scrollView.getChildAt(0);
+        int y = top * downSampling;
+        dest.eraseColor(Color.TRANSPARENT);
+        stripCanvas.setBitmap(dest);
+        int saveCount = stripCanvas.save();
+        stripCanvas.scale(1f / downSampling, 1f / downSampling);
+        stripCanvas.translate(0, -y);
+        if (windowBackground != null) {
+            windowBackground.setBounds(0, y, width, y + dest.getHeight() * downSampling);
+            windowBackground.draw(stripCanvas);
+        }
+        if (listView != null) {
+            listView.draw(stripCanvas);
+        } else if (child != null) {
+            stripCanvas.translate(child.getLeft(), child.getTop());
+            child.draw(stripCanvas);
+        }
+        stripCanvas.restoreToCount(saveCount);
+    }
+
+    private void releaseStrip() {
+        strip = null;
+        spareStrip = null;
+        stripSource = null;
+        stripTop = -1;
+    }
+
     private boolean isBlurTaskFinished() {
         return blurTask == null;
     }
@@ -301,15 +684,18 @@ public class GlassActionBarHelper implements ViewTreeObserver.OnGlobalLayoutList
     @Override
     public void onScrollChanged(ScrollView who, int l, int t, int oldl, int oldt) {
         // ScrollView scroll
-        onNewScroll(t);
+        scrollDispatcher.dispatchScroll(t);
     }
 
     @Override
     public void onScrollUpDownChanged(int delta, int scrollPosition, boolean exact) {
         // ListView scroll
         if (verbose) Log.v(TAG, "onScrollUpDownChanged() " + exact);
-        if (exact) {
-            onNewScroll(-scrollPosition);
+        if (isLiveBlurActive()) {
+            // Captured before the next frame, whether or not the position is exact
+            liveBlurDirty = true;
+        } else if (exact) {
+            scrollDispatcher.dispatchScroll(-scrollPosition);
         }
     }
 
@@ -0,0 +1,473 @@
+package com.grottworkshop.gwsbaselibrary.widget.glassactionbar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stack Blur of an array of ARGB pixels, in place. The alpha channel is left unchanged.
+ * <p>
+ * The horizontal pass is split into bands of rows, and the vertical pass into bands of
+ * columns, which are blurred in parallel on a fixed set of worker threads. Every row and
+ * column is blurred exactly as the single threaded version does it, so the result is the
+ * same, pixel for pixel, whatever the number of threads.
+ * <p>
+ * The scratch buffers are kept between calls and only grow, so blurring images of the same
+ * size again doesn't allocate them. This class doesn't use any Android classes, so it can be
+ * benchmarked on a desktop JVM.
+ */
+public class StackBlur {
+    // Images smaller than this are blurred on the calling thread only
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+
+    // Rows or columns per band, at least
+    private static final int MIN_BAND_SIZE = 16;
+
+    private final int threadCount;
+    private ExecutorService executor;
+
+    // Scratch buffers, reused between calls
+    private int[] r;
+    private int[] g;
+    private int[] b;
+    private int[] dv;
+    private int dvRadius = -1;
+    private Band[] bands;
+
+    // The arguments of the blur in progress, for the bands
+    private int[] pix;
+    private int w;
+    private int h;
+    private int radius;
+
+    /**
+     * A range of rows or columns, with its own stack and edge tables.
+     */
+    private class Band implements Runnable {
+        int start;
+        int end;
+        boolean vertical;
+        int[][] stack;
+        int[] vmin;
+
+        @Override
+        public void run() {
+            if (vertical) {
+                blurColumns(start, end, stack, vmin);
+            } else {
+                blurRows(start, end, stack, vmin);
+            }
+        }
+    }
+
+    /**
+     * Instantiates a new Stack blur that uses every processor.
+     */
+    public StackBlur() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiates a new Stack blur.
+     *
+     * @param threadCount the number of threads to blur with, including the calling thread
+     */
+    public StackBlur(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Blur the pixels in place.
+     *
+     * @param pixels the ARGB pixels, row by row. May be longer than width * height.
+     * @param width the width
+     * @param height the height
+     * @param radius the radius. Nothing is done if it is less than 1.
+     */
+    public synchronized void blur(int[] pixels, int width, int height, int radius) {
+        if (radius < 1 || width < 1 || height < 1) {
+            return;
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array too small");
+        }
+        this.pix = pixels;
+        this.w = width;
+        this.h = height;
+        this.radius = radius;
+        try {
+            prepare();
+            int threads = (width * height < MIN_PARALLEL_PIXELS) ? 1 : threadCount;
+            runBands(height, threads, false);
+            runBands(width, threads, true);
+        } finally {
+            this.pix = null;
+        }
+    }
+
+    /**
+     * Stop the worker threads and free the scratch buffers. The blur can still be used
+     * afterwards.
+     */
+    public synchronized void release() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        r = g = b = dv = null;
+        dvRadius = -1;
+        bands = null;
+    }
+
+    private void prepare() {
+        int wh = w * h;
+        if (r == null || r.length < wh) {
+            r = new int[wh];
+            g = new int[wh];
+            b = new int[wh];
+        }
+
+        int div = radius + radius + 1;
+        if (dvRadius != radius) {
+            int divsum = (div + 1) >> 1;
+            divsum *= divsum;
+            dv = new int[256 * divsum];
+            for (int i = 0; i < 256 * divsum; i++) {
+                dv[i] = (i / divsum);
+            }
+            dvRadius = radius;
+        }
+
+        if (bands == null) {
+            bands = new Band[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                bands[i] = new Band();
+            }
+        }
+        int size = Math.max(w, h);
+        for (Band band : bands) {
+            if (band.stack == null || band.stack.length != div) {
+                band.stack = new int[div][3];
+            }
+            if (band.vmin == null || band.vmin.length < size) {
+                band.vmin = new int[size];
+            }
+        }
+    }
+
+    /*
+     * Split 'count' rows or columns into bands, and blur them. The calling thread blurs the
+     * first band itself, and waits for the others.
+     */
+    private void runBands(int count, int threads, boolean vertical) {
+        int numBands = Math.max(1, Math.min(threads, count / MIN_BAND_SIZE));
+        for (int i = 0; i < numBands; i++) {
+            Band band = bands[i];
+            band.start = (int) ((long) count * i / numBands);
+            band.end = (int) ((long) count * (i + 1) / numBands);
+            band.vertical = vertical;
+        }
+        if (numBands == 1) {
+            bands[0].run();
+            return;
+        }
+
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threadCount - 1, THREAD_FACTORY);
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>(numBands - 1);
+        for (int i = 1; i < numBands; i++) {
+            futures.add(executor.submit(bands[i]));
+        }
+
+        RuntimeException error = null;
+        try {
+            bands[0].run();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        // Wait for every band, even if interrupted, so none of them is still using the scratch
+        // buffers when the next blur starts
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    if (error == null) {
+                        error = (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause);
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "StackBlur #" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    // Stack Blur v1.0 from
+    // http://www.quasimondo.com/StackBlurForCanvas/StackBlurDemo.html
+    //
+    // Java Author: Mario Klingemann <mario at quasimondo.com>
+    // http://incubator.quasimondo.com
+    // created Feburary 29, 2004
+    // Android port : Yahel Bouaziz <yahel at kayenko.com>
+    // http://www.kayenko.com
+    // ported april 5th, 2012
+
+    // This is a compromise between Gaussian Blur and Box blur
+    // It creates much better looking blurs than Box Blur, but is
+    // 7x faster than my Gaussian Blur implementation.
+    //
+    // I called it Stack Blur because this describes best how this
+    // filter works internally: it creates a kind of moving stack
+    // of colors whilst scanning through the image. Thereby it
+    // just has to add one new block of color to the right side
+    // of the stack and remove the leftmost color. The remaining
+    // colors on the topmost layer of the stack are either added on
+    // or reduced by one, depending on if they are on the right or
+    // on the left side of the stack.
+    //
+    // If you are using this algorithm in your code please add
+    // the following line:
+    //
+    // Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
+
+    /*
+     * The horizontal pass, for rows y0 to y1 (exclusive). Reads pix and writes r, g and b.
+     */
+    private void blurRows(int y0, int y1, int[][] stack, int[] vmin) {
+        int[] pix = this.pix;
+        int[] r = this.r;
+        int[] g = this.g;
+        int[] b = this.b;
+        int[] dv = this.dv;
+        int w = this.w;
+        int radius = this.radius;
+
+        int wm = w - 1;
+        int div = radius + radius + 1;
+        int rsum, gsum, bsum, x, y, i, p, yi, yw;
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int r1 = radius + 1;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        yw = yi = y0 * w;
+
+        for (y = y0; y < y1; y++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pix[yi + Math.min(wm, Math.max(i, 0))];
+                sir = stack[i + radius];
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+                rbs = r1 - Math.abs(i);
+                rsum += sir[0] * rbs;
+                gsum += sir[1] * rbs;
+                bsum += sir[2] * rbs;
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+
+                r[yi] = dv[rsum];
+                g[yi] = dv[gsum];
+                b[yi] = dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (y == y0) {
+                    vmin[x] = Math.min(x + radius + 1, wm);
+                }
+                p = pix[yw + vmin[x]];
+
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[(stackpointer) % div];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi++;
+            }
+            yw += w;
+        }
+    }
+
+    /*
+     * The vertical pass, for columns x0 to x1 (exclusive). Reads r, g and b and writes pix,
+     * keeping its alpha.
+     */
+    private void blurColumns(int x0, int x1, int[][] stack, int[] vmin) {
+        int[] pix = this.pix;
+        int[] r = this.r;
+        int[] g = this.g;
+        int[] b = this.b;
+        int[] dv = this.dv;
+        int w = this.w;
+        int h = this.h;
+        int radius = this.radius;
+
+        int hm = h - 1;
+        int div = radius + radius + 1;
+        int rsum, gsum, bsum, x, y, i, p, yp, yi;
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int r1 = radius + 1;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        for (x = x0; x < x1; x++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                yi = Math.max(0, yp) + x;
+
+                sir = stack[i + radius];
+
+                sir[0] = r[yi];
+                sir[1] = g[yi];
+                sir[2] = b[yi];
+
+                rbs = r1 - Math.abs(i);
+
+                rsum += r[yi] * rbs;
+                gsum += g[yi] * rbs;
+                bsum += b[yi] * rbs;
+
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                // Preserve alpha channel: ( 0xff000000 & pix[yi] )
+                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (x == x0) {
+                    vmin[y] = Math.min(y + r1, hm) * w;
+                }
+                p = x + vmin[y];
+
+                sir[0] = r[p];
+                sir[1] = g[p];
+                sir[2] = b[p];
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi += w;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+
+/**
+ * Gives the benchmarks in com.grottworkshop.svgbenchmark access to the package private parts
+ * of the SVG parser: path parsing, the element and attribute name lookups, CSS parsing,
+ * selector matching and the cascade. Paths and stylesheets are handed back as plain Objects,
+ * since their types are not public.
+ */
+public final class BenchmarkAccess
+{
+    private BenchmarkAccess()
+    {
+    }
+
+
+    //=========================================================================
+    // Paths
+
+
+    /**
+     * Parse path data with the library's parser.
+     */
+    public static Object  parsePath(String d) throws SAXException
+    {
+        return SVGParser.parsePath(d);
+    }
+
+
+    /**
+     * Parse path data with the original TextScanner based parser.
+     */
+    public static Object  parseReferencePath(String d)
+    {
+        return ReferencePathParser.parsePath(d);
+    }
+
+
+    /**
+     * The number of coordinates in a path returned by parsePath() or parseReferencePath().
+     */
+    public static int  coordCount(Object path)
+    {
+        return ((SVG.PathDefinition) path).getCoordsLength();
+    }
+
+
+    /**
+     * Whether two parsed paths have the same commands and coordinates.
+     */
+    public static boolean  samePath(Object a, Object b)
+    {
+        SVG.PathDefinition  pa = (SVG.PathDefinition) a;
+        SVG.PathDefinition  pb = (SVG.PathDefinition) b;
+        return Arrays.equals(Arrays.copyOf(pa.getCommands(), pa.getCommandsLength()), Arrays.copyOf(pb.getCommands(), pb.getCommandsLength()))
+            && Arrays.equals(Arrays.copyOf(pa.getCoords(), pa.getCoordsLength()), Arrays.copyOf(pb.getCoords(), pb.getCoordsLength()));
+    }
+
+
+    //=========================================================================
+    // Name lookups
+
+
+    /**
+     * Look up an element name as the parser does. Unknown names give UNSUPPORTED.
+     */
+    public static int  lookupElement(String localName)
+    {
+        return SVGParser.SVGElem.fromString(localName).ordinal();
+    }
+
+
+    /**
+     * Look up an attribute name as the parser does. Unknown names give UNSUPPORTED.
+     */
+    public static int  lookupAttribute(String localName)
+    {
+        return SVGParser.SVGAttr.fromString(localName).ordinal();
+    }
+
+
+    //=========================================================================
+    // CSS
+
+
+    /**
+     * Parse a stylesheet for screen media, as the parser does for a {@code <style>} element.
+     */
+    public static Object  parseStylesheet(String css) throws SAXException
+    {
+        return new CSSParser(CSSParser.MediaType.screen).parse(css);
+    }
+
+
+    /**
+     * The number of rules in a stylesheet returned by parseStylesheet().
+     */
+    public static int  ruleCount(Object stylesheet)
+    {
+        return ((CSSParser.Ruleset) stylesheet).getRules().size();
+    }
+
+
+    /**
+     * Match every selector in the document's stylesheets against every element, one at a
+     * time, as the renderer did before the cascade was computed up front.
+     *
+     * @return the number of matches.
+     */
+    public static int  matchAllSelectors(SVG document)
+    {
+        return matchAllSelectors(document.getCSSRules(), document.getRootElement(), new ArrayList<SVG.SvgContainer>());
+    }
+
+
+    /**
+     * Resolve the styles of every element, as is done before the first render.
+     */
+    public static void  computeCascade(SVG document)
+    {
+        document.computeCascade();
+    }
+
+
+    private static int  matchAllSelectors(List<CSSParser.Rule> rules, SVG.SvgElementBase obj, List<SVG.SvgContainer> ancestors)
+    {
+        int  matches = 0;
+        for (CSSParser.Rule rule: rules) {
+            if (CSSParser.ruleMatch(rule.selector, ancestors, obj))
+                matches++;
+        }
+        if (obj instanceof SVG.SvgContainer)
+        {
+            ancestors.add((SVG.SvgContainer) obj);
+            for (SVG.SvgObject child: ((SVG.SvgContainer) obj).getChildren()) {
+                if (child instanceof SVG.SvgElementBase)
+                    matches += matchAllSelectors(rules, (SVG.SvgElementBase) child, ancestors);
+            }
+            ancestors.remove(ancestors.size() - 1);
+        }
+        return matches;
+    }
+}
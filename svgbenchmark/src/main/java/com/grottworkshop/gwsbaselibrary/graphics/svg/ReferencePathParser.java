@@ -0,0 +1,382 @@
+package com.grottworkshop.gwsbaselibrary.graphics.svg;
+
+import android.util.Log;
+
+
+/**
+ * The path data parser as it was before PathScanner: SVGParser.parsePath() running over the
+ * original TextScanner, with boxed commands and flags. Kept as the baseline for
+ * PathParserBenchmark, and to check that the new scanner builds the same paths.
+ * <p>
+ * It lives in the library's package because SVG.PathDefinition is not public.
+ */
+public class ReferencePathParser
+{
+    private static final String  TAG = "ReferencePathParser";
+
+
+    public static SVG.PathDefinition  parsePath(String val)
+    {
+        TextScanner  scan = new TextScanner(val);
+
+        int     pathCommand = '?';
+        float   currentX = 0f, currentY = 0f;    // The last point visited in the subpath
+        float   lastMoveX = 0f, lastMoveY = 0f;  // The initial point of current subpath
+        float   lastControlX = 0f, lastControlY = 0f;  // Last control point of the just completed bezier curve.
+        float   x,y, x1,y1, x2,y2;
+        float   rx,ry, xAxisRotation;
+        Boolean largeArcFlag, sweepFlag;
+
+        SVG.PathDefinition  path = new SVG.PathDefinition();
+
+        if (scan.empty())
+            return path;
+
+        pathCommand = scan.nextChar();
+
+        if (pathCommand != 'M' && pathCommand != 'm')
+            return path;  // Invalid path - doesn't start with a move
+
+        while (true)
+        {
+            scan.skipWhitespace();
+
+            switch (pathCommand)
+            {
+                // Move
+                case 'M':
+                case 'm':
+                    x = scan.nextFloat();
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    // Relative moveto at the start of a path is treated as an absolute moveto.
+                    if (pathCommand=='m' && !path.isEmpty()) {
+                        x += currentX;
+                        y += currentY;
+                    }
+                    path.moveTo(x, y);
+                    currentX = lastMoveX = lastControlX = x;
+                    currentY = lastMoveY = lastControlY = y;
+                    // Any subsequent coord pairs should be treated as a lineto.
+                    pathCommand = (pathCommand=='m') ? 'l' : 'L';
+                    break;
+
+                // Line
+                case 'L':
+                case 'l':
+                    x = scan.nextFloat();
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='l') {
+                        x += currentX;
+                        y += currentY;
+                    }
+                    path.lineTo(x, y);
+                    currentX = lastControlX = x;
+                    currentY = lastControlY = y;
+                    break;
+
+                // Cubic bezier
+                case 'C':
+                case 'c':
+                    x1 = scan.nextFloat();
+                    y1 = scan.checkedNextFloat(x1);
+                    x2 = scan.checkedNextFloat(y1);
+                    y2 = scan.checkedNextFloat(x2);
+                    x = scan.checkedNextFloat(y2);
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='c') {
+                        x += currentX;
+                        y += currentY;
+                        x1 += currentX;
+                        y1 += currentY;
+                        x2 += currentX;
+                        y2 += currentY;
+                    }
+                    path.cubicTo(x1, y1, x2, y2, x, y);
+                    lastControlX = x2;
+                    lastControlY = y2;
+                    currentX = x;
+                    currentY = y;
+                    break;
+
+                // Smooth curve (first control point calculated)
+                case 'S':
+                case 's':
+                    x1 = 2 * currentX - lastControlX;
+                    y1 = 2 * currentY - lastControlY;
+                    x2 = scan.nextFloat();
+                    y2 = scan.checkedNextFloat(x2);
+                    x = scan.checkedNextFloat(y2);
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='s') {
+                        x += currentX;
+                        y += currentY;
+                        x2 += currentX;
+                        y2 += currentY;
+                    }
+                    path.cubicTo(x1, y1, x2, y2, x, y);
+                    lastControlX = x2;
+                    lastControlY = y2;
+                    currentX = x;
+                    currentY = y;
+                    break;
+
+                // Close path
+                case 'Z':
+                case 'z':
+                    path.close();
+                    currentX = lastControlX = lastMoveX;
+                    currentY = lastControlY = lastMoveY;
+                    break;
+
+                // Horizontal line
+                case 'H':
+                case 'h':
+                    x = scan.nextFloat();
+                    if (Float.isNaN(x)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='h') {
+                        x += currentX;
+                    }
+                    path.lineTo(x, currentY);
+                    currentX = lastControlX = x;
+                    break;
+
+                // Vertical line
+                case 'V':
+                case 'v':
+                    y = scan.nextFloat();
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='v') {
+                        y += currentY;
+                    }
+                    path.lineTo(currentX, y);
+                    currentY = lastControlY = y;
+                    break;
+
+                // Quadratic bezier
+                case 'Q':
+                case 'q':
+                    x1 = scan.nextFloat();
+                    y1 = scan.checkedNextFloat(x1);
+                    x = scan.checkedNextFloat(y1);
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='q') {
+                        x += currentX;
+                        y += currentY;
+                        x1 += currentX;
+                        y1 += currentY;
+                    }
+                    path.quadTo(x1, y1, x, y);
+                    lastControlX = x1;
+                    lastControlY = y1;
+                    currentX = x;
+                    currentY = y;
+                    break;
+
+                // Smooth quadratic bezier
+                case 'T':
+                case 't':
+                    x1 = 2 * currentX - lastControlX;
+                    y1 = 2 * currentY - lastControlY;
+                    x = scan.nextFloat();
+                    y = scan.checkedNextFloat(x);
+                    if (Float.isNaN(y)) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='t') {
+                        x += currentX;
+                        y += currentY;
+                    }
+                    path.quadTo(x1, y1, x, y);
+                    lastControlX = x1;
+                    lastControlY = y1;
+                    currentX = x;
+                    currentY = y;
+                    break;
+
+                // Arc
+                case 'A':
+                case 'a':
+                    rx = scan.nextFloat();
+                    ry = scan.checkedNextFloat(rx);
+                    xAxisRotation = scan.checkedNextFloat(ry);
+                    largeArcFlag = scan.checkedNextFlag(xAxisRotation);
+                    sweepFlag = scan.checkedNextFlag(largeArcFlag);
+                    if (sweepFlag == null)
+                        x = y = Float.NaN;
+                    else {
+                        x = scan.possibleNextFloat();
+                        y = scan.checkedNextFloat(x);
+                    }
+                    if (Float.isNaN(y) || rx < 0 || ry < 0) {
+                        Log.e(TAG, "Bad path coords for "+((char)pathCommand)+" path segment");
+                        return path;
+                    }
+                    if (pathCommand=='a') {
+                        x += currentX;
+                        y += currentY;
+                    }
+                    path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+                    currentX = lastControlX = x;
+                    currentY = lastControlY = y;
+                    break;
+
+                default:
+                    return path;
+            }
+
+            scan.skipCommaWhitespace();
+            if (scan.empty())
+                break;
+
+            // Test to see if there is another set of coords for the current path command
+            if (scan.hasLetter()) {
+                // Nope, so get the new path command instead
+                pathCommand = scan.nextChar();
+            }
+        }
+        return path;
+    }
+
+
+    //=========================================================================
+
+
+    /*
+     * The parts of the original TextScanner that parsePath() uses, unchanged.
+     */
+    private static class TextScanner
+    {
+        private String   input;
+        private int      position = 0;
+        private int      inputLength = 0;
+
+        private NumberParser  numberParser = new NumberParser();
+
+
+        public TextScanner(String input)
+        {
+            this.input = input.trim();
+            this.inputLength = this.input.length();
+        }
+
+        public boolean  empty()
+        {
+            return (position == inputLength);
+        }
+
+        private boolean  isWhitespace(int c)
+        {
+            return (c==' ' || c=='\n' || c=='\r' || c =='\t');
+        }
+
+        public void  skipWhitespace()
+        {
+            while (position < inputLength) {
+                if (!isWhitespace(input.charAt(position)))
+                    break;
+                position++;
+            }
+        }
+
+        public boolean  skipCommaWhitespace()
+        {
+            skipWhitespace();
+            if (position == inputLength)
+                return false;
+            if (!(input.charAt(position) == ','))
+                return false;
+            position++;
+            skipWhitespace();
+            return true;
+        }
+
+        public float  nextFloat()
+        {
+            float  val = numberParser.parseNumber(input, position, inputLength);
+            if (!Float.isNaN(val))
+                position = numberParser.getEndPos();
+            return val;
+        }
+
+        public float  possibleNextFloat()
+        {
+            skipCommaWhitespace();
+            float  val = numberParser.parseNumber(input, position, inputLength);
+            if (!Float.isNaN(val))
+                position = numberParser.getEndPos();
+            return val;
+        }
+
+        public float  checkedNextFloat(float lastRead)
+        {
+            if (Float.isNaN(lastRead)) {
+                return Float.NaN;
+            }
+            skipCommaWhitespace();
+            return nextFloat();
+        }
+
+        public Integer  nextChar()
+        {
+            if (position == inputLength)
+                return null;
+            return Integer.valueOf(input.charAt(position++));
+        }
+
+        public Boolean  nextFlag()
+        {
+            if (position == inputLength)
+                return null;
+            char  ch = input.charAt(position);
+            if (ch == '0' || ch == '1') {
+                position++;
+                return Boolean.valueOf(ch == '1');
+            }
+            return null;
+        }
+
+        public Boolean  checkedNextFlag(Object lastRead)
+        {
+            if (lastRead == null) {
+                return null;
+            }
+            skipCommaWhitespace();
+            return nextFlag();
+        }
+
+        public boolean  hasLetter()
+        {
+            if (position == inputLength)
+                return false;
+            char  ch = input.charAt(position);
+            return ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.grottworkshop.svgbenchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks. Each argument is a regular expression selecting the benchmarks to
+ * run. With no arguments, all of them are run.
+ * <p>
+ * Throughput and sampled latency (with percentiles) come from the benchmark modes. The
+ * GC profiler adds the bytes allocated per operation ("gc.alloc.rate.norm").
+ */
+public class BenchmarkMain
+{
+    public static void  main(String[] args) throws RunnerException
+    {
+        ChainedOptionsBuilder  options = new OptionsBuilder().addProfiler(GCProfiler.class);
+        for (String include: args)
+            options.include(include);
+        new Runner(options.build()).run();
+    }
+}
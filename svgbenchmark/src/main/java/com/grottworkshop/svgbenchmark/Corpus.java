@@ -0,0 +1,207 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * The fixed set of documents the benchmarks run against.
+ * <ul>
+ * <li>small: a 48px icon</li>
+ * <li>medium: a map-like drawing with a stylesheet and a few hundred elements</li>
+ * <li>huge: about 5MB of paths, generated from a fixed seed so it is the same on every run</li>
+ * <li>deep: groups nested twelve deep, each changing the style, with a {@code <use>} of a
+ * symbol and a polyline with markers at the bottom of every stack. Generated.</li>
+ * </ul>
+ * There is also a set of small icons, saved from the editors most of the icons in apps come
+ * from (Inkscape, Illustrator, Sketch and the Material icon set), with their editor specific
+ * attributes and metadata left in.
+ */
+public class Corpus
+{
+    public static final String  SMALL = "small";
+    public static final String  MEDIUM = "medium";
+    public static final String  HUGE = "huge";
+    public static final String  DEEP = "deep";
+
+    public static final String[]  ICONS = {"folder-inkscape", "gear-illustrator", "search-material", "settings-material", "star-sketch"};
+
+    private static final int  HUGE_PATH_COUNT = 10000;
+    private static final int  DEEP_STACK_COUNT = 200;
+    private static final int  DEEP_STACK_DEPTH = 12;
+
+    private static final Pattern  NUMBER = Pattern.compile("[+-]?(?:[0-9]+(?:\\.[0-9]+)?|\\.[0-9]+)(?:[eE][+-]?[0-9]+)?");
+    private static final Pattern  HEX_COLOUR = Pattern.compile("#([0-9a-fA-F]{6}|[0-9a-fA-F]{3})\\b");
+
+
+    /**
+     * Returns the text of one of the documents.
+     *
+     * @param name one of SMALL, MEDIUM, HUGE or DEEP, or "icons/" followed by one of ICONS.
+     * @return the SVG source.
+     * @throws IOException if the document could not be read.
+     */
+    public static String  load(String name) throws IOException
+    {
+        if (HUGE.equals(name))
+            return generateHuge();
+        if (DEEP.equals(name))
+            return generateDeep();
+
+        InputStream  is = Corpus.class.getResourceAsStream("/corpus/" + name + ".svg");
+        if (is == null)
+            throw new IOException("No corpus document called " + name);
+        try
+        {
+            ByteArrayOutputStream  out = new ByteArrayOutputStream();
+            byte[]                 buffer = new byte[8192];
+            int                    n;
+            while ((n = is.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            return out.toString("UTF-8");
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+
+    /**
+     * Returns the text of every icon.
+     *
+     * @throws IOException if an icon could not be read.
+     */
+    public static String[]  loadIcons() throws IOException
+    {
+        String[]  icons = new String[ICONS.length];
+        for (int i = 0; i < ICONS.length; i++)
+            icons[i] = load("icons/" + ICONS[i]);
+        return icons;
+    }
+
+
+    /**
+     * Returns every number in a document (other than the digits of hex colours), in the order
+     * they appear, as separate strings.
+     */
+    public static String[]  numbers(String svg)
+    {
+        return findAll(NUMBER, HEX_COLOUR.matcher(svg).replaceAll(""), 0);
+    }
+
+
+    /**
+     * Returns the digits of every hex colour in a document.
+     */
+    public static String[]  hexColours(String svg)
+    {
+        return findAll(HEX_COLOUR, svg, 1);
+    }
+
+
+    private static String[]  findAll(Pattern pattern, String text, int group)
+    {
+        List<String>  found = new ArrayList<String>();
+        Matcher       m = pattern.matcher(text);
+        while (m.find())
+            found.add(m.group(group));
+        return found.toArray(new String[found.size()]);
+    }
+
+
+    /*
+     * A large map-like document: many paths of random cubic curves, in a few groups.
+     */
+    private static String  generateHuge()
+    {
+        Random         r = new Random(42);
+        StringBuilder  sb = new StringBuilder(6 * 1024 * 1024);
+
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"4000\" height=\"4000\" viewBox=\"0 0 4000 4000\">\n");
+        for (int i = 0; i < HUGE_PATH_COUNT; i++)
+        {
+            if (i % 1000 == 0) {
+                if (i > 0)
+                    sb.append("</g>\n");
+                sb.append("<g id=\"layer").append(i / 1000).append("\">\n");
+            }
+            sb.append("<path fill=\"none\" stroke=\"#")
+              .append(String.format(Locale.US, "%06x", r.nextInt(0x1000000)))
+              .append("\" stroke-width=\"1.5\" d=\"M")
+              .append(coord(r, 4000, 0)).append(',').append(coord(r, 4000, 0));
+            for (int k = 0; k < 12; k++)
+            {
+                sb.append(" c");
+                for (int j = 0; j < 6; j++) {
+                    if (j > 0)
+                        sb.append(j % 2 == 0 ? ' ' : ',');
+                    sb.append(coord(r, 60, -30));
+                }
+            }
+            sb.append("\"/>\n");
+        }
+        sb.append("</g>\n</svg>\n");
+        return sb.toString();
+    }
+
+
+    /*
+     * A document that is deep rather than large: stacks of nested groups, each level setting
+     * a transform and a style property, so the renderer pushes and changes its state at every
+     * level. At the bottom of each stack is a use of a symbol and a polyline with markers,
+     * which push state again.
+     */
+    private static String  generateDeep()
+    {
+        Random         r = new Random(7);
+        StringBuilder  sb = new StringBuilder(512 * 1024);
+
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"1000\" height=\"1000\" viewBox=\"0 0 1000 1000\">\n");
+        sb.append("<defs>\n");
+        sb.append("<marker id=\"dot\" markerWidth=\"4\" markerHeight=\"4\" refX=\"2\" refY=\"2\"><circle cx=\"2\" cy=\"2\" r=\"1.5\" fill=\"#333\"/></marker>\n");
+        sb.append("<symbol id=\"pin\" viewBox=\"0 0 10 10\"><path d=\"M5,0 C8,0 10,2 10,5 C10,8 5,10 5,10 C5,10 0,8 0,5 C0,2 2,0 5,0 Z\"/></symbol>\n");
+        sb.append("</defs>\n");
+        for (int i = 0; i < DEEP_STACK_COUNT; i++)
+        {
+            sb.append("<g transform=\"translate(").append(coord(r, 900, 0)).append(',').append(coord(r, 900, 0)).append(")\">");
+            for (int level = 1; level < DEEP_STACK_DEPTH; level++)
+            {
+                sb.append("<g transform=\"rotate(").append(coord(r, 20, -10)).append(")\"");
+                switch (level % 3)
+                {
+                    case 0:  sb.append(" fill=\"#").append(String.format(Locale.US, "%06x", r.nextInt(0x1000000))).append('"'); break;
+                    case 1:  sb.append(" stroke=\"#").append(String.format(Locale.US, "%06x", r.nextInt(0x1000000))).append('"'); break;
+                    default: sb.append(" stroke-width=\"").append(coord(r, 3, 0)).append('"'); break;
+                }
+                sb.append('>');
+            }
+            sb.append("<use xlink:href=\"#pin\" width=\"20\" height=\"20\"/>");
+            sb.append("<polyline fill=\"none\" marker-start=\"url(#dot)\" marker-mid=\"url(#dot)\" marker-end=\"url(#dot)\" points=\"0,0");
+            for (int k = 0; k < 4; k++)
+                sb.append(' ').append(coord(r, 60, -30)).append(',').append(coord(r, 60, -30));
+            sb.append("\"/>");
+            for (int level = 0; level < DEEP_STACK_DEPTH; level++)
+                sb.append("</g>");
+            sb.append('\n');
+        }
+        sb.append("</svg>\n");
+        return sb.toString();
+    }
+
+
+    // A random coordinate, from 'offset' to 'offset + range', with two decimal places
+    private static String  coord(Random r, int range, int offset)
+    {
+        return String.format(Locale.US, "%.2f", offset + r.nextInt(range * 100) / 100f);
+    }
+}
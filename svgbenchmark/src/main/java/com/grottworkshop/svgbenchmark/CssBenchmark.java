@@ -0,0 +1,81 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.BenchmarkAccess;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVG;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVGParseException;
+
+
+/**
+ * CSS, on the medium corpus document, the one with a stylesheet:
+ * <ul>
+ * <li>parseStylesheet: parsing the text of its {@code <style>} element.</li>
+ * <li>matchSelectors: matching every rule against every element, one pair at a time, as the
+ * renderer used to while drawing.</li>
+ * <li>computeCascade: resolving the style of every element at once, as is now done before
+ * the first render.</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CssBenchmark
+{
+    private static final Pattern  STYLE_ELEMENT = Pattern.compile("<style[^>]*>(.*?)</style>", Pattern.DOTALL);
+
+    private String  stylesheet;
+    private SVG     document;
+
+
+    @Setup
+    public void  setup() throws IOException, SVGParseException
+    {
+        String   svg = Corpus.load(Corpus.MEDIUM);
+        Matcher  m = STYLE_ELEMENT.matcher(svg);
+        if (!m.find())
+            throw new IllegalStateException("The medium corpus document has no stylesheet");
+        stylesheet = m.group(1);
+        document = SVG.getFromString(svg);
+    }
+
+
+    @Benchmark
+    public Object  parseStylesheet() throws SAXException
+    {
+        return BenchmarkAccess.parseStylesheet(stylesheet);
+    }
+
+
+    @Benchmark
+    public int  matchSelectors()
+    {
+        return BenchmarkAccess.matchAllSelectors(document);
+    }
+
+
+    @Benchmark
+    public SVG  computeCascade()
+    {
+        BenchmarkAccess.computeCascade(document);
+        return document;
+    }
+}
@@ -0,0 +1,58 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVG;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVGParseException;
+
+
+/**
+ * Full document parsing, from bytes to an SVG, with each parser backend. On the JVM the pull
+ * parser is kXML, the same one Android uses; the SAX parser is the JDK's rather than
+ * Android's Expat wrapper, so comparisons between the backends are only indicative.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DocumentParseBenchmark
+{
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.HUGE, Corpus.DEEP})
+    public String  corpus;
+
+    @Param({"SAX", "XML_PULL"})
+    public SVG.ParserBackend  backend;
+
+    private byte[]  bytes;
+
+
+    @Setup
+    public void  setup() throws IOException
+    {
+        bytes = Corpus.load(corpus).getBytes("UTF-8");
+        SVG.setParserBackend(backend);
+    }
+
+
+    @Benchmark
+    public SVG  parse() throws SVGParseException
+    {
+        return SVG.getFromInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,85 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.IntegerParser;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.NumberParser;
+
+
+/**
+ * Number parsing: every number and hex colour in a corpus document, parsed one at a time
+ * as the SVG and CSS parsers do. Each operation parses the whole document's worth.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberParserBenchmark
+{
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.HUGE})
+    public String  corpus;
+
+    private String[]  numbers;
+    private char[][]  numberChars;
+    private String[]  hexColours;
+
+    private NumberParser  parser = new NumberParser();
+
+
+    @Setup
+    public void  setup() throws IOException
+    {
+        String  svg = Corpus.load(corpus);
+        numbers = Corpus.numbers(svg);
+        hexColours = Corpus.hexColours(svg);
+
+        numberChars = new char[numbers.length][];
+        for (int i = 0; i < numbers.length; i++)
+            numberChars[i] = numbers[i].toCharArray();
+    }
+
+
+    @Benchmark
+    public float  parseNumberFromString()
+    {
+        float  sum = 0;
+        for (String number: numbers)
+            sum += parser.parseNumber(number);
+        return sum;
+    }
+
+
+    @Benchmark
+    public float  parseNumberFromChars()
+    {
+        float  sum = 0;
+        for (char[] number: numberChars)
+            sum += parser.parseNumber(number, 0, number.length);
+        return sum;
+    }
+
+
+    @Benchmark
+    public int  parseHex()
+    {
+        int  sum = 0;
+        for (String hex: hexColours)
+            sum += IntegerParser.parseHex(hex).value();
+        return sum;
+    }
+}
@@ -0,0 +1,56 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVG;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVGParseException;
+
+
+/**
+ * The cost of the first parse in a process, which is what an app pays for the icons on its
+ * first screen. Each fork is a new JVM that parses the small corpus icon once, so the time
+ * includes loading and initialising the parser classes and creating the XML parser. The
+ * result is the distribution over the forks.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, batchSize = 1)
+@Fork(30)
+@State(Scope.Thread)
+public class ParserColdStartBenchmark
+{
+    @Param({"SAX", "XML_PULL"})
+    public SVG.ParserBackend  backend;
+
+    private byte[]  bytes;
+
+
+    @Setup
+    public void  setup() throws IOException
+    {
+        bytes = Corpus.load(Corpus.SMALL).getBytes("UTF-8");
+        SVG.setParserBackend(backend);
+    }
+
+
+    @Benchmark
+    public SVG  firstParse() throws SVGParseException
+    {
+        return SVG.getFromInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,132 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.BenchmarkAccess;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVG;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVGParseException;
+
+
+/**
+ * Parsing the corpus icons on 1, 2, 4 and 8 threads at once, as happens when several image
+ * views load their icons together. Each operation parses every icon once. With shared
+ * read-only name tables, throughput should scale with the threads until the cores run out.
+ * <p>
+ * The lookup benchmarks time just the element and attribute name lookups for every tag and
+ * attribute in the icons. Many of those are editor specific names (inkscape:*, sodipodi:*,
+ * sketch:*), which have to be found unsupported cheaply.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserThreadsBenchmark
+{
+    private static final Pattern  ELEMENT = Pattern.compile("<([A-Za-z][\\w:.-]*)([^>]*)>");
+    private static final Pattern  ATTRIBUTE = Pattern.compile("([A-Za-z][\\w:.-]*)\\s*=");
+
+    private byte[][]  icons;
+    private String[]  elementNames;
+    private String[]  attributeNames;
+
+
+    @Setup
+    public void  setup() throws IOException
+    {
+        String[]  sources = Corpus.loadIcons();
+        icons = new byte[sources.length][];
+
+        List<String>  elements = new ArrayList<String>();
+        List<String>  attributes = new ArrayList<String>();
+        for (int i = 0; i < sources.length; i++)
+        {
+            icons[i] = sources[i].getBytes("UTF-8");
+            Matcher  m = ELEMENT.matcher(sources[i]);
+            while (m.find())
+            {
+                elements.add(localName(m.group(1)));
+                Matcher  a = ATTRIBUTE.matcher(m.group(2));
+                while (a.find())
+                    attributes.add(localName(a.group(1)));
+            }
+        }
+        elementNames = elements.toArray(new String[elements.size()]);
+        attributeNames = attributes.toArray(new String[attributes.size()]);
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public int  parseIcons1()  throws SVGParseException  { return parseIcons(); }
+
+    @Benchmark
+    @Threads(2)
+    public int  parseIcons2()  throws SVGParseException  { return parseIcons(); }
+
+    @Benchmark
+    @Threads(4)
+    public int  parseIcons4()  throws SVGParseException  { return parseIcons(); }
+
+    @Benchmark
+    @Threads(8)
+    public int  parseIcons8()  throws SVGParseException  { return parseIcons(); }
+
+
+    @Benchmark
+    @Threads(1)
+    public int  lookupNames1()  { return lookupNames(); }
+
+    @Benchmark
+    @Threads(8)
+    public int  lookupNames8()  { return lookupNames(); }
+
+
+    //=========================================================================
+
+
+    private int  parseIcons() throws SVGParseException
+    {
+        int  width = 0;
+        for (byte[] icon: icons)
+            width += (int) SVG.getFromInputStream(new ByteArrayInputStream(icon)).getDocumentWidth();
+        return width;
+    }
+
+
+    private int  lookupNames()
+    {
+        int  sum = 0;
+        for (String name: elementNames)
+            sum += BenchmarkAccess.lookupElement(name);
+        for (String name: attributeNames)
+            sum += BenchmarkAccess.lookupAttribute(name);
+        return sum;
+    }
+
+
+    // The parser looks names up without their namespace prefix
+    private static String  localName(String qName)
+    {
+        return qName.substring(qName.indexOf(':') + 1);
+    }
+}
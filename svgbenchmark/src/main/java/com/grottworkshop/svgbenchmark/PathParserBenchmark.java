@@ -0,0 +1,137 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.BenchmarkAccess;
+
+
+/**
+ * Path data parsing: one map-sized path of 100,002 coordinates, parsed by the library's
+ * PathScanner and by the original TextScanner based parser (ReferencePathParser).
+ * <p>
+ * Every coordinate is written with the same width, so the size of the path data is a
+ * constant and JMH can divide by it:
+ * <ul>
+ * <li>The "Bytes" benchmarks count one operation per byte of path data, in operations per
+ * microsecond. That is MB/s.</li>
+ * <li>The "PerCoordinate" benchmarks count one operation per coordinate, so the time is per
+ * coordinate, and the GC profiler's "gc.alloc.rate.norm" is bytes allocated per
+ * coordinate.</li>
+ * </ul>
+ * PathParserTest checks that both parsers give the same paths.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathParserBenchmark
+{
+    // The path is a moveto followed by CURVES relative cubic curves of six coordinates each
+    static final int  CURVES = 16667;
+    static final int  COORDINATES = 2 + CURVES * 6;
+
+    // Each coordinate is a separator and six characters ("+12.34"), each curve adds its command letter
+    private static final int  COORDINATE_WIDTH = 7;
+    static final int  BYTES = 1 + 2 * COORDINATE_WIDTH + CURVES * (1 + 6 * COORDINATE_WIDTH);
+
+    private String  pathData;
+
+
+    @Setup
+    public void  setup()
+    {
+        pathData = generatePath();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BYTES)
+    public Object  pathScannerBytes() throws SAXException
+    {
+        return BenchmarkAccess.parsePath(pathData);
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BYTES)
+    public Object  textScannerBytes()
+    {
+        return BenchmarkAccess.parseReferencePath(pathData);
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(COORDINATES)
+    public Object  pathScannerPerCoordinate() throws SAXException
+    {
+        return BenchmarkAccess.parsePath(pathData);
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(COORDINATES)
+    public Object  textScannerPerCoordinate()
+    {
+        return BenchmarkAccess.parseReferencePath(pathData);
+    }
+
+
+    //=========================================================================
+
+
+    /*
+     * Random relative curves, from a fixed seed. Coordinates are from -49.99 to +49.99, always
+     * with a sign and two digits either side of the point, so every one is the same width.
+     */
+    static String  generatePath()
+    {
+        Random         r = new Random(5);
+        StringBuilder     sb = new StringBuilder(BYTES);
+        sb.append('M');
+        appendCoordinate(sb, r);
+        appendCoordinate(sb, r);
+        for (int i = 0; i < CURVES; i++)
+        {
+            sb.append('c');
+            for (int j = 0; j < 6; j++)
+                appendCoordinate(sb, r);
+        }
+        return sb.toString();
+    }
+
+
+    private static void  appendCoordinate(StringBuilder sb, Random r)
+    {
+        int  hundredths = r.nextInt(9999) - 4999;
+        int  magnitude = Math.abs(hundredths);
+        sb.append(' ')
+          .append(hundredths < 0 ? '-' : '+')
+          .append(magnitude / 1000)
+          .append((magnitude / 100) % 10)
+          .append('.')
+          .append((magnitude / 10) % 10)
+          .append(magnitude % 10);
+    }
+}
@@ -0,0 +1,88 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVG;
+import com.grottworkshop.gwsbaselibrary.graphics.svg.SVGParseException;
+
+
+/**
+ * Rendering a parsed document to the recording Canvas from the stubs source set, which
+ * tracks the matrix and clip but draws nothing. So this measures the renderer itself: the
+ * tree walk, state handling, style resolution, path building and culling, without any
+ * rasterisation. Each operation renders the document into a 1000x1000 canvas, scaled to fit
+ * it, as an image view would.
+ * <ul>
+ * <li>view "whole": the whole document is in view.</li>
+ * <li>view "zoomed": zoomed in 8x on the middle, so the spatial index can skip most of the
+ * document.</li>
+ * </ul>
+ * The "deep" corpus is the one for renderer state changes. To compare the allocations of two
+ * versions of the renderer, run this benchmark on both revisions and compare
+ * "gc.alloc.rate.norm", the bytes allocated per render.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark
+{
+    private static final int    SIZE = 1000;
+    private static final float  ZOOM = 8f;
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.HUGE, Corpus.DEEP})
+    public String  corpus;
+
+    @Param({"whole", "zoomed"})
+    public String  view;
+
+    private SVG     document;
+    private Canvas  canvas;
+    private RectF   viewPort;
+    private float   zoom;
+
+
+    @Setup
+    public void  setup() throws IOException, SVGParseException
+    {
+        document = SVG.getFromString(Corpus.load(corpus));
+        document.setDocumentWidth("100%");
+        document.setDocumentHeight("100%");
+        canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        viewPort = new RectF(0, 0, SIZE, SIZE);
+        zoom = "zoomed".equals(view) ? ZOOM : 1f;
+
+        // The first render builds the cascade and the spatial index. Keep that out of the measurements.
+        render();
+    }
+
+
+    @Benchmark
+    public int  render()
+    {
+        canvas.save();
+        canvas.scale(zoom, zoom, SIZE / 2f, SIZE / 2f);
+        document.renderToCanvas(canvas, viewPort);
+        canvas.restore();
+        return canvas.getDrawCount();
+    }
+}
@@ -0,0 +1,96 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grottworkshop.gwsbaselibrary.widget.glassactionbar.StackBlur;
+
+
+/**
+ * The Stack Blur fallback used by the glass action bar before API 17, on random pixels.
+ * The sizes are a downsampled action bar strip, a downsampled screen (the background blur)
+ * and a full size screen. "threads" is 0 for the original single threaded port.
+ * StackBlurTest checks that both give the same pixels.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackBlurBenchmark
+{
+    @Param({"216x11", "216x384", "1080x1920"})
+    public String  size;
+
+    @Param({"7"})
+    public int  radius;
+
+    @Param({"0", "1", "2", "4"})
+    public int  threads;
+
+    private int        width;
+    private int        height;
+    private int[]      source;
+    private int[]      pixels;
+    private StackBlur  stackBlur;
+
+
+    @Setup
+    public void  setup()
+    {
+        String[]  dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+
+        source = new int[width * height];
+        Random  random = new Random(42);
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+        pixels = new int[source.length];
+
+        if (threads > 0)
+            stackBlur = new StackBlur(threads);
+    }
+
+
+    @TearDown
+    public void  tearDown()
+    {
+        if (stackBlur != null)
+            stackBlur.release();
+    }
+
+
+    // Every operation starts from the unblurred pixels
+    @Setup(Level.Invocation)
+    public void  reset()
+    {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+    }
+
+
+    @Benchmark
+    public int[]  blur()
+    {
+        if (stackBlur == null)
+            ReferenceStackBlur.blur(pixels, width, height, radius);
+        else
+            stackBlur.blur(pixels, width, height, radius);
+        return pixels;
+    }
+}
@@ -0,0 +1,12 @@
+package android.content;
+
+import android.content.res.Resources;
+
+
+/**
+ * Stand-in for android.content.Context.
+ */
+public abstract class Context
+{
+    public abstract Resources  getResources();
+}
@@ -0,0 +1,20 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Stand-in for android.content.res.AssetManager, reading assets from the classpath.
+ */
+public final class AssetManager
+{
+    public InputStream  open(String fileName) throws IOException
+    {
+        InputStream  is = AssetManager.class.getClassLoader().getResourceAsStream(fileName);
+        if (is == null)
+            throw new FileNotFoundException(fileName);
+        return is;
+    }
+}
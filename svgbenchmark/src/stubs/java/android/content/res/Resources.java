@@ -0,0 +1,24 @@
+package android.content.res;
+
+import java.io.InputStream;
+
+
+/**
+ * Stand-in for android.content.res.Resources. There are no resources off the device.
+ */
+public class Resources
+{
+    public static class NotFoundException extends RuntimeException
+    {
+        public NotFoundException(String name)
+        {
+            super(name);
+        }
+    }
+
+
+    public InputStream  openRawResource(int id)
+    {
+        throw new NotFoundException("Resource ID #0x" + Integer.toHexString(id));
+    }
+}
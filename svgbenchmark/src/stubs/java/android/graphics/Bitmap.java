@@ -0,0 +1,62 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Bitmap. It has a size but no pixels; drawing into one through
+ * a Canvas only counts operations.
+ */
+public final class Bitmap
+{
+    public enum Config
+    {
+        ALPHA_8(1),
+        RGB_565(2),
+        ARGB_4444(2),
+        ARGB_8888(4);
+
+        final int  bytesPerPixel;
+
+        Config(int bytesPerPixel)
+        {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+    }
+
+
+    private final int     width;
+    private final int     height;
+    private final Config  config;
+    private boolean       recycled;
+
+
+    private Bitmap(int width, int height, Config config)
+    {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width and height must be > 0");
+        this.width = width;
+        this.height = height;
+        this.config = config;
+    }
+
+
+    public static Bitmap  createBitmap(int width, int height, Config config)
+    {
+        return new Bitmap(width, height, config);
+    }
+
+
+    public static Bitmap  createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter)
+    {
+        return new Bitmap(dstWidth, dstHeight, src.config);
+    }
+
+
+    public final int      getWidth()        { return width; }
+    public final int      getHeight()       { return height; }
+    public final Config   getConfig()       { return config; }
+    public final int      getRowBytes()     { return width * config.bytesPerPixel; }
+    public final int      getByteCount()    { return getRowBytes() * height; }
+    public final boolean  isRecycled()      { return recycled; }
+    public void           recycle()         { recycled = true; }
+    public void           eraseColor(int c) { }
+}
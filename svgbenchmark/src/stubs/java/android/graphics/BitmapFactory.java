@@ -0,0 +1,22 @@
+package android.graphics;
+
+import java.io.InputStream;
+
+
+/**
+ * Stand-in for android.graphics.BitmapFactory. Image decoding is not available, so like
+ * Android with data it cannot decode, it returns null.
+ */
+public class BitmapFactory
+{
+    public static Bitmap  decodeByteArray(byte[] data, int offset, int length)
+    {
+        return null;
+    }
+
+
+    public static Bitmap  decodeStream(InputStream is)
+    {
+        return null;
+    }
+}
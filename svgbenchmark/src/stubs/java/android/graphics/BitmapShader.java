@@ -0,0 +1,12 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.BitmapShader.
+ */
+public class BitmapShader extends Shader
+{
+    public BitmapShader(Bitmap bitmap, TileMode tileX, TileMode tileY)
+    {
+    }
+}
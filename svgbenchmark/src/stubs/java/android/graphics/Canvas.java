@@ -0,0 +1,264 @@
+package android.graphics;
+
+import java.util.ArrayList;
+
+
+/**
+ * Stand-in for android.graphics.Canvas that records what is drawn instead of rasterising it.
+ * The matrix and clip are tracked as on a device, so code that reads them back (for culling
+ * or tiling) behaves the same. The clip is kept as a device-space rectangle: clipping to a
+ * path clips to the path's bounds.
+ * <p>
+ * The counters are not part of the Android API. Benchmarks read them so that the work is
+ * consumed and can be checked.
+ */
+public class Canvas
+{
+    public static final int  MATRIX_SAVE_FLAG           = 0x01;
+    public static final int  CLIP_SAVE_FLAG             = 0x02;
+    public static final int  HAS_ALPHA_LAYER_SAVE_FLAG  = 0x04;
+    public static final int  FULL_COLOR_LAYER_SAVE_FLAG = 0x08;
+    public static final int  CLIP_TO_LAYER_SAVE_FLAG    = 0x10;
+    public static final int  ALL_SAVE_FLAG              = 0x1F;
+
+
+    private final int  width;
+    private final int  height;
+
+    private Matrix  matrix = new Matrix();
+    private RectF   clip;
+    private final ArrayList<Matrix>  matrixStack = new ArrayList<Matrix>();
+    private final ArrayList<RectF>   clipStack = new ArrayList<RectF>();
+
+    private int  drawCount;
+    private int  pathVerbCount;
+    private int  layerCount;
+
+
+    public Canvas()
+    {
+        this(0, 0);
+    }
+
+
+    public Canvas(Bitmap bitmap)
+    {
+        this(bitmap.getWidth(), bitmap.getHeight());
+    }
+
+
+    Canvas(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        this.clip = new RectF(0, 0, width, height);
+    }
+
+
+    public int      getWidth()               { return width; }
+    public int      getHeight()              { return height; }
+    public boolean  isHardwareAccelerated()  { return false; }
+
+    /** The number of draw calls made on this canvas. */
+    public int  getDrawCount()      { return drawCount; }
+    /** The total number of path operations in the paths drawn on this canvas. */
+    public int  getPathVerbCount()  { return pathVerbCount; }
+    /** The number of layers saved on this canvas. */
+    public int  getLayerCount()     { return layerCount; }
+
+
+    //=========================================================================
+    // Save and restore
+
+
+    public int  save()
+    {
+        matrixStack.add(new Matrix(matrix));
+        clipStack.add(new RectF(clip));
+        return matrixStack.size();
+    }
+
+
+    public int  save(int saveFlags)
+    {
+        return save();
+    }
+
+
+    public int  saveLayer(RectF bounds, Paint paint, int saveFlags)
+    {
+        layerCount++;
+        return save();
+    }
+
+
+    public int  saveLayer(float left, float top, float right, float bottom, Paint paint, int saveFlags)
+    {
+        return saveLayer(new RectF(left, top, right, bottom), paint, saveFlags);
+    }
+
+
+    public int  saveLayerAlpha(RectF bounds, int alpha, int saveFlags)
+    {
+        return saveLayer(bounds, null, saveFlags);
+    }
+
+
+    public int  saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags)
+    {
+        return saveLayer(new RectF(left, top, right, bottom), null, saveFlags);
+    }
+
+
+    public void  restore()
+    {
+        if (matrixStack.isEmpty())
+            throw new IllegalStateException("Underflow in restore");
+        matrix = matrixStack.remove(matrixStack.size() - 1);
+        clip = clipStack.remove(clipStack.size() - 1);
+    }
+
+
+    public int  getSaveCount()
+    {
+        return matrixStack.size() + 1;
+    }
+
+
+    public void  restoreToCount(int saveCount)
+    {
+        while (getSaveCount() > saveCount)
+            restore();
+    }
+
+
+    //=========================================================================
+    // Matrix
+
+
+    public void  translate(float dx, float dy)    { matrix.preTranslate(dx, dy); }
+    public void  scale(float sx, float sy)        { matrix.preScale(sx, sy); }
+    public void  scale(float sx, float sy, float px, float py)  { matrix.preScale(sx, sy, px, py); }
+    public void  rotate(float degrees)            { matrix.preRotate(degrees); }
+    public void  skew(float sx, float sy)         { matrix.preSkew(sx, sy); }
+    public void  concat(Matrix m)                 { if (m != null) matrix.preConcat(m); }
+    public void  setMatrix(Matrix m)              { matrix.set(m); }
+    public void  getMatrix(Matrix ctm)            { ctm.set(matrix); }
+
+    public final Matrix  getMatrix()
+    {
+        return new Matrix(matrix);
+    }
+
+
+    //=========================================================================
+    // Clip
+
+
+    public boolean  clipRect(RectF rect)
+    {
+        return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+
+    public boolean  clipRect(Rect rect)
+    {
+        return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+
+    public boolean  clipRect(int left, int top, int right, int bottom)
+    {
+        return clipRect((float) left, (float) top, (float) right, (float) bottom);
+    }
+
+
+    public boolean  clipRect(float left, float top, float right, float bottom)
+    {
+        RectF  device = new RectF(left, top, right, bottom);
+        matrix.mapRect(device);
+        if (!clip.intersect(device))
+            clip.setEmpty();
+        return !clip.isEmpty();
+    }
+
+
+    public boolean  clipPath(Path path)
+    {
+        RectF  bounds = new RectF();
+        path.computeBounds(bounds, true);
+        return clipRect(bounds);
+    }
+
+
+    public boolean  getClipBounds(Rect bounds)
+    {
+        Matrix  inverse = new Matrix();
+        if (clip.isEmpty() || !matrix.invert(inverse)) {
+            bounds.setEmpty();
+            return false;
+        }
+        RectF  local = new RectF();
+        inverse.mapRect(local, clip);
+        local.roundOut(bounds);
+        return true;
+    }
+
+
+    public final Rect  getClipBounds()
+    {
+        Rect  r = new Rect();
+        getClipBounds(r);
+        return r;
+    }
+
+
+    public boolean  quickReject(RectF rect, EdgeType type)
+    {
+        RectF  device = new RectF();
+        matrix.mapRect(device, rect);
+        return !RectF.intersects(device, clip);
+    }
+
+
+    public enum EdgeType
+    {
+        BW,
+        AA
+    }
+
+
+    //=========================================================================
+    // Drawing
+
+
+    public void  drawColor(int color)                  { drawCount++; }
+    public void  drawColor(int color, PorterDuff.Mode mode)  { drawCount++; }
+    public void  drawARGB(int a, int r, int g, int b)  { drawCount++; }
+    public void  drawPaint(Paint paint)                { drawCount++; }
+
+    public void  drawRect(RectF rect, Paint paint)     { drawCount++; }
+    public void  drawRect(float left, float top, float right, float bottom, Paint paint)  { drawCount++; }
+    public void  drawOval(RectF oval, Paint paint)     { drawCount++; }
+    public void  drawCircle(float cx, float cy, float radius, Paint paint)  { drawCount++; }
+    public void  drawLine(float startX, float startY, float stopX, float stopY, Paint paint)  { drawCount++; }
+
+    public void  drawPath(Path path, Paint paint)
+    {
+        drawCount++;
+        pathVerbCount += path.getVerbCount();
+    }
+
+    public void  drawBitmap(Bitmap bitmap, float left, float top, Paint paint)  { drawCount++; }
+    public void  drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint)     { drawCount++; }
+    public void  drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint)    { drawCount++; }
+    public void  drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint)          { drawCount++; }
+
+    public void  drawText(String text, float x, float y, Paint paint)  { drawCount++; }
+    public void  drawText(String text, int start, int end, float x, float y, Paint paint)  { drawCount++; }
+    public void  drawText(char[] text, int index, int count, float x, float y, Paint paint)  { drawCount++; }
+    public void  drawTextOnPath(String text, Path path, float hOffset, float vOffset, Paint paint)  { drawCount++; }
+
+    public void  drawPicture(Picture picture)  { drawCount++; }
+    public void  drawPicture(Picture picture, RectF dst)  { drawCount++; }
+}
@@ -0,0 +1,9 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.ColorFilter.
+ */
+public class ColorFilter
+{
+}
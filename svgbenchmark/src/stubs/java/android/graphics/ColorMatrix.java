@@ -0,0 +1,41 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.ColorMatrix.
+ */
+public class ColorMatrix
+{
+    private final float[]  array = new float[20];
+
+
+    public ColorMatrix()
+    {
+        reset();
+    }
+
+
+    public ColorMatrix(float[] src)
+    {
+        set(src);
+    }
+
+
+    public void  reset()
+    {
+        java.util.Arrays.fill(array, 0);
+        array[0] = array[6] = array[12] = array[18] = 1;
+    }
+
+
+    public void  set(float[] src)
+    {
+        System.arraycopy(src, 0, array, 0, 20);
+    }
+
+
+    public final float[]  getArray()
+    {
+        return array;
+    }
+}
@@ -0,0 +1,17 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.ColorMatrixColorFilter.
+ */
+public class ColorMatrixColorFilter extends ColorFilter
+{
+    public ColorMatrixColorFilter(ColorMatrix matrix)
+    {
+    }
+
+
+    public ColorMatrixColorFilter(float[] array)
+    {
+    }
+}
@@ -0,0 +1,14 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.DashPathEffect.
+ */
+public class DashPathEffect extends PathEffect
+{
+    public DashPathEffect(float[] intervals, float phase)
+    {
+        if (intervals.length < 2)
+            throw new ArrayIndexOutOfBoundsException();
+    }
+}
@@ -0,0 +1,260 @@
+package android.graphics;
+
+import java.util.Arrays;
+
+
+/**
+ * Stand-in for android.graphics.Matrix: a plain 3x3 matrix, with the same pre/post
+ * conventions as Android's. Pre operations apply before this matrix (this = this * M), post
+ * operations after it (this = M * this).
+ */
+public class Matrix
+{
+    public static final int  MSCALE_X = 0;
+    public static final int  MSKEW_X  = 1;
+    public static final int  MTRANS_X = 2;
+    public static final int  MSKEW_Y  = 3;
+    public static final int  MSCALE_Y = 4;
+    public static final int  MTRANS_Y = 5;
+    public static final int  MPERSP_0 = 6;
+    public static final int  MPERSP_1 = 7;
+    public static final int  MPERSP_2 = 8;
+
+    private static final float[]  IDENTITY = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+
+    private final float[]  v = IDENTITY.clone();
+
+
+    public Matrix()
+    {
+    }
+
+
+    public Matrix(Matrix src)
+    {
+        set(src);
+    }
+
+
+    public boolean  isIdentity()
+    {
+        return Arrays.equals(v, IDENTITY);
+    }
+
+
+    public void  reset()
+    {
+        System.arraycopy(IDENTITY, 0, v, 0, 9);
+    }
+
+
+    public void  set(Matrix src)
+    {
+        if (src == null)
+            reset();
+        else
+            System.arraycopy(src.v, 0, v, 0, 9);
+    }
+
+
+    public void  getValues(float[] values)
+    {
+        System.arraycopy(v, 0, values, 0, 9);
+    }
+
+
+    public void  setValues(float[] values)
+    {
+        System.arraycopy(values, 0, v, 0, 9);
+    }
+
+
+    //=========================================================================
+
+
+    public void  setTranslate(float dx, float dy)
+    {
+        reset();
+        v[MTRANS_X] = dx;
+        v[MTRANS_Y] = dy;
+    }
+
+
+    public void  setScale(float sx, float sy)
+    {
+        reset();
+        v[MSCALE_X] = sx;
+        v[MSCALE_Y] = sy;
+    }
+
+
+    public void  setConcat(Matrix a, Matrix b)
+    {
+        System.arraycopy(multiply(a.v, b.v), 0, v, 0, 9);
+    }
+
+
+    public boolean  preConcat(Matrix other)    { return pre(other.v); }
+    public boolean  postConcat(Matrix other)   { return post(other.v); }
+
+    public boolean  preTranslate(float dx, float dy)   { return pre(translate(dx, dy)); }
+    public boolean  postTranslate(float dx, float dy)  { return post(translate(dx, dy)); }
+
+    public boolean  preScale(float sx, float sy)   { return pre(scale(sx, sy, 0, 0)); }
+    public boolean  postScale(float sx, float sy)  { return post(scale(sx, sy, 0, 0)); }
+    public boolean  preScale(float sx, float sy, float px, float py)   { return pre(scale(sx, sy, px, py)); }
+    public boolean  postScale(float sx, float sy, float px, float py)  { return post(scale(sx, sy, px, py)); }
+
+    public boolean  preRotate(float degrees)   { return pre(rotate(degrees, 0, 0)); }
+    public boolean  postRotate(float degrees)  { return post(rotate(degrees, 0, 0)); }
+    public boolean  preRotate(float degrees, float px, float py)   { return pre(rotate(degrees, px, py)); }
+    public boolean  postRotate(float degrees, float px, float py)  { return post(rotate(degrees, px, py)); }
+
+    public boolean  preSkew(float kx, float ky)   { return pre(new float[] {1, kx, 0, ky, 1, 0, 0, 0, 1}); }
+    public boolean  postSkew(float kx, float ky)  { return post(new float[] {1, kx, 0, ky, 1, 0, 0, 0, 1}); }
+
+
+    public boolean  invert(Matrix inverse)
+    {
+        float  a = v[0], b = v[1], c = v[2];
+        float  d = v[3], e = v[4], f = v[5];
+        float  g = v[6], h = v[7], i = v[8];
+        float  det = a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+        if (det == 0f || Float.isNaN(det))
+            return false;
+        if (inverse != null)
+        {
+            float[]  r = inverse.v;
+            r[0] = (e * i - f * h) / det;
+            r[1] = (c * h - b * i) / det;
+            r[2] = (b * f - c * e) / det;
+            r[3] = (f * g - d * i) / det;
+            r[4] = (a * i - c * g) / det;
+            r[5] = (c * d - a * f) / det;
+            r[6] = (d * h - e * g) / det;
+            r[7] = (b * g - a * h) / det;
+            r[8] = (a * e - b * d) / det;
+        }
+        return true;
+    }
+
+
+    public void  mapPoints(float[] pts)
+    {
+        mapPoints(pts, 0, pts, 0, pts.length / 2);
+    }
+
+
+    public void  mapPoints(float[] dst, float[] src)
+    {
+        mapPoints(dst, 0, src, 0, src.length / 2);
+    }
+
+
+    public void  mapPoints(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount)
+    {
+        for (int i = 0; i < pointCount; i++)
+        {
+            float  x = src[srcIndex + i * 2];
+            float  y = src[srcIndex + i * 2 + 1];
+            float  w = v[6] * x + v[7] * y + v[8];
+            dst[dstIndex + i * 2]     = (v[0] * x + v[1] * y + v[2]) / w;
+            dst[dstIndex + i * 2 + 1] = (v[3] * x + v[4] * y + v[5]) / w;
+        }
+    }
+
+
+    public boolean  mapRect(RectF rect)
+    {
+        return mapRect(rect, rect);
+    }
+
+
+    public boolean  mapRect(RectF dst, RectF src)
+    {
+        float[]  pts = {src.left, src.top, src.right, src.top, src.right, src.bottom, src.left, src.bottom};
+        mapPoints(pts);
+        dst.set(Math.min(Math.min(pts[0], pts[2]), Math.min(pts[4], pts[6])),
+                Math.min(Math.min(pts[1], pts[3]), Math.min(pts[5], pts[7])),
+                Math.max(Math.max(pts[0], pts[2]), Math.max(pts[4], pts[6])),
+                Math.max(Math.max(pts[1], pts[3]), Math.max(pts[5], pts[7])));
+        return rectStaysRect();
+    }
+
+
+    public boolean  rectStaysRect()
+    {
+        return (v[MSKEW_X] == 0 && v[MSKEW_Y] == 0) || (v[MSCALE_X] == 0 && v[MSCALE_Y] == 0);
+    }
+
+
+    @Override
+    public boolean  equals(Object obj)
+    {
+        return (obj instanceof Matrix) && Arrays.equals(v, ((Matrix) obj).v);
+    }
+
+
+    @Override
+    public int  hashCode()
+    {
+        return Arrays.hashCode(v);
+    }
+
+
+    @Override
+    public String  toString()
+    {
+        return "Matrix" + Arrays.toString(v);
+    }
+
+
+    //=========================================================================
+
+
+    private boolean  pre(float[] m)
+    {
+        System.arraycopy(multiply(v, m), 0, v, 0, 9);
+        return true;
+    }
+
+
+    private boolean  post(float[] m)
+    {
+        System.arraycopy(multiply(m, v), 0, v, 0, 9);
+        return true;
+    }
+
+
+    private static float[]  multiply(float[] a, float[] b)
+    {
+        float[]  r = new float[9];
+        for (int row = 0; row < 3; row++)
+        {
+            for (int col = 0; col < 3; col++)
+                r[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+        }
+        return r;
+    }
+
+
+    private static float[]  translate(float dx, float dy)
+    {
+        return new float[] {1, 0, dx, 0, 1, dy, 0, 0, 1};
+    }
+
+
+    private static float[]  scale(float sx, float sy, float px, float py)
+    {
+        return new float[] {sx, 0, px - sx * px, 0, sy, py - sy * py, 0, 0, 1};
+    }
+
+
+    private static float[]  rotate(float degrees, float px, float py)
+    {
+        double  radians = Math.toRadians(degrees);
+        float   cos = (float) Math.cos(radians);
+        float   sin = (float) Math.sin(radians);
+        return new float[] {cos, -sin, px - cos * px + sin * py, sin, cos, py - sin * px - cos * py, 0, 0, 1};
+    }
+}
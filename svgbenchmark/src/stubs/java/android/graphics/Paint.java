@@ -0,0 +1,167 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Paint. It stores its settings. Text is measured at a fixed
+ * advance of half the text size per character.
+ */
+public class Paint
+{
+    public static final int  ANTI_ALIAS_FLAG     = 0x01;
+    public static final int  FILTER_BITMAP_FLAG  = 0x02;
+    public static final int  DITHER_FLAG         = 0x04;
+    public static final int  UNDERLINE_TEXT_FLAG = 0x08;
+    public static final int  STRIKE_THRU_TEXT_FLAG = 0x10;
+    public static final int  FAKE_BOLD_TEXT_FLAG = 0x20;
+    public static final int  LINEAR_TEXT_FLAG    = 0x40;
+    public static final int  SUBPIXEL_TEXT_FLAG  = 0x80;
+    public static final int  DEV_KERN_TEXT_FLAG  = 0x100;
+
+    public enum Style  { FILL, STROKE, FILL_AND_STROKE }
+    public enum Cap    { BUTT, ROUND, SQUARE }
+    public enum Join   { MITER, ROUND, BEVEL }
+    public enum Align  { LEFT, CENTER, RIGHT }
+
+
+    private int          flags;
+    private int          color = 0xff000000;
+    private Style        style = Style.FILL;
+    private Cap          strokeCap = Cap.BUTT;
+    private Join         strokeJoin = Join.MITER;
+    private float        strokeWidth;
+    private float        strokeMiter = 4f;
+    private float        textSize = 12f;
+    private Align        textAlign = Align.LEFT;
+    private Typeface     typeface;
+    private Shader       shader;
+    private PathEffect   pathEffect;
+    private ColorFilter  colorFilter;
+    private Xfermode     xfermode;
+
+
+    public Paint()
+    {
+    }
+
+
+    public Paint(int flags)
+    {
+        this.flags = flags;
+    }
+
+
+    public Paint(Paint paint)
+    {
+        set(paint);
+    }
+
+
+    public void  set(Paint src)
+    {
+        flags = src.flags;
+        color = src.color;
+        style = src.style;
+        strokeCap = src.strokeCap;
+        strokeJoin = src.strokeJoin;
+        strokeWidth = src.strokeWidth;
+        strokeMiter = src.strokeMiter;
+        textSize = src.textSize;
+        textAlign = src.textAlign;
+        typeface = src.typeface;
+        shader = src.shader;
+        pathEffect = src.pathEffect;
+        colorFilter = src.colorFilter;
+        xfermode = src.xfermode;
+    }
+
+
+    public void  reset()
+    {
+        set(new Paint());
+    }
+
+
+    public int      getFlags()                 { return flags; }
+    public void     setFlags(int flags)        { this.flags = flags; }
+    public boolean  isAntiAlias()              { return (flags & ANTI_ALIAS_FLAG) != 0; }
+    public void     setAntiAlias(boolean aa)   { setFlag(ANTI_ALIAS_FLAG, aa); }
+    public void     setFilterBitmap(boolean f) { setFlag(FILTER_BITMAP_FLAG, f); }
+    public void     setDither(boolean d)       { setFlag(DITHER_FLAG, d); }
+    public void     setUnderlineText(boolean u)    { setFlag(UNDERLINE_TEXT_FLAG, u); }
+    public void     setStrikeThruText(boolean s)   { setFlag(STRIKE_THRU_TEXT_FLAG, s); }
+    public void     setSubpixelText(boolean s)     { setFlag(SUBPIXEL_TEXT_FLAG, s); }
+
+    public int      getColor()                 { return color; }
+    public void     setColor(int color)        { this.color = color; }
+    public int      getAlpha()                 { return color >>> 24; }
+    public void     setAlpha(int a)            { color = (color & 0x00ffffff) | ((a & 0xff) << 24); }
+    public void     setARGB(int a, int r, int g, int b)  { color = Color.argb(a, r, g, b); }
+
+    public Style    getStyle()                 { return style; }
+    public void     setStyle(Style style)      { this.style = style; }
+    public Cap      getStrokeCap()             { return strokeCap; }
+    public void     setStrokeCap(Cap cap)      { strokeCap = cap; }
+    public Join     getStrokeJoin()            { return strokeJoin; }
+    public void     setStrokeJoin(Join join)   { strokeJoin = join; }
+    public float    getStrokeWidth()           { return strokeWidth; }
+    public void     setStrokeWidth(float w)    { strokeWidth = w; }
+    public float    getStrokeMiter()           { return strokeMiter; }
+    public void     setStrokeMiter(float m)    { strokeMiter = m; }
+
+    public float    getTextSize()              { return textSize; }
+    public void     setTextSize(float size)    { textSize = size; }
+    public Align    getTextAlign()             { return textAlign; }
+    public void     setTextAlign(Align align)  { textAlign = align; }
+    public Typeface getTypeface()              { return typeface; }
+    public Typeface setTypeface(Typeface tf)   { typeface = tf; return tf; }
+
+    public Shader       getShader()                    { return shader; }
+    public Shader       setShader(Shader s)            { shader = s; return s; }
+    public PathEffect   getPathEffect()                { return pathEffect; }
+    public PathEffect   setPathEffect(PathEffect e)    { pathEffect = e; return e; }
+    public ColorFilter  getColorFilter()               { return colorFilter; }
+    public ColorFilter  setColorFilter(ColorFilter f)  { colorFilter = f; return f; }
+    public Xfermode     getXfermode()                  { return xfermode; }
+    public Xfermode     setXfermode(Xfermode x)        { xfermode = x; return x; }
+
+
+    public float  measureText(String text)
+    {
+        return measureText(text, 0, text.length());
+    }
+
+
+    public float  measureText(String text, int start, int end)
+    {
+        return (end - start) * textSize * 0.5f;
+    }
+
+
+    public float  measureText(char[] text, int index, int count)
+    {
+        return count * textSize * 0.5f;
+    }
+
+
+    public void  getTextBounds(String text, int start, int end, Rect bounds)
+    {
+        bounds.set(0, (int) -textSize, (int) Math.ceil(measureText(text, start, end)), (int) Math.ceil(textSize * 0.25f));
+    }
+
+
+    public void  getTextPath(String text, int start, int end, float x, float y, Path path)
+    {
+        path.reset();
+        path.addRect(x, y - textSize, x + measureText(text, start, end), y, Path.Direction.CW);
+    }
+
+
+    public float  ascent()   { return -textSize; }
+    public float  descent()  { return textSize * 0.25f; }
+
+
+    private void  setFlag(int flag, boolean on)
+    {
+        flags = on ? (flags | flag) : (flags & ~flag);
+    }
+}
@@ -0,0 +1,212 @@
+package android.graphics;
+
+import java.util.Arrays;
+
+
+/**
+ * Stand-in for android.graphics.Path that records its points, so that bounds, transforms and
+ * copies behave as they do on a device. Curves are not flattened: like Android's
+ * computeBounds(), the bounds include the control points.
+ */
+public class Path
+{
+    public enum FillType
+    {
+        WINDING,
+        EVEN_ODD,
+        INVERSE_WINDING,
+        INVERSE_EVEN_ODD
+    }
+
+    public enum Direction
+    {
+        CW,
+        CCW
+    }
+
+
+    private FillType  fillType = FillType.WINDING;
+    private int       verbCount;
+    private float[]   coords = new float[16];
+    private int       coordCount;
+
+
+    public Path()
+    {
+    }
+
+
+    public Path(Path src)
+    {
+        if (src != null)
+            set(src);
+    }
+
+
+    public void  set(Path src)
+    {
+        fillType = src.fillType;
+        verbCount = src.verbCount;
+        coords = Arrays.copyOf(src.coords, Math.max(src.coordCount, 16));
+        coordCount = src.coordCount;
+    }
+
+
+    public void  reset()
+    {
+        rewind();
+        fillType = FillType.WINDING;
+    }
+
+
+    public void  rewind()
+    {
+        verbCount = 0;
+        coordCount = 0;
+    }
+
+
+    public boolean   isEmpty()                     { return verbCount == 0; }
+    public FillType  getFillType()                 { return fillType; }
+    public void      setFillType(FillType ft)      { fillType = ft; }
+
+    /** The number of path operations recorded. Not part of the Android API. */
+    public int  getVerbCount()  { return verbCount; }
+
+
+    public void  moveTo(float x, float y)        { verb(); point(x, y); }
+    public void  lineTo(float x, float y)        { verb(); point(x, y); }
+    public void  quadTo(float x1, float y1, float x2, float y2)  { verb(); point(x1, y1); point(x2, y2); }
+
+    public void  cubicTo(float x1, float y1, float x2, float y2, float x3, float y3)
+    {
+        verb();
+        point(x1, y1);
+        point(x2, y2);
+        point(x3, y3);
+    }
+
+    public void  close()  { verb(); }
+
+
+    public void  arcTo(RectF oval, float startAngle, float sweepAngle, boolean forceMoveTo)
+    {
+        verb();
+        point(oval.left, oval.top);
+        point(oval.right, oval.bottom);
+    }
+
+
+    public void  arcTo(RectF oval, float startAngle, float sweepAngle)
+    {
+        arcTo(oval, startAngle, sweepAngle, false);
+    }
+
+
+    public void  addRect(float left, float top, float right, float bottom, Direction dir)
+    {
+        moveTo(left, top);
+        lineTo(right, top);
+        lineTo(right, bottom);
+        lineTo(left, bottom);
+        close();
+    }
+
+
+    public void  addRect(RectF rect, Direction dir)
+    {
+        addRect(rect.left, rect.top, rect.right, rect.bottom, dir);
+    }
+
+
+    public void  addOval(RectF oval, Direction dir)
+    {
+        verb();
+        point(oval.left, oval.top);
+        point(oval.right, oval.bottom);
+        close();
+    }
+
+
+    public void  addCircle(float x, float y, float radius, Direction dir)
+    {
+        addOval(new RectF(x - radius, y - radius, x + radius, y + radius), dir);
+    }
+
+
+    public void  addPath(Path src)
+    {
+        addPath(src, null);
+    }
+
+
+    public void  addPath(Path src, Matrix matrix)
+    {
+        int  start = coordCount;
+        verbCount += src.verbCount;
+        ensure(src.coordCount);
+        System.arraycopy(src.coords, 0, coords, coordCount, src.coordCount);
+        coordCount += src.coordCount;
+        if (matrix != null)
+            matrix.mapPoints(coords, start, coords, start, src.coordCount / 2);
+    }
+
+
+    public void  transform(Matrix matrix)
+    {
+        matrix.mapPoints(coords, 0, coords, 0, coordCount / 2);
+    }
+
+
+    public void  transform(Matrix matrix, Path dst)
+    {
+        if (dst == null) {
+            transform(matrix);
+            return;
+        }
+        dst.set(this);
+        dst.transform(matrix);
+    }
+
+
+    public void  computeBounds(RectF bounds, boolean exact)
+    {
+        if (coordCount == 0) {
+            bounds.setEmpty();
+            return;
+        }
+        float  left = coords[0], top = coords[1], right = left, bottom = top;
+        for (int i = 2; i < coordCount; i += 2)
+        {
+            left = Math.min(left, coords[i]);
+            right = Math.max(right, coords[i]);
+            top = Math.min(top, coords[i + 1]);
+            bottom = Math.max(bottom, coords[i + 1]);
+        }
+        bounds.set(left, top, right, bottom);
+    }
+
+
+    //=========================================================================
+
+
+    private void  verb()
+    {
+        verbCount++;
+    }
+
+
+    private void  point(float x, float y)
+    {
+        ensure(2);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+
+    private void  ensure(int extra)
+    {
+        if (coordCount + extra > coords.length)
+            coords = Arrays.copyOf(coords, Math.max(coords.length * 2, coordCount + extra));
+    }
+}
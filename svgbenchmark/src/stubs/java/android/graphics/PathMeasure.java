@@ -0,0 +1,42 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.PathMeasure. The length is approximated from the bounds of
+ * the path.
+ */
+public class PathMeasure
+{
+    private float  length;
+
+
+    public PathMeasure()
+    {
+    }
+
+
+    public PathMeasure(Path path, boolean forceClosed)
+    {
+        setPath(path, forceClosed);
+    }
+
+
+    public void  setPath(Path path, boolean forceClosed)
+    {
+        RectF  bounds = new RectF();
+        path.computeBounds(bounds, true);
+        length = bounds.width() + bounds.height();
+    }
+
+
+    public float  getLength()
+    {
+        return length;
+    }
+
+
+    public boolean  nextContour()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,38 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Picture. Recording gives a Canvas that counts operations;
+ * playing the picture back counts as a single drawPicture() on the target canvas.
+ */
+public class Picture
+{
+    private int     width;
+    private int     height;
+    private Canvas  recording;
+
+
+    public Canvas  beginRecording(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        recording = new Canvas(width, height);
+        return recording;
+    }
+
+
+    public void  endRecording()
+    {
+        recording = null;
+    }
+
+
+    public int  getWidth()   { return width; }
+    public int  getHeight()  { return height; }
+
+
+    public void  draw(Canvas canvas)
+    {
+        canvas.drawPicture(this);
+    }
+}
@@ -0,0 +1,12 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.PorterDuffXfermode.
+ */
+public class PorterDuffXfermode extends Xfermode
+{
+    public PorterDuffXfermode(PorterDuff.Mode mode)
+    {
+    }
+}
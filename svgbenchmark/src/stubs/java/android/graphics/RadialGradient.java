@@ -0,0 +1,25 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.RadialGradient.
+ */
+public class RadialGradient extends Shader
+{
+    public RadialGradient(float x, float y, float radius, int[] colors, float[] positions, TileMode tile)
+    {
+        if (radius <= 0)
+            throw new IllegalArgumentException("radius must be > 0");
+        if (colors.length < 2)
+            throw new IllegalArgumentException("needs >= 2 number of colors");
+        if (positions != null && colors.length != positions.length)
+            throw new IllegalArgumentException("color and position arrays must be of equal length");
+    }
+
+
+    public RadialGradient(float x, float y, float radius, int color0, int color1, TileMode tile)
+    {
+        if (radius <= 0)
+            throw new IllegalArgumentException("radius must be > 0");
+    }
+}
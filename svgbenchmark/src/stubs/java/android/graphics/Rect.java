@@ -0,0 +1,163 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Rect.
+ */
+public final class Rect
+{
+    public int  left;
+    public int  top;
+    public int  right;
+    public int  bottom;
+
+
+    public Rect()
+    {
+    }
+
+
+    public Rect(int left, int top, int right, int bottom)
+    {
+        set(left, top, right, bottom);
+    }
+
+
+    public Rect(Rect r)
+    {
+        if (r != null)
+            set(r);
+    }
+
+
+    public final boolean  isEmpty()   { return left >= right || top >= bottom; }
+    public final int      width()     { return right - left; }
+    public final int      height()    { return bottom - top; }
+    public final int      centerX()   { return (left + right) >> 1; }
+    public final int      centerY()   { return (top + bottom) >> 1; }
+    public final float    exactCenterX()  { return (left + right) * 0.5f; }
+    public final float    exactCenterY()  { return (top + bottom) * 0.5f; }
+
+
+    public void  setEmpty()
+    {
+        left = top = right = bottom = 0;
+    }
+
+
+    public void  set(int left, int top, int right, int bottom)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+
+    public void  set(Rect src)
+    {
+        set(src.left, src.top, src.right, src.bottom);
+    }
+
+
+    public void  offset(int dx, int dy)
+    {
+        left += dx;
+        top += dy;
+        right += dx;
+        bottom += dy;
+    }
+
+
+    public void  inset(int dx, int dy)
+    {
+        left += dx;
+        top += dy;
+        right -= dx;
+        bottom -= dy;
+    }
+
+
+    public boolean  contains(int x, int y)
+    {
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+
+
+    public boolean  intersects(int left, int top, int right, int bottom)
+    {
+        return this.left < right && left < this.right && this.top < bottom && top < this.bottom;
+    }
+
+
+    public static boolean  intersects(Rect a, Rect b)
+    {
+        return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+    }
+
+
+    public boolean  intersect(int left, int top, int right, int bottom)
+    {
+        if (!intersects(left, top, right, bottom))
+            return false;
+        this.left = Math.max(this.left, left);
+        this.top = Math.max(this.top, top);
+        this.right = Math.min(this.right, right);
+        this.bottom = Math.min(this.bottom, bottom);
+        return true;
+    }
+
+
+    public boolean  intersect(Rect r)
+    {
+        return intersect(r.left, r.top, r.right, r.bottom);
+    }
+
+
+    public void  union(int left, int top, int right, int bottom)
+    {
+        if (left >= right || top >= bottom)
+            return;
+        if (this.left < this.right && this.top < this.bottom)
+        {
+            this.left = Math.min(this.left, left);
+            this.top = Math.min(this.top, top);
+            this.right = Math.max(this.right, right);
+            this.bottom = Math.max(this.bottom, bottom);
+        }
+        else
+        {
+            set(left, top, right, bottom);
+        }
+    }
+
+
+    public void  union(Rect r)
+    {
+        union(r.left, r.top, r.right, r.bottom);
+    }
+
+
+    @Override
+    public boolean  equals(Object o)
+    {
+        if (!(o instanceof Rect))
+            return false;
+        Rect  r = (Rect) o;
+        return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+    }
+
+
+    @Override
+    public int  hashCode()
+    {
+        return ((left * 31 + top) * 31 + right) * 31 + bottom;
+    }
+
+
+    @Override
+    public String  toString()
+    {
+        return "Rect(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+    }
+}
@@ -0,0 +1,201 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.RectF.
+ */
+public class RectF
+{
+    public float  left;
+    public float  top;
+    public float  right;
+    public float  bottom;
+
+
+    public RectF()
+    {
+    }
+
+
+    public RectF(float left, float top, float right, float bottom)
+    {
+        set(left, top, right, bottom);
+    }
+
+
+    public RectF(RectF r)
+    {
+        if (r != null)
+            set(r);
+    }
+
+
+    public RectF(Rect r)
+    {
+        if (r != null)
+            set(r.left, r.top, r.right, r.bottom);
+    }
+
+
+    public final boolean  isEmpty()   { return left >= right || top >= bottom; }
+    public final float    width()     { return right - left; }
+    public final float    height()    { return bottom - top; }
+    public final float    centerX()   { return (left + right) * 0.5f; }
+    public final float    centerY()   { return (top + bottom) * 0.5f; }
+
+
+    public void  setEmpty()
+    {
+        left = top = right = bottom = 0;
+    }
+
+
+    public void  set(float left, float top, float right, float bottom)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+
+    public void  set(RectF src)
+    {
+        set(src.left, src.top, src.right, src.bottom);
+    }
+
+
+    public void  set(Rect src)
+    {
+        set(src.left, src.top, src.right, src.bottom);
+    }
+
+
+    public void  offset(float dx, float dy)
+    {
+        left += dx;
+        top += dy;
+        right += dx;
+        bottom += dy;
+    }
+
+
+    public void  offsetTo(float newLeft, float newTop)
+    {
+        offset(newLeft - left, newTop - top);
+    }
+
+
+    public void  inset(float dx, float dy)
+    {
+        left += dx;
+        top += dy;
+        right -= dx;
+        bottom -= dy;
+    }
+
+
+    public boolean  contains(float x, float y)
+    {
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+
+
+    public boolean  contains(RectF r)
+    {
+        return left < right && top < bottom && left <= r.left && top <= r.top && right >= r.right && bottom >= r.bottom;
+    }
+
+
+    public boolean  intersects(float left, float top, float right, float bottom)
+    {
+        return this.left < right && left < this.right && this.top < bottom && top < this.bottom;
+    }
+
+
+    public static boolean  intersects(RectF a, RectF b)
+    {
+        return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+    }
+
+
+    public boolean  intersect(float left, float top, float right, float bottom)
+    {
+        if (!intersects(left, top, right, bottom))
+            return false;
+        this.left = Math.max(this.left, left);
+        this.top = Math.max(this.top, top);
+        this.right = Math.min(this.right, right);
+        this.bottom = Math.min(this.bottom, bottom);
+        return true;
+    }
+
+
+    public boolean  intersect(RectF r)
+    {
+        return intersect(r.left, r.top, r.right, r.bottom);
+    }
+
+
+    public void  union(float left, float top, float right, float bottom)
+    {
+        if (left >= right || top >= bottom)
+            return;
+        if (this.left < this.right && this.top < this.bottom)
+        {
+            this.left = Math.min(this.left, left);
+            this.top = Math.min(this.top, top);
+            this.right = Math.max(this.right, right);
+            this.bottom = Math.max(this.bottom, bottom);
+        }
+        else
+        {
+            set(left, top, right, bottom);
+        }
+    }
+
+
+    public void  union(RectF r)
+    {
+        union(r.left, r.top, r.right, r.bottom);
+    }
+
+
+    public void  union(float x, float y)
+    {
+        left = Math.min(left, x);
+        top = Math.min(top, y);
+        right = Math.max(right, x);
+        bottom = Math.max(bottom, y);
+    }
+
+
+    public void  roundOut(Rect dst)
+    {
+        dst.set((int) Math.floor(left), (int) Math.floor(top), (int) Math.ceil(right), (int) Math.ceil(bottom));
+    }
+
+
+    @Override
+    public boolean  equals(Object o)
+    {
+        if (!(o instanceof RectF))
+            return false;
+        RectF  r = (RectF) o;
+        return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+    }
+
+
+    @Override
+    public int  hashCode()
+    {
+        return ((Float.floatToIntBits(left) * 31 + Float.floatToIntBits(top)) * 31 + Float.floatToIntBits(right)) * 31 + Float.floatToIntBits(bottom);
+    }
+
+
+    @Override
+    public String  toString()
+    {
+        return "RectF(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
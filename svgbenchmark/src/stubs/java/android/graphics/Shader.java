@@ -0,0 +1,31 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Shader.
+ */
+public class Shader
+{
+    public enum TileMode
+    {
+        CLAMP,
+        REPEAT,
+        MIRROR
+    }
+
+
+    private Matrix  localMatrix;
+
+
+    public boolean  getLocalMatrix(Matrix localM)
+    {
+        localM.set(localMatrix);
+        return localMatrix != null && !localMatrix.isIdentity();
+    }
+
+
+    public void  setLocalMatrix(Matrix localM)
+    {
+        localMatrix = (localM == null || localM.isIdentity()) ? null : new Matrix(localM);
+    }
+}
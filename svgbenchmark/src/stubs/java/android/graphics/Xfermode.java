@@ -0,0 +1,9 @@
+package android.graphics;
+
+
+/**
+ * Stand-in for android.graphics.Xfermode.
+ */
+public class Xfermode
+{
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+
+/**
+ * Stand-in for android.os.Build. The benchmarks run as a recent platform.
+ */
+public class Build
+{
+    public static class VERSION
+    {
+        public static final int  SDK_INT = 21;
+    }
+}
@@ -0,0 +1,46 @@
+package android.util;
+
+
+/**
+ * Stand-in for android.util.Base64. Only decoding is provided, as that is all the renderer
+ * uses (for data: URLs).
+ */
+public class Base64
+{
+    public static final int  DEFAULT = 0;
+
+
+    public static byte[]  decode(String str, int flags)
+    {
+        byte[]  out = new byte[str.length() * 3 / 4];
+        int     length = 0;
+        int     bits = 0;
+        int     bitCount = 0;
+        for (int i = 0; i < str.length(); i++)
+        {
+            int  value = valueOf(str.charAt(i));
+            if (value < 0)
+                continue;   // whitespace and padding
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        byte[]  result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+
+    private static int  valueOf(char c)
+    {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '+' || c == '-') return 62;
+        if (c == '/' || c == '_') return 63;
+        return -1;
+    }
+}
@@ -0,0 +1,165 @@
+package android.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Stand-in for android.util.LruCache, with the same sizing, eviction and statistics.
+ */
+public class LruCache<K, V>
+{
+    private final LinkedHashMap<K, V>  map = new LinkedHashMap<K, V>(0, 0.75f, true);
+
+    private int  size;
+    private int  maxSize;
+    private int  hitCount;
+    private int  missCount;
+
+
+    public LruCache(int maxSize)
+    {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize <= 0");
+        this.maxSize = maxSize;
+    }
+
+
+    public final V  get(K key)
+    {
+        if (key == null)
+            throw new NullPointerException("key == null");
+
+        V  created;
+        synchronized (this)
+        {
+            V  value = map.get(key);
+            if (value != null) {
+                hitCount++;
+                return value;
+            }
+            missCount++;
+        }
+
+        created = create(key);
+        if (created == null)
+            return null;
+        put(key, created);
+        return created;
+    }
+
+
+    public final V  put(K key, V value)
+    {
+        if (key == null || value == null)
+            throw new NullPointerException("key == null || value == null");
+
+        V  previous;
+        synchronized (this)
+        {
+            size += safeSizeOf(key, value);
+            previous = map.put(key, value);
+            if (previous != null)
+                size -= safeSizeOf(key, previous);
+        }
+        if (previous != null)
+            entryRemoved(false, key, previous, value);
+        trimToSize(maxSize);
+        return previous;
+    }
+
+
+    public final V  remove(K key)
+    {
+        if (key == null)
+            throw new NullPointerException("key == null");
+
+        V  previous;
+        synchronized (this)
+        {
+            previous = map.remove(key);
+            if (previous != null)
+                size -= safeSizeOf(key, previous);
+        }
+        if (previous != null)
+            entryRemoved(false, key, previous, null);
+        return previous;
+    }
+
+
+    public void  trimToSize(int maxSize)
+    {
+        while (true)
+        {
+            K  key;
+            V  value;
+            synchronized (this)
+            {
+                if (size <= maxSize || map.isEmpty())
+                    break;
+                Iterator<Map.Entry<K, V>>  it = map.entrySet().iterator();
+                Map.Entry<K, V>            eldest = it.next();
+                key = eldest.getKey();
+                value = eldest.getValue();
+                it.remove();
+                size -= safeSizeOf(key, value);
+            }
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+
+    public void  resize(int maxSize)
+    {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize <= 0");
+        synchronized (this) {
+            this.maxSize = maxSize;
+        }
+        trimToSize(maxSize);
+    }
+
+
+    public final void  evictAll()
+    {
+        trimToSize(-1);
+    }
+
+
+    protected void  entryRemoved(boolean evicted, K key, V oldValue, V newValue)
+    {
+    }
+
+
+    protected V  create(K key)
+    {
+        return null;
+    }
+
+
+    protected int  sizeOf(K key, V value)
+    {
+        return 1;
+    }
+
+
+    private int  safeSizeOf(K key, V value)
+    {
+        int  result = sizeOf(key, value);
+        if (result < 0)
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        return result;
+    }
+
+
+    public synchronized final int  size()       { return size; }
+    public synchronized final int  maxSize()    { return maxSize; }
+    public synchronized final int  hitCount()   { return hitCount; }
+    public synchronized final int  missCount()  { return missCount; }
+
+    public synchronized final Map<K, V>  snapshot()
+    {
+        return new LinkedHashMap<K, V>(map);
+    }
+}
@@ -0,0 +1,17 @@
+package android.util;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+
+/**
+ * Stand-in for android.util.Xml. Android's pull parser is KXmlParser, so that is what is
+ * returned here too.
+ */
+public class Xml
+{
+    public static XmlPullParser  newPullParser()
+    {
+        return new KXmlParser();
+    }
+}
@@ -0,0 +1,55 @@
+package com.grottworkshop.svgbenchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.grottworkshop.gwsbaselibrary.graphics.svg.BenchmarkAccess;
+
+
+/**
+ * Checks that the library's path parser builds exactly the same paths as the original
+ * TextScanner based one, including for malformed data, where both stop at the first error.
+ */
+public class PathParserTest
+{
+    private static final String[]  PATHS = {
+        "",
+        "   ",
+        "M10,20",
+        "M 10 20 L 30 40 Z",
+        "m10,20 l10,0 0,10 -10,0z m5,5 l1,1",
+        "M0,0 H10 V10 h-5 v-5 z",
+        "M0,0 C1,2 3,4 5,6 S7,8 9,10 c1,1 2,2 3,3 s1,1 2,2",
+        "M0,0 Q1,2 3,4 T5,6 q1,1 2,2 t3,3",
+        "M0,0 A10,20 30 1 0 40,50 a5,5 0 0,1 10,10",
+        "M0,0 A10,20 30 1040,50",                    // flags run into the coordinates
+        "M.5.5 L-.5-.5 1e2,1E-2 +3-4",               // numbers without separators
+        "M0,0 L10",                                  // missing coordinate
+        "M0,0 A-10,20 0 0 0 5,5",                    // negative radius
+        "L0,0 M10,10",                               // doesn't start with a move
+        "M0,0 X10,10 L20,20",                        // unknown command
+        "M 1,2\n\tL 3,4\r\n  z  ",
+    };
+
+
+    @Test
+    public void  pathsMatchReference() throws Exception
+    {
+        for (String d: PATHS)
+            assertTrue("Paths differ for \"" + d + "\"", BenchmarkAccess.samePath(BenchmarkAccess.parsePath(d), BenchmarkAccess.parseReferencePath(d)));
+    }
+
+
+    @Test
+    public void  benchmarkPathMatchesReference() throws Exception
+    {
+        String  d = PathParserBenchmark.generatePath();
+        assertEquals(PathParserBenchmark.BYTES, d.length());
+
+        Object  path = BenchmarkAccess.parsePath(d);
+        assertEquals(PathParserBenchmark.COORDINATES, BenchmarkAccess.coordCount(path));
+        assertTrue(BenchmarkAccess.samePath(path, BenchmarkAccess.parseReferencePath(d)));
+    }
+}
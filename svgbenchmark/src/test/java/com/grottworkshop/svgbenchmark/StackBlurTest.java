@@ -0,0 +1,98 @@
+package com.grottworkshop.svgbenchmark;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.grottworkshop.gwsbaselibrary.widget.glassactionbar.StackBlur;
+
+
+/**
+ * Checks that StackBlur gives exactly the same pixels as the original single threaded port,
+ * whatever the number of threads, image size and radius.
+ */
+public class StackBlurTest
+{
+    private static final int[]  THREAD_COUNTS = {1, 2, 3, 4, 8};
+
+    // Small sizes take the single threaded path, larger ones are split into bands
+    private static final int[][]  SMALL_SIZES = {{1, 1}, {1, 50}, {50, 1}, {2, 3}, {17, 33}, {216, 11}};
+    private static final int[][]  LARGE_SIZES = {{128, 128}, {216, 384}, {301, 257}};
+
+
+    @Test
+    public void  smallImagesMatchReference()
+    {
+        for (int[] size: SMALL_SIZES)
+            for (int radius = 1; radius <= 40; radius++)
+                checkAllThreadCounts(size[0], size[1], radius);
+    }
+
+
+    @Test
+    public void  largeImagesMatchReference()
+    {
+        for (int[] size: LARGE_SIZES)
+            for (int radius: new int[] {1, 2, 7, 16, 25, 40})
+                checkAllThreadCounts(size[0], size[1], radius);
+    }
+
+
+    @Test
+    public void  reusedEngineMatchesReference()
+    {
+        // The scratch buffers are kept between calls, so blurs of different sizes must not interfere
+        StackBlur  stackBlur = new StackBlur(4);
+        try
+        {
+            for (int[] size: new int[][] {{301, 257}, {17, 33}, {216, 384}, {1, 1}, {301, 257}})
+                check(stackBlur, size[0], size[1], 7);
+        }
+        finally
+        {
+            stackBlur.release();
+        }
+    }
+
+
+    //=========================================================================
+
+
+    private static void  checkAllThreadCounts(int width, int height, int radius)
+    {
+        for (int threads: THREAD_COUNTS)
+        {
+            StackBlur  stackBlur = new StackBlur(threads);
+            try
+            {
+                check(stackBlur, width, height, radius);
+            }
+            finally
+            {
+                stackBlur.release();
+            }
+        }
+    }
+
+
+    private static void  check(StackBlur stackBlur, int width, int height, int radius)
+    {
+        int[]  expected = randomPixels(width * height, width * 31 + height * 17 + radius);
+        int[]  actual = expected.clone();
+        ReferenceStackBlur.blur(expected, width, height, radius);
+        stackBlur.blur(actual, width, height, radius);
+        assertArrayEquals(width + "x" + height + " radius " + radius, expected, actual);
+    }
+
+
+    private static int[]  randomPixels(int count, long seed)
+    {
+        Random  random = new Random(seed);
+        int[]   pixels = new int[count];
+        for (int i = 0; i < count; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+}